@@ -1,2 +1,16 @@
 @echo off
-java -Xms100m -Xmx800m -cp .;nengo-BUILDNUMBER.jar;LIBS ca.nengo.ui.NengoLauncher
+rem See the nengo script for the class data sharing options (nengo.bat --train-cds)
+set CDS=
+set TRAIN=
+if "%1"=="--train-cds" (
+    set TRAIN=1
+    if exist nengo.jsa del nengo.jsa
+    set CDS=-XX:+IgnoreUnrecognizedVMOptions -XX:ArchiveClassesAtExit=nengo.jsa -Dca.nengo.ui.startup.exit=true
+) else if exist nengo.jsa (
+    set CDS=-XX:+IgnoreUnrecognizedVMOptions -XX:SharedArchiveFile=nengo.jsa -Xshare:auto
+)
+java -Xms100m -Xmx800m %CDS% -cp .;nengo-BUILDNUMBER.jar;LIBS ca.nengo.ui.NengoLauncher
+if defined TRAIN if not exist nengo.jsa (
+    echo nengo.jsa was not written: class data sharing needs Java 13 or later 1>&2
+    exit /b 1
+)
@@ -1,12 +1,12 @@
 from ca.nengo.model.impl import NetworkImpl, NoiseFactory, FunctionInput, NetworkArrayImpl
 from ca.nengo.model import SimulationMode, Origin, Units, Termination, Network
-from ca.nengo.model.nef.impl import NEFEnsembleFactoryImpl
+from ca.nengo.model.nef.impl import NEFEnsembleFactoryImpl, ParallelEnsembleBuilder
 from ca.nengo.model.nef import NEFEnsemble
 from ca.nengo.model.neuron.impl import LIFNeuronFactory
 from ca.nengo.model.plasticity.impl import PESTermination, PreLearnTermination, STDPTermination, PlasticEnsembleImpl
 from ca.nengo.util import MU
 from ca.nengo.util.impl import FixedVectorGenerator
-from ca.nengo.math.impl import IndicatorPDF,ConstantFunction,PiecewiseConstantFunction,GradientDescentApproximator,FourierFunction
+from ca.nengo.math.impl import IndicatorPDF,ConstantFunction,PiecewiseConstantFunction,GradientDescentApproximator,SignConstrainedApproximator,FourierFunction
 from ca.nengo.math import Function,PDFTools
 from ca.nengo.model import StructuralException
 from ca.nengo.io import FileManager
@@ -15,6 +15,7 @@ import warnings
 
 from java.util import ArrayList
 from java.util import HashMap
+from java.util.concurrent import Callable
 
 import pdfs
 import generators
@@ -22,8 +23,62 @@ import functions
 import random
 import inspect
 import log
+import threading
     
 
+_builder=None
+def _get_builder():
+    """Return the ParallelEnsembleBuilder that makes ensembles for all Networks.  Each ensemble
+    is given its own random stream, so the builder's seed isn't used."""
+    global _builder
+    if _builder is None:
+        _builder=ParallelEnsembleBuilder(0)
+    return _builder
+
+_storage_locks={}
+_storage_locks_lock=threading.Lock()
+def _get_storage_lock(storage_name):
+    """Return a lock for a quick file, so that ensembles that share one are made one at a
+    time (the first saves the file and the others load it)."""
+    _storage_locks_lock.acquire()
+    try:
+        if storage_name not in _storage_locks:
+            _storage_locks[storage_name]=threading.Lock()
+        return _storage_locks[storage_name]
+    finally:
+        _storage_locks_lock.release()
+
+class _EnsembleTask(Callable):
+    """Makes an ensemble on one of the builder's threads."""
+    def __init__(self,ef,name,neurons,radii,storage_name,noise,noise_frequency,mode):
+        self.ef=ef
+        self.name=name
+        self.neurons=neurons
+        self.radii=radii
+        self.storage_name=storage_name
+        self.noise=noise
+        self.noise_frequency=noise_frequency
+        self.mode=mode
+    def call(self):
+        if self.storage_name:
+            lock=_get_storage_lock(self.storage_name)
+            lock.acquire()
+            try:
+                n=self.ef.make(self.name,self.neurons,self.radii,self.storage_name,False)
+            finally:
+                lock.release()
+        else:
+            n=self.ef.make(self.name,self.neurons,self.radii,'',False)
+        if self.noise is not None:
+            for nn in n.nodes:
+                nn.noise=NoiseFactory.makeRandomNoise(self.noise_frequency,IndicatorPDF(-self.noise,self.noise))
+
+        if self.mode=='rate' or self.mode==SimulationMode.RATE:
+            n.mode=SimulationMode.RATE
+        elif self.mode=='direct' or self.mode==SimulationMode.DIRECT:
+            n.mode=SimulationMode.DIRECT
+        return n
+
 class Network:
     """Wraps a Nengo network with a set of helper functions for simplifying the creation of Nengo models.
 
@@ -70,8 +125,6 @@ class Network:
         self.seed=seed
         self.fixed_seed=fixed_seed
         if seed is not None:
-            self.random=random.Random()
-            self.random.seed(seed)
             PDFTools.setSeed(seed)    
             random.seed(seed)
             
@@ -119,13 +172,44 @@ class Network:
                                not encouraged any more: use seed=<number> or fixed_seed=<number> in the Network
                                constructor instead.                               
         :type quick:          boolean or None         
-        :param int seed: random number seed to use.  Will be passed to both random.seed() and ca.nengo.math.PDFTools.setSeed().
-                         If this is None and the Network was constructed with a seed parameter, a seed will be randomly generated.
+        :param int seed: random number seed to use for this ensemble.
+                         If this is None and the Network was constructed with a seed parameter, a seed will be derived
+                         from that one and the ensemble's name (including the names of any subnetworks it is in).
         :param string storage_code:  an extra parameter to allow different quick files even if all other parameters
                                      are the same
         :param boolean add_to_network: flag to indicate if created ensemble should be added to the network
         :returns: the newly created ensemble                             
         """
+        parent,short_name=self._parse_name(name)
+        future=self._submit_make(self._get_path(name),short_name,neurons,dimensions,
+                                 tau_rc=tau_rc,tau_ref=tau_ref,max_rate=max_rate,intercept=intercept,
+                                 radius=radius,encoders=encoders,decoder_noise=decoder_noise,
+                                 eval_points=eval_points,noise=noise,noise_frequency=noise_frequency,
+                                 mode=mode,node_factory=node_factory,decoder_sign=decoder_sign,
+                                 seed=seed,quick=quick,storage_code=storage_code)
+        n=ParallelEnsembleBuilder.get(future)
+        if add_to_network: parent.addNode(n)
+        return n
+
+    def _submit_make(self,path,name,neurons,dimensions,
+                  tau_rc=0.02,tau_ref=0.002,
+                  max_rate=(200,400),intercept=(-1,1),
+                  radius=1,encoders=None,
+                  decoder_noise=0.1,
+                  eval_points=None,
+                  noise=None,noise_frequency=1000,
+                  mode='spike',
+                  node_factory=None,
+                  decoder_sign=None,
+                  seed=None,
+                  quick=None,storage_code=''):
+        """Start making an ensemble on the builder's threads, with a random stream of its own.
+
+        The parameters are those of :func:`nef.Network.make()`, except that *path* is the full
+        path of the ensemble in the model, and *name* is its name within its parent.
+
+        :returns: a Future for the new ensemble (see ParallelEnsembleBuilder.get())
+        """
         if neurons==0:
             raise Exception("Cannot create an ensemble with zero neurons")
         
@@ -133,11 +217,13 @@ class Network:
             if self.fixed_seed is not None:
                 seed=self.fixed_seed    
             elif self.seed is not None:
-                seed=self.random.randrange(0x7fffffff)
+                # depends only on the Network's seed and the path, not on what was made before
+                seed=PDFTools.makeStream(self.seed,path).nextInt(0x7fffffff)
         if seed is not None:
             quick=True                    
-            PDFTools.setSeed(seed)    
-            random.seed(seed)
+            stream=PDFTools.makeStream(seed,'')
+        else:
+            stream=PDFTools.makeStream(PDFTools.getRandom().nextLong(),path)
         if intercept is None: intercept=(-1,1)    
         if quick is None: quick=self.defaults['quick']
         if quick:
@@ -193,9 +279,9 @@ class Network:
                 raise Exception('encoders must be a matrix where each row is a non-zero preferred direction vector')
         if decoder_sign is not None:
             if decoder_sign<0: 
-                ef.approximatorFactory=GradientDescentApproximator.Factory(GradientDescentApproximator.CoefficientsSameSign(False),False)
+                ef.approximatorFactory=SignConstrainedApproximator.Factory(False,decoder_noise)
             elif decoder_sign>0: 
-                ef.approximatorFactory=GradientDescentApproximator.Factory(GradientDescentApproximator.CoefficientsSameSign(True),False)
+                ef.approximatorFactory=SignConstrainedApproximator.Factory(True,decoder_noise)
         else:        
             ef.approximatorFactory.noise=decoder_noise
         if eval_points is not None:
@@ -208,20 +294,13 @@ class Network:
         else:
             r=[radius]*dimensions
 
-        parent,name=self._parse_name(name)
-
-        n=ef.make(name,neurons,r,storage_name,False)
-        if noise is not None:
-            for nn in n.nodes:
-                nn.noise=NoiseFactory.makeRandomNoise(noise_frequency,IndicatorPDF(-noise,noise))
-
-        if mode=='rate' or mode==SimulationMode.RATE:
-            n.mode=SimulationMode.RATE
-        elif mode=='direct' or mode==SimulationMode.DIRECT:
-            n.mode=SimulationMode.DIRECT
-        if add_to_network: parent.addNode(n)
-        return n
+        task=_EnsembleTask(ef,name,neurons,r,storage_name,noise,noise_frequency,mode)
+        return _get_builder().submit(stream,task)
     
+    def _get_path(self,name):
+        """Return the path of a node in the model (eg 'Model/Sub/A' for 'Sub.A')."""
+        return self.network.name+'/'+name.replace('.','/')
+
     def _parse_name(self,name):
         """ Split name by delimiter '.'.
         
@@ -283,17 +362,19 @@ class Network:
         :param integer dimensions:    number of dimensions each ensemble represents       
         :returns: the newly created :class:`ca.nengo.model.impl.NetworkArrayImpl`
         """
-        nodes=[]
+        path=self._get_path(name)
+        parent,name=self._parse_name(name)
+        args.pop('add_to_network',None)
+        futures=[]
         storage_code=args.get('storage_code','')
         encoders=args.get('encoders',None)
         for i in range(length):
             if '%' in storage_code: args['storage_code']=storage_code%i
             if encoders is not None and isinstance(encoders[0][0],(tuple,list)):
                 args['encoders']=encoders[i%len(encoders)]
-            n=self.make('%d'%i,neurons,dimensions,add_to_network=False,**args)
-            nodes.append(n)
+            futures.append(self._submit_make('%s/%d'%(path,i),'%d'%i,neurons,dimensions,**args))
+        nodes=[ParallelEnsembleBuilder.get(f) for f in futures]
 
-        parent,name=self._parse_name(name)    
         ensemble=NetworkArrayImpl(name,nodes)
         parent.addNode(ensemble)
         ensemble.mode=ensemble.nodes[0].mode
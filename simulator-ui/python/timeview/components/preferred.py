@@ -50,6 +50,10 @@ class PreferredDirection(core.DataViewComponent):
             max = max(self)
         xc = self.width / 2
         yc = (self.height - self.label_offset) / 2 + self.label_offset
+        if self.decoders:
+            vectors = self.view.watcher.objects[self.name].getOrigin('X').decoders
+        else:
+            vectors = self.view.watcher.objects[self.name].encoders
         for i, v in enumerate(data):
             v = (float(v) - min) / (max - min)
             if v < 0:
@@ -57,9 +61,6 @@ class PreferredDirection(core.DataViewComponent):
             if v > 1:
                 c = 1.0
 
-            if self.decoders:
-                ex, ey = self.view.watcher.objects[self.name].getOrigin('X').decoders[i]
-            else:
-                ex, ey = self.view.watcher.objects[self.name].encoders[i]
+            ex, ey = vectors[i]
 
             g.drawLine(xc, yc, int(xc + ex * v * self.width / 2), int(yc - ey * v * (self.height - self.label_offset) / 2))
@@ -1,6 +1,8 @@
 import math
 import threading
 
+from ca.nengo.util.impl import LiveDataBus, LiveWatch
+
 class TimeLogItem:
     def __init__(self,parent,func,args=(),kwargs={},type=None,offset=0):
         self.semaphore=threading.Semaphore()
@@ -94,26 +96,64 @@ class TimeLogItem:
     def get_first(self):
         return self.data[0]
 
+class LiveTimeLogItem:
+    """A TimeLogItem whose samples are recorded in Java by a LiveWatch, rather than by
+    calling a Python function on every tick.  Filtering is also done in Java."""
+    def __init__(self,parent,watch,type=None):
+        self.parent=parent
+        self.watch=watch
+        self.type=type
+        self.length=watch.getDimension()
+    def tick(self,limit=None):
+        pass
+    def reset(self):
+        pass
+
+    def get(self,start=None,count=None,dt_tau=None):
+        if start is None: start=0
+        if count is None: count=self.parent.tick_count+1-start
+        rows=self.watch.get(start,count,dt_tau or 0)
+        return [list(r) if r is not None else None for r in rows]
+
+    def get_first(self):
+        v=self.watch.getFirst()
+        if v is None: return [0]*self.length
+        return list(v)
+
 class TimeLog:
     def __init__(self):
         self.items=[]
         self.tick_count=0
         self.tick_limit=4001
         self.processing=False
+        self.bus=LiveDataBus(self.tick_limit)
     
     def add(self,func,args=(),kwargs={},type=None):
         item=TimeLogItem(self,func,args=args,kwargs={},type=type,offset=self.tick_count)
         self.items.append(item)
         return item
+
+    def add_live(self,source,type=None):
+        self.bus.setCapacity(self.tick_limit)
+        if isinstance(source,LiveWatch.Source):
+            watch=self.bus.subscribe(source,1)
+        else:
+            watch=self.bus.subscribe(source)
+        item=LiveTimeLogItem(self,watch,type=type)
+        self.items.append(item)
+        return item
     
     def remove(self,item):
         self.items.remove(item)    
+        if isinstance(item,LiveTimeLogItem): self.bus.unsubscribe(item.watch)
         
     def tick(self):
+        self.bus.collect()
         for item in self.items: item.tick(limit=self.tick_limit)
         self.tick_count+=1
         
     def reset(self):
+        self.bus.reset(False)
         for item in self.items: item.reset()
         self.tick_count=0
             
@@ -4,12 +4,10 @@ from java.awt.event import *
 import java
 
 from ca.nengo.model.nef import NEFEnsemble
-from ca.nengo.model import SimulationMode
 
 import timeview.components.core as core
 from timeview.components import Graph
 import timeview.view
-import math
 
 class TuningCurveWatch:
     def check(self,obj):
@@ -18,36 +16,13 @@ class TuningCurveWatch:
         pts=100
 
         def makedata(obj=obj,pts=pts):
-            encoders=obj.getEncoders()
-            x=[-1+i/float(pts) for i in range(pts*2+1)]
-
-            mode=obj.mode
-            obj.setMode(SimulationMode.CONSTANT_RATE)
-            noises=[nn.noise for nn in obj.nodes]
-            for nn in obj.nodes:
-                nn.noise=None
-            data=[]
-
-            for xx in x:
-                rate=[]
-                for i,n in enumerate(obj.nodes):
-                    if obj.dimension==1:
-                        input=xx*encoders[i][0]
-                    elif obj.dimension==2:
-                        theta=xx*math.pi
-                        input=math.sin(theta)*encoders[i][0]+math.cos(theta)*encoders[i][1]
-                    n.radialInput=input    
-                    n.run(0,0)
-                    output=n.getOrigin('AXON').getValues().getValues()[0]
-                    rate.append(output)
-                    n.reset(False)
-                data.append(rate)
-
-            obj.setMode(mode)
-            for i,nn in enumerate(obj.nodes):
-                nn.noise=noises[i]
-
-            return data
+            # cached by the ensemble's analysis until the ensemble changes
+            analysis=obj.getAnalysis()
+            if obj.dimension==1:
+                rates=analysis.getTuningCurves(pts*2+1)
+            else:
+                rates=analysis.getAngularTuningCurves(pts*2+1)
+            return [[r[j] for r in rates] for j in range(pts*2+1)]
 
         labels=dict()
         labels[pts]='0'
@@ -27,6 +27,7 @@ import math
 import shelve
 import warnings
 from ca.nengo.util import MU
+from ca.nengo.util.impl import LiveWatch
 import time
 import os
 
@@ -72,12 +73,15 @@ class EnsembleWatch:
             return [n.getOrigin('AXON').getValues().values[0] * 0.0005 for n in obj.nodes]
         else:
             return obj.getOrigin('AXON').getValues().values
+    # the AXON origin gives rates in the rate modes and spikes otherwise, and only rates are scaled
+    spikes.live_origin = lambda obj: LiveWatch.OriginSource(obj.getOrigin('AXON'), 0.0005)
 
     def spikes_only(self, obj):
         if obj.mode in [SimulationMode.CONSTANT_RATE, SimulationMode.RATE]:
             return [0] * obj.neurons
         else:
             return obj.getOrigin('AXON').getValues().values
+    spikes_only.live_origin = lambda obj: LiveWatch.OriginSource(obj.getOrigin('AXON'), 0)
 
     def encoder(self, obj):
         return [x[0] for x in obj.encoders]
@@ -107,6 +111,7 @@ class NeuronWatch:
 
     def spikes(self, obj):
         return obj.getOrigin('AXON').getValues().getValues()
+    spikes.live_origin = lambda obj: obj.getOrigin('AXON')
 
     def views(self, obj):
         r = [('input', components.Graph, dict(func=self.current, label=obj.name + ":input")),
@@ -120,6 +125,7 @@ class NodeWatch:
 
     def value(self, obj, origin):
         return obj.getOrigin(origin).getValues().values
+    value.live_origin = lambda obj, origin: obj.getOrigin(origin)
 
     def weights(self, obj, termination, include_gain=False):
         v = []
@@ -19,7 +19,12 @@ class Watcher:
                 w=self.active[key]
                 break
         else:
-            w=self.timelog.add(func,args=tuple([self.objects[name]]+list(args)))
+            live_origin=getattr(func,'live_origin',None)
+            if live_origin is not None:
+                # values of this function can be sampled directly from an Origin (or a LiveWatch.Source) in Java
+                w=self.timelog.add_live(live_origin(self.objects[name],*args))
+            else:
+                w=self.timelog.add(func,args=tuple([self.objects[name]]+list(args)))
             w.watch_count=0
             self.active[(name,func,args)]=w
         w.watch_count+=1
@@ -107,19 +107,27 @@ class ParallelizationConfiguration(IConfigurable):
     num_sim_GPU = NEFGPUInterface.getRequestedNumDevices()
     use_GPU_for_creation = WeightedCostApproximator.getUseGPU()
 
-    p_num_java_threads = PInt('Number of Java Threads', num_java_threads,
-                              1, NodeThreadPool.getMaxNumJavaThreads())
-    p_num_sim_GPU = PGpuCount('Number of GPU\'s for Simulation')
-    p_use_GPU_for_creation = PGpuUse('Use GPU for Ensemble Creation')
-
-    properties = [p_num_java_threads, p_num_sim_GPU, p_use_GPU_for_creation]
+    properties = None
 
     def __init__(self):
         self.button = make_button('parallelization', self.do_configure,
                                   'Configure Parallelization')
         self.button.enabled = True
 
+    def make_properties(self):
+        # made on first use, since the GPU properties probe for GPUs
+        # (loading native libraries), which would otherwise slow start-up
+        self.p_num_java_threads = PInt(
+            'Number of Java Threads', self.num_java_threads,
+            1, NodeThreadPool.getMaxNumJavaThreads())
+        self.p_num_sim_GPU = PGpuCount('Number of GPU\'s for Simulation')
+        self.p_use_GPU_for_creation = PGpuUse('Use GPU for Ensemble Creation')
+        self.properties = [self.p_num_java_threads, self.p_num_sim_GPU,
+                           self.p_use_GPU_for_creation]
+
     def do_configure(self, event):
+        if self.properties is None:
+            self.make_properties()
         self.p_num_java_threads.setDefaultValue(
             NodeThreadPool.getNumJavaThreads())
         self.p_num_sim_GPU.setDefaultValue(
@@ -110,6 +110,7 @@ import ca.nengo.ui.util.NengoConfigManager.UserProperties;
 import ca.nengo.ui.util.NeoFileChooser;
 import ca.nengo.ui.util.ProgressIndicator;
 import ca.nengo.ui.util.ScriptWorldWrapper;
+import ca.nengo.ui.util.Startup;
 import ca.nengo.ui.world.NengoWorld;
 import ca.nengo.util.Environment;
 
@@ -256,6 +257,7 @@ public class NengoGraphics extends AppFrame implements NodeContainer {
 
     @Override
     protected void initialize() {
+        Startup.beginPhase("window");
         clipboard = new NengoClipboard();
         clipboard.addClipboardListener(new NengoClipboard.ClipboardListener() {
 
@@ -276,6 +278,7 @@ public class NengoGraphics extends AppFrame implements NodeContainer {
 
         super.initialize();
 
+        Startup.beginPhase("environment");
         //UIEnvironment.setDebugEnabled(true);
 
         initializeSimulatorSourceFiles();
@@ -299,6 +302,7 @@ public class NengoGraphics extends AppFrame implements NodeContainer {
 
     @Override
     protected void initLayout(Universe canvas) {
+        Startup.beginPhase("look and feel");
         try {
             //Tell the UIManager to use the platform look and feel
             String laf = UIManager.getSystemLookAndFeelClassName();
@@ -339,6 +343,7 @@ public class NengoGraphics extends AppFrame implements NodeContainer {
         
         // creating the script console calls all python init stuff
         // so call it first (make toolbar, etc.)
+        Startup.beginPhase("script console");
         pythonInterpreter = new PythonInterpreter();
         scriptConsole = new ScriptConsole(pythonInterpreter);
         NengoStyle.applyStyle(scriptConsole);
@@ -350,6 +355,7 @@ public class NengoGraphics extends AppFrame implements NodeContainer {
         			"toolbarPanel or templatePanel not created!");
         }
         
+        Startup.beginPhase("layout");
         dataListViewer = new DataListView(new SimulatorDataModel(),scriptConsole);
 
         templateViewer = new JScrollPane(templatePanel,
@@ -400,6 +406,7 @@ public class NengoGraphics extends AppFrame implements NodeContainer {
         
         progressIndicator=new ProgressIndicator();
         getContentPane().add(progressIndicator,BorderLayout.SOUTH);
+        Startup.beginPhase("menus");
     }
 
     private void initScriptConsole() {
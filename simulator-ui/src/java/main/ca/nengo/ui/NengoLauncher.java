@@ -1,10 +1,18 @@
 package ca.nengo.ui;
 
+import java.util.concurrent.Callable;
+
 //import org.java.ayatana.ApplicationMenu;
 //import org.java.ayatana.AyatanaDesktop;
+import org.python.core.PySystemState;
 import org.simplericity.macify.eawt.Application;
 import org.simplericity.macify.eawt.DefaultApplication;
 
+import ca.nengo.config.ApiIndex;
+import ca.nengo.config.ClassRegistry;
+import ca.nengo.config.IconRegistry;
+import ca.nengo.ui.util.Startup;
+
 public class NengoLauncher {
 
     /**
@@ -13,8 +21,12 @@ public class NengoLauncher {
      * @param args
      */
     public static void main(String[] args) {
+        Startup.beginPhase("launch");
         System.setProperty("apple.laf.useScreenMenuBar", "true");
         System.setProperty("com.apple.mrj.application.apple.menu.about.name", "Nengo");
+
+        initializeInBackground();
+
         Application application = new DefaultApplication();
      
         NengoGraphics ng = new NengoGraphics();
@@ -22,5 +34,32 @@ public class NengoLauncher {
         //if (AyatanaDesktop.isSupported()) {
         //	ApplicationMenu.tryInstall(ng);
         //}
+        Startup.finish();
+    }
+
+    /**
+     * Starts initializing subsystems that don't depend on the window, so that they are
+     * (mostly) ready by the time the window needs them. Each of these is synchronized,
+     * so the window just waits if it gets there first.
+     */
+    private static void initializeInBackground() {
+        Startup.inBackground("python", new Callable<Object>() {
+            public Object call() throws Exception {
+                PySystemState.initialize();
+                return null;
+            }
+        });
+        Startup.inBackground("api index", new Callable<ApiIndex>() {
+            public ApiIndex call() throws Exception {
+                return ApiIndex.getDefault();
+            }
+        });
+        Startup.inBackground("registries", new Callable<Object>() {
+            public Object call() throws Exception {
+                ClassRegistry.getInstance();
+                IconRegistry.getInstance();
+                return null;
+            }
+        });
     }
 }
@@ -26,6 +26,7 @@ a recipient may use your version of this file under either the MPL or the GPL Li
 
 package ca.nengo.ui.actions;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -47,6 +48,7 @@ import ca.nengo.ui.models.NodeContainer;
 import ca.nengo.ui.models.NodeContainer.ContainerException;
 import ca.nengo.ui.models.UINeoNode;
 import ca.nengo.ui.models.nodes.UINodeViewable;
+import ca.nengo.ui.util.ProgressInputStream;
 
 /**
  * Action used to open a Neo model from file
@@ -88,7 +90,8 @@ public class OpenNeoFileAction extends StandardAction {
                     		NengoGraphics.getInstance().getScriptConsole().addVariable("scriptname", file.getPath());
                     		NengoGraphics.getInstance().getPythonInterpreter().execfile(file.getPath());
                     	} catch (RuntimeException e) {
-                    		if (e.toString()=="ca.nengo.ui.util.ScriptInterruptException") {
+                    		if (e.toString()=="ca.nengo.ui.util.ScriptInterruptException"
+                    				|| NengoGraphics.getInstance().getProgressIndicator().isCancelled()) {
                     			
                         		NengoGraphics.getInstance().getProgressIndicator().stop();
                     			UserMessages.showDialog("Stopped","Stopped opening "+file.getName());                    			
@@ -108,8 +111,9 @@ public class OpenNeoFileAction extends StandardAction {
                         // created, so
                         // we use the one from the NengoGraphics.
                         PythonInterpreter pi = NengoGraphics.getInstance().getPythonInterpreter();
-                        pi.set("___inStream",
-                                new PythonObjectInputStream(new FileInputStream(file)));
+                        pi.set("___inStream", new PythonObjectInputStream(
+                                new ProgressInputStream(new BufferedInputStream(new FileInputStream(file)),
+                                        file.length(), NengoGraphics.getInstance().getProgressIndicator())));
                         org.python.core.PyObject obj = pi.eval("___inStream.readObject()");
                         objLoaded = obj.__tojava__(Class.forName("ca.nengo.model.Node"));
                         pi.exec("del ___inStream");
@@ -140,6 +144,10 @@ public class OpenNeoFileAction extends StandardAction {
                     } catch (OutOfMemoryError e) {
                         UserMessages.showError("Out of memory loading file");
                     } catch (org.python.core.PyException e) {
+                        if (NengoGraphics.getInstance().getProgressIndicator().isCancelled()) {
+                            UserMessages.showDialog("Stopped", "Stopped opening " + file.getName());
+                            return;
+                        }
                         PyClass pyClass = (PyClass) e.type;
                         String value = e.value.toString();
                         if (pyClass.__name__.equals("ImportError")) {
@@ -30,6 +30,8 @@ import java.awt.Frame;
 import java.awt.Graphics;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -84,46 +86,46 @@ public class BrainData {
 
     static File dataFile = new File(DATA_FOLDER, DATA_FILE_NAME);
 
-    private static final byte[][][] VOXEL_DATA = new byte[Z_DIMENSIONS][Y_DIMENSIONS][X_DIMENSIONS];
-
-    private static boolean fileProcessed = false;
+    private static volatile byte[][][] voxelData;
 
     /**
-     * TODO
+     * Reads the voxel data file if it hasn't been read already. This is deferred until
+     * the brain view is first shown, since the data are large and most sessions never
+     * use them.
      */
-    public static void initVoxelData() {
-        processFile();
-
+    public static synchronized void initVoxelData() {
+        if (voxelData == null) {
+            voxelData = processFile();
+        }
     }
 
-    private static void processFile() {
-        if (fileProcessed) {
-            return;
-        }
-        fileProcessed = true;
+    private static byte[][][] processFile() {
+        byte[][][] result = new byte[Z_DIMENSIONS][Y_DIMENSIONS][X_DIMENSIONS];
 
         try {
-            FileInputStream fileStream = new FileInputStream(dataFile);
-
-            for (int zIndex = 0; zIndex < Z_DIMENSIONS; zIndex++) {
-                for (int yIndex = 0; yIndex < Y_DIMENSIONS; yIndex++) {
-                    fileStream.read(VOXEL_DATA[zIndex][yIndex]);
-
+            DataInputStream fileStream = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(dataFile), 1 << 16));
+            try {
+                for (int zIndex = 0; zIndex < Z_DIMENSIONS; zIndex++) {
+                    for (int yIndex = 0; yIndex < Y_DIMENSIONS; yIndex++) {
+                        fileStream.readFully(result[zIndex][yIndex]);
+                    }
                 }
-            }
 
-            if (fileStream.available() != 0) {
-                throw new IOException(
-                        "File size incorrect, does not match data dimensions");
+                if (fileStream.read() != -1) {
+                    throw new IOException(
+                            "File size incorrect, does not match data dimensions");
+                }
+            } finally {
+                fileStream.close();
             }
-            fileStream.close();
-
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
         }
 
+        return result;
     }
 
     /**
@@ -185,7 +187,9 @@ public class BrainData {
     }
 
     protected static byte[][][] getVoxelData() {
-        initVoxelData();
-        return VOXEL_DATA;
+        if (voxelData == null) {
+            initVoxelData();
+        }
+        return voxelData;
     }
 }
@@ -54,6 +54,7 @@ import ca.nengo.ui.configurable.PropertyInputPanel;
 import ca.nengo.ui.lib.actions.ActionException;
 import ca.nengo.ui.lib.objects.activities.TrackedAction;
 import ca.nengo.ui.lib.util.UserMessages;
+import ca.nengo.util.ConstructionCancelledException;
 
 /**
  * Configuration dialog
@@ -305,6 +306,9 @@ public class ConfigDialog extends JDialog {
                         } catch (ConfigException e) {
                             configException = e;
 
+                        } catch (ConstructionCancelledException e) {
+                            // the model was stopped part-way through being built
+                            configException = new ConfigException(e.getMessage(), false);
                         }
 
                         myConfigManager.dialogConfigurationFinished(configException);
@@ -24,6 +24,11 @@ a recipient may use your version of this file under either the MPL or the GPL Li
 
 package ca.nengo.ui.dataList;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Enumeration;
@@ -44,6 +49,9 @@ import ca.nengo.ui.lib.util.Util;
 import ca.nengo.util.Probe;
 import ca.nengo.util.SpikePattern;
 import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.ProbeImpl;
+import ca.nengo.util.impl.SpikePatternImpl;
+import ca.nengo.util.impl.TimeSeriesSnapshot;
 
 /**
  * TODO
@@ -53,6 +61,13 @@ import ca.nengo.util.TimeSeries;
 public class SimulatorDataModel extends DefaultTreeModel {
 
     private static final long serialVersionUID = 1L;
+
+    /**
+     * Fraction of the tenured heap still in use after garbage collection, above which the 
+     * results of earlier simulations are moved to disk after a capture
+     */
+    private static final double SPILL_THRESHOLD = 0.7;
+
     private ProbePlotHelper plotterStrategy;
 
     /**
@@ -164,9 +179,14 @@ public class SimulatorDataModel extends DefaultTreeModel {
                 if (ensemble.isCollectingSpikes()) {
                     SortableMutableTreeNode ensNode = createSortableNode(top, ensemble);
                     /*
-                     * Make a clone of the data
+                     * Take a snapshot of the data (shares the spike arrays rather than copying them)
                      */
-                    SpikePattern spikePattern = (SpikePattern) Util.cloneSerializable(ensemble.getSpikePattern());
+                    SpikePattern spikePattern = ensemble.getSpikePattern();
+                    if (spikePattern instanceof SpikePatternImpl) {
+                        spikePattern = ((SpikePatternImpl) spikePattern).snapshot();
+                    } else {
+                        spikePattern = (SpikePattern) Util.cloneSerializable(spikePattern);
+                    }
                     DefaultMutableTreeNode spNode = new SpikePatternNode(spikePattern);
                     ensNode.add(spNode);
 
@@ -250,9 +270,12 @@ public class SimulatorDataModel extends DefaultTreeModel {
             SortableMutableTreeNode targetNode = createSortableNode(top0, (Node) target);
 
             /*
-             * Make a clone of the data
+             * ProbeImpl data is an immutable snapshot; anything else is cloned
              */
-            TimeSeries probeData = (TimeSeries) Util.cloneSerializable(probe.getData());
+            TimeSeries probeData = probe.getData();
+            if (!(probe instanceof ProbeImpl)) {
+                probeData = (TimeSeries) Util.cloneSerializable(probeData);
+            }
 
             DefaultMutableTreeNode stateNode = new ProbeDataNode(probeData,
                     probe.getStateName(), plotterStrategy.isApplyTauFilterByDefault(probe));
@@ -326,9 +349,60 @@ public class SimulatorDataModel extends DefaultTreeModel {
         }
 
         this.insertNodeInto(captureNode, networkNode, 0);
+        spillHistory(captureNode);
         return captureNode;
     }
 
+    /**
+     * If memory is short, moves the probe data of all captures except the given one to 
+     * temporary files. Spilled data is read back when it is next plotted or exported. 
+     * 
+     * @param current The latest capture, which is kept in memory
+     */
+    private void spillHistory(DefaultMutableTreeNode current) {
+        if (!isMemoryShort()) {
+            return;
+        }
+
+        int spilled = 0;
+        Enumeration<?> nodes = ((DefaultMutableTreeNode) getRoot()).depthFirstEnumeration();
+        while (nodes.hasMoreElements()) {
+            Object node = nodes.nextElement();
+            if (node instanceof ProbeDataNode && !((ProbeDataNode) node).isNodeAncestor(current)) {
+                TimeSeries data = ((ProbeDataNode) node).getUserObject();
+                if (data instanceof TimeSeriesSnapshot && !((TimeSeriesSnapshot) data).isSpilled()) {
+                    try {
+                        ((TimeSeriesSnapshot) data).spill();
+                        spilled++;
+                    } catch (IOException e) {
+                        Util.debugMsg("Could not move probe data to disk: " + e.getMessage());
+                        return;
+                    }
+                }
+            }
+        }
+        Util.debugMsg("Moved " + spilled + " earlier probe results to disk");
+    }
+
+    /*
+     * The heap in use at an arbitrary moment includes garbage that hasn't been collected yet, 
+     * so this reads the occupancy after the last collection of the pools that support usage 
+     * thresholds (ie the tenured generation, not eden or survivor spaces). 
+     */
+    private static boolean isMemoryShort() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported() 
+                    && pool.isCollectionUsageThresholdSupported()) {
+                MemoryUsage afterCollection = pool.getCollectionUsage();
+                long max = pool.getUsage().getMax();
+                if (afterCollection != null && max > 0 && afterCollection.getUsed() > SPILL_THRESHOLD * max) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     ArrayList<String> parseEnsembleName(String name)
     {
         ArrayList<String> result = new ArrayList<String>();
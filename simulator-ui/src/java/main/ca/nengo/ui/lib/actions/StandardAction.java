@@ -9,6 +9,7 @@ import javax.swing.SwingUtilities;
 
 import ca.nengo.ui.NengoGraphics;
 import ca.nengo.ui.lib.util.UserMessages;
+import ca.nengo.util.ConstructionCancelledException;
 
 /**
  * A standard non-reversable action
@@ -132,6 +133,9 @@ public abstract class StandardAction implements Serializable {
 			} catch (ThreadDeath e) {
 				NengoGraphics.getInstance().getProgressIndicator().stop();
 				UserMessages.showWarning("Interrupted action: Thread was forced to quit.");
+			} catch (ConstructionCancelledException e) {
+				NengoGraphics.getInstance().getProgressIndicator().stop();
+				UserMessages.showWarning("Interrupted action: " + e.getMessage());
 			}
 			postAction();
 		} catch (ActionException e) {
@@ -5,6 +5,8 @@ import javax.swing.SwingUtilities;
 import ca.nengo.ui.lib.actions.StandardAction;
 import ca.nengo.ui.lib.world.piccolo.WorldObjectImpl;
 import ca.nengo.ui.NengoGraphics;
+import ca.nengo.ui.util.ProgressIndicator;
+import ca.nengo.util.ConstructionProgress;
 
 /**
  * An action which is tracked by the UI. Since tracked actions are slow and have
@@ -48,9 +50,20 @@ public abstract class TrackedAction extends StandardAction {
 
 	}
 	
+	/**
+	 * Models built by the action report their progress to the progress
+	 * indicator, and are abandoned if it is stopped.
+	 */
 	protected void doActionInternal() {
-    	NengoGraphics.getInstance().getProgressIndicator().setThread();
-  		super.doActionInternal();
+		ProgressIndicator progressIndicator = NengoGraphics.getInstance().getProgressIndicator();
+		progressIndicator.setThread();
+
+		ConstructionProgress.Monitor previous = ConstructionProgress.setThreadMonitor(progressIndicator);
+		try {
+			super.doActionInternal();
+		} finally {
+			ConstructionProgress.setThreadMonitor(previous);
+		}
 	}
 
 	@Override
@@ -12,6 +12,7 @@ import ca.nengo.ui.lib.world.piccolo.primitives.Text;
  */
 public class TrackedStatusMsg {
 	private String taskName;
+	private String prefix = "";
 	Text taskText;
 
 	public TrackedStatusMsg(String taskName) {
@@ -27,7 +28,8 @@ public class TrackedStatusMsg {
 			taskText.setOffset(0, -taskText.getHeight());
 			wo.addChild(taskText);
 
-			setTaskName(wo.getName() + ": " + taskName);
+			prefix = wo.getName() + ": ";
+			setTaskName(prefix + taskName);
 		} else {
 			setTaskName(taskName);
 		}
@@ -47,6 +49,22 @@ public class TrackedStatusMsg {
 		this.taskName = taskName;
 	}
 
+	/**
+	 * Replaces the task message in the application status bar, eg to show how
+	 * much of the task is done.
+	 * 
+	 * @param taskName
+	 *            New message
+	 */
+	public void update(String taskName) {
+		UIEnvironment.getInstance().getUniverse().removeTaskStatusMsg(getTaskName());
+		setTaskName(prefix + taskName);
+		if (taskText != null) {
+			taskText.setText(taskName);
+		}
+		init();
+	}
+
 	/**
 	 * Removes the task message from the application status bar.
 	 */
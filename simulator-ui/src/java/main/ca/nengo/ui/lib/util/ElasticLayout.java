@@ -46,6 +46,10 @@ public class ElasticLayout extends AbstractLayout implements LayoutMutable {
 
 	Object key = null;
 
+	private final RepulsionTree repulsionTree = new RepulsionTree();
+	private RepulsionSnapshot frontSnapshot = new RepulsionSnapshot();
+	private RepulsionSnapshot backSnapshot = new RepulsionSnapshot();
+
 	/**
 	 * Constructor for a SpringLayout for a raw graph with associated
 	 * dimension--the input knows how big the graph is. Defaults to the unit
@@ -72,52 +76,35 @@ public class ElasticLayout extends AbstractLayout implements LayoutMutable {
 		sed.length = f.getLength(sed.e);
 	}
 
-	protected void calculateRepulsion() {
+	/**
+	 * Calculates the repulsion between vertices in the current snapshot (see
+	 * beginAdvance()), using a Barnes-Hut approximation. It works only on the
+	 * snapshot's arrays, so it may be called from any thread.
+	 */
+	public void calculateRepulsion() {
+		RepulsionSnapshot snapshot = frontSnapshot;
+		repulsionTree.calculate(snapshot.count, snapshot.x, snapshot.y, snapshot.mass, snapshot.skip,
+				snapshot.repulsionX, snapshot.repulsionY);
+		snapshot.calculated = true;
+	}
+
+	/**
+	 * Copies the positions and masses of vertices into primitive arrays, so that
+	 * repulsion can be calculated without touching the graph.
+	 */
+	protected void takeSnapshot(RepulsionSnapshot snapshot) {
 		try {
+			snapshot.clear(getGraph().numVertices());
 			for (Iterator<?> iter = getGraph().getVertices().iterator(); iter.hasNext();) {
 				Vertex v = (Vertex) iter.next();
-				if (isLocked(v))
+				Point2D p = getLocation(v);
+				if (p == null)
 					continue;
-
-				SpringVertexData svd = getSpringData(v);
-				if (svd == null)
-					continue;
-				double dx = 0, dy = 0;
-
-				for (Iterator<?> iter2 = getGraph().getVertices().iterator(); iter2.hasNext();) {
-					Vertex v2 = (Vertex) iter2.next();
-					if (v == v2)
-						continue;
-					Point2D p = getLocation(v);
-					Point2D p2 = getLocation(v2);
-					if (p == null || p2 == null)
-						continue;
-					double vx = p.getX() - p2.getX();
-					double vy = p.getY() - p2.getY();
-					double distance = vx * vx + vy * vy;
-					if (distance == 0) {
-						dx += Math.random();
-						dy += Math.random();
-					} else if (distance < lengthFunction.getMass(v2) * lengthFunction.getMass(v)) {
-						double forceFactor = lengthFunction.getMass(v2);
-						
-						//
-						// Normalize the force to a standard mass unit of 200
-						forceFactor /= 200;
-
-						dx += forceFactor * vx / Math.pow(distance, 2);
-						dy += forceFactor * vy / Math.pow(distance, 2);
-					}
-				}
-				double dlen = dx * dx + dy * dy;
-				if (dlen > 0) {
-					dlen = Math.sqrt(dlen) / 2;
-					svd.repulsiondx += dx / dlen;
-					svd.repulsiondy += dy / dlen;
-				}
+				snapshot.add(v, p.getX(), p.getY(), lengthFunction.getMass(v), isLocked(v)
+						|| getSpringData(v) == null);
 			}
 		} catch (ConcurrentModificationException cme) {
-			calculateRepulsion();
+			takeSnapshot(snapshot);
 		}
 	}
 
@@ -242,6 +229,18 @@ public class ElasticLayout extends AbstractLayout implements LayoutMutable {
 	 * Relaxation step. Moves all nodes a smidge.
 	 */
 	public void advancePositions() {
+		beginAdvance();
+		calculateRepulsion();
+		finishAdvance();
+	}
+
+	/**
+	 * First part of a relaxation step, which must run on the thread that owns
+	 * the graph. Calculates edge forces and takes a snapshot of vertex
+	 * positions. Snapshots are double-buffered, so a new one can be taken while
+	 * repulsion is still being calculated on the last one.
+	 */
+	public void beginAdvance() {
 		try {
 			for (Iterator<?> iter = getVisibleVertices().iterator(); iter.hasNext();) {
 				Vertex v = (Vertex) iter.next();
@@ -255,11 +254,38 @@ public class ElasticLayout extends AbstractLayout implements LayoutMutable {
 				svd.repulsiondx = svd.repulsiondy = 0;
 			}
 		} catch (ConcurrentModificationException cme) {
-			advancePositions();
+			beginAdvance();
+			return;
 		}
 
 		relaxEdges();
-		calculateRepulsion();
+
+		RepulsionSnapshot snapshot = backSnapshot;
+		takeSnapshot(snapshot);
+		backSnapshot = frontSnapshot;
+		frontSnapshot = snapshot;
+	}
+
+	/**
+	 * Last part of a relaxation step, which must run on the thread that owns
+	 * the graph. Applies the repulsion calculated on the current snapshot and
+	 * moves the nodes.
+	 */
+	public void finishAdvance() {
+		RepulsionSnapshot snapshot = frontSnapshot;
+		if (snapshot.calculated) {
+			for (int i = 0; i < snapshot.count; i++) {
+				Vertex v = snapshot.vertices[i];
+				if (snapshot.skip[i] || isLocked(v))
+					continue;
+				SpringVertexData svd = getSpringData(v);
+				if (svd == null)
+					continue;
+				svd.repulsiondx += snapshot.repulsionX[i];
+				svd.repulsiondy += snapshot.repulsionY[i];
+			}
+			snapshot.calculated = false;
+		}
 		moveNodes();
 	}
 
@@ -429,6 +455,75 @@ public class ElasticLayout extends AbstractLayout implements LayoutMutable {
 		}
 	}
 
+	/**
+	 * Positions and masses of vertices at the start of a relaxation step, and
+	 * the repulsion calculated from them. Arrays are reused between steps.
+	 */
+	protected static class RepulsionSnapshot {
+
+		public int count;
+
+		public Vertex[] vertices = new Vertex[0];
+
+		public double[] x = new double[0];
+
+		public double[] y = new double[0];
+
+		public double[] mass = new double[0];
+
+		/** vertices that aren't moved by repulsion */
+		public boolean[] skip = new boolean[0];
+
+		public double[] repulsionX = new double[0];
+
+		public double[] repulsionY = new double[0];
+
+		public boolean calculated;
+
+		public void clear(int capacity) {
+			for (int i = 0; i < count; i++) {
+				vertices[i] = null;
+			}
+			if (vertices.length < capacity) {
+				grow(capacity);
+			}
+			count = 0;
+			calculated = false;
+		}
+
+		public void add(Vertex v, double vx, double vy, double m, boolean s) {
+			if (count == vertices.length) {
+				grow(2 * count + 1);
+			}
+			vertices[count] = v;
+			x[count] = vx;
+			y[count] = vy;
+			mass[count] = m;
+			skip[count] = s;
+			count++;
+		}
+
+		private void grow(int capacity) {
+			Vertex[] newVertices = new Vertex[capacity];
+			System.arraycopy(vertices, 0, newVertices, 0, count);
+			vertices = newVertices;
+			double[] newX = new double[capacity];
+			System.arraycopy(x, 0, newX, 0, count);
+			x = newX;
+			double[] newY = new double[capacity];
+			System.arraycopy(y, 0, newY, 0, count);
+			y = newY;
+			double[] newMass = new double[capacity];
+			System.arraycopy(mass, 0, newMass, 0, count);
+			mass = newMass;
+			boolean[] newSkip = new boolean[capacity];
+			System.arraycopy(skip, 0, newSkip, 0, count);
+			skip = newSkip;
+			repulsionX = new double[capacity];
+			repulsionY = new double[capacity];
+		}
+	}
+
 	/**
 	 * If the edge is weighted, then override this method to show what the
 	 * visualized length is.
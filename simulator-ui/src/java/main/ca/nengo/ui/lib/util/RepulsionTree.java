@@ -0,0 +1,301 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "RepulsionTree.java". Description:
+"A quadtree (Barnes-Hut) approximation of the repulsion between the vertices of an elastic layout"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.ui.lib.util;
+
+/**
+ * <p>A quadtree (Barnes-Hut) approximation of the repulsion between the vertices of an elastic
+ * layout. Vertex v is pushed away from vertex v2 with a force proportional to
+ * mass(v2) / distance^3, but only while distance^2 < mass(v) * mass(v2), so most pairs of
+ * vertices don't interact at all.</p>
+ *
+ * <p>The tree keeps, for each cell, the bounding box of its vertices, their total mass, centre
+ * of mass, and smallest and largest mass. A cell that is out of range of a vertex (given the
+ * largest mass in it) is skipped. A cell that is small relative to its distance from a vertex,
+ * and entirely in range of it, is treated as a single vertex at its centre of mass. Other cells
+ * are opened, down to leaves of a few vertices, which are summed exactly. A step then costs
+ * about O(V log V) rather than O(V^2).</p>
+ *
+ * <p>Positions and masses are given as primitive arrays and the tree's storage is reused from
+ * one step to the next, so it can run on any thread without touching the graph.</p>
+ *
+ * @author agent
+ */
+public class RepulsionTree {
+
+	private static final int LEAF_SIZE = 8;
+
+	/**
+	 * Opening criterion: cells narrower than THETA times their distance from a vertex are
+	 * approximated by their centre of mass
+	 */
+	public static final double THETA = 0.6;
+
+	//forces are normalized to a standard mass unit of 200
+	private static final double MASS_UNIT = 200;
+
+	private double[] myX;
+	private double[] myY;
+	private double[] myMass;
+	private int[] myOrder = new int[0];
+
+	private int myNodeCount;
+	private double[] myMinX = new double[0];
+	private double[] myMinY = new double[0];
+	private double[] myMaxX = new double[0];
+	private double[] myMaxY = new double[0];
+	private double[] myTotalMass = new double[0];
+	private double[] myComX = new double[0];
+	private double[] myComY = new double[0];
+	private double[] myLeastMass = new double[0];
+	private double[] myGreatestMass = new double[0];
+	private int[] myFirst = new int[0];
+	private int[] myEnd = new int[0];
+	private int[] myChildren = new int[0]; //4 per node, -1 where empty; all -1 at leaves
+	private int[] myStack = new int[0];
+
+	/**
+	 * Computes the direction of the repulsion on each vertex. As in the exact all-pairs
+	 * calculation, the summed force on each vertex is scaled to a length of 2.
+	 *
+	 * @param n Number of vertices
+	 * @param x X coordinates of vertices
+	 * @param y Y coordinates of vertices
+	 * @param mass Masses (repulsion ranges) of vertices
+	 * @param skip Vertices for which no force is needed (eg locked ones); may be null
+	 * @param fx Array into which to write the x component of the force on each vertex
+	 * @param fy Array into which to write the y component of the force on each vertex
+	 */
+	public void calculate(int n, double[] x, double[] y, double[] mass, boolean[] skip, double[] fx, double[] fy) {
+		myX = x;
+		myY = y;
+		myMass = mass;
+		build(n);
+
+		for (int i = 0; i < n; i++) {
+			fx[i] = 0;
+			fy[i] = 0;
+			if (skip != null && skip[i]) {
+				continue;
+			}
+			double dx = 0, dy = 0;
+
+			int top = 0;
+			myStack[top++] = 0;
+			while (top > 0) {
+				int node = myStack[--top];
+				double range = mass[i] * myGreatestMass[node];
+				if (distanceSquaredToBox(node, x[i], y[i]) >= range) {
+					continue; //out of range of everything in the cell
+				}
+
+				if (myChildren[4 * node] < 0 && myChildren[4 * node + 1] < 0
+						&& myChildren[4 * node + 2] < 0 && myChildren[4 * node + 3] < 0) {
+					for (int k = myFirst[node]; k < myEnd[node]; k++) {
+						int j = myOrder[k];
+						if (j == i) {
+							continue;
+						}
+						double vx = x[i] - x[j];
+						double vy = y[i] - y[j];
+						double distance = vx * vx + vy * vy;
+						if (distance == 0) {
+							dx += Math.random();
+							dy += Math.random();
+						} else if (distance < mass[i] * mass[j]) {
+							double forceFactor = mass[j] / MASS_UNIT;
+							dx += forceFactor * vx / (distance * distance);
+							dy += forceFactor * vy / (distance * distance);
+						}
+					}
+					continue;
+				}
+
+				double size = Math.max(myMaxX[node] - myMinX[node], myMaxY[node] - myMinY[node]);
+				double vx = x[i] - myComX[node];
+				double vy = y[i] - myComY[node];
+				double distance = vx * vx + vy * vy;
+				if (distance > 0 && size * size < THETA * THETA * distance
+						&& farDistanceSquaredToBox(node, x[i], y[i]) < mass[i] * myLeastMass[node]) {
+					double forceFactor = myTotalMass[node] / MASS_UNIT;
+					dx += forceFactor * vx / (distance * distance);
+					dy += forceFactor * vy / (distance * distance);
+				} else {
+					for (int c = 0; c < 4; c++) {
+						int child = myChildren[4 * node + c];
+						if (child >= 0) {
+							myStack[top++] = child;
+						}
+					}
+				}
+			}
+
+			double dlen = dx * dx + dy * dy;
+			if (dlen > 0) {
+				dlen = Math.sqrt(dlen) / 2;
+				fx[i] = dx / dlen;
+				fy[i] = dy / dlen;
+			}
+		}
+	}
+
+	private double distanceSquaredToBox(int node, double px, double py) {
+		double dx = Math.max(0, Math.max(myMinX[node] - px, px - myMaxX[node]));
+		double dy = Math.max(0, Math.max(myMinY[node] - py, py - myMaxY[node]));
+		return dx * dx + dy * dy;
+	}
+
+	private double farDistanceSquaredToBox(int node, double px, double py) {
+		double dx = Math.max(Math.abs(px - myMinX[node]), Math.abs(px - myMaxX[node]));
+		double dy = Math.max(Math.abs(py - myMinY[node]), Math.abs(py - myMaxY[node]));
+		return dx * dx + dy * dy;
+	}
+
+	private void build(int n) {
+		if (myOrder.length < n) {
+			myOrder = new int[n];
+		}
+		for (int i = 0; i < n; i++) {
+			myOrder[i] = i;
+		}
+		myNodeCount = 0;
+		ensureNodes(1);
+		newNode(0, n);
+
+		//nodes are split in the order they are created, so this visits every node
+		for (int node = 0; node < myNodeCount; node++) {
+			int first = myFirst[node];
+			int end = myEnd[node];
+			double width = myMaxX[node] - myMinX[node];
+			double height = myMaxY[node] - myMinY[node];
+			if (end - first <= LEAF_SIZE || (width == 0 && height == 0)) {
+				continue;
+			}
+
+			double midX = myMinX[node] + width / 2;
+			double midY = myMinY[node] + height / 2;
+			int splitY = partition(first, end, midY, false);
+			int splitXLow = partition(first, splitY, midX, true);
+			int splitXHigh = partition(splitY, end, midX, true);
+			int[] bounds = new int[] {first, splitXLow, splitY, splitXHigh, end};
+
+			ensureNodes(myNodeCount + 4);
+			for (int c = 0; c < 4; c++) {
+				if (bounds[c+1] > bounds[c]) {
+					myChildren[4 * node + c] = myNodeCount;
+					newNode(bounds[c], bounds[c+1]);
+				}
+			}
+		}
+
+		if (myStack.length < 3 * myNodeCount + 1) {
+			myStack = new int[3 * myNodeCount + 1];
+		}
+	}
+
+	//moves vertices in [first, end) that are below the split value ahead of the others
+	private int partition(int first, int end, double split, boolean onX) {
+		double[] coords = onX ? myX : myY;
+		int i = first;
+		int j = end - 1;
+		while (i <= j) {
+			if (coords[myOrder[i]] < split) {
+				i++;
+			} else {
+				int temp = myOrder[i];
+				myOrder[i] = myOrder[j];
+				myOrder[j] = temp;
+				j--;
+			}
+		}
+		return i;
+	}
+
+	private void newNode(int first, int end) {
+		int node = myNodeCount++;
+		myFirst[node] = first;
+		myEnd[node] = end;
+		for (int c = 0; c < 4; c++) {
+			myChildren[4 * node + c] = -1;
+		}
+
+		double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		double total = 0, comX = 0, comY = 0;
+		double least = Double.POSITIVE_INFINITY, greatest = 0;
+		for (int k = first; k < end; k++) {
+			int j = myOrder[k];
+			minX = Math.min(minX, myX[j]);
+			minY = Math.min(minY, myY[j]);
+			maxX = Math.max(maxX, myX[j]);
+			maxY = Math.max(maxY, myY[j]);
+			total += myMass[j];
+			comX += myMass[j] * myX[j];
+			comY += myMass[j] * myY[j];
+			least = Math.min(least, myMass[j]);
+			greatest = Math.max(greatest, myMass[j]);
+		}
+		myMinX[node] = minX;
+		myMinY[node] = minY;
+		myMaxX[node] = maxX;
+		myMaxY[node] = maxY;
+		myTotalMass[node] = total;
+		myComX[node] = total > 0 ? comX / total : (minX + maxX) / 2;
+		myComY[node] = total > 0 ? comY / total : (minY + maxY) / 2;
+		myLeastMass[node] = least;
+		myGreatestMass[node] = greatest;
+	}
+
+	private void ensureNodes(int count) {
+		if (myFirst.length >= count) {
+			return;
+		}
+		int capacity = Math.max(count, 2 * myFirst.length + 16);
+		myMinX = grow(myMinX, capacity);
+		myMinY = grow(myMinY, capacity);
+		myMaxX = grow(myMaxX, capacity);
+		myMaxY = grow(myMaxY, capacity);
+		myTotalMass = grow(myTotalMass, capacity);
+		myComX = grow(myComX, capacity);
+		myComY = grow(myComY, capacity);
+		myLeastMass = grow(myLeastMass, capacity);
+		myGreatestMass = grow(myGreatestMass, capacity);
+
+		int[] first = new int[capacity];
+		System.arraycopy(myFirst, 0, first, 0, myFirst.length);
+		myFirst = first;
+		int[] end = new int[capacity];
+		System.arraycopy(myEnd, 0, end, 0, myEnd.length);
+		myEnd = end;
+		int[] children = new int[4 * capacity];
+		System.arraycopy(myChildren, 0, children, 0, myChildren.length);
+		myChildren = children;
+	}
+
+	private static double[] grow(double[] array, int capacity) {
+		double[] result = new double[capacity];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+}
@@ -23,6 +23,7 @@ public class ElasticLayoutRunner {
 	public static final int SPRING_LAYOUT_DEFAULT_REPULSION_DISTANCE = 200;
 	private int relaxCount;
 	private boolean continueLayout = true;
+	private volatile boolean stepPending = false;
 
 	private ElasticLayout layout;
 
@@ -77,12 +78,14 @@ public class ElasticLayoutRunner {
 		while (!layout.incrementsAreDone() && !myParent.isDestroyed() && continueLayout) {
 
 			/**
-			 * Layout nodes needs to be done in the Swing dispatcher thread
+			 * Graph updates, edge forces and moving nodes need to be done in the
+			 * Swing dispatcher thread. Repulsion, the expensive part, is
+			 * calculated here on a snapshot of vertex positions.
 			 */
 			try {
 				SwingUtilities.invokeAndWait(new Runnable() {
 					public void run() {
-						updateLayout();
+						stepLayout();
 					}
 				});
 			} catch (InvocationTargetException e) {
@@ -91,6 +94,10 @@ public class ElasticLayoutRunner {
 				e.printStackTrace();
 			}
 
+			if (stepPending) {
+				layout.calculateRepulsion();
+			}
+
 			try {
 				Thread.sleep(1000 / 25);
 			} catch (InterruptedException e) {
@@ -103,14 +110,31 @@ public class ElasticLayoutRunner {
 		}
 	}
 
-	public void updateLayout() {
-		if (checkLayout()) {
+	/**
+	 * Finishes the previous relaxation step (if any) and begins the next one.
+	 */
+	private void stepLayout() {
+		if (stepPending) {
+			stepPending = false;
+			layout.finishAdvance();
+			checkRelaxed();
 			myParent.updateChildrenFromLayout(layout, false, false);
 		}
-	}
 
-	private boolean checkLayout() {
+		updateLayout();
+		if (relaxCount < 50) {
+			layout.beginAdvance();
+			stepPending = true;
+		} else {
+			relaxCount = 50;
+		}
+	}
 
+	/**
+	 * Brings the layout up to date with the graph. Must be called from the
+	 * Swing dispatcher thread.
+	 */
+	public void updateLayout() {
 		ElasticGround.UpdateGraphResult result = myParent.updateGraph();
 
 		if (result.isGraphUpdated()) {
@@ -123,36 +147,27 @@ public class ElasticLayoutRunner {
 
 			relaxCount = 0;
 		}
+	}
+
+	private void checkRelaxed() {
+		// Check to see if the elastic graph has settled in a certain
+		// position
+		double maxDelta = 0;
+		for (Object obj : myGraph.getVertices()) {
+			ElasticVertex vertex = (ElasticVertex) obj;
+			Point2D vertexLocation = vertex.getLocation();
+			Point2D layoutLocation = layout.getLocation(vertex);
 
-		boolean isResting = false;
+			double delta = Math.abs(vertexLocation.distance(layoutLocation));
 
-		if (relaxCount >= 50) {
-			relaxCount = 50;
-			isResting = true;
-		}
-		if (!isResting) {
-			layout.advancePositions();
-
-			// Check to see if the elastic graph has settled in a certain
-			// position
-			double maxDelta = 0;
-			for (Object obj : myGraph.getVertices()) {
-				ElasticVertex vertex = (ElasticVertex) obj;
-				Point2D vertexLocation = vertex.getLocation();
-				Point2D layoutLocation = layout.getLocation(vertex);
-
-				double delta = Math.abs(vertexLocation.distance(layoutLocation));
-
-				if (delta > maxDelta) {
-					maxDelta = delta;
-				}
+			if (delta > maxDelta) {
+				maxDelta = delta;
 			}
+		}
 
-			if (maxDelta < RELAX_DELTA) {
-				relaxCount++;
-			}
+		if (maxDelta < RELAX_DELTA) {
+			relaxCount++;
 		}
-		return !isResting;
 	}
 
 	public void start() {
@@ -0,0 +1,187 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "EdgeBatch.java". Description:
+"Lightweight edges between children of a ground, drawn together as a single path when the ground is painted"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.ui.lib.world.piccolo;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Stroke;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Rectangle2D;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+import ca.nengo.ui.lib.Style.NengoStyle;
+import ca.nengo.ui.lib.world.PaintContext;
+import ca.nengo.ui.lib.world.WorldObject;
+import ca.nengo.ui.lib.world.WorldObject.Listener;
+import ca.nengo.ui.lib.world.WorldObject.Property;
+
+/**
+ * Lightweight edges between children of a ground, drawn together as a single
+ * path when the ground is painted. Unlike a PXEdge, an edge here isn't a
+ * Piccolo node and doesn't rebuild its shape whenever one of its ends moves;
+ * the ends are only looked up when the edges are drawn. This suits large
+ * numbers of edges that don't need to be picked or highlighted, such as
+ * placeholders for projections whose widgets haven't been built yet.
+ *
+ * @author agent
+ */
+public class EdgeBatch {
+
+	private final WorldGroundImpl ground;
+
+	/**
+	 * Ends of each edge, by key
+	 */
+	private final LinkedHashMap<Object, WorldObject[]> edges = new LinkedHashMap<Object, WorldObject[]>();
+
+	/**
+	 * Number of edges attached to each end
+	 */
+	private final HashMap<WorldObject, Integer> endCounts = new HashMap<WorldObject, Integer>();
+
+	private final Listener endMovedListener;
+
+	private Color color = NengoStyle.COLOR_LINE;
+
+	EdgeBatch(WorldGroundImpl ground) {
+		this.ground = ground;
+
+		endMovedListener = new Listener() {
+			public void propertyChanged(Property event) {
+				EdgeBatch.this.ground.repaint();
+			}
+		};
+	}
+
+	private void attachEnd(WorldObject end) {
+		Integer count = endCounts.get(end);
+		if (count == null) {
+			end.addPropertyChangeListener(Property.GLOBAL_BOUNDS, endMovedListener);
+			endCounts.put(end, 1);
+		} else {
+			endCounts.put(end, count + 1);
+		}
+	}
+
+	private void detachEnd(WorldObject end) {
+		Integer count = endCounts.get(end);
+		if (count != null) {
+			if (count == 1) {
+				end.removePropertyChangeListener(Property.GLOBAL_BOUNDS, endMovedListener);
+				endCounts.remove(end);
+			} else {
+				endCounts.put(end, count - 1);
+			}
+		}
+	}
+
+	/**
+	 * @param key
+	 *            Object which identifies the edge (eg the model it represents)
+	 * @param start
+	 *            Child of the ground at which the edge starts
+	 * @param end
+	 *            Child of the ground at which the edge ends
+	 */
+	public void addEdge(Object key, WorldObject start, WorldObject end) {
+		removeEdge(key);
+		edges.put(key, new WorldObject[] { start, end });
+		attachEnd(start);
+		attachEnd(end);
+		ground.repaint();
+	}
+
+	public void clear() {
+		for (Object key : edges.keySet().toArray()) {
+			removeEdge(key);
+		}
+	}
+
+	public boolean containsEdge(Object key) {
+		return edges.containsKey(key);
+	}
+
+	public Color getColor() {
+		return color;
+	}
+
+	public int getEdgeCount() {
+		return edges.size();
+	}
+
+	/**
+	 * Draws all the edges whose ends are both visible on the ground. Called
+	 * with the ground's coordinates.
+	 */
+	void paint(PaintContext paintContext) {
+		if (edges.isEmpty()) {
+			return;
+		}
+
+		GeneralPath path = new GeneralPath();
+		for (WorldObject[] ends : edges.values()) {
+			WorldObject start = ends[0];
+			WorldObject end = ends[1];
+			if (start.isDestroyed() || end.isDestroyed() || start.getParent() != ground
+					|| end.getParent() != ground || !start.getVisible() || !end.getVisible()) {
+				continue;
+			}
+			Rectangle2D startBounds = start.localToParent(start.getBounds());
+			Rectangle2D endBounds = end.localToParent(end.getBounds());
+
+			path.moveTo((float) startBounds.getCenterX(), (float) startBounds.getCenterY());
+			path.lineTo((float) endBounds.getCenterX(), (float) endBounds.getCenterY());
+		}
+
+		Graphics2D g2 = paintContext.getGraphics();
+		Stroke oldStroke = g2.getStroke();
+
+		// keep lines at least a pixel wide however far the view is zoomed out
+		g2.setStroke(new BasicStroke((float) Math.max(1, 1 / paintContext.getScale())));
+		g2.setColor(color);
+		g2.draw(path);
+		g2.setStroke(oldStroke);
+	}
+
+	/**
+	 * @param key
+	 *            Object which identifies the edge
+	 */
+	public void removeEdge(Object key) {
+		WorldObject[] ends = edges.remove(key);
+		if (ends != null) {
+			detachEnd(ends[0]);
+			detachEnd(ends[1]);
+			ground.repaint();
+		}
+	}
+
+	public void setColor(Color color) {
+		this.color = color;
+		ground.repaint();
+	}
+}
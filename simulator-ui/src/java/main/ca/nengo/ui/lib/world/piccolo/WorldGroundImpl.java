@@ -12,6 +12,7 @@ import javax.swing.SwingUtilities;
 
 import ca.nengo.ui.lib.util.Util;
 import ca.nengo.ui.lib.world.ObjectSet;
+import ca.nengo.ui.lib.world.PaintContext;
 import ca.nengo.ui.lib.world.World;
 import ca.nengo.ui.lib.world.WorldLayer;
 import ca.nengo.ui.lib.world.WorldObject;
@@ -74,6 +75,8 @@ public class WorldGroundImpl extends WorldLayerImpl implements WorldLayer {
 
 	private GroundNode myLayerNode;
 
+	private EdgeBatch myEdgeBatch;
+
 	public WorldGroundImpl() {
 		super("Ground", new GroundNode());
 		myLayerNode = (GroundNode) getPiccolo();
@@ -82,6 +85,9 @@ public class WorldGroundImpl extends WorldLayerImpl implements WorldLayer {
 
 	@Override
 	protected void prepareForDestroy() {
+		if (myEdgeBatch != null) {
+			myEdgeBatch.clear();
+		}
 		myLayerNode.removeFromParent();
 		super.prepareForDestroy();
 	}
@@ -141,6 +147,17 @@ public class WorldGroundImpl extends WorldLayerImpl implements WorldLayer {
 	/**
 	 * @return The scale of the ground in relation to the sky
 	 */
+	/**
+	 * @return Lightweight edges between children of this ground, which are
+	 *         drawn as a batch when the ground is painted
+	 */
+	public EdgeBatch getEdgeBatch() {
+		if (myEdgeBatch == null) {
+			myEdgeBatch = new EdgeBatch(this);
+		}
+		return myEdgeBatch;
+	}
+
 	public double getGroundScale() {
 		return world.getSky().getViewScale();
 	}
@@ -149,6 +166,14 @@ public class WorldGroundImpl extends WorldLayerImpl implements WorldLayer {
 		public boolean acceptChild(WorldObject obj);
 	}
 
+	@Override
+	public void paint(PaintContext paintContext) {
+		super.paint(paintContext);
+		if (myEdgeBatch != null) {
+			myEdgeBatch.paint(paintContext);
+		}
+	}
+
 	@Override
 	public Dimension2D localToParent(Dimension2D localRectangle) {
 		return getPiccolo().localToParent(localRectangle);
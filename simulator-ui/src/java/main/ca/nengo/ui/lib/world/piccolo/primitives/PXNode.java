@@ -30,6 +30,11 @@ public class PXNode extends PNode implements PiccoloNodeInWorld {
 
 	private long busyAnimatingUntilTime = 0;
 
+	/**
+	 * Scale below which this node and its children aren't painted
+	 */
+	private double minimumPaintScale = 0;
+
 	private WorldObject worldObjectParent;
 	public PXNode() {
 		super();
@@ -47,6 +52,18 @@ public class PXNode extends PNode implements PiccoloNodeInWorld {
 		}
 	}
 
+	/**
+	 * Skips painting this node and its children when they are drawn too small
+	 * to see.
+	 */
+	@Override
+	public void fullPaint(PPaintContext paintContext) {
+		if (paintContext.getScale() < minimumPaintScale) {
+			return;
+		}
+		super.fullPaint(paintContext);
+	}
+
 	@Override
 	protected void paint(PPaintContext paintContext) {
 		super.paint(paintContext);
@@ -123,6 +140,10 @@ public class PXNode extends PNode implements PiccoloNodeInWorld {
 		}
 	}
 
+	public double getMinimumPaintScale() {
+		return minimumPaintScale;
+	}
+
 	public WorldObject getWorldObject() {
 		return worldObjectParent;
 	}
@@ -173,6 +194,15 @@ public class PXNode extends PNode implements PiccoloNodeInWorld {
 		signalGlobalBoundsChanged();
 	}
 
+	/**
+	 * @param minimumPaintScale
+	 *            Scale (of the parent's coordinates on the screen) below which
+	 *            this node and its children aren't painted
+	 */
+	public void setMinimumPaintScale(double minimumPaintScale) {
+		this.minimumPaintScale = minimumPaintScale;
+	}
+
 	public void setWorldObject(WorldObject worldObjectParent) {
 		this.worldObjectParent = worldObjectParent;
 
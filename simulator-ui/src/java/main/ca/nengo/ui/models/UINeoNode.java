@@ -34,6 +34,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.Map.Entry;
 import java.util.Properties;
@@ -75,6 +76,7 @@ import ca.nengo.ui.lib.util.Util;
 import ca.nengo.ui.lib.util.menus.AbstractMenuBuilder;
 import ca.nengo.ui.lib.util.menus.PopupMenuBuilder;
 import ca.nengo.ui.lib.world.DroppableX;
+import ca.nengo.ui.lib.world.PaintContext;
 import ca.nengo.ui.lib.world.WorldObject;
 import ca.nengo.ui.lib.world.piccolo.WorldImpl;
 import ca.nengo.ui.models.NodeContainer.ContainerException;
@@ -130,6 +132,13 @@ public abstract class UINeoNode extends UINeoModel implements DroppableX {
 		return nodeUI;
 	}
 
+	/**
+	 * Scale at which the origins and terminations of a node become legible.
+	 * Their widgets are built the first time the node is drawn at least this
+	 * large, and aren't drawn while it is smaller.
+	 */
+	public static final double WIDGET_DETAIL_SCALE = 0.3;
+
 	private ModelUpdateListener myUpdateListener;
 
 	/**
@@ -137,6 +146,21 @@ public abstract class UINeoNode extends UINeoModel implements DroppableX {
 	 */
 	private Vector<UIProbe> probes;
 
+	/**
+	 * Names of origins and terminations to show whose widgets haven't been
+	 * built yet
+	 */
+	private LinkedHashSet<String> pendingOrigins;
+	private LinkedHashSet<String> pendingTerminations;
+
+	/**
+	 * Whether widgets will be visible when they are built
+	 */
+	private boolean pendingWidgetsVisible;
+
+	private boolean widgetsMaterialized;
+	private boolean materializeScheduled;
+
 	public UINeoNode(Node model) {
 		super(model);
 	}
@@ -327,6 +351,9 @@ public abstract class UINeoNode extends UINeoModel implements DroppableX {
 		super.initialize();
 		probes = new Vector<UIProbe>();
 		myUpdateListener = new ModelUpdateListener();
+		pendingOrigins = new LinkedHashSet<String>();
+		pendingTerminations = new LinkedHashSet<String>();
+		pendingWidgetsVisible = true;
 	}
 
 	@Override
@@ -335,17 +362,25 @@ public abstract class UINeoNode extends UINeoModel implements DroppableX {
 
 		Origin[] modelOrigins = getModel().getOrigins();
 		HashSet<Origin> modelOriginSet = new HashSet<Origin>(modelOrigins.length);
+		HashSet<String> modelOriginNames = new HashSet<String>(modelOrigins.length);
 		for (Origin origin : modelOrigins) {
 			modelOriginSet.add(origin);
+			modelOriginNames.add(origin.getName());
 		}
 
 		Termination[] modelTerminations = getModel().getTerminations();
 		HashSet<Termination> modelTerminationSet = new HashSet<Termination>(
 				modelTerminations.length);
+		HashSet<String> modelTerminationNames = new HashSet<String>(modelTerminations.length);
 		for (Termination term : modelTerminations) {
 			modelTerminationSet.add(term);
+			modelTerminationNames.add(term.getName());
 		}
 
+		// Forget widgets that were waiting to be built for removed models
+		pendingOrigins.retainAll(modelOriginNames);
+		pendingTerminations.retainAll(modelTerminationNames);
+
 		for (WorldObject wo : getChildren()) {
 			if (wo instanceof ModelObject) {
 				Object model = ((ModelObject) wo).getModel();
@@ -370,9 +405,10 @@ public abstract class UINeoNode extends UINeoModel implements DroppableX {
 
 		}
 		
-		// Ensure that any new origins and terminations are shown
+		// Ensure that any new origins and terminations are shown (once the
+		// node is seen up close)
 		for (Termination term:modelTerminationSet) {
-			this.showTermination(term.getName());
+			showTerminationLazily(term.getName());
 		}
 		for (Origin origin:modelOriginSet) {
 			String name=origin.getName();
@@ -383,7 +419,84 @@ public abstract class UINeoNode extends UINeoModel implements DroppableX {
 					continue;				
 				}
 			}
-			this.showOrigin(origin.getName());
+			showOriginLazily(origin.getName());
+		}
+	}
+
+	private void showOriginLazily(String originName) {
+		if (widgetsMaterialized) {
+			showOrigin(originName);
+		} else {
+			pendingOrigins.add(originName);
+		}
+	}
+
+	private void showTerminationLazily(String terminationName) {
+		if (widgetsMaterialized) {
+			showTermination(terminationName);
+		} else {
+			pendingTerminations.add(terminationName);
+		}
+	}
+
+	/**
+	 * Builds the widgets of origins and terminations that were put off until
+	 * the node was seen up close. Until then, a node has only the widgets that
+	 * have been asked for explicitly (eg by showOrigin()).
+	 */
+	public void materializeWidgets() {
+		if (widgetsMaterialized || isDestroyed() || getModel() == null) {
+			return;
+		}
+		widgetsMaterialized = true;
+
+		for (String name : pendingTerminations.toArray(new String[] {})) {
+			UITermination termUI = showTermination(name);
+			if (termUI != null && !pendingWidgetsVisible) {
+				termUI.setWidgetVisible(false);
+			}
+		}
+		for (String name : pendingOrigins.toArray(new String[] {})) {
+			UIOrigin originUI = showOrigin(name);
+			if (originUI != null && !pendingWidgetsVisible) {
+				originUI.setWidgetVisible(false);
+			}
+		}
+		pendingTerminations.clear();
+		pendingOrigins.clear();
+		layoutChildren();
+
+		NodeViewer viewer = getParentViewer();
+		if (viewer != null) {
+			viewer.nodeWidgetsMaterialized(this);
+		}
+	}
+
+	/**
+	 * @return Whether widgets have been built for all the origins and
+	 *         terminations that are shown
+	 */
+	public boolean isWidgetsMaterialized() {
+		return widgetsMaterialized;
+	}
+
+	@Override
+	public void paint(PaintContext paintContext) {
+		super.paint(paintContext);
+
+		/*
+		 * The node is on screen. If it's large enough, build its widgets (later,
+		 * since the scene graph can't change while it's being painted).
+		 */
+		if (!widgetsMaterialized && !materializeScheduled
+				&& paintContext.getScale() >= WIDGET_DETAIL_SCALE) {
+			materializeScheduled = true;
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					materializeScheduled = false;
+					materializeWidgets();
+				}
+			});
 		}
 	}
 
@@ -611,6 +724,7 @@ public abstract class UINeoNode extends UINeoModel implements DroppableX {
 	 * Hides all origins and terminations
 	 */
 	public void hideAllOandT() {
+		pendingWidgetsVisible = false;
 		for (WorldObject wo : getChildren()) {
 			if (wo instanceof Widget && (wo instanceof UITermination || wo instanceof UIOrigin)) {
 				((Widget) wo).setWidgetVisible(false);
@@ -740,6 +854,7 @@ public abstract class UINeoNode extends UINeoModel implements DroppableX {
 	 * Sets the visibility of widgets
 	 */
 	public void setWidgetsVisible(boolean visible) {
+		pendingWidgetsVisible = visible;
 		for (WorldObject wo : getChildren()) {
 			if (wo instanceof Widget) {
 				((Widget) wo).setWidgetVisible(visible);
@@ -801,6 +916,7 @@ public abstract class UINeoNode extends UINeoModel implements DroppableX {
 	public UIOrigin showOrigin(String originName) {
 
 		UIOrigin originUI;
+		pendingOrigins.remove(originName);
 
 		// Try to find if the origin has already been created
 		originUI = (UIOrigin) getChild(originName, UIOrigin.class);
@@ -835,6 +951,7 @@ public abstract class UINeoNode extends UINeoModel implements DroppableX {
 	public UIOrigin hideOrigin(String originName) {
 
 		UIOrigin originUI;
+		pendingOrigins.remove(originName);
 
 		originUI = (UIOrigin) getChild(originName, UIOrigin.class);
 
@@ -875,6 +992,7 @@ public abstract class UINeoNode extends UINeoModel implements DroppableX {
 	 */
 	public UITermination showTermination(String terminationName) {
 		UITermination termUI;
+		pendingTerminations.remove(terminationName);
 
 		// Try to find if the origin has already been created
 		termUI = (UITermination) getChild(terminationName, UITermination.class);
@@ -42,7 +42,7 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
 import ca.nengo.math.ApproximatorFactory;
-import ca.nengo.math.impl.GradientDescentApproximator;
+import ca.nengo.math.impl.SignConstrainedApproximator;
 import ca.nengo.math.impl.WeightedCostApproximator;
 import ca.nengo.model.Node;
 import ca.nengo.model.StructuralException;
@@ -246,8 +246,7 @@ class PApproximator extends Property {
                     if (sign == Sign.Negative) {
                         positive = false;
                     }
-                    approximator = new GradientDescentApproximator.Factory(
-                            new GradientDescentApproximator.CoefficientsSameSign(positive), false);
+                    approximator = new SignConstrainedApproximator.Factory(positive, noiseLevel);
 
                 } else if (sign == Sign.Unconstrained) {
                     setButton.setEnabled(true);
@@ -29,7 +29,6 @@ package ca.nengo.ui.models.nodes;
 //import java.util.List;
 
 import ca.nengo.model.Origin;
-import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
 import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.nef.impl.DecodedOrigin;
@@ -60,17 +59,7 @@ public class UINEFEnsemble extends UIEnsemble {
 
 	public UINEFEnsemble(NEFEnsemble model) {
 		super(model);
-		init();
-	}
-
-	private void init() {
-		try {
-			if (getModel().getOrigin(NEFEnsemble.X) != null) {
-				showOrigin(NEFEnsemble.X);
-			}
-		} catch (StructuralException e) {
-			e.printStackTrace();
-		}
+		// the X origin is shown along with the others once the ensemble is seen up close
 	}
 
 	@Override
@@ -42,6 +42,7 @@ import ca.nengo.ui.lib.util.UIEnvironment;
 import ca.nengo.ui.lib.util.UserMessages;
 import ca.nengo.ui.lib.util.menus.AbstractMenuBuilder;
 import ca.nengo.ui.lib.util.menus.PopupMenuBuilder;
+import ca.nengo.ui.lib.world.piccolo.primitives.PXNode;
 import ca.nengo.ui.models.UINeoModel;
 import ca.nengo.ui.models.UINeoNode;
 import ca.nengo.ui.models.nodes.UINetwork;
@@ -70,6 +71,11 @@ public abstract class Widget extends UINeoModel {
 	private void init(final UINeoNode nodeParent) {
 		setSelectable(false);
 
+		// Widgets are too small to make out when their node is zoomed out
+		if (getPiccolo() instanceof PXNode) {
+			((PXNode) getPiccolo()).setMinimumPaintScale(UINeoNode.WIDGET_DETAIL_SCALE);
+		}
+
 		// Invoke later so that the node parent is set
 		SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
@@ -38,6 +38,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
@@ -49,6 +50,7 @@ import ca.nengo.model.Termination;
 import ca.nengo.model.impl.NetworkImpl;
 import ca.nengo.ui.lib.actions.ActionException;
 import ca.nengo.ui.lib.actions.StandardAction;
+import ca.nengo.ui.lib.objects.activities.TrackedStatusMsg;
 import ca.nengo.ui.lib.util.UIEnvironment;
 import ca.nengo.ui.lib.util.UserMessages;
 import ca.nengo.ui.lib.util.Util;
@@ -72,6 +74,16 @@ import edu.umd.cs.piccolo.util.PBounds;
  */
 public class NetworkViewer extends NodeViewer implements NodeContainer {
     private static final boolean ELASTIC_LAYOUT_ENABLED_DEFAULT = false;
+
+    /**
+     * Number of nodes built per turn of the event dispatch thread when a large
+     * network is opened. The rest of the nodes, and the projections between
+     * them, are streamed in over the following turns. This is the UI side only:
+     * the model itself has been built or loaded by then (its construction
+     * reports progress through ConstructionProgress instead).
+     */
+    public static final int NODE_BATCH_SIZE = 100;
+
     private File layoutFile;
     private File backupLayoutFile;
 
@@ -94,10 +106,29 @@ public class NetworkViewer extends NodeViewer implements NodeContainer {
     private HashSet<Origin> exposedOrigins;
     private HashSet<Termination> exposedTerminations;
 
+    /**
+     * Projections between nodes that haven't been seen up close yet. Their
+     * widgets aren't built until one of the nodes is, and in the meantime they
+     * are drawn as lightweight edges.
+     */
+    private HashMap<Termination, Projection> pendingProjections;
+
+    /**
+     * Nodes of the model that are still to be built while nodes are being
+     * streamed in
+     */
+    private HashSet<Node> nodesToBuild;
+    private boolean buildScheduled;
+    private TrackedStatusMsg buildMsg;
+
     @Override
     protected void initialize() {
         exposedOrigins = new HashSet<Origin>(getModel().getOrigins().length);
         exposedTerminations = new HashSet<Termination>(getModel().getTerminations().length);
+        pendingProjections = new HashMap<Termination, Projection>();
+        nodesToBuild = new HashSet<Node>();
+        buildScheduled = false;
+        buildMsg = null;
 
         super.initialize();
         updateSimulatorProbes();
@@ -121,9 +152,14 @@ public class NetworkViewer extends NodeViewer implements NodeContainer {
 
 
     /**
-     * Construct UI Nodes from the NEO Network model
+     * Construct UI Nodes from the NEO Network model. On the first update, and
+     * until all the nodes have been built, at most NODE_BATCH_SIZE nodes are
+     * built at a time and another update is scheduled for the rest.
      */
     protected void updateViewFromModel(boolean isFirstUpdate) {
+        boolean streaming = isFirstUpdate || !nodesToBuild.isEmpty();
+        int nodesToBuildNow = streaming ? NODE_BATCH_SIZE : Integer.MAX_VALUE;
+        nodesToBuild.clear();
 
         /*
          * Get the current children and map them
@@ -151,6 +187,12 @@ public class NetworkViewer extends NodeViewer implements NodeContainer {
                 UINeoNode nodeUI = currentNodes.get(node);
 
                 if (nodeUI == null) {
+                    if (nodesToBuildNow == 0) {
+                        nodesToBuild.add(node);
+                        continue;
+                    }
+                    nodesToBuildNow--;
+
                     /*
                      * Create UI Wrappers here
                      */
@@ -163,7 +205,7 @@ public class NetworkViewer extends NodeViewer implements NodeContainer {
                         getGround().addChildFancy(nodeUI, false);
 
                     } else {
-                        boolean centerAndNotify = !isFirstUpdate;
+                        boolean centerAndNotify = !streaming;
                         addUINode(nodeUI, centerAndNotify, false);
                         if (centerAndNotify) {
                             nodeUI.showPopupMessage("Node " + node.getName() + " added to Network");
@@ -213,6 +255,18 @@ public class NetworkViewer extends NodeViewer implements NodeContainer {
             projectionMap.put(projection.getTermination(), projection);
         }
 
+        /*
+         * Drop placeholders of projections that have been removed, and keep the
+         * rest as they are
+         */
+        for (Projection projection : pendingProjections.values().toArray(new Projection[] {})) {
+            if (projectionMap.get(projection.getTermination()) != projection) {
+                removePendingProjection(projection);
+            } else {
+                projectionsToAdd.remove(projection);
+            }
+        }
+
         /*
          * Get UI projections
          */
@@ -247,7 +301,7 @@ public class NetworkViewer extends NodeViewer implements NodeContainer {
             UITermination terminationUI = projectionUI.getTermination();
 
             projectionUI.destroy();
-            if (!isFirstUpdate) {
+            if (!streaming) {
                 terminationUI.showPopupMessage("REMOVED Projection to "
                         + terminationUI.getNodeParent().getName() + "." + terminationUI.getName());
             }
@@ -260,18 +314,25 @@ public class NetworkViewer extends NodeViewer implements NodeContainer {
             Origin origin = projection.getOrigin();
             Termination term = projection.getTermination();
 
+            if (nodesToBuild.contains(origin.getNode()) || nodesToBuild.contains(term.getNode())) {
+                // built with the nodes
+                continue;
+            }
+
             UINeoNode nodeOrigin = getUINode(origin.getNode());
 
             UINeoNode nodeTerm = getUINode(term.getNode());
 
             if (nodeOrigin != null && nodeTerm != null) {
-                UIOrigin originUI = nodeOrigin.showOrigin(origin.getName());
-                UITermination termUI = nodeTerm.showTermination(term.getName());
-
-                originUI.connectTo(termUI, false);
-                if (!isFirstUpdate) {
-                    termUI.showPopupMessage("NEW Projection to " + termUI.getName() + "."
-                            + getName());
+                if (!nodeOrigin.isWidgetsMaterialized() && !nodeTerm.isWidgetsMaterialized()) {
+                    pendingProjections.put(term, projection);
+                    getGround().getEdgeBatch().addEdge(projection, nodeOrigin, nodeTerm);
+                } else {
+                    UITermination termUI = constructProjection(nodeOrigin, nodeTerm, projection);
+                    if (!streaming) {
+                        termUI.showPopupMessage("NEW Projection to " + termUI.getName() + "."
+                                + getName());
+                    }
                 }
             } else {
                 if (nodeOrigin == null) {
@@ -287,6 +348,87 @@ public class NetworkViewer extends NodeViewer implements NodeContainer {
         }
 
         updateViewExposed();
+        continueBuildingNodes(nodes.length);
+    }
+
+    /**
+     * Schedules the next batch of nodes to be built, if there are any left, and
+     * shows how many have been built so far
+     */
+    private void continueBuildingNodes(int nodeCount) {
+        if (nodesToBuild.isEmpty()) {
+            if (buildMsg != null) {
+                buildMsg.finished();
+                buildMsg = null;
+            }
+            return;
+        }
+
+        String message = "Building nodes in Viewer (" + (nodeCount - nodesToBuild.size()) + " of "
+                + nodeCount + ")";
+        if (buildMsg == null) {
+            buildMsg = new TrackedStatusMsg(message);
+        } else {
+            buildMsg.update(message);
+        }
+
+        if (!buildScheduled) {
+            buildScheduled = true;
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    buildScheduled = false;
+                    if (isDestroyed()) {
+                        if (buildMsg != null) {
+                            buildMsg.finished();
+                            buildMsg = null;
+                        }
+                    } else if (!nodesToBuild.isEmpty()) {
+                        updateViewFromModel(false);
+                        if (nodesToBuild.isEmpty()) {
+                            applyDefaultLayout();
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private UITermination constructProjection(UINeoNode nodeOrigin, UINeoNode nodeTerm,
+            Projection projection) {
+        UIOrigin originUI = nodeOrigin.showOrigin(projection.getOrigin().getName());
+        UITermination termUI = nodeTerm.showTermination(projection.getTermination().getName());
+
+        originUI.connectTo(termUI, false);
+        return termUI;
+    }
+
+    private void removePendingProjection(Projection projection) {
+        pendingProjections.remove(projection.getTermination());
+        getGround().getEdgeBatch().removeEdge(projection);
+    }
+
+    /**
+     * Builds the projections to and from a node that were waiting for it to be
+     * seen up close
+     */
+    @Override
+    public void nodeWidgetsMaterialized(UINeoNode node) {
+        Node model = node.getModel();
+
+        for (Projection projection : pendingProjections.values().toArray(new Projection[] {})) {
+            Node originNode = projection.getOrigin().getNode();
+            Node termNode = projection.getTermination().getNode();
+
+            if (originNode == model || termNode == model) {
+                removePendingProjection(projection);
+
+                UINeoNode nodeOrigin = getUINode(originNode);
+                UINeoNode nodeTerm = getUINode(termNode);
+                if (nodeOrigin != null && nodeTerm != null) {
+                    constructProjection(nodeOrigin, nodeTerm, projection);
+                }
+            }
+        }
     }
 
     private void updateViewExposed() {
@@ -333,6 +333,16 @@ public abstract class NodeViewer extends ElasticWorld implements Interactable {
         return parentOfViewer;
     }
 
+    /**
+     * Called when a node in this viewer has built the widgets that were put
+     * off until it was seen up close
+     * 
+     * @param node
+     *            Node whose widgets were built
+     */
+    public void nodeWidgetsMaterialized(UINeoNode node) {
+    }
+
     public void setOriginsTerminationsVisible(boolean visible) {
         for (UINeoNode node : getUINodes()) {
             node.setWidgetsVisible(visible);
@@ -49,11 +49,15 @@ import org.python.core.PyString;
 import org.python.core.PyStringMap;
 import org.python.util.PythonInterpreter;
 
+import ca.nengo.config.ApiIndex;
 import ca.nengo.config.JavaSourceParser;
 
 /**
  * A CommandCompletor that suggests completions based on Python variable names and 
  * methods/fields of Python objects.
+ * 
+ * Members of classes in the ApiIndex (if one was built) are read from it, with their 
+ * documentation. Other classes are examined by reflection.  
  *    
  * @author Bryan Tripp
  */
@@ -122,6 +126,9 @@ public class CallChainCompletor extends CommandCompletor {
 		
 		if (pc instanceof PyJavaType) {
 			String className = ((PyJavaType) pc).toString().split("'")[1];
+			if (addIndexedConstructors(className, result)) {
+				return result;
+			}
 			try {
 				Class<?> c = Class.forName(className);
 				Constructor<?>[] constructors = c.getConstructors();
@@ -234,6 +241,9 @@ public class CallChainCompletor extends CommandCompletor {
 		if (po instanceof PyJavaType) {
 			String className = ((PyJavaType)po).toString().split("'")[1];
 			
+			if (addIndexedMembers(className, base, true, result)) {
+				return result;
+			}
 			try {
 				Class<?> c = Class.forName(className);
 				
@@ -251,6 +261,7 @@ public class CallChainCompletor extends CommandCompletor {
 					int mods = methods[i].getModifiers();
 					if (Modifier.isStatic(mods) && Modifier.isPublic(mods)) {
 						result.add(getMethodSignature(base, methods[i]));
+						myDocumentation.add("");
 //						myDocumentation.add(JavaSourceParser.getDocs(methods[i]));								
 					}
 				}
@@ -263,6 +274,9 @@ public class CallChainCompletor extends CommandCompletor {
 			
 			try {
 				Class<?> c = getReturnClass(rootClassName, base);
+				if (addIndexedMembers(c.getName(), base, false, result)) {
+					return result;
+				}
 
 				Field[] fields = c.getFields();
 				for (int i = 0; i < fields.length; i++) {
@@ -279,6 +293,7 @@ public class CallChainCompletor extends CommandCompletor {
 					int mods = methods[i].getModifiers();
 					if (Modifier.isPublic(mods)) {
 						result.add(getMethodSignature(base, methods[i]));
+						myDocumentation.add("");
 //						myDocumentation.add(JavaSourceParser.getDocs(methods[i]));						
 					}
 				}
@@ -319,6 +334,49 @@ public class CallChainCompletor extends CommandCompletor {
 		return result;		
 	}
 	
+	/**
+	 * Adds fields and methods of a class from the ApiIndex, if it is indexed.
+	 * 
+	 * @return True if the class is indexed 
+	 */
+	private boolean addIndexedMembers(String className, String base, boolean staticOnly, List<String> result) {
+		ApiIndex index = ApiIndex.getDefault();
+		List<ApiIndex.Member> members = (index == null) ? null : index.getMembers(className, "");
+		if (members == null) {
+			return false;
+		}
+		
+		for (ApiIndex.Member member : members) {
+			if (member.getKind() != ApiIndex.CONSTRUCTOR && (member.isStatic() || !staticOnly)) {
+				result.add(base + "." + member.getSignature());
+				myDocumentation.add(member.getDocs());
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Adds constructors of a class from the ApiIndex, if it is indexed.
+	 * 
+	 * @return True if the class is indexed 
+	 */
+	private boolean addIndexedConstructors(String className, List<String> result) {
+		ApiIndex index = ApiIndex.getDefault();
+		String simpleName = className.substring(Math.max(className.lastIndexOf('.'), className.lastIndexOf('$')) + 1);
+		List<ApiIndex.Member> members = (index == null) ? null : index.getMembers(className, simpleName);
+		if (members == null) {
+			return false;
+		}
+		
+		for (ApiIndex.Member member : members) {
+			if (member.getKind() == ApiIndex.CONSTRUCTOR) {
+				result.add(member.getSignature());
+				myDocumentation.add(member.getDocs());
+			}
+		}
+		return true;
+	}
+	
 	private static String getMethodSignature(String base, Method m) {
 		StringBuffer buf = new StringBuffer(base + ".");
 		buf.append(m.getName());
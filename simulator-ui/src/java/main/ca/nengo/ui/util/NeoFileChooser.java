@@ -52,22 +52,31 @@ public class NeoFileChooser {
 
 	public NeoFileChooser() {
 		super();
-		fileChooser = new JFileChooser();
+		allFileFilter = new AllNeoFiles();
+	}
 
-		String workingDirectory = NengoConfigManager.getUserProperty(UserProperties.ModelWorkingLocation);
-		if (workingDirectory != null) {
-			fileChooser.setCurrentDirectory(new File(workingDirectory));
+	/**
+	 * @return The Swing File Chooser, created on first use because constructing it
+	 * 		(which lists the file system) is slow enough to hold up start-up
+	 */
+	private synchronized JFileChooser getFileChooser() {
+		if (fileChooser == null) {
+			fileChooser = new JFileChooser();
+
+			String workingDirectory = NengoConfigManager.getUserProperty(UserProperties.ModelWorkingLocation);
+			if (workingDirectory != null) {
+				fileChooser.setCurrentDirectory(new File(workingDirectory));
+			}
+			fileChooser.setFileFilter(allFileFilter);
 		}
-
-		allFileFilter = new AllNeoFiles();
-		fileChooser.setFileFilter(allFileFilter);
+		return fileChooser;
 	}
 
 	/**
 	 * @return Selected file
 	 */
 	public File getSelectedFile() {
-		return fileChooser.getSelectedFile();
+		return getFileChooser().getSelectedFile();
 	}
 
 	/**
@@ -75,7 +84,7 @@ public class NeoFileChooser {
 	 *            File to select
 	 */
 	public void setSelectedFile(File file) {
-		fileChooser.setSelectedFile(file);
+		getFileChooser().setSelectedFile(file);
 	}
 
 	/**
@@ -85,9 +94,9 @@ public class NeoFileChooser {
 	 * @throws HeadlessException
 	 */
 	public int showOpenDialog() throws HeadlessException {
-		fileChooser.setFileFilter(allFileFilter);
+		getFileChooser().setFileFilter(allFileFilter);
 
-		int response = fileChooser.showOpenDialog(UIEnvironment.getInstance());
+		int response = getFileChooser().showOpenDialog(UIEnvironment.getInstance());
 		saveWorkingLocation();
 		return response;
 	}
@@ -99,9 +108,9 @@ public class NeoFileChooser {
 	 * @throws HeadlessException
 	 */
 	public int showSaveDialog() throws HeadlessException {
-		fileChooser.setFileFilter(allFileFilter);
+		getFileChooser().setFileFilter(allFileFilter);
 
-		int response = fileChooser.showSaveDialog(UIEnvironment.getInstance());
+		int response = getFileChooser().showSaveDialog(UIEnvironment.getInstance());
 		saveWorkingLocation();
 		return response;
 	}
@@ -110,7 +119,7 @@ public class NeoFileChooser {
 	 * Saves the current working directory
 	 */
 	private void saveWorkingLocation() {
-		String currentDirectory = fileChooser.getCurrentDirectory().toString();
+		String currentDirectory = getFileChooser().getCurrentDirectory().toString();
 		NengoConfigManager.setUserProperty(UserProperties.ModelWorkingLocation, currentDirectory);
 	}
 }
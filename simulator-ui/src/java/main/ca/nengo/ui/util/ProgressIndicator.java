@@ -23,26 +23,33 @@ import java.awt.Insets;
 import ca.nengo.sim.SimulatorEvent;
 import ca.nengo.sim.SimulatorListener;
 import ca.nengo.ui.NengoGraphics;
+import ca.nengo.util.ConstructionProgress;
 
 
-public class ProgressIndicator extends JPanel implements ActionListener, SimulatorListener {
+/**
+ * Shows the progress of a long task (a simulation, script, or model construction) in the
+ * status bar, with a button that stops it. Model construction on a thread for which this is
+ * the ConstructionProgress monitor reports each step here and is cancelled by the button.
+ */
+public class ProgressIndicator extends JPanel implements ActionListener, SimulatorListener, ConstructionProgress.Monitor {
 	public static final long serialVersionUID=1;
 	
 	JProgressBar bar;
 	JButton stop;
 	
 	String text;
+	volatile String step;
 
 	ThreadState pythonThread=null;
-	Thread javaThread=null;
+	volatile Thread javaThread=null;
 	
 	Timer timer=null;
 	long timerStart;
 
-	boolean isRunning=false;
-	boolean interruptFlag;
+	volatile boolean isRunning=false;
+	volatile boolean interruptFlag;
 	
-	int percentage=-1;
+	volatile int percentage=-1;
 	
 
 	public ProgressIndicator() {
@@ -76,6 +83,10 @@ public class ProgressIndicator extends JPanel implements ActionListener, Simulat
 	
 	void updateBarString() {
 		String bar=this.text;
+		String step=this.step;
+		if (step!=null) {
+			bar+=": "+step;
+		}
 		if (isRunning) {
 			long delta=(System.currentTimeMillis()-timerStart)/1000;
 			bar+=" ";
@@ -100,6 +111,9 @@ public class ProgressIndicator extends JPanel implements ActionListener, Simulat
 		
 		timerStart=System.currentTimeMillis();
 		this.text=text;
+		this.step=null;
+		this.interruptFlag=false;
+		this.percentage=-1;
 		this.isRunning=true;
 		timer=new Timer();
 		timer.schedule(
@@ -141,6 +155,39 @@ public class ProgressIndicator extends JPanel implements ActionListener, Simulat
 		this.text=text;
 	}
 	
+	public boolean isRunning() {
+		return isRunning;
+	}
+	
+	/**
+	 * @param progress Fraction of the task that is done (0 to 1)
+	 */
+	public void setProgress(float progress) {
+		if (!isRunning) return;
+		
+		percentage=(int)(100*progress);
+		
+		if (percentage!=bar.getValue()) {
+			bar.setIndeterminate(false);
+			bar.setMaximum(100);
+			bar.setValue(percentage);
+		}
+	}
+	
+	/**
+	 * @see ca.nengo.util.ConstructionProgress.Monitor#stepStarted(java.lang.String)
+	 */
+	public void stepStarted(String description) {
+		step=description;
+	}
+	
+	/**
+	 * @see ca.nengo.util.ConstructionProgress.Monitor#isCancelled()
+	 */
+	public boolean isCancelled() {
+		return isRunning && interruptFlag;
+	}
+	
 	
 	public void setThread() {
 		pythonThread=Py.getThreadState();
@@ -165,13 +212,16 @@ public class ProgressIndicator extends JPanel implements ActionListener, Simulat
 		updateBarString();
 		if (pythonThread!=null) interruptViaPython();
 		
+		// model construction stops by itself when it sees the flag; anything else still running
+		// by then (and not another task started in the meantime) is forced to quit
+		final Thread thread=javaThread;
 		new Timer().schedule(
 		        new TimerTask() {
 		            @SuppressWarnings("deprecation")
 					@Override
 		            public void run() {
-		            	if (isRunning)
-		            		javaThread.stop();
+		            	if (isRunning && thread!=null && javaThread==thread)
+		            		thread.stop();
 		            }
 		        }, 
 		        3000 
@@ -186,13 +236,7 @@ public class ProgressIndicator extends JPanel implements ActionListener, Simulat
 	public void processEvent(SimulatorEvent event) {
 		if (!isRunning) return;
 		
-		percentage=(int)(100*event.getProgress());
-		
-		if (percentage!=bar.getValue()) {
-			bar.setIndeterminate(false);
-			bar.setMaximum(100);
-			bar.setValue(percentage);
-		}
+		setProgress(event.getProgress());
 		
 		if (interruptFlag) event.setInterrupt(true);
 	}
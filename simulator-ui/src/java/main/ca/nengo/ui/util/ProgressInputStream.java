@@ -0,0 +1,105 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "ProgressInputStream.java". Description:
+"An input stream that shows how much of it has been read on a progress indicator"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.ui.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * An input stream that shows how much of it has been read on a progress
+ * indicator, and stops being readable if the indicator is stopped. Used to
+ * show the progress of loading models from file.
+ *
+ * @author agent
+ */
+public class ProgressInputStream extends FilterInputStream {
+
+    private final ProgressIndicator progressIndicator;
+    private final long length;
+    private long position;
+    private long mark;
+
+    /**
+     * @param in
+     *            Stream to read from
+     * @param length
+     *            Number of bytes expected in the stream (eg the length of the
+     *            file)
+     * @param progressIndicator
+     *            Indicator on which to show progress
+     */
+    public ProgressInputStream(InputStream in, long length, ProgressIndicator progressIndicator) {
+        super(in);
+        this.length = length;
+        this.progressIndicator = progressIndicator;
+    }
+
+    private void advance(long count) throws InterruptedIOException {
+        if (progressIndicator.isCancelled()) {
+            throw new InterruptedIOException("Stopped reading");
+        }
+        if (count > 0) {
+            position += count;
+            if (length > 0) {
+                progressIndicator.setProgress(Math.min(1f, (float) position / length));
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int result = super.read();
+        advance(result >= 0 ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int result = super.read(b, off, len);
+        advance(result);
+        return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long result = super.skip(n);
+        advance(result);
+        return result;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        super.mark(readlimit);
+        mark = position;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        super.reset();
+        position = mark;
+    }
+}
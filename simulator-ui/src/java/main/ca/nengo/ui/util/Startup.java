@@ -0,0 +1,171 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "Startup.java". Description:
+"Start-up pipeline for the graphical front end"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.ui.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Start-up pipeline for the graphical front end. Times each phase of start-up (the
+ * summary is written to the log when start-up finishes), and runs initialization that
+ * doesn't depend on the window in the background, so that it overlaps with building
+ * the window on the event dispatch thread.
+ *
+ * @author agent
+ */
+public final class Startup {
+
+	/**
+	 * If this system property is "true", the application exits as soon as start-up
+	 * finishes. This is used to record the classes loaded at start-up (e.g. for a
+	 * class data sharing archive) without anyone having to close the window.
+	 */
+	public static final String EXIT_PROPERTY = "ca.nengo.ui.startup.exit";
+
+	private static Logger ourLogger = Logger.getLogger(Startup.class);
+
+	private static final long ourStartTime = System.nanoTime();
+	private static final List<String> ourPhases = new ArrayList<String>(20);
+	private static final List<Long> ourDurations = new ArrayList<Long>(20);
+
+	private static String ourPhase;
+	private static long ourPhaseStartTime;
+	private static ExecutorService ourExecutor;
+	private static boolean ourFinished;
+
+	private Startup() {
+	}
+
+	/**
+	 * Ends the current phase of start-up (if any) and begins a new one.
+	 *
+	 * @param name Name of the new phase
+	 */
+	public static synchronized void beginPhase(String name) {
+		endPhase();
+		ourPhase = name;
+		ourPhaseStartTime = System.nanoTime();
+	}
+
+	/**
+	 * Ends the current phase of start-up, if there is one.
+	 */
+	public static synchronized void endPhase() {
+		if (ourPhase != null) {
+			record(ourPhase, System.nanoTime() - ourPhaseStartTime);
+			ourPhase = null;
+		}
+	}
+
+	/**
+	 * Starts a task on a background thread. Tasks should not touch Swing components. Tasks
+	 * submitted after start-up has finished are run on the calling thread.
+	 *
+	 * @param name Name of the task (its duration is reported with the phases)
+	 * @param task The task to run
+	 * @return The task's eventual result
+	 */
+	public static synchronized <T> Future<T> inBackground(final String name, final Callable<T> task) {
+		Callable<T> timed = new Callable<T>() {
+			public T call() throws Exception {
+				long start = System.nanoTime();
+				try {
+					return task.call();
+				} finally {
+					record(name + " (background)", System.nanoTime() - start);
+				}
+			}
+		};
+
+		if (ourExecutor == null && !ourFinished) {
+			int threads = Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors()));
+			ourExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				private int myCount = 0;
+				public Thread newThread(Runnable r) {
+					Thread result = new Thread(r, "Nengo startup " + (++myCount));
+					result.setDaemon(true);
+					result.setPriority(Thread.NORM_PRIORITY - 1);
+					return result;
+				}
+			});
+		}
+
+		if (ourExecutor == null) {
+			FutureTask<T> result = new FutureTask<T>(timed);
+			result.run();
+			return result;
+		} else {
+			return ourExecutor.submit(timed);
+		}
+	}
+
+	/**
+	 * Ends the last phase, logs the duration of each phase, and releases the background
+	 * threads once any tasks still running are done. Exits the application if the system
+	 * property EXIT_PROPERTY is true.
+	 */
+	public static void finish() {
+		synchronized (Startup.class) {
+			endPhase();
+			ourFinished = true;
+			if (ourExecutor != null) {
+				ourExecutor.shutdown();
+				ourExecutor = null;
+			}
+			record("total", System.nanoTime() - ourStartTime);
+			ourLogger.info(getSummary());
+		}
+
+		if (Boolean.getBoolean(EXIT_PROPERTY)) {
+			System.exit(0);
+		}
+	}
+
+	/**
+	 * @return The duration of each phase and background task recorded so far
+	 */
+	public static synchronized String getSummary() {
+		StringBuffer result = new StringBuffer("Start-up times (ms):");
+		for (int i = 0; i < ourPhases.size(); i++) {
+			result.append("\n  ").append(ourPhases.get(i)).append(": ").append(ourDurations.get(i) / 1000000);
+		}
+		return result.toString();
+	}
+
+	private static synchronized void record(String name, long nanos) {
+		ourPhases.add(name);
+		ourDurations.add(Long.valueOf(nanos));
+		ourLogger.debug(name + " took " + (nanos / 1000000) + " ms");
+	}
+
+}
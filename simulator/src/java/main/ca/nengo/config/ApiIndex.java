@@ -0,0 +1,742 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "ApiIndex.java". Description:
+"A prebuilt index of the public classes and members of the ca.nengo API"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import ca.nengo.util.ClassUtils;
+
+/**
+ * <p>A prebuilt index of the public classes and members of the ca.nengo API, with their
+ * signatures, argument names and documentation, for command completion and documentation
+ * lookup at run time without reflection or source parsing.</p>
+ *
+ * <p>The index is generated from the compiled classes and their source code when the simulator
+ * is built (see main()), and is read from the resource RESOURCE next to this class. It is loaded
+ * the first time it is needed. If it is a file, it is memory-mapped rather than read.</p>
+ *
+ * <p>Classes are sorted by name, and the members of each class (including inherited ones) by
+ * name, so lookups are binary searches. Records are decoded only when they are looked up.</p>
+ *
+ * @author agent
+ */
+public class ApiIndex {
+
+	/**
+	 * Name of the index resource, relative to this class
+	 */
+	public static final String RESOURCE = "api.index";
+
+	/**
+	 * Member kind for public fields
+	 */
+	public static final byte FIELD = 0;
+
+	/**
+	 * Member kind for public methods
+	 */
+	public static final byte METHOD = 1;
+
+	/**
+	 * Member kind for public constructors
+	 */
+	public static final byte CONSTRUCTOR = 2;
+
+	private static final int MAGIC = 0x4e415049;
+	private static final int VERSION = 1;
+	private static final String CHARSET = "UTF-8";
+
+	private static Logger ourLogger = Logger.getLogger(ApiIndex.class);
+	private static ApiIndex ourDefault;
+	private static boolean ourDefaultLoaded;
+
+	private final ByteBuffer myBuffer;
+	private final int myClassCount;
+
+	/**
+	 * @param buffer Contents of an index (as written by write())
+	 * @throws IOException If the contents are not an index of the current version
+	 */
+	public ApiIndex(ByteBuffer buffer) throws IOException {
+		myBuffer = buffer;
+		if (buffer.limit() < 12 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException("Not an API index of version " + VERSION);
+		}
+		myClassCount = buffer.getInt(8);
+	}
+
+	/**
+	 * @return The index of the ca.nengo API that was built with this class, or null if there
+	 * 		isn't one (eg when running from sources)
+	 */
+	public static synchronized ApiIndex getDefault() {
+		if (!ourDefaultLoaded) {
+			ourDefaultLoaded = true;
+			URL url = ApiIndex.class.getResource(RESOURCE);
+			if (url == null) {
+				ourLogger.debug("No API index found; documentation will be read from source");
+			} else {
+				try {
+					ourDefault = load(url);
+				} catch (IOException e) {
+					ourLogger.warn("Can't load API index from " + url, e);
+				}
+			}
+		}
+		return ourDefault;
+	}
+
+	/**
+	 * @param url Location of an index. A file is memory-mapped; anything else is read.
+	 * @return The index
+	 * @throws IOException If the index can't be read
+	 */
+	public static ApiIndex load(URL url) throws IOException {
+		ByteBuffer buffer;
+		if ("file".equals(url.getProtocol())) {
+			FileInputStream in = new FileInputStream(URLDecoder.decode(url.getPath(), CHARSET));
+			try {
+				FileChannel channel = in.getChannel();
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			} finally {
+				in.close(); //the mapping remains valid
+			}
+		} else {
+			InputStream in = url.openStream();
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+				byte[] chunk = new byte[8192];
+				for (int n; (n = in.read(chunk)) > 0; ) {
+					bytes.write(chunk, 0, n);
+				}
+				buffer = ByteBuffer.wrap(bytes.toByteArray());
+			} finally {
+				in.close();
+			}
+		}
+		return new ApiIndex(buffer);
+	}
+
+	/**
+	 * @return Number of indexed classes
+	 */
+	public int getClassCount() {
+		return myClassCount;
+	}
+
+	/**
+	 * @param className Fully qualified name of a class
+	 * @return True if the class is indexed
+	 */
+	public boolean contains(String className) {
+		return findClass(className) >= 0;
+	}
+
+	/**
+	 * @param className Fully qualified name of a class
+	 * @return Class-level documentation as given by JavaSourceParser.getDocs(Class), or null
+	 * 		if the class isn't indexed
+	 */
+	public String getDocs(String className) {
+		int offset = findClass(className);
+		if (offset < 0) {
+			return null;
+		}
+		Reader reader = new Reader(offset);
+		reader.skipString(); //name
+		return reader.readString();
+	}
+
+	/**
+	 * @param className Fully qualified name of a class
+	 * @param prefix Start of the member names to return ("" for all members)
+	 * @return Public members of the class (including inherited ones) whose names start with the
+	 * 		given prefix, sorted by name, or null if the class isn't indexed
+	 */
+	public List<Member> getMembers(String className, String prefix) {
+		int offset = findClass(className);
+		if (offset < 0) {
+			return null;
+		}
+
+		Reader reader = new Reader(offset);
+		reader.skipString(); //name
+		reader.skipString(); //docs
+		int count = reader.readInt();
+		int table = reader.position();
+
+		//first member with name >= prefix
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (getMemberName(table, mid).compareTo(prefix) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		List<Member> result = new ArrayList<Member>();
+		for (int i = low; i < count; i++) {
+			Member member = readMember(myBuffer.getInt(table + 4*i));
+			if (!member.getName().startsWith(prefix)) {
+				break;
+			}
+			result.add(member);
+		}
+		return result;
+	}
+
+	/**
+	 * @param className Fully qualified name of a class
+	 * @param name Name of a member (the simple class name for constructors)
+	 * @param kind FIELD, METHOD or CONSTRUCTOR
+	 * @param paramTypes Parameter types of a method or constructor (as given by
+	 * 		ClassUtils.getName()), or null for a field
+	 * @return The matching member, or null if there isn't one
+	 */
+	public Member getMember(String className, String name, byte kind, String[] paramTypes) {
+		List<Member> candidates = getMembers(className, name);
+		if (candidates != null) {
+			for (Member member : candidates) {
+				if (member.getName().equals(name) && member.getKind() == kind
+						&& (paramTypes == null || equals(member.myParamTypes, paramTypes))) {
+					return member;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static boolean equals(String[] a, String[] b) {
+		if (a.length != b.length) {
+			return false;
+		}
+		for (int i = 0; i < a.length; i++) {
+			if (!a[i].equals(b[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//returns offset of class record, or -1
+	private int findClass(String className) {
+		int low = 0;
+		int high = myClassCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int offset = myBuffer.getInt(12 + 4*mid);
+			int c = new Reader(offset).readString().compareTo(className);
+			if (c < 0) {
+				low = mid + 1;
+			} else if (c > 0) {
+				high = mid - 1;
+			} else {
+				return offset;
+			}
+		}
+		return -1;
+	}
+
+	private String getMemberName(int table, int i) {
+		Reader reader = new Reader(myBuffer.getInt(table + 4*i));
+		reader.readByte(); //kind
+		reader.readByte(); //static
+		return reader.readString();
+	}
+
+	private Member readMember(int offset) {
+		Reader reader = new Reader(offset);
+		byte kind = reader.readByte();
+		boolean isStatic = reader.readByte() != 0;
+		String name = reader.readString();
+		String declaringClass = reader.readString();
+		String returnType = reader.readString();
+		int n = reader.readInt();
+		String[] paramTypes = new String[n];
+		String[] paramSimpleTypes = new String[n];
+		String[] paramNames = new String[n];
+		String[] paramDocs = new String[n];
+		for (int i = 0; i < n; i++) {
+			paramTypes[i] = reader.readString();
+			paramSimpleTypes[i] = reader.readString();
+			paramNames[i] = reader.readString();
+			paramDocs[i] = reader.readString();
+		}
+		String docs = reader.readString();
+		return new Member(kind, isStatic, name, declaringClass, returnType, paramTypes, paramSimpleTypes, paramNames, paramDocs, docs);
+	}
+
+	//reads sequentially from an absolute position without moving the shared buffer
+	private class Reader {
+
+		private int myPosition;
+
+		public Reader(int position) {
+			myPosition = position;
+		}
+
+		public int position() {
+			return myPosition;
+		}
+
+		public byte readByte() {
+			return myBuffer.get(myPosition++);
+		}
+
+		public int readInt() {
+			int result = myBuffer.getInt(myPosition);
+			myPosition += 4;
+			return result;
+		}
+
+		public String readString() {
+			int length = readInt();
+			if (length < 0) {
+				return null;
+			}
+			byte[] bytes = new byte[length];
+			ByteBuffer b = myBuffer.duplicate();
+			b.position(myPosition);
+			b.get(bytes);
+			myPosition += length;
+			try {
+				return new String(bytes, CHARSET);
+			} catch (UnsupportedEncodingException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		public void skipString() {
+			int length = readInt();
+			myPosition += Math.max(0, length);
+		}
+	}
+
+	/**
+	 * A public field, method or constructor of an indexed class.
+	 *
+	 * @author agent
+	 */
+	public static class Member {
+
+		private final byte myKind;
+		private final boolean myStatic;
+		private final String myName;
+		private final String myDeclaringClass;
+		private final String myReturnType;
+		private final String[] myParamTypes;
+		private final String[] myParamSimpleTypes;
+		private final String[] myParamNames;
+		private final String[] myParamDocs;
+		private final String myDocs;
+
+		private Member(byte kind, boolean isStatic, String name, String declaringClass, String returnType,
+				String[] paramTypes, String[] paramSimpleTypes, String[] paramNames, String[] paramDocs, String docs) {
+			myKind = kind;
+			myStatic = isStatic;
+			myName = name;
+			myDeclaringClass = declaringClass;
+			myReturnType = returnType;
+			myParamTypes = paramTypes;
+			myParamSimpleTypes = paramSimpleTypes;
+			myParamNames = paramNames;
+			myParamDocs = paramDocs;
+			myDocs = docs;
+		}
+
+		/**
+		 * @return FIELD, METHOD or CONSTRUCTOR
+		 */
+		public byte getKind() {
+			return myKind;
+		}
+
+		/**
+		 * @return True if the member is static
+		 */
+		public boolean isStatic() {
+			return myStatic;
+		}
+
+		/**
+		 * @return Name of the member (the simple class name for constructors)
+		 */
+		public String getName() {
+			return myName;
+		}
+
+		/**
+		 * @return Fully qualified name of the class that declares the member
+		 */
+		public String getDeclaringClass() {
+			return myDeclaringClass;
+		}
+
+		/**
+		 * @return Type of a field, return type of a method, or class of a constructor (as
+		 * 		given by ClassUtils.getName())
+		 */
+		public String getReturnType() {
+			return myReturnType;
+		}
+
+		/**
+		 * @return Parameter types (as given by ClassUtils.getName())
+		 */
+		public String[] getParamTypes() {
+			return myParamTypes.clone();
+		}
+
+		/**
+		 * @return Parameter names as given by JavaSourceParser.getArgNames()
+		 */
+		public String[] getParamNames() {
+			return myParamNames.clone();
+		}
+
+		/**
+		 * @param i Index of a parameter
+		 * @return Documentation of the parameter as given by JavaSourceParser.getArgDocs(),
+		 * 		or null if there is none
+		 */
+		public String getParamDocs(int i) {
+			return myParamDocs[i];
+		}
+
+		/**
+		 * @return Documentation as given by JavaSourceParser.getDocs() (empty for fields)
+		 */
+		public String getDocs() {
+			return myDocs;
+		}
+
+		/**
+		 * @return Name followed by parameter types and names for display, eg
+		 * 		"getOrigin(String name)"; just the name for fields
+		 */
+		public String getSignature() {
+			if (myKind == FIELD) {
+				return myName;
+			}
+			StringBuffer buf = new StringBuffer(myName);
+			buf.append('(');
+			for (int i = 0; i < myParamNames.length; i++) {
+				buf.append(myParamSimpleTypes[i]);
+				buf.append(" ");
+				buf.append(myParamNames[i]);
+				if (i < myParamNames.length - 1) {
+					buf.append(", ");
+				}
+			}
+			buf.append(')');
+			return buf.toString();
+		}
+	}
+
+	/**
+	 * Writes an index of the given classes, with documentation from JavaSourceParser (which
+	 * should have been given the source code, and should not be using an index itself).
+	 *
+	 * @param classes Classes to index
+	 * @param out Destination of the index
+	 * @throws IOException If the index can't be written
+	 */
+	public static void write(List<Class<?>> classes, OutputStream out) throws IOException {
+		classes = new ArrayList<Class<?>>(classes);
+		Collections.sort(classes, new Comparator<Class<?>>() {
+			public int compare(Class<?> a, Class<?> b) {
+				return a.getName().compareTo(b.getName());
+			}
+		});
+
+		//records are built first so that their offsets are known for the tables
+		int headerLength = 12 + 4*classes.size();
+		ByteArrayOutputStream records = new ByteArrayOutputStream(1 << 20);
+		int[] offsets = new int[classes.size()];
+		for (int i = 0; i < classes.size(); i++) {
+			offsets[i] = headerLength + records.size();
+			writeClass(classes.get(i), offsets[i], records);
+		}
+
+		DataOutputStream dos = new DataOutputStream(out);
+		dos.writeInt(MAGIC);
+		dos.writeInt(VERSION);
+		dos.writeInt(classes.size());
+		for (int offset : offsets) {
+			dos.writeInt(offset);
+		}
+		records.writeTo(dos);
+		dos.flush();
+	}
+
+	private static void writeClass(Class<?> c, int offset, ByteArrayOutputStream out) throws IOException {
+		List<byte[]> members = new ArrayList<byte[]>();
+		final List<String> names = new ArrayList<String>();
+		for (Field f : c.getFields()) {
+			names.add(f.getName());
+			members.add(getFieldRecord(f));
+		}
+		for (Method m : c.getMethods()) {
+			names.add(m.getName());
+			members.add(getMethodRecord(m));
+		}
+		for (Constructor<?> con : c.getConstructors()) {
+			names.add(c.getSimpleName());
+			members.add(getConstructorRecord(c, con));
+		}
+
+		//stable sort by name (fields, then methods, then constructors within a name)
+		List<Integer> order = new ArrayList<Integer>(names.size());
+		for (int i = 0; i < names.size(); i++) {
+			order.add(Integer.valueOf(i));
+		}
+		Collections.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return names.get(a.intValue()).compareTo(names.get(b.intValue()));
+			}
+		});
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(header);
+		writeString(dos, c.getName());
+		writeString(dos, getClassDocs(c));
+		dos.writeInt(members.size());
+
+		int position = offset + header.size() + 4*members.size();
+		for (Integer i : order) {
+			dos.writeInt(position);
+			position += members.get(i.intValue()).length;
+		}
+		for (Integer i : order) {
+			dos.write(members.get(i.intValue()));
+		}
+		dos.flush();
+		header.writeTo(out);
+	}
+
+	private static byte[] getFieldRecord(Field f) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(result);
+		dos.writeByte(FIELD);
+		dos.writeByte(Modifier.isStatic(f.getModifiers()) ? 1 : 0);
+		writeString(dos, f.getName());
+		writeString(dos, f.getDeclaringClass().getName());
+		writeString(dos, ClassUtils.getName(f.getType()));
+		dos.writeInt(0);
+		writeString(dos, "");
+		dos.flush();
+		return result.toByteArray();
+	}
+
+	private static byte[] getMethodRecord(Method m) throws IOException {
+		String[] names;
+		String[] docs = new String[m.getParameterTypes().length];
+		String methodDocs;
+		try {
+			names = JavaSourceParser.getArgNames(m);
+			for (int i = 0; i < docs.length; i++) {
+				docs[i] = JavaSourceParser.getArgDocs(m, i);
+			}
+			methodDocs = JavaSourceParser.getDocs(m);
+		} catch (RuntimeException e) { //source not available
+			names = getDefaultArgNames(docs.length);
+			methodDocs = "";
+		}
+
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(result);
+		dos.writeByte(METHOD);
+		dos.writeByte(Modifier.isStatic(m.getModifiers()) ? 1 : 0);
+		writeString(dos, m.getName());
+		writeString(dos, m.getDeclaringClass().getName());
+		writeString(dos, ClassUtils.getName(m.getReturnType()));
+		writeParams(dos, m.getParameterTypes(), names, docs);
+		writeString(dos, methodDocs);
+		dos.flush();
+		return result.toByteArray();
+	}
+
+	private static byte[] getConstructorRecord(Class<?> c, Constructor<?> con) throws IOException {
+		String[] names;
+		String[] docs = new String[con.getParameterTypes().length];
+		String constructorDocs;
+		try {
+			names = JavaSourceParser.getArgNames(con);
+			for (int i = 0; i < docs.length; i++) {
+				docs[i] = JavaSourceParser.getArgDocs(con, i);
+			}
+			constructorDocs = JavaSourceParser.getDocs(con);
+		} catch (RuntimeException e) { //source not available
+			names = getDefaultArgNames(docs.length);
+			constructorDocs = "";
+		}
+
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(result);
+		dos.writeByte(CONSTRUCTOR);
+		dos.writeByte(0);
+		writeString(dos, c.getSimpleName());
+		writeString(dos, c.getName());
+		writeString(dos, c.getName());
+		writeParams(dos, con.getParameterTypes(), names, docs);
+		writeString(dos, constructorDocs);
+		dos.flush();
+		return result.toByteArray();
+	}
+
+	private static void writeParams(DataOutputStream dos, Class<?>[] types, String[] names, String[] docs) throws IOException {
+		dos.writeInt(types.length);
+		for (int i = 0; i < types.length; i++) {
+			writeString(dos, ClassUtils.getName(types[i]));
+			writeString(dos, types[i].getSimpleName());
+			writeString(dos, names[i]);
+			writeString(dos, docs[i]);
+		}
+	}
+
+	private static String getClassDocs(Class<?> c) {
+		try {
+			return JavaSourceParser.getDocs(c);
+		} catch (RuntimeException e) { //source not available
+			return null;
+		}
+	}
+
+	private static String[] getDefaultArgNames(int n) {
+		String[] result = new String[n];
+		for (int i = 0; i < n; i++) {
+			result[i] = "arg" + i;
+		}
+		return result;
+	}
+
+	//length-prefixed UTF-8, with length -1 for null
+	private static void writeString(DataOutputStream dos, String s) throws IOException {
+		if (s == null) {
+			dos.writeInt(-1);
+		} else {
+			byte[] bytes = s.getBytes(CHARSET);
+			dos.writeInt(bytes.length);
+			dos.write(bytes);
+		}
+	}
+
+	/**
+	 * Finds public top-level and nested classes (not anonymous ones) in a directory of
+	 * compiled classes, without initializing them.
+	 *
+	 * @param classDir Root directory of compiled classes
+	 * @param packagePrefix Prefix of the names of packages to include, eg "ca.nengo."
+	 * @return The classes
+	 */
+	public static List<Class<?>> findClasses(File classDir, String packagePrefix) {
+		List<Class<?>> result = new ArrayList<Class<?>>();
+		findClasses(classDir, "", packagePrefix, result);
+		return result;
+	}
+
+	private static void findClasses(File dir, String packageName, String packagePrefix, List<Class<?>> result) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (file.isDirectory()) {
+				findClasses(file, packageName + name + ".", packagePrefix, result);
+			} else if (name.endsWith(".class") && packageName.startsWith(packagePrefix)) {
+				String className = packageName + name.substring(0, name.length() - 6);
+				if (!className.matches(".*\\$\\d.*")) {
+					try {
+						Class<?> c = Class.forName(className, false, ApiIndex.class.getClassLoader());
+						if (Modifier.isPublic(c.getModifiers())) {
+							//fails early if member types can't be resolved
+							c.getFields();
+							c.getMethods();
+							c.getConstructors();
+							result.add(c);
+						}
+					} catch (Throwable t) { //eg missing optional dependencies
+						ourLogger.warn("Not indexing " + className + ": " + t);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the index of the ca.nengo API. Run from the simulator build.
+	 *
+	 * @param args Source directory, directory of compiled classes (which must be on the
+	 * 		classpath), and index file to write
+	 * @throws IOException If the index can't be written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			System.err.println("Usage: ApiIndex <source dir> <class dir> <index file>");
+			System.exit(1);
+		}
+
+		JavaSourceParser.setUseIndex(false);
+		JavaSourceParser.addSource(new File(args[0]));
+		List<Class<?>> classes = findClasses(new File(args[1]), "ca.nengo.");
+
+		File file = new File(args[2]);
+		file.getParentFile().mkdirs();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			write(classes, out);
+		} finally {
+			out.close();
+		}
+		System.out.println("Indexed " + classes.size() + " classes in " + file);
+	}
+
+}
@@ -74,7 +74,7 @@ public class IconRegistry {
 	/**
 	 * @return Singleton instance
 	 */
-	public static IconRegistry getInstance() {
+	public static synchronized IconRegistry getInstance() {
 		if (ourInstance == null) {
 			ourInstance = new IconRegistry();
 
@@ -47,8 +47,12 @@ import com.thoughtworks.qdox.model.JavaMethod;
 import com.thoughtworks.qdox.model.JavaParameter;
 
 /**
- * Utilities for extracting data from Java source code files, including
- * variable names and documentation.
+ * <p>Utilities for extracting data from Java source code files, including
+ * variable names and documentation.</p>
+ *
+ * <p>If an ApiIndex was built with the simulator, data are read from it instead, and
+ * the source code is never parsed. Otherwise source trees are parsed the first time
+ * they are needed.</p>
  *
  * @author Bryan Tripp
  */
@@ -56,29 +60,57 @@ public class JavaSourceParser {
 
 	private static Logger ourLogger = Logger.getLogger(JavaSourceParser.class);
 	private static JavaDocBuilder ourBuilder;
-
-	static {
-		ourBuilder = new JavaDocBuilder();
-		//TODO: make this configurable
-//		addSource(new File("src/java/main"));
-	}
+	private static List<File> ourSourceTrees = new ArrayList<File>();
+	private static boolean ourUseIndex = true;
 
 	/**
-	 * Adds source code under the given directory to the database.
+	 * Adds source code under the given directory to the database. The source is
+	 * parsed when it is first needed.
 	 *
 	 * @param baseDir Root directory of source code
 	 */
-	public static void addSource(File baseDir) {
-		ourBuilder.addSourceTree(baseDir);
+	public static synchronized void addSource(File baseDir) {
+		if (ourBuilder != null) {
+			ourBuilder.addSourceTree(baseDir);
+		}
+		ourSourceTrees.add(baseDir);
 		ourLogger.debug("Adding source tree: " + baseDir.getAbsolutePath());
 	}
 
+	/**
+	 * @param use If true (the default), data are read from ApiIndex.getDefault() if it exists
+	 * 		rather than from source code
+	 */
+	public static void setUseIndex(boolean use) {
+		ourUseIndex = use;
+	}
+
+	//returns the index to read from, or null if source should be parsed
+	private static ApiIndex getIndex() {
+		return ourUseIndex ? ApiIndex.getDefault() : null;
+	}
+
+	private static synchronized JavaDocBuilder getBuilder() {
+		if (ourBuilder == null) {
+			ourBuilder = new JavaDocBuilder();
+			for (File tree : ourSourceTrees) {
+				ourBuilder.addSourceTree(tree);
+			}
+		}
+		return ourBuilder;
+	}
+
 	/**
 	 * @param c A Java class
 	 * @return Class-level documentation if available, othewise null
 	 */
 	public static String getDocs(Class<?> c) {
-		JavaClass jc = ourBuilder.getClassByName(c.getName());
+		ApiIndex index = getIndex();
+		if (index != null) {
+			return index.getDocs(c.getName());
+		}
+
+		JavaClass jc = getBuilder().getClassByName(c.getName());
 		JavaClass[] interfaces = jc.getImplementedInterfaces();
 
 		StringBuffer docs = new StringBuffer(jc.getName());
@@ -182,6 +214,12 @@ public class JavaSourceParser {
 	 * @return Method-level documentation if available, otherwise empty string
 	 */
 	public static String getDocs(Method m) {
+		ApiIndex index = getIndex();
+		if (index != null) {
+			ApiIndex.Member member = getMember(index, m);
+			return (member == null) ? "" : member.getDocs();
+		}
+
 		JavaMethod jm = getJavaMethod(m);
 		return getDocs(jm);
 	}
@@ -191,6 +229,12 @@ public class JavaSourceParser {
 	 * @return Constructor documentation if available, otherwise empty string
 	 */
 	public static String getDocs(Constructor<?> c) {
+		ApiIndex index = getIndex();
+		if (index != null) {
+			ApiIndex.Member member = getMember(index, c);
+			return (member == null) ? "" : member.getDocs();
+		}
+
 		JavaMethod jm = getJavaMethod(c);
 		return getDocs(jm);
 	}
@@ -251,6 +295,11 @@ public class JavaSourceParser {
 	public static String[] getArgNames(Method m) {
 		String[] result = new String[m.getParameterTypes().length];
 
+		ApiIndex index = getIndex();
+		if (index != null) {
+			return getArgNames(getMember(index, m), result);
+		}
+
 		JavaMethod jm = getJavaMethod(m);
 		for (int i = 0; i < result.length; i++) {
 			result[i] = (jm == null) ? "arg"+i : jm.getParameters()[i].getName();
@@ -266,6 +315,11 @@ public class JavaSourceParser {
 	public static String[] getArgNames(Constructor<?> c) {
 		String[] result = new String[c.getParameterTypes().length];
 
+		ApiIndex index = getIndex();
+		if (index != null) {
+			return getArgNames(getMember(index, c), result);
+		}
+
 		JavaMethod jm = getJavaMethod(c);
 		for (int i = 0; i < result.length; i++) {
 			result[i] = (jm == null) ? "arg"+i : jm.getParameters()[i].getName();
@@ -280,6 +334,11 @@ public class JavaSourceParser {
 	 * @return Argument documentation if available, otherwise null
 	 */
 	public static String getArgDocs(Method m, int arg) {
+		ApiIndex index = getIndex();
+		if (index != null) {
+			ApiIndex.Member member = getMember(index, m);
+			return (member == null) ? null : member.getParamDocs(arg);
+		}
 		return getArgDocs(getJavaMethod(m), arg);
 	}
 
@@ -289,6 +348,11 @@ public class JavaSourceParser {
 	 * @return Argument documentation if available, otherwise null
 	 */
 	public static String getArgDocs(Constructor<?> c, int arg) {
+		ApiIndex index = getIndex();
+		if (index != null) {
+			ApiIndex.Member member = getMember(index, c);
+			return (member == null) ? null : member.getParamDocs(arg);
+		}
 		return getArgDocs(getJavaMethod(c), arg);
 	}
 
@@ -337,6 +401,32 @@ public class JavaSourceParser {
 		return result.toString();
 	}
 
+	//fills in names from an indexed member, or default names if it is null
+	private static String[] getArgNames(ApiIndex.Member member, String[] result) {
+		String[] names = (member == null) ? null : member.getParamNames();
+		for (int i = 0; i < result.length; i++) {
+			result[i] = (names == null) ? "arg"+i : names[i];
+		}
+		return result;
+	}
+
+	private static ApiIndex.Member getMember(ApiIndex index, Method m) {
+		return index.getMember(m.getDeclaringClass().getName(), m.getName(), ApiIndex.METHOD, getNames(m.getParameterTypes()));
+	}
+
+	private static ApiIndex.Member getMember(ApiIndex index, Constructor<?> c) {
+		Class<?> type = c.getDeclaringClass();
+		return index.getMember(type.getName(), type.getSimpleName(), ApiIndex.CONSTRUCTOR, getNames(c.getParameterTypes()));
+	}
+
+	private static String[] getNames(Class<?>[] types) {
+		String[] result = new String[types.length];
+		for (int i = 0; i < types.length; i++) {
+			result[i] = ClassUtils.getName(types[i]);
+		}
+		return result;
+	}
+
 	//returns source wrapper for given method or null
 	private static JavaMethod getJavaMethod(Method m) {
 		return getJavaMethod(m.getDeclaringClass().getName(), m.getName(), m.getParameterTypes());
@@ -350,7 +440,7 @@ public class JavaSourceParser {
 	private static JavaMethod getJavaMethod(String className, String methodName, Class<?>[] paramTypes) {
 		JavaMethod result = null;
 
-		JavaClass sourceClass = ourBuilder.getClassByName(className);
+		JavaClass sourceClass = getBuilder().getClassByName(className);
 		JavaMethod[] sourceMethods = sourceClass.getMethods();
 
 		for (int i = 0; i < sourceMethods.length && result == null; i++) {
@@ -29,6 +29,8 @@ package ca.nengo.math;
 
 import java.util.Random;
 
+import ca.nengo.math.impl.StatefulRandom;
+
 /**
  * Convenience methods for using PDFs. 
  * 
@@ -36,7 +38,9 @@ import java.util.Random;
  */
 public class PDFTools {
 	
-	private static final Random ourRandom = new Random();
+	private static final StatefulRandom ourRandom = new StatefulRandom();
+	private static final ThreadLocal<Random> ourThreadRandom = new ThreadLocal<Random>();
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
 
 	/**
 	 * Note: PDF treated as univariate (only first dimension considered). 
@@ -76,14 +80,76 @@ public class PDFTools {
 	 * @return A random sample between 0 and 1
 	 */
 	public static double random() {
-		return ourRandom.nextDouble();
+		return getRandom().nextDouble();
 	}
 	
 	/**
-	 * @param seed New random seed for random()
+	 * @param seed New random seed for random() (in threads without their own streams)
 	 */
 	public static void setSeed(long seed) {
 		ourRandom.setSeed(seed);
 	}
+
+	/**
+	 * @return The generator used by random() in threads without their own streams (its state
+	 * 		can be saved and restored, eg when simulations are checkpointed)
+	 */
+	public static StatefulRandom getSharedRandom() {
+		return ourRandom;
+	}
+
+	/**
+	 * @return The generator used by random() in the calling thread
+	 */
+	public static Random getRandom() {
+		Random result = ourThreadRandom.get();
+		return result == null ? ourRandom : result;
+	}
+
+	/**
+	 * Gives the calling thread its own random stream, so that work in different threads
+	 * (eg building different ensembles) is reproducible regardless of scheduling.
+	 *
+	 * @param random Generator to be used by random() in the calling thread, or null to
+	 * 		go back to the shared generator
+	 * @return The thread's previous generator (null if it was using the shared one), so that
+	 * 		it can be restored afterwards
+	 */
+	public static Random setThreadRandom(Random random) {
+		Random previous = ourThreadRandom.get();
+		ourThreadRandom.set(random);
+		return previous;
+	}
+
+	/**
+	 * @return True if the calling thread has its own random stream
+	 */
+	public static boolean hasThreadRandom() {
+		return ourThreadRandom.get() != null;
+	}
+
+	/**
+	 * Derives an independent stream from a model seed and a path (eg "Model/Sub/Ensemble"),
+	 * so that each part of a model gets the same random numbers no matter in which order,
+	 * or on which thread, the parts are built.
+	 *
+	 * @param seed Model seed
+	 * @param path Path of the part of the model that will use the stream
+	 * @return A new generator seeded from the seed and path
+	 */
+	public static Random makeStream(long seed, String path) {
+		long h = mix(seed + GOLDEN_GAMMA);
+		for (int i = 0; i < path.length(); i++) {
+			h = mix(h + GOLDEN_GAMMA * (path.charAt(i) + 1));
+		}
+		return new Random(h);
+	}
+
+	//SplitMix64 finalizer
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
 	
 }
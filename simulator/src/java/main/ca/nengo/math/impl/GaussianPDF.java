@@ -150,8 +150,10 @@ public class GaussianPDF implements PDF {
 	public float[] sample() {
 		float normal = 0;
 		
-		// 2 are generated at a time
-		if (nextAvailable) {
+		// 2 are generated at a time (but a spare can't be shared between per-thread streams)
+		if (PDFTools.hasThreadRandom()) {
+			normal = doSample()[0];
+		} else if (nextAvailable) {
 			normal = nextNormal;
 			nextAvailable = false;
 		} else {
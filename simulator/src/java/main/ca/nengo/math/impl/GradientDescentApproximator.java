@@ -36,7 +36,8 @@ import ca.nengo.util.MU;
 /**
  * A LinearApproximator that searches for coefficients by descending an error gradient.
  * This method is slower and less powerful than WeightedCostApproximator, but
- * constraints on coefficients are allowed.
+ * constraints on coefficients are allowed. For sign constraints, SignConstrainedApproximator
+ * is much faster.
  *
  * @author Bryan Tripp
  */
@@ -148,12 +149,17 @@ public class GradientDescentApproximator implements LinearApproximator {
 
 		boolean stuck = false;
 		boolean done = false;
+		float[] norms = new float[myValues.length];
+		for (int j = 0; j < myValues.length; j++) {
+			norms[j] = MU.prod(myValues[j], myValues[j]);
+		}
+
 		float[] error = findError(targetValues, result);
+		boolean debug = ourLogger.isDebugEnabled();
 		for (int i = 0; i < myMaxIterations && !stuck && !done; i++) {
 			for (int j = 0; j < myValues.length; j++) {
-				float norm = MU.prod(myValues[j], myValues[j]);
-				if (norm > 0) {
-					result[j] -= myRate * MU.prod(error, myValues[j]) / norm; //(float) myEvalPoints.length;
+				if (norms[j] > 0) {
+					result[j] -= myRate * MU.prod(error, myValues[j]) / norms[j]; //(float) myEvalPoints.length;
 				}
 			}
 			stuck = myConstraints.correct(result);
@@ -161,7 +167,9 @@ public class GradientDescentApproximator implements LinearApproximator {
 			error = findError(targetValues, result);
 			float mse = MU.prod(error, error) / error.length;
 			done = mse < myTolerance;
-			ourLogger.debug("Iteration: " + i + "  MSE: " + mse + " Stuck: " + stuck);
+			if (debug) {
+				ourLogger.debug("Iteration: " + i + "  MSE: " + mse + " Stuck: " + stuck);
+			}
 		}
 
 		return result;
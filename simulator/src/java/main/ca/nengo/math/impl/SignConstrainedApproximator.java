@@ -0,0 +1,559 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "SignConstrainedApproximator.java". Description:
+"A LinearApproximator that finds least-squares coefficients that all have the same sign"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.math.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import ca.nengo.math.ApproximatorFactory;
+import ca.nengo.math.Function;
+import ca.nengo.math.LinearApproximator;
+import ca.nengo.util.MU;
+
+/**
+ * <p>A LinearApproximator that finds least-squares coefficients that all have the same sign
+ * (non-negative least squares, or non-positive with the sign flipped). This is for models
+ * that respect Dale's law, eg with purely excitatory or inhibitory projections.</p>
+ *
+ * <p>The Gram matrix GAMMA_ij = < a_i(x) a_j(x) > is computed once at construction, with
+ * the variance of the given noise added to its diagonal as regularization (the expected
+ * effect of the noise that WeightedCostApproximator adds to values). Each target then costs
+ * one pass over the evaluation points, to find UPSILON_i = < t(x) a_i(x) >, after which
+ * an active-set (Lawson-Hanson) search on GAMMA runs without touching the evaluation points
+ * again. Each solve starts from the previous solution's set of non-zero coefficients, which
+ * is usually close (eg successive dimensions of a vector function). Multiple targets can be
+ * solved on multiple threads with findCoefficients(Function[]).</p>
+ *
+ * <p>This replaces GradientDescentApproximator with CoefficientsSameSign constraints, which
+ * solves the same problem much more slowly.</p>
+ *
+ * @author agent
+ */
+public class SignConstrainedApproximator implements LinearApproximator {
+
+	private static final long serialVersionUID = 1L;
+
+	private static ExecutorService ourExecutor;
+
+	private float[][] myEvalPoints;
+	private float[][] myValues;
+	private boolean myPositive;
+	private double[][] myGamma;
+	private int myMaxIterations;
+	private float myTolerance;
+	private int myNumThreads;
+	private double[] myLastSolution;
+
+	/**
+	 * @param evaluationPoints Points at which error is evaluated (should be uniformly
+	 * 		distributed, as the sum of error at these points is treated as an integral
+	 * 		over the domain of interest).
+	 * @param values The values of whatever functions are being combined, at the
+	 * 		evaluationPoints. Commonly neuron firing rates. The first dimension makes up
+	 * 		the list of functions, and the second the values of these functions at each
+	 * 		evaluation point.
+	 * @param positive True if coefficients must be >= 0; false if they must be <= 0
+	 * @param noise Standard deviation of noise on values, as a proportion of the maximum
+	 * 		absolute value over all values (regularizes the solution)
+	 */
+	public SignConstrainedApproximator(float[][] evaluationPoints, float[][] values, boolean positive, float noise) {
+		assert MU.isMatrix(evaluationPoints);
+		assert MU.isMatrix(values);
+		assert evaluationPoints.length == values[0].length;
+
+		myEvalPoints = evaluationPoints;
+		myValues = values;
+		myPositive = positive;
+		myMaxIterations = 1000;
+		myTolerance = 1e-7f;
+		myNumThreads = Runtime.getRuntime().availableProcessors();
+		myGamma = findGamma(values, noise);
+	}
+
+	private static double[][] findGamma(float[][] values, float noise) {
+		int n = values.length;
+		int m = values[0].length;
+
+		float maxAbs = 0;
+		for (int i = 0; i < n; i++) {
+			for (int k = 0; k < m; k++) {
+				maxAbs = Math.max(maxAbs, Math.abs(values[i][k]));
+			}
+		}
+		double variance = (noise * maxAbs) * (noise * maxAbs);
+
+		double[][] result = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			float[] vi = values[i];
+			for (int j = i; j < n; j++) {
+				float[] vj = values[j];
+				double sum = 0;
+				for (int k = 0; k < m; k++) {
+					sum += vi[k] * vj[k];
+				}
+				result[i][j] = sum / m;
+				result[j][i] = result[i][j];
+			}
+			result[i][i] += variance;
+		}
+		return result;
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#getEvalPoints()
+	 */
+	public float[][] getEvalPoints() {
+		return myEvalPoints;
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#getValues()
+	 */
+	public float[][] getValues() {
+		return myValues;
+	}
+
+	/**
+	 * @return True if coefficients are constrained to be >= 0; false if <= 0
+	 */
+	public boolean getPositive() {
+		return myPositive;
+	}
+
+	/**
+	 * @return Maximum number of coefficients freed from the bound per solution
+	 */
+	public int getMaxIterations() {
+		return myMaxIterations;
+	}
+
+	/**
+	 * @param max New maximum number of coefficients freed from the bound per solution
+	 */
+	public void setMaxIterations(int max) {
+		myMaxIterations = max;
+	}
+
+	/**
+	 * @return Threshold on the error gradient at which a solution is accepted, relative to the
+	 * 		largest correlation between a component and the target
+	 */
+	public float getTolerance() {
+		return myTolerance;
+	}
+
+	/**
+	 * @param tolerance New threshold on the error gradient at which a solution is accepted,
+	 * 		relative to the largest correlation between a component and the target
+	 */
+	public void setTolerance(float tolerance) {
+		myTolerance = tolerance;
+	}
+
+	/**
+	 * @return Maximum number of threads used by findCoefficients(Function[])
+	 */
+	public int getNumThreads() {
+		return myNumThreads;
+	}
+
+	/**
+	 * @param numThreads Maximum number of threads used by findCoefficients(Function[])
+	 */
+	public void setNumThreads(int numThreads) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed");
+		}
+		myNumThreads = numThreads;
+	}
+
+	/**
+	 * @see ca.nengo.math.LinearApproximator#findCoefficients(ca.nengo.math.Function)
+	 */
+	public float[] findCoefficients(Function target) {
+		double[] solution = solve(getUpsilon(target), myLastSolution);
+		myLastSolution = solution;
+		return toCoefficients(solution);
+	}
+
+	/**
+	 * Finds coefficients for several targets, dividing them among up to getNumThreads()
+	 * threads. Targets are evaluated on the calling thread, so they needn't be thread-safe.
+	 *
+	 * @param targets Functions to approximate
+	 * @return Coefficients for each target (first dimension corresponds to targets)
+	 */
+	public float[][] findCoefficients(Function[] targets) {
+		final double[][] upsilons = new double[targets.length][];
+		for (int i = 0; i < targets.length; i++) {
+			upsilons[i] = getUpsilon(targets[i]);
+		}
+
+		final double[][] solutions = new double[targets.length][];
+		int numThreads = Math.min(myNumThreads, targets.length);
+		if (numThreads <= 1) {
+			for (int i = 0; i < targets.length; i++) {
+				solutions[i] = solve(upsilons[i], i == 0 ? myLastSolution : solutions[i-1]);
+			}
+		} else {
+			//contiguous blocks, so that each solution after the first in a block is warm-started
+			ExecutorService executor = getExecutor();
+			try {
+				List<Future<?>> futures = new ArrayList<Future<?>>(numThreads);
+				for (int t = 0; t < numThreads; t++) {
+					final int start = t * targets.length / numThreads;
+					final int end = (t+1) * targets.length / numThreads;
+					final double[] warm = myLastSolution;
+					futures.add(executor.submit(new Callable<Object>() {
+						public Object call() {
+							for (int i = start; i < end; i++) {
+								solutions[i] = solve(upsilons[i], i == start ? warm : solutions[i-1]);
+							}
+							return null;
+						}
+					}));
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while finding coefficients", e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Failed to find coefficients", e.getCause());
+			}
+		}
+
+		float[][] result = new float[targets.length][];
+		for (int i = 0; i < targets.length; i++) {
+			result[i] = toCoefficients(solutions[i]);
+		}
+		if (targets.length > 0) {
+			myLastSolution = solutions[targets.length - 1];
+		}
+		return result;
+	}
+
+	//shared by all approximators; blocks beyond the number of processors wait for a thread
+	private static synchronized ExecutorService getExecutor() {
+		if (ourExecutor == null) {
+			ourExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				private int myCount = 0;
+				public synchronized Thread newThread(Runnable r) {
+					Thread result = new Thread(r, "SignConstrainedApproximator " + myCount++);
+					result.setDaemon(true);
+					return result;
+				}
+			});
+		}
+		return ourExecutor;
+	}
+
+	//correlations between target and components, with sign flipped if coefficients are to be negative
+	private double[] getUpsilon(Function target) {
+		float[] targetValues = new float[myEvalPoints.length];
+		for (int k = 0; k < targetValues.length; k++) {
+			targetValues[k] = target.map(myEvalPoints[k]);
+		}
+
+		double[] result = new double[myValues.length];
+		for (int i = 0; i < myValues.length; i++) {
+			float[] vi = myValues[i];
+			double sum = 0;
+			for (int k = 0; k < targetValues.length; k++) {
+				sum += vi[k] * targetValues[k];
+			}
+			result[i] = (myPositive ? sum : -sum) / targetValues.length;
+		}
+		return result;
+	}
+
+	/*
+	 * Active-set (Lawson-Hanson) solution of min x'Gx/2 - b'x subject to x >= 0, working on
+	 * the Gram matrix as in Bro & de Jong's fast NNLS. The Cholesky factor of the passive
+	 * (free) block is extended a row at a time as coefficients are freed, and refactored
+	 * when coefficients return to the bound.
+	 */
+	private double[] solve(double[] b, double[] start) {
+		int n = b.length;
+		double[] x = new double[n];
+		int[] passive = new int[n];
+		boolean[] free = new boolean[n];
+		boolean[] dependent = new boolean[n];
+		double[][] factor = new double[n][];
+		int p = 0;
+
+		if (start != null) {
+			for (int j = 0; j < n; j++) {
+				if (start[j] > 0) {
+					x[j] = start[j];
+					passive[p++] = j;
+					free[j] = true;
+				}
+			}
+			p = factor(factor, passive, free, dependent, x, p);
+			p = makeFeasible(x, b, factor, passive, free, dependent, p);
+		}
+
+		double scale = 0;
+		for (int i = 0; i < n; i++) {
+			scale = Math.max(scale, Math.abs(b[i]));
+		}
+		double threshold = myTolerance * scale;
+
+		for (int iteration = 0; iteration < myMaxIterations; iteration++) {
+			//free the bound coefficient with the steepest descent direction
+			int best = -1;
+			double bestGradient = threshold;
+			for (int j = 0; j < n; j++) {
+				if (!free[j] && !dependent[j]) {
+					double[] gj = myGamma[j];
+					double negGradient = b[j];
+					for (int r = 0; r < p; r++) {
+						negGradient -= gj[passive[r]] * x[passive[r]];
+					}
+					if (negGradient > bestGradient) {
+						best = j;
+						bestGradient = negGradient;
+					}
+				}
+			}
+			if (best < 0) {
+				break;
+			}
+
+			passive[p] = best;
+			free[best] = true;
+			if (addRow(factor, passive, p)) {
+				p++;
+				p = makeFeasible(x, b, factor, passive, free, dependent, p);
+			} else {
+				free[best] = false;
+				dependent[best] = true;
+			}
+		}
+
+		return x;
+	}
+
+	/*
+	 * Moves x toward the unconstrained solution on the passive set, returning coefficients that
+	 * reach zero to the bound, until that solution is feasible. Returns the new passive count.
+	 */
+	private int makeFeasible(double[] x, double[] b, double[][] factor, int[] passive, boolean[] free,
+			boolean[] dependent, int p) {
+		while (p > 0) {
+			double[] s = solve(factor, passive, p, b);
+
+			double alpha = 1;
+			int blocking = -1;
+			for (int r = 0; r < p; r++) {
+				if (s[r] <= 0) {
+					double xj = x[passive[r]];
+					double a = xj / (xj - s[r]);
+					if (a < alpha) {
+						alpha = a;
+						blocking = r;
+					}
+				}
+			}
+
+			if (blocking < 0) {
+				for (int r = 0; r < p; r++) {
+					x[passive[r]] = s[r];
+				}
+				return p;
+			}
+
+			for (int r = 0; r < p; r++) {
+				int j = passive[r];
+				x[j] += alpha * (s[r] - x[j]);
+			}
+			x[passive[blocking]] = 0;
+
+			int kept = 0;
+			for (int r = 0; r < p; r++) {
+				int j = passive[r];
+				if (x[j] > 0) {
+					passive[kept++] = j;
+				} else {
+					x[j] = 0;
+					free[j] = false;
+				}
+			}
+			p = factor(factor, passive, free, dependent, x, kept);
+		}
+		return p;
+	}
+
+	//Cholesky factorization of the passive block from scratch, dropping dependent coefficients
+	private int factor(double[][] factor, int[] passive, boolean[] free, boolean[] dependent, double[] x, int p) {
+		int kept = 0;
+		for (int r = 0; r < p; r++) {
+			passive[kept] = passive[r];
+			if (addRow(factor, passive, kept)) {
+				kept++;
+			} else {
+				int j = passive[r];
+				free[j] = false;
+				dependent[j] = true;
+				x[j] = 0;
+			}
+		}
+		return kept;
+	}
+
+	//extends the Cholesky factor by row r; false if that coefficient is (nearly) linearly dependent on the others
+	private boolean addRow(double[][] factor, int[] passive, int r) {
+		double[] row = new double[r + 1];
+		double[] gj = myGamma[passive[r]];
+		for (int c = 0; c < r; c++) {
+			double[] other = factor[c];
+			double sum = gj[passive[c]];
+			for (int k = 0; k < c; k++) {
+				sum -= row[k] * other[k];
+			}
+			row[c] = sum / other[c];
+		}
+		double diagonal = gj[passive[r]];
+		for (int k = 0; k < r; k++) {
+			diagonal -= row[k] * row[k];
+		}
+		if (!(diagonal > 1e-12 * gj[passive[r]])) {
+			return false;
+		}
+		row[r] = Math.sqrt(diagonal);
+		factor[r] = row;
+		return true;
+	}
+
+	//solves G_PP s = b_P given the Cholesky factor of G_PP
+	private static double[] solve(double[][] factor, int[] passive, int p, double[] b) {
+		double[] y = new double[p];
+		for (int r = 0; r < p; r++) {
+			double sum = b[passive[r]];
+			double[] row = factor[r];
+			for (int k = 0; k < r; k++) {
+				sum -= row[k] * y[k];
+			}
+			y[r] = sum / row[r];
+		}
+		for (int r = p - 1; r >= 0; r--) {
+			double sum = y[r];
+			for (int k = r + 1; k < p; k++) {
+				sum -= factor[k][r] * y[k];
+			}
+			y[r] = sum / factor[r][r];
+		}
+		return y;
+	}
+
+	private float[] toCoefficients(double[] solution) {
+		float[] result = new float[solution.length];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = (float) (myPositive ? solution[i] : -solution[i]);
+		}
+		return result;
+	}
+
+	@Override
+	public LinearApproximator clone() throws CloneNotSupportedException {
+		SignConstrainedApproximator result = (SignConstrainedApproximator) super.clone();
+		result.myEvalPoints = MU.clone(myEvalPoints);
+		result.myValues = MU.clone(myValues);
+		result.myGamma = myGamma; //not modified after construction
+		result.myLastSolution = null;
+		return result;
+	}
+
+	/**
+	 * An ApproximatorFactory that produces SignConstrainedApproximators.
+	 *
+	 * @author agent
+	 */
+	public static class Factory implements ApproximatorFactory {
+
+		private static final long serialVersionUID = 1L;
+
+		private boolean myPositive;
+		private float myNoise;
+
+		/**
+		 * @param positive As in SignConstrainedApproximator constructor
+		 * @param noise As in SignConstrainedApproximator constructor
+		 */
+		public Factory(boolean positive, float noise) {
+			myPositive = positive;
+			myNoise = noise;
+		}
+
+		/**
+		 * @return True if coefficients are constrained to be >= 0; false if <= 0
+		 */
+		public boolean getPositive() {
+			return myPositive;
+		}
+
+		/**
+		 * @param positive True if coefficients are to be constrained to be >= 0; false if <= 0
+		 */
+		public void setPositive(boolean positive) {
+			myPositive = positive;
+		}
+
+		/**
+		 * @return Noise on component functions (proportion of largest value over all functions)
+		 */
+		public float getNoise() {
+			return myNoise;
+		}
+
+		/**
+		 * @param noise Noise on component functions (proportion of largest value over all functions)
+		 */
+		public void setNoise(float noise) {
+			myNoise = noise;
+		}
+
+		/**
+		 * @see ca.nengo.math.ApproximatorFactory#getApproximator(float[][], float[][])
+		 */
+		public LinearApproximator getApproximator(float[][] evalPoints, float[][] values) {
+			return new SignConstrainedApproximator(evalPoints, values, myPositive, myNoise);
+		}
+
+		@Override
+		public ApproximatorFactory clone() throws CloneNotSupportedException {
+			return (ApproximatorFactory) super.clone();
+		}
+	}
+
+}
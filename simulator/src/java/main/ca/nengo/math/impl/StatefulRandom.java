@@ -0,0 +1,126 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "StatefulRandom.java". Description:
+"A Random whose complete state can be read and restored"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.math.impl;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A Random whose complete state can be read and restored, so that a simulation can be
+ * checkpointed and resumed with the same random numbers. It produces exactly the same
+ * sequences as java.util.Random (it uses the same documented algorithm) for a given seed.</p>
+ *
+ * <p>Like java.util.Random, it is safe to share between threads.</p>
+ *
+ * @author agent
+ */
+public class StatefulRandom extends Random {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+
+	//no initializer, because Random's constructor calls setSeed() before subclass fields are initialized
+	private AtomicLong mySeed;
+	private double myNextNextGaussian;
+	private boolean myHaveNextNextGaussian;
+
+	/**
+	 * Uses a seed that is very likely to differ from other instances (as does Random()).
+	 */
+	public StatefulRandom() {
+		super();
+	}
+
+	/**
+	 * @param seed Initial seed
+	 */
+	public StatefulRandom(long seed) {
+		super(seed);
+	}
+
+	/**
+	 * @see java.util.Random#setSeed(long)
+	 */
+	public synchronized void setSeed(long seed) {
+		if (mySeed == null) {
+			mySeed = new AtomicLong();
+		}
+		mySeed.set((seed ^ MULTIPLIER) & MASK);
+		myHaveNextNextGaussian = false;
+	}
+
+	/**
+	 * @see java.util.Random#next(int)
+	 */
+	protected int next(int bits) {
+		long oldSeed, nextSeed;
+		do {
+			oldSeed = mySeed.get();
+			nextSeed = (oldSeed * MULTIPLIER + ADDEND) & MASK;
+		} while (!mySeed.compareAndSet(oldSeed, nextSeed));
+		return (int) (nextSeed >>> (48 - bits));
+	}
+
+	/**
+	 * @see java.util.Random#nextGaussian()
+	 */
+	public synchronized double nextGaussian() {
+		if (myHaveNextNextGaussian) {
+			myHaveNextNextGaussian = false;
+			return myNextNextGaussian;
+		}
+
+		double v1, v2, s;
+		do {
+			v1 = 2 * nextDouble() - 1;
+			v2 = 2 * nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while (s >= 1 || s == 0);
+		double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+		myNextNextGaussian = v2 * multiplier;
+		myHaveNextNextGaussian = true;
+		return v1 * multiplier;
+	}
+
+	/**
+	 * @return Current state: the internal seed, the bits of the cached Gaussian sample, and 1
+	 * 		if the cached sample is valid (otherwise 0)
+	 */
+	public synchronized long[] getState() {
+		return new long[]{mySeed.get(), Double.doubleToRawLongBits(myNextNextGaussian), myHaveNextNextGaussian ? 1 : 0};
+	}
+
+	/**
+	 * @param state A state returned by getState()
+	 */
+	public synchronized void setState(long[] state) {
+		mySeed.set(state[0]);
+		myNextNextGaussian = Double.longBitsToDouble(state[1]);
+		myHaveNextNextGaussian = state[2] != 0;
+	}
+}
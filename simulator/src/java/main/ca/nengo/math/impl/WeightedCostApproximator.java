@@ -66,30 +66,35 @@ public class WeightedCostApproximator implements LinearApproximator {
 	private double[][] myGammaInverse;
 
 	private static boolean myUseGPU = false;
-	private static boolean canUseGPU;
-	private static String myGPUErrorMessage;
 
-	static {
-		try{
-			System.loadLibrary("NengoUtilsGPU");
-			canUseGPU = true;
-
-			if(!hasGPU())
-			{
-				myGPUErrorMessage = "No CUDA-enabled GPU detected.";
-				System.out.println(myGPUErrorMessage);
-				canUseGPU = false;
+	/**
+	 * Loads the native library the first time GPU support is queried, rather than
+	 * whenever this class is loaded (most sessions never use the GPU).
+	 */
+	private static class NativeSupport {
+		static final boolean AVAILABLE;
+		static final String ERROR_MESSAGE;
+
+		static {
+			boolean available = false;
+			String message = null;
+			try {
+				System.loadLibrary("NengoUtilsGPU");
+				available = hasGPU();
+				if (!available) {
+					message = "No CUDA-enabled GPU detected.";
+				}
+			} catch (UnsatisfiedLinkError e) {
+				message = "Couldn't load native library NengoUtilsGPU.";
+			} catch (Exception e) {
+				message = e.getMessage();
+				ourLogger.warn("Error initializing GPU support", e);
 			}
-
-		}catch(java.lang.UnsatisfiedLinkError e){
-			canUseGPU = false;
-			myGPUErrorMessage = "Couldn't load native library NengoUtilsGPU.";
-			System.out.println(myGPUErrorMessage);
-		}
-		catch(Exception e){
-			canUseGPU = false;
-			myGPUErrorMessage = e.getMessage();
-			System.out.println(e.getStackTrace());
+			if (message != null) {
+				ourLogger.info(message);
+			}
+			AVAILABLE = available;
+			ERROR_MESSAGE = message;
 		}
 	}
 
@@ -104,15 +109,21 @@ public class WeightedCostApproximator implements LinearApproximator {
 	 * @return Using the GPU?
 	 */
 	public static boolean getUseGPU() {
-		return canUseGPU && myUseGPU;
+		return myUseGPU && NativeSupport.AVAILABLE;
 	}
-	
+
+	/**
+	 * @return True if the native GPU library loaded and found a CUDA-enabled device
+	 */
 	public static boolean canUseGPU() {
-		return canUseGPU;
+		return NativeSupport.AVAILABLE;
 	}
-	
+
+	/**
+	 * @return Reason the GPU can't be used, or null if it can
+	 */
 	public static String getGPUErrorMessage() {
-		return myGPUErrorMessage;
+		return NativeSupport.ERROR_MESSAGE;
 	}
 
 	private static native boolean hasGPU();
@@ -190,6 +190,10 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 			mySpikePattern = new SpikePatternImpl(myNodes.length);
 		}
 
+		if (runNodesTogether(startTime, endTime)) {
+			return;
+		}
+
 		for (int i = 0; i < myNodes.length; i++) {
 			myNodes[i].run(startTime, endTime);
 
@@ -211,6 +215,19 @@ public abstract class AbstractEnsemble implements Ensemble, Probeable, VisiblyMu
 		}
 	}
 
+	/**
+	 * Gives subclasses a chance to run all Nodes in a single pass, rather than calling run()
+	 * on each one. Spikes are not collected from Nodes that are run this way.
+	 *
+	 * @param startTime Simulation time at start of step
+	 * @param endTime Simulation time at end of step
+	 * @return True if the Nodes have been run; false if they should be run individually
+	 * @throws SimulationException if a problem is encountered while running the Nodes
+	 */
+	protected boolean runNodesTogether(float startTime, float endTime) throws SimulationException {
+		return false;
+	}
+
 	/**
 	 * Resets each Node in this Ensemble.
 	 *
@@ -46,6 +46,7 @@ import ca.nengo.model.nef.impl.NEFEnsembleImpl;
 import ca.nengo.model.nef.impl.DecodedOrigin;
 import ca.nengo.model.plasticity.impl.PESTermination;
 import ca.nengo.model.plasticity.impl.PlasticEnsembleImpl;
+import ca.nengo.sim.SimulationState;
 import ca.nengo.util.MU;
 import ca.nengo.util.TimeSeries;
 import ca.nengo.util.impl.TimeSeriesImpl;
@@ -540,7 +541,7 @@ public class NetworkArrayImpl extends NetworkImpl {
 	 * Origin representing the concatenation of origins on each of the
 	 * ensembles within the network array.
 	 */
-	public class ArrayOrigin extends BasicOrigin {
+	public class ArrayOrigin extends BasicOrigin implements SimulationState.Cache {
 
 		private static final long serialVersionUID = 1L;
 		
@@ -548,6 +549,8 @@ public class NetworkArrayImpl extends NetworkImpl {
 		private NetworkArrayImpl myParent;
 		private DecodedOrigin[] myOrigins;
 		private int myDimensions;
+		private transient InstantaneousOutput[] mySources;
+		private transient InstantaneousOutput myOutput;
 
 		public ArrayOrigin(NetworkArrayImpl parent, String name, DecodedOrigin[] origins) {
 			myParent = parent;
@@ -565,57 +568,107 @@ public class NetworkArrayImpl extends NetworkImpl {
 		public int getDimensions() {
 			return myDimensions;
 		}
+
+		/**
+		 * @return The origins of each ensemble, in the order of their concatenation
+		 */
+		public DecodedOrigin[] getNodeOrigins() {
+			return myOrigins;
+		}
+
+		/**
+		 * Drops the cached output, eg after a SimulationState has been restored into the
+		 * ensemble origins.
+		 *
+		 * @see ca.nengo.sim.SimulationState.Cache#invalidate()
+		 */
+		public void invalidate() {
+			mySources = null;
+			myOutput = null;
+		}
 		
+		/**
+		 * @see ca.nengo.model.Origin#setValues(ca.nengo.model.InstantaneousOutput)
+		 */
+		@Override
+		public void setValues(InstantaneousOutput values) {
+			if (values instanceof RealOutput) {
+				setValues((RealOutput) values);
+			}
+		}
+
 		public void setValues(RealOutput values) {
 			float time = values.getTime();
 			Units units = values.getUnits();
-			float[] vals = ((RealOutput)values).getValues();
+			float[] vals = values.getValues();
 			
 			int d=0;
 			for(int i=0; i < myOrigins.length; i++) {
 				float[] ovals = new float[myOrigins[i].getDimensions()];
-				for(int j=0; j < ovals.length; j++)
-					ovals[j] = vals[d+j];
-				d += myOrigins[i].getDimensions();
+				System.arraycopy(vals, d, ovals, 0, ovals.length);
+				d += ovals.length;
 				
 				myOrigins[i].setValues(new RealOutputImpl(ovals, units, time));
 			}
-			
 		}
 
+		/**
+		 * Concatenates the outputs of the ensemble origins. The result is cached until one of the
+		 * ensemble origins produces a new output, so all the projections and probes that read this
+		 * origin in a time step share one copy.
+		 *
+		 * @see ca.nengo.model.Origin#getValues()
+		 */
 		public InstantaneousOutput getValues() throws SimulationException {
-			InstantaneousOutput v0 = myOrigins[0].getValues();
-			
+			if (mySources == null) {
+				mySources = new InstantaneousOutput[myOrigins.length];
+			}
+			boolean changed = (myOutput == null);
+			for (int i = 0; i < myOrigins.length; i++) {
+				InstantaneousOutput source = myOrigins[i].getValues();
+				if (source != mySources[i]) {
+					mySources[i] = source;
+					changed = true;
+				}
+			}
+			if (changed) {
+				myOutput = concatenate(mySources);
+			}
+			return myOutput;
+		}
+
+		private InstantaneousOutput concatenate(InstantaneousOutput[] sources) {
+			InstantaneousOutput v0 = sources[0];
 			Units unit = v0.getUnits();
 			float time = v0.getTime();
 			
 			if(v0 instanceof PreciseSpikeOutputImpl) {
 				float[] vals = new float[myDimensions];
 				int d=0;
-				for(int i=0; i < myOrigins.length; i++) {
-					float[] ovals = ((PreciseSpikeOutputImpl)myOrigins[i].getValues()).getSpikeTimes();
-					for(int j=0; j < ovals.length; j++)
-						vals[d++] = ovals[j];
+				for(int i=0; i < sources.length; i++) {
+					float[] ovals = ((PreciseSpikeOutputImpl)sources[i]).getSpikeTimes();
+					System.arraycopy(ovals, 0, vals, d, ovals.length);
+					d += ovals.length;
 				}
 				
 				return new PreciseSpikeOutputImpl(vals, unit, time);
 			} else if(v0 instanceof RealOutputImpl) {
 				float[] vals = new float[myDimensions];
 				int d=0;
-				for(int i=0; i < myOrigins.length; i++) {
-					float[] ovals = ((RealOutputImpl)myOrigins[i].getValues()).getValues();
-					for(int j=0; j < ovals.length; j++)
-						vals[d++] = ovals[j];
+				for(int i=0; i < sources.length; i++) {
+					float[] ovals = ((RealOutputImpl)sources[i]).getValues();
+					System.arraycopy(ovals, 0, vals, d, ovals.length);
+					d += ovals.length;
 				}
 				
 				return new RealOutputImpl(vals, unit, time);
 			} else if(v0 instanceof SpikeOutputImpl) {
 				boolean[] vals = new boolean[myDimensions];
 				int d=0;
-				for(int i=0; i < myOrigins.length; i++) {
-					boolean[] ovals = ((SpikeOutputImpl)myOrigins[i].getValues()).getValues();
-					for(int j=0; j < ovals.length; j++)
-						vals[d++] = ovals[j];
+				for(int i=0; i < sources.length; i++) {
+					boolean[] ovals = ((SpikeOutputImpl)sources[i]).getValues();
+					System.arraycopy(ovals, 0, vals, d, ovals.length);
+					d += ovals.length;
 				}
 				
 				return new SpikeOutputImpl(vals, unit, time);
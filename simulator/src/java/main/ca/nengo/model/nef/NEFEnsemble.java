@@ -39,6 +39,7 @@ import ca.nengo.model.Termination;
 import ca.nengo.model.nef.impl.BiasOrigin;
 import ca.nengo.model.nef.impl.BiasTermination;
 import ca.nengo.model.nef.impl.DecodedTermination;
+import ca.nengo.model.nef.impl.EnsembleAnalysis;
 
 /**
  * <p>A group of Nodes that represent a scalar, vector, or function, as
@@ -187,4 +188,9 @@ public interface NEFEnsemble extends DecodableEnsemble {
 	 */
 	public void releaseMemory();
 
+	/**
+	 * @return Tuning curves and decoding errors of this ensemble, cached until it changes
+	 */
+	public EnsembleAnalysis getAnalysis();
+
 }
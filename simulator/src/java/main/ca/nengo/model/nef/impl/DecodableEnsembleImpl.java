@@ -75,6 +75,7 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
 
 	protected Map<String, DecodedOrigin> myDecodedOrigins;
 	protected Map<String, DecodedTermination> myDecodedTerminations;
+	protected transient int myDecodedTerminationsVersion; //incremented when myDecodedTerminations changes
 
 	private ApproximatorFactory myApproximatorFactory;
 	private Map<String, LinearApproximator> myApproximators;
@@ -284,6 +285,7 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
         }
 
         myDecodedTerminations.put(name, result);
+        myDecodedTerminationsVersion++;
         fireVisibleChangeEvent();
         return result;
     }
@@ -331,6 +333,7 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
         }
 
         myDecodedTerminations.put(name, result);
+        myDecodedTerminationsVersion++;
         fireVisibleChangeEvent();
         return result;
     }
@@ -341,6 +344,7 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
     public DecodedTermination removeDecodedTermination(String name) throws StructuralException {
         if (myDecodedTerminations.containsKey(name)) {
             DecodedTermination result = myDecodedTerminations.remove(name);
+            myDecodedTerminationsVersion++;
             fireVisibleChangeEvent();
 
             return result;
@@ -460,12 +464,21 @@ public class DecodableEnsembleImpl extends PlasticEnsembleImpl implements Decoda
 		super.run(startTime, endTime);
 
 		for (DecodedOrigin o : myDecodedOrigins.values()) {
-            o.run(null, startTime, endTime);
+            o.run(null, getNodeValues(o.getNodeOrigin()), startTime, endTime);
         }
 
 		setTime(endTime);
 	}
 
+	/**
+	 * @param nodeOrigin Name of an Origin on each Node
+	 * @return Values of the named Origin on every Node after the last step, if a subclass has
+	 * 		them at hand (saving DecodedOrigins from querying each Node), otherwise null
+	 */
+	protected float[] getNodeValues(String nodeOrigin) {
+		return null;
+	}
+
 	/**
 	 * Allows subclasses to set the simulation time, which is used to support Probeable.
 	 * This is normally set in the run() method. Subclasses that override run() without
@@ -39,6 +39,7 @@ import ca.nengo.dynamics.impl.EulerIntegrator;
 import ca.nengo.math.Function;
 import ca.nengo.math.LinearApproximator;
 import ca.nengo.math.impl.FixedSignalFunction;
+import ca.nengo.math.impl.SignConstrainedApproximator;
 import ca.nengo.math.impl.WeightedCostApproximator;
 import ca.nengo.model.Ensemble;
 import ca.nengo.model.InstantaneousOutput;
@@ -58,8 +59,6 @@ import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.plasticity.ShortTermPlastic;
 import ca.nengo.util.MU;
 import ca.nengo.util.TimeSeries;
-import ca.nengo.util.VectorGenerator;
-import ca.nengo.util.impl.RandomHypersphereVG;
 import ca.nengo.util.impl.TimeSeries1DImpl;
 import ca.nengo.util.impl.TimeSeriesImpl;
 
@@ -94,6 +93,8 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	private float myTime;
 	private boolean myRequiredOnCPU;
 	private ExpressModel myExpressModel;
+	private transient float[] myActivities;
+	private transient float[] myActivityBuffer; //reused for activities read from the nodes
 
 	/**
 	 * With this constructor, decoding vectors are generated using default settings.
@@ -225,42 +226,29 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	}
 
 	/**
-	 * @return Mean-squared error of this origin over 500 randomly selected points
+	 * @return Mean-squared error of this origin over EnsembleAnalysis.ERROR_SAMPLES randomly
+	 * 		selected points (the same points until the ensemble changes)
 	 */
 	public float[] getError() {
-		return getError(500);
+		if (myNode instanceof NEFEnsemble) {
+			return ((NEFEnsemble) myNode).getAnalysis().getError(this).getDistortion();
+		} else {
+			ourLogger.warn("Can't calculate error of a DecodedOrigin unless it belongs to an NEFEnsemble");
+			return new float[getDimensions()];
+		}
 	}
 
 	/**
 	 * @param samples The number of input vectors the error is sampled over
 	 * @return Mean-squared error of this origin over randomly selected points
 	 */
-
 	public float[] getError(int samples){
-		float[] result = new float[getDimensions()];
-
 		if (myNode instanceof NEFEnsemble) {
-			NEFEnsemble ensemble = (NEFEnsemble) myNode;
-
-			VectorGenerator vg = new RandomHypersphereVG(false, 1, 0);
-			float[][] unscaled = vg.genVectors(samples, ensemble.getDimension());
-			float[][] input = new float[unscaled.length][];
-			for (int i = 0; i < input.length; i++) {
-				input[i] = MU.prodElementwise(unscaled[i], ensemble.getRadii());
-			}
-
-			float[][] idealOutput = NEFUtil.getOutput(this, input, SimulationMode.DIRECT);
-			float[][] actualOutput = NEFUtil.getOutput(this, input, SimulationMode.CONSTANT_RATE);
-
-			float[][] error = MU.transpose(MU.difference(actualOutput, idealOutput));
-			for (int i = 0; i < error.length; i++) {
-				result[i] = MU.prod(error[i], error[i]) / error[i].length;
-			}
+			return ((NEFEnsemble) myNode).getAnalysis().getError(this, samples).getDistortion();
 		} else {
 			ourLogger.warn("Can't calculate error of a DecodedOrigin unless it belongs to an NEFEnsemble");
+			return new float[getDimensions()];
 		}
-
-		return result;
 	}
 
 	/**
@@ -298,6 +286,7 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 		}
 
 		mySTPHistory = new float[myNodes.length];
+		myActivities = null;
 	}
 
 	private static float[][] findDecoders(Node[] nodes, Function[] functions, LinearApproximator approximator)  {
@@ -306,6 +295,16 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 			result[i] = new float[functions.length];
 		}
 
+		if (approximator instanceof SignConstrainedApproximator) {
+			float[][] coeffs = ((SignConstrainedApproximator) approximator).findCoefficients(functions);
+			for (int j = 0; j < functions.length; j++) {
+				for (int i = 0; i < nodes.length; i++) {
+					result[i][j] = coeffs[j][i];
+				}
+			}
+			return result;
+		}
+
 		for (int j = 0; j < functions.length; j++) {
 			float[] coeffs = approximator.findCoefficients(functions[j]);
 			for (int i = 0; i < nodes.length; i++) {
@@ -418,6 +417,16 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 		myDecoders = decoders;
 	}
 
+	//points the decoders at those of the Origin this was copied from (see NEFUtil.shareModelData())
+	void shareModelData(DecodedOrigin prototype) {
+		myDecoders = prototype.myDecoders;
+	}
+
+	//the arrays that shareModelData() shares (see NEFUtil.collectModelData())
+	Object[] getModelData() {
+		return new Object[]{myDecoders};
+	}
+
 	/**
 	 * @param mode Requested simulation mode
 	 */
@@ -444,6 +453,20 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	 * 		dimension of the functions provided in the constructor)
 	 */
 	public void run(float[] state, float startTime, float endTime) throws SimulationException {
+		run(state, null, startTime, endTime);
+	}
+
+	/**
+	 * As run(float[], float, float), but with the outputs of the Nodes already known.
+	 *
+	 * @param state See run(float[], float, float)
+	 * @param nodeValues Value of the node Origin of each Node at the end of this step (firing
+	 * 		rates in the case of spiking neurons), or null if the Nodes must be queried
+	 * @param startTime simulation time of timestep onset
+	 * @param endTime simulation time of timestep end
+	 * @throws SimulationException See run(float[], float, float)
+	 */
+	public void run(float[] state, float[] nodeValues, float startTime, float endTime) throws SimulationException {
 		if (state != null && state.length != myFunctions[0].getDimension()) {
 			throw new SimulationException("A state of dimension " + myFunctions[0].getDimension() + " was expected");
 		}
@@ -452,6 +475,7 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 		float stepSize = endTime - startTime;
 
 		mySTPHistory = new float[myNodes.length];
+		myActivities = null;
 		if (myMode == SimulationMode.DIRECT) {
 			for (int i = 0; i < values.length; i++) {
 				values[i] = myFunctions[i].map(state);
@@ -467,7 +491,22 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 			}
 			
 			values = myExpressModel.getOutput(startTime, state, values);
+		} else if (nodeValues != null) {
+			myActivities = nodeValues;
+			for (int i = 0; i < myNodes.length; i++) {
+				float val = nodeValues[i];
+				if (val != 0 || mySTPDynamicsTemplate != null) {
+					float[] decoder = getDynamicDecoder(i, val, startTime, endTime);
+					for (int j = 0; j < values.length; j++) {
+						values[j] += val * decoder[j];
+					}
+				}
+			}
 		} else {
+			if (myActivityBuffer == null || myActivityBuffer.length != myNodes.length) {
+				myActivityBuffer = new float[myNodes.length];
+			}
+			myActivities = myActivityBuffer;
 			for (int i = 0; i < myNodes.length; i++) {
 				try {
 					InstantaneousOutput o = myNodes[i].getOrigin(myNodeOrigin).getValues();
@@ -481,6 +520,7 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 						throw new Error("Node output is of type " + o.getClass().getName()
 							+ ". DecodedOrigin can only deal with RealOutput and SpikeOutput, so it apparently has to be updated");
 					}
+					myActivities[i] = val;
 
 					float[] decoder = getDynamicDecoder(i, val, startTime, endTime);
 					for (int j = 0; j < values.length; j++) {
@@ -515,6 +555,15 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 		return result;
 	}
 
+	/**
+	 * @return Activity of each Node (firing rate, or 1/dt for a spike) from which the current
+	 * 		output was decoded, or null if the output wasn't decoded from Node activity (eg
+	 * 		in DIRECT mode or after a reset). The array may be overwritten in the next step.
+	 */
+	public float[] getActivities() {
+		return myActivities;
+	}
+
 	protected TimeSeries getSTPHistory() {
 		if (mySTPHistory == null) {
             mySTPHistory = new float[myNodes.length];
@@ -555,7 +604,7 @@ public class DecodedOrigin implements Origin, Resettable, SimulationMode.ModeCon
 	/**
 	 * @return Name of Node-level Origin on which this DecodedOrigin is based
 	 */
-	protected String getNodeOrigin() {
+	public String getNodeOrigin() {
 		return myNodeOrigin;
 	}
 
@@ -94,6 +94,8 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 	private boolean myModulatory;
 	private float[][] myInitialState;
 	private boolean myValuesSet;
+	private transient NeuronWeights myNeuronWeights;
+	private transient float[] myZeroOutput; //output while NeuronWeights stand in for the dynamics
 
 	/**
 	 * @param node The parent Node
@@ -193,6 +195,9 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 		if (!myValuesSet) {
             myValuesSet = true;
         }
+		if (myNeuronWeights != null) {
+			myNeuronWeights.collect();
+		}
 	}
 
 	/**
@@ -204,6 +209,17 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 			setDynamics(myOutputDimension);
 		}
 
+		if (myNeuronWeights != null) {
+			//output goes straight to neurons (see getNeuronWeights())
+			myNeuronWeights.run(startTime, endTime);
+			myTime = endTime;
+			if (myZeroOutput == null || myZeroOutput.length != myOutputDimension) {
+				myZeroOutput = new float[myOutputDimension];
+			}
+			myOutputValues = myZeroOutput;
+			return;
+		}
+
 		if (!myValuesSet) {
 			ourLogger.warn("Input values not set on termination " + myName + ".  Assuming input of zero.");
 			setValues(new RealOutputImpl(new float[getDimensions()], Units.UNK, 0.0f));
@@ -228,6 +244,29 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 		myOutputValues = result;
 	}
 
+	/**
+	 * @return Weights through which this Termination's input bypasses its output (and goes
+	 * 		directly to the neurons of its NEFEnsemble), or null if the output is used as usual
+	 */
+	public NeuronWeights getNeuronWeights() {
+		return myNeuronWeights;
+	}
+
+	/**
+	 * While NeuronWeights are set, they stand in for the transform and dynamics of this
+	 * Termination, and getOutput() returns zeros. The NEFEnsemble adds the currents of the
+	 * NeuronWeights to each neuron's input instead. When they are removed, the states of the
+	 * dynamics are restored from them.
+	 *
+	 * @param weights Weights to use, or null to go back to the usual output
+	 */
+	public void setNeuronWeights(NeuronWeights weights) {
+		if (myNeuronWeights != null && myNeuronWeights != weights) {
+			myNeuronWeights.store(myTime);
+		}
+		myNeuronWeights = weights;
+	}
+
 	/**
 	 * This method should be called after run(...).
 	 *
@@ -265,6 +304,9 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 		resetInitialState();
 		myInputValues = new RealOutputImpl(new float[getDimensions()], Units.UNK, 0);
 		myValuesSet = false;
+		if (myNeuronWeights != null) {
+			myNeuronWeights.reset(randomize);
+		}
 	}
 
 	private void resetInitialState() {
@@ -314,6 +356,16 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 		return MU.clone(myTransform);
 	}
 
+	//points the transform at that of the Termination this was copied from (see NEFUtil.shareModelData())
+	void shareModelData(DecodedTermination prototype) {
+		myTransform = prototype.myTransform;
+	}
+
+	//the arrays that shareModelData() shares (see NEFUtil.collectModelData())
+	Object[] getModelData() {
+		return new Object[]{myTransform};
+	}
+
 	/**
 	 * @param transform New transform
 	 * @throws StructuralException If the transform is not a matrix or has the wrong size
@@ -388,6 +440,58 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
 		}
 	}
 
+	/**
+	 * @return Numerical integrator with which dynamics are solved
+	 */
+	public Integrator getIntegrator() {
+		return myIntegrator;
+	}
+
+	/**
+	 * Unlike getDynamics(), this does not disturb the state of the dynamics.
+	 *
+	 * @return Copies of the dynamics of each output dimension, in their current states
+	 */
+	public LinearSystem[] getDimensionDynamics() {
+		if (myDynamics == null) {
+			setDynamics(myOutputDimension);
+		}
+		LinearSystem[] result = new LinearSystem[myDynamics.length];
+		try {
+			for (int i = 0; i < result.length; i++) {
+				result[i] = (LinearSystem) myDynamics[i].clone();
+			}
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException(e);
+		}
+		return result;
+	}
+
+	/**
+	 * @param states Current states of the dynamics of each output dimension (eg as advanced
+	 * 		by something other than run())
+	 */
+	public void setDimensionStates(float[][] states) {
+		if (myDynamics == null) {
+			setDynamics(myOutputDimension);
+		}
+		if (states.length != myDynamics.length) {
+			throw new IllegalArgumentException("Must give one state vector for each output dimension");
+		}
+		for (int i = 0; i < states.length; i++) {
+			myDynamics[i].setState(states[i]);
+		}
+	}
+
+	/**
+	 * @param time Simulation time of output
+	 * @param output Output of the dynamics (eg as computed by something other than run())
+	 */
+	public void setOutput(float time, float[] output) {
+		myTime = time;
+		myOutputValues = output;
+	}
+
 	/**
 	 * @return Slowest time constant of dynamics, if dynamics are LTI, otherwise 0
 	 */
@@ -477,6 +581,8 @@ public class DecodedTermination implements Termination, Resettable, Probeable {
             }
 			result.myScalingTermination = myScalingTermination; //refer to same copy
 			result.myStaticBias = myStaticBias.clone();
+			result.myNeuronWeights = null;
+			result.myZeroOutput = null;
 			result.setNode(node);
 			return result;
 		} catch (StructuralException e) {
@@ -0,0 +1,478 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "EnsembleAnalysis.java". Description:
+"Constant-rate analysis of an NEFEnsemble: tuning curves, and the error of its DecodedOrigins"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.model.nef.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.nengo.math.ApproximatorFactory;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.WeightedCostApproximator;
+import ca.nengo.model.Noise;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.NEFNode;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.impl.LIFRateEngine;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+import ca.nengo.util.MU;
+import ca.nengo.util.VisiblyMutable;
+import ca.nengo.util.impl.RandomHypersphereVG;
+
+/**
+ * <p>Constant-rate analysis of an NEFEnsemble: tuning curves, and the error of its
+ * DecodedOrigins.</p>
+ *
+ * <p>Neuron activities are computed for all neurons and points at once. For LIF neurons this
+ * is done by an LIFRateEngine without running the neurons; other neurons are run one at a time
+ * in CONSTANT_RATE mode. Either way, noise on the neurons is ignored.</p>
+ *
+ * <p>Activities over the standard grids (tuning curves, the first axis, and a fixed set of
+ * random points for error estimates) are cached until the ensemble fires a change event (eg
+ * when neurons are added, or encoders or radii are changed). Changes that the ensemble doesn't
+ * see, such as the bias of a single neuron being edited, require a call to invalidate().
+ * Decoders are not cached, so errors always reflect the current decoders of an Origin.</p>
+ *
+ * @author agent
+ */
+public class EnsembleAnalysis implements VisiblyMutable.Listener {
+
+	/**
+	 * Number of random points over which decoding error is estimated
+	 */
+	public static final int ERROR_SAMPLES = 500;
+
+	private final NEFEnsemble myEnsemble;
+	private final Map<String, float[][]> myCache;
+	private float[][] myErrorPoints;
+	private Object myNodes; //nodes for which the cache is valid
+
+	/**
+	 * @param ensemble Ensemble to analyse. This analysis listens for changes to it.
+	 */
+	public EnsembleAnalysis(NEFEnsemble ensemble) {
+		myEnsemble = ensemble;
+		myCache = new HashMap<String, float[][]>();
+		ensemble.addChangeListener(this);
+	}
+
+	/**
+	 * @return The ensemble that is analysed
+	 */
+	public NEFEnsemble getEnsemble() {
+		return myEnsemble;
+	}
+
+	/**
+	 * Discards cached activities.
+	 *
+	 * @see ca.nengo.util.VisiblyMutable.Listener#changed(ca.nengo.util.VisiblyMutable.Event)
+	 */
+	public void changed(VisiblyMutable.Event e) {
+		invalidate();
+	}
+
+	/**
+	 * Discards cached activities, so that they are recomputed when next needed.
+	 */
+	public synchronized void invalidate() {
+		myCache.clear();
+		myErrorPoints = null;
+		myNodes = null;
+	}
+
+	/**
+	 * @param points Number of points in the grid
+	 * @return Evenly spaced points from -1 to 1, at which tuning curves are evaluated
+	 */
+	public static float[] getTuningInputs(int points) {
+		float[] result = new float[points];
+		for (int i = 0; i < points; i++) {
+			result[i] = -1f + (float) i * (2f / (float) (points-1));
+		}
+		return result;
+	}
+
+	/**
+	 * @return Radius of the encoded space in the direction of each neuron's encoder. Multiplying
+	 * 		a neuron's tuning inputs by this gives the distance from the origin along its encoder.
+	 */
+	public float[] getTuningRadii() {
+		float[][] encoders = myEnsemble.getEncoders();
+		float[] radii = myEnsemble.getRadii();
+		float[] result = new float[encoders.length];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = MU.pnorm(MU.prodElementwise(encoders[i], radii), 2);
+		}
+		return result;
+	}
+
+	/**
+	 * @param points Number of points along each curve
+	 * @return Firing rate of each neuron (first index) at each of getTuningInputs(points)
+	 * 		(second index). For a one-dimensional ensemble these are points along the axis (so
+	 * 		the curves of neurons with negative encoders decrease). Otherwise they are points
+	 * 		along each neuron's own encoder, scaled by the radii.
+	 */
+	public synchronized float[][] getTuningCurves(int points) {
+		String key = "tuning:" + points;
+		float[][] result = getCached(key);
+		if (result == null) {
+			float[] x = getTuningInputs(points);
+			float[][] encoders = myEnsemble.getEncoders();
+			float[][] radialInputs = new float[encoders.length][points];
+			for (int i = 0; i < encoders.length; i++) {
+				for (int j = 0; j < points; j++) {
+					radialInputs[i][j] = (myEnsemble.getDimension() == 1) ? x[j]*encoders[i][0] : x[j];
+				}
+			}
+			result = getRates(radialInputs, Neuron.AXON);
+			myCache.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @param points Number of points around the circle
+	 * @return Firing rate of each neuron (first index) at angles from -pi to pi (second index)
+	 * 		around the edge of the encoded space of a two-dimensional ensemble. The angle is
+	 * 		measured from the second axis towards the first.
+	 */
+	public synchronized float[][] getAngularTuningCurves(int points) {
+		if (myEnsemble.getDimension() != 2) {
+			throw new IllegalArgumentException("Angular tuning curves are only defined for two-dimensional ensembles");
+		}
+
+		String key = "angular:" + points;
+		float[][] result = getCached(key);
+		if (result == null) {
+			float[] x = getTuningInputs(points);
+			float[] radii = myEnsemble.getRadii();
+			float[][] state = new float[points][];
+			for (int j = 0; j < points; j++) {
+				double theta = x[j] * Math.PI;
+				state[j] = new float[]{(float) Math.sin(theta) * radii[0], (float) Math.cos(theta) * radii[1]};
+			}
+			result = getActivities(state, Neuron.AXON);
+			myCache.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @param points Number of points
+	 * @return Evenly spaced states from -radius to radius along the first axis of the encoded
+	 * 		space (a row per point)
+	 */
+	public float[][] getAxisPoints(int points) {
+		float radius = myEnsemble.getRadii()[0];
+		float[][] result = new float[points][];
+		for (int i = 0; i < points; i++) {
+			result[i] = new float[myEnsemble.getDimension()];
+			result[i][0] = -radius + (float) i * (2f*radius / (float) (points-1));
+		}
+		return result;
+	}
+
+	/**
+	 * @param points Number of points
+	 * @param nodeOrigin Name of the Node Origin to read (eg Neuron.AXON)
+	 * @return Output of each Node (first index) at each of getAxisPoints(points) (second index)
+	 */
+	public synchronized float[][] getAxisActivities(int points, String nodeOrigin) {
+		String key = "axis:" + points + ":" + nodeOrigin;
+		float[][] result = getCached(key);
+		if (result == null) {
+			result = getActivities(getAxisPoints(points), nodeOrigin);
+			myCache.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @param points States of the ensemble (a row per point), not cached
+	 * @param nodeOrigin Name of the Node Origin to read (eg Neuron.AXON)
+	 * @return Output of each Node (first index) at each point (second index)
+	 */
+	public float[][] getActivities(float[][] points, String nodeOrigin) {
+		float[][] encoders = myEnsemble.getEncoders();
+		float[] radii = myEnsemble.getRadii();
+		for (int i = 0; i < encoders.length; i++) {
+			for (int k = 0; k < radii.length; k++) {
+				encoders[i][k] /= radii[k];
+			}
+		}
+
+		float[][] radialInputs = new float[encoders.length][points.length];
+		for (int i = 0; i < encoders.length; i++) {
+			for (int j = 0; j < points.length; j++) {
+				radialInputs[i][j] = MU.prod(points[j], encoders[i]);
+			}
+		}
+		return getRates(radialInputs, nodeOrigin);
+	}
+
+	/**
+	 * @param origin A DecodedOrigin of the ensemble
+	 * @param points States of the ensemble (a row per point)
+	 * @return The ideal output of the Origin (its functions) at each point
+	 */
+	public static float[][] getIdealOutput(DecodedOrigin origin, float[][] points) {
+		Function[] functions = origin.getFunctions();
+		float[][] result = new float[points.length][functions.length];
+		for (int i = 0; i < points.length; i++) {
+			for (int j = 0; j < functions.length; j++) {
+				result[i][j] = functions[j].map(points[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param origin A DecodedOrigin of the ensemble
+	 * @param activities Output of each Node (first index) at each point (second index)
+	 * @return The static decoded output of the Origin at each point, ie without noise or
+	 * 		short-term plasticity
+	 */
+	public static float[][] getDecodedOutput(DecodedOrigin origin, float[][] activities) {
+		float[][] decoders = origin.getDecoders();
+		int n = activities.length == 0 ? 0 : activities[0].length;
+		float[][] result = new float[n][origin.getDimensions()];
+		for (int i = 0; i < activities.length; i++) {
+			float[] a = activities[i];
+			float[] d = decoders[i];
+			for (int j = 0; j < n; j++) {
+				if (a[j] != 0) {
+					float[] row = result[j];
+					for (int k = 0; k < d.length; k++) {
+						row[k] += a[j] * d[k];
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param origin A DecodedOrigin of the ensemble
+	 * @return Decoding error of the Origin over ERROR_SAMPLES random points in the encoded space.
+	 * 		The same points are used until the ensemble changes.
+	 */
+	public DecodingError getError(DecodedOrigin origin) {
+		float[][] points;
+		float[][] activities;
+		synchronized (this) {
+			String key = "error:" + origin.getNodeOrigin();
+			activities = getCached(key);
+			if (activities == null) {
+				if (myErrorPoints == null) {
+					myErrorPoints = getRandomPoints(ERROR_SAMPLES); //shared by the activities of all node origins
+				}
+				activities = getActivities(myErrorPoints, origin.getNodeOrigin());
+				myCache.put(key, activities);
+			}
+			points = myErrorPoints;
+		}
+		return getError(origin, points, activities);
+	}
+
+	/**
+	 * @param origin A DecodedOrigin of the ensemble
+	 * @param samples Number of new random points over which to estimate the error
+	 * @return Decoding error of the Origin over the given number of random points in the encoded
+	 * 		space (nothing is cached)
+	 */
+	public DecodingError getError(DecodedOrigin origin, int samples) {
+		float[][] points = getRandomPoints(samples);
+		return getError(origin, points, getActivities(points, origin.getNodeOrigin()));
+	}
+
+	private DecodingError getError(DecodedOrigin origin, float[][] points, float[][] activities) {
+		float[][] ideal = getIdealOutput(origin, points);
+		float[][] actual = getDecodedOutput(origin, activities);
+
+		int dim = origin.getDimensions();
+		float[] distortion = new float[dim];
+		for (int i = 0; i < points.length; i++) {
+			for (int k = 0; k < dim; k++) {
+				float e = actual[i][k] - ideal[i][k];
+				distortion[k] += e*e;
+			}
+		}
+		for (int k = 0; k < dim; k++) {
+			distortion[k] /= points.length;
+		}
+
+		//variance of the decoded estimate when each activity has independent noise with
+		//SD proportional to the largest activity, as assumed in finding decoders
+		float maxActivity = 0;
+		for (float[] a : activities) {
+			for (float value : a) {
+				maxActivity = Math.max(maxActivity, Math.abs(value));
+			}
+		}
+		float sd = getNoise() * maxActivity;
+		float[][] decoders = origin.getDecoders();
+		float[] noise = new float[dim];
+		for (float[] d : decoders) {
+			for (int k = 0; k < dim; k++) {
+				noise[k] += sd*sd * d[k]*d[k];
+			}
+		}
+
+		return new DecodingError(distortion, noise);
+	}
+
+	//noise assumed in finding decoders, as a proportion of the largest activity
+	private float getNoise() {
+		if (myEnsemble instanceof DecodableEnsembleImpl) {
+			ApproximatorFactory factory = ((DecodableEnsembleImpl) myEnsemble).getApproximatorFactory();
+			if (factory instanceof WeightedCostApproximator.Factory) {
+				return ((WeightedCostApproximator.Factory) factory).getNoise();
+			}
+		}
+		return 0;
+	}
+
+	private float[][] getRandomPoints(int samples) {
+		float[][] result = new RandomHypersphereVG(false, 1, 0).genVectors(samples, myEnsemble.getDimension());
+		float[] radii = myEnsemble.getRadii();
+		for (int i = 0; i < result.length; i++) {
+			result[i] = MU.prodElementwise(result[i], radii);
+		}
+		return result;
+	}
+
+	//returns a cached result if the ensemble hasn't been given new nodes since it was cached
+	private float[][] getCached(String key) {
+		Object nodes = myEnsemble.getNodes();
+		if (nodes != myNodes) {
+			myCache.clear();
+			myErrorPoints = null;
+			myNodes = nodes;
+		}
+		return myCache.get(key);
+	}
+
+	private float[][] getRates(float[][] radialInputs, String nodeOrigin) {
+		NEFNode[] nodes = (NEFNode[]) myEnsemble.getNodes();
+		int n = radialInputs.length == 0 ? 0 : radialInputs[0].length;
+		float[][] result = new float[nodes.length][n];
+
+		LIFRateEngine engine = Neuron.AXON.equals(nodeOrigin) ? LIFRateEngine.createForCurves(nodes, false) : null;
+		if (engine != null) {
+			engine.getRates(radialInputs, result);
+		} else {
+			for (int i = 0; i < nodes.length; i++) {
+				runConstantRate(nodes[i], radialInputs[i], nodeOrigin, result[i]);
+			}
+		}
+		return result;
+	}
+
+	private static void runConstantRate(NEFNode node, float[] radialInputs, String nodeOrigin, float[] result) {
+		synchronized (node) {
+			SimulationMode mode = node.getMode();
+			Noise noise = null;
+			if (node instanceof SpikingNeuron) {
+				noise = ((SpikingNeuron) node).getNoise();
+				((SpikingNeuron) node).setNoise(null);
+			}
+
+			try {
+				node.setMode(SimulationMode.CONSTANT_RATE);
+				if ( !node.getMode().equals(SimulationMode.CONSTANT_RATE) ) {
+					throw new RuntimeException("Can't analyse ensemble: Nodes must support CONSTANT_RATE mode");
+				}
+
+				for (int j = 0; j < radialInputs.length; j++) {
+					node.setRadialInput(radialInputs[j]);
+					node.run(0f, 0f);
+					result[j] = ((RealOutput) node.getOrigin(nodeOrigin).getValues()).getValues()[0];
+				}
+				node.reset(false);
+			} catch (SimulationException e) {
+				throw new RuntimeException("Can't analyse ensemble: error running neurons", e);
+			} catch (StructuralException e) {
+				throw new RuntimeException("Can't analyse ensemble: error running neurons", e);
+			} catch (ClassCastException e) {
+				throw new RuntimeException("Can't analyse ensemble: neurons producing spike output", e);
+			} finally {
+				node.setMode(mode);
+				if (noise != null) {
+					((SpikingNeuron) node).setNoise(noise);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Error of a DecodedOrigin, per output dimension.
+	 *
+	 * @author agent
+	 */
+	public static class DecodingError {
+
+		private final float[] myDistortion;
+		private final float[] myNoise;
+
+		private DecodingError(float[] distortion, float[] noise) {
+			myDistortion = distortion;
+			myNoise = noise;
+		}
+
+		/**
+		 * @return Mean-squared error of the noise-free decoded output in each dimension
+		 */
+		public float[] getDistortion() {
+			return myDistortion.clone();
+		}
+
+		/**
+		 * @return Expected variance of the decoded output in each dimension, due to noise in
+		 * 		the activities (of the size assumed in finding decoders)
+		 */
+		public float[] getNoise() {
+			return myNoise.clone();
+		}
+
+		/**
+		 * @return Total expected squared error (distortion plus noise) in each dimension
+		 */
+		public float[] getMSE() {
+			return MU.sum(myDistortion, myNoise);
+		}
+
+		/**
+		 * @return Root of the total squared error, averaged over dimensions
+		 */
+		public float getRMSE() {
+			return (float) Math.sqrt(MU.mean(getMSE()));
+		}
+	}
+}
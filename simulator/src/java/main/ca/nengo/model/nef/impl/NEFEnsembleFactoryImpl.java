@@ -29,12 +29,14 @@ package ca.nengo.model.nef.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Random;
 
 import org.apache.log4j.Logger;
 
 import ca.nengo.io.FileManager;
 import ca.nengo.math.ApproximatorFactory;
 import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
 import ca.nengo.math.impl.IdentityFunction;
 import ca.nengo.math.impl.IndicatorPDF;
 import ca.nengo.math.impl.WeightedCostApproximator;
@@ -47,6 +49,8 @@ import ca.nengo.model.nef.NEFEnsembleFactory;
 import ca.nengo.model.nef.NEFNode;
 import ca.nengo.model.neuron.Neuron;
 import ca.nengo.model.neuron.impl.LIFNeuronFactory;
+import ca.nengo.util.ConstructionCancelledException;
+import ca.nengo.util.ConstructionProgress;
 import ca.nengo.util.MU;
 import ca.nengo.util.VectorGenerator;
 import ca.nengo.util.impl.RandomHypersphereVG;
@@ -67,6 +71,7 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 	private VectorGenerator myEvalPointFactory;
 	private NodeFactory myNodeFactory;
 	private transient File myDatabase;
+	private Long mySeed;
 
 	/**
 	 * Default constructor. Sets up factories.
@@ -122,14 +127,30 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 	 */
 	public NEFEnsemble make(String name, int n, int dim) throws StructuralException {
 		float[] radii = MU.uniform(1, dim, 1)[0];
-		return doMake(name, n, radii, 0);
+		return doMake(name, name, n, radii);
 	}
 
 	/**
 	 * @see ca.nengo.model.nef.NEFEnsembleFactory#make(java.lang.String, int, float[])
 	 */
 	public NEFEnsemble make(String name, int n, float[] radii) throws StructuralException {
-		return doMake(name, n, radii, 0);
+		return doMake(name, name, n, radii);
+	}
+
+	/**
+	 * Like make(name, n, radii), but if this factory has a seed, the ensemble's random stream
+	 * is derived from the given path instead of the name, so that ensembles with the same name
+	 * in different subnetworks aren't identical.
+	 *
+	 * @param path Path of the ensemble in the model (eg "Model/Sub/A")
+	 * @param name Name of the ensemble
+	 * @param n Number of neurons
+	 * @param radii Radius of the represented space in each dimension
+	 * @return The new ensemble
+	 * @throws StructuralException if the ensemble can't be made
+	 */
+	public NEFEnsemble make(String path, String name, int n, float[] radii) throws StructuralException {
+		return doMake(path, name, n, radii);
 	}
 
 	/**
@@ -168,7 +189,7 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
                 }
             }
             if (result == null) {
-                result = doMake(name, n, radii, 0);
+                result = doMake(name, name, n, radii);
 
                 try {
                     // Set the ensemble's factory to null to allow saving with customized ensemble factories
@@ -180,7 +201,7 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
             }
 		}
         else{
-            result = doMake(name, n, radii, 0);
+            result = doMake(name, name, n, radii);
         }
 
         // Set the resulting ensemble's factory to this. It must be noted that this can be a good thing or
@@ -219,6 +240,38 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 		myNodeFactory = factory;
 	}
 
+	/**
+	 * @return Model seed from which each ensemble gets its own random stream, or null if
+	 * 		ensembles are made with the generator of the calling thread
+	 */
+	public Long getSeed() {
+		return mySeed;
+	}
+
+	/**
+	 * @param seed Model seed from which each ensemble made by this factory gets its own random
+	 * 		stream (derived from the seed and the ensemble's path, which is its name unless
+	 * 		given; see PDFTools.makeStream()), so that ensembles don't depend on what was made
+	 * 		before them. Null to make ensembles with the generator of the calling thread.
+	 */
+	public void setSeed(Long seed) {
+		mySeed = seed;
+	}
+
+	private NEFEnsemble doMake(String path, String name, int n, float[] radii) throws StructuralException {
+		ConstructionProgress.report("Making ensemble " + name);
+		if (mySeed == null) {
+			return doMake(name, n, radii, 0);
+		}
+
+		Random previous = PDFTools.setThreadRandom(PDFTools.makeStream(mySeed.longValue(), path));
+		try {
+			return doMake(name, n, radii, 0);
+		} finally {
+			PDFTools.setThreadRandom(previous);
+		}
+	}
+
 	//common make(...) implementation
 	private NEFEnsemble doMake(String name, int n, float[] radii, int attempts) throws StructuralException {
 		
@@ -256,6 +309,10 @@ public class NEFEnsembleFactoryImpl implements NEFEnsembleFactory, java.io.Seria
 
 			return result;
 		}
+		catch(ConstructionCancelledException e)
+		{
+			throw e;
+		}
 		catch(RuntimeException re)
 		{
 			// a singular gamma matrix can produce a runtime exception.  If this occurs,
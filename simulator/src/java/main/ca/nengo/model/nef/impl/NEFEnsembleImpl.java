@@ -27,8 +27,10 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.nef.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
@@ -59,12 +61,14 @@ import ca.nengo.model.nef.NEFEnsembleFactory;
 import ca.nengo.model.nef.NEFNode;
 import ca.nengo.model.neuron.Neuron;
 import ca.nengo.model.neuron.impl.LIFNeuronFactory;
+import ca.nengo.model.neuron.impl.LIFRateEngine;
 import ca.nengo.model.neuron.impl.LIFSpikeGenerator;
 import ca.nengo.model.neuron.impl.SpikeGeneratorOrigin;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
 import ca.nengo.model.plasticity.impl.PESTermination;
 import ca.nengo.model.plasticity.impl.PlasticEnsembleTermination;
 import ca.nengo.model.plasticity.impl.PreLearnTermination;
+import ca.nengo.util.ConstructionProgress;
 import ca.nengo.util.MU;
 import ca.nengo.util.ScriptGenException;
 import ca.nengo.util.TimeSeries;
@@ -112,6 +116,22 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	private NEFEnsembleFactory myEnsembleFactory;
 
 	private boolean myUseGPU;
+	private boolean myUseRateTable;
+	private transient LIFRateEngine myRateEngine;
+	private transient Node[] myRateEngineNodes; //nodes for which myRateEngine was last created (it may be null)
+	private transient boolean myRateEngineRan;
+	private transient EnsembleAnalysis myAnalysis;
+
+	//reused by run() (see indexTerminations())
+	private transient float[][] myScaledEncoders;
+	private transient DecodedTermination[] myRunTerminations;
+	private transient int myRunTerminationsVersion;
+	private transient int[] myBiasGroups;
+	private transient BiasTermination[] myBiasTerminations;
+	private transient float[] myBiasInputs;
+	private transient float[] myState;
+	private transient float[] myCurrents;
+	private transient List<float[]> myWeightCurrents;
 
 	/**
 	 * @param name Unique name of Ensemble
@@ -173,6 +193,22 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		return myUseGPU && (getMode() == SimulationMode.DEFAULT || getMode() == SimulationMode.RATE);
 	}
 
+	/**
+	 * @param use Interpolate neuron rates from lookup tables in RATE and CONSTANT_RATE modes
+	 * 		(faster, but approximate), rather than computing them exactly
+	 */
+	public void setUseRateTable(boolean use) {
+		myUseRateTable = use;
+		myRateEngineNodes = null;
+	}
+
+	/**
+	 * @return True if neuron rates are interpolated from lookup tables in rate modes
+	 */
+	public boolean getUseRateTable() {
+		return myUseRateTable;
+	}
+
 	/**
 	 * @param radii A list of radii of encoded area along each dimension; uniform
 	 * 		radius along each dimension can be specified with a list of length 1
@@ -210,6 +246,10 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 
 
 		myRadii = radii;
+		myScaledEncoders = null;
+		if (myAnalysis != null) {
+			myAnalysis.invalidate();
+		}
 
 		myInverseRadii = new float[radii.length];
 		myRadiiAreOne = true;
@@ -490,6 +530,52 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		assert encoders[0].length == getDimension();
 
 		myEncoders = encoders;
+		clearEncodingCaches();
+	}
+
+	/**
+	 * Discards values that are derived from the encoders and radii, so that they are worked out
+	 * again when needed. setEncoders() and setRadii() do this already; it is needed only if the
+	 * encoders or radii are replaced some other way (eg by reflection).
+	 */
+	public void clearEncodingCaches() {
+		myScaledEncoders = null;
+		if (myAnalysis != null) {
+			myAnalysis.invalidate();
+		}
+		myRadiiAreOne = true;
+		for (int i = 0; i < myRadii.length; i++) {
+			if (Math.abs(myRadii[i]-1f) > 1e-10) {
+				myRadiiAreOne = false;
+			}
+		}
+	}
+
+	//points the encoders, evaluation points, and radii at those of the ensemble this was copied from (see NEFUtil.shareModelData())
+	void shareModelData(NEFEnsembleImpl prototype) {
+		myEncoders = prototype.myEncoders;
+		myEvalPoints = prototype.myEvalPoints;
+		myUnscaledEvalPoints = prototype.myUnscaledEvalPoints;
+		myRadii = prototype.myRadii;
+		myInverseRadii = prototype.myInverseRadii;
+		clearEncodingCaches();
+	}
+
+	//the arrays that shareModelData() shares, and the approximators that decoders are found with (see NEFUtil.collectModelData())
+	Object[] getModelData() {
+		List<Object> result = new ArrayList<Object>(myDecodingApproximators.values());
+		Collections.addAll(result, myEncoders, myEvalPoints, myUnscaledEvalPoints, myRadii, myInverseRadii);
+		return result.toArray();
+	}
+
+	/**
+	 * @see ca.nengo.model.nef.NEFEnsemble#getAnalysis()
+	 */
+	public synchronized EnsembleAnalysis getAnalysis() {
+		if (myAnalysis == null) {
+			myAnalysis = new EnsembleAnalysis(this);
+		}
+		return myAnalysis;
 	}
 
 	/**
@@ -510,6 +596,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 * @see ca.nengo.model.nef.NEFEnsemble#addDecodedOrigin(java.lang.String, Function[], String)
 	 */
     public Origin addDecodedOrigin(String name, Function[] functions, String nodeOrigin) throws StructuralException {
+		ConstructionProgress.report("Solving decoders for " + getName() + "." + name);
 		if (!myReuseApproximators || !myDecodingApproximators.containsKey(nodeOrigin)) {
 			float[][] outputs = getConstantOutputs(myEvalPoints, nodeOrigin);
 			LinearApproximator approximator = getApproximatorFactory().getApproximator(myEvalPoints, outputs);
@@ -532,6 +619,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
      * @return the new DecodedOrigin created
      */
     public Origin addDecodedSignalOrigin(String name, TimeSeries targetSignal, TimeSeries[] evalSignals, String nodeOrigin) throws StructuralException {
+    	ConstructionProgress.report("Solving decoders for " + getName() + "." + name);
     	float[][][] evalSignalsF = new float[evalSignals.length][][];
     	for(int i=0; i < evalSignals.length; i++)
     		evalSignalsF[i] = MU.transpose(evalSignals[i].getValues());
@@ -770,6 +858,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 
 		myDecodedTerminations.put(biasName, biasTermination);
 		myDecodedTerminations.put(interName, interneuronTermination);
+		myDecodedTerminationsVersion++;
 		fireVisibleChangeEvent();
 
 		return new BiasTermination[]{biasTermination, interneuronTermination};
@@ -782,34 +871,45 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
     public void run(float startTime, float endTime) throws SimulationException {
 		synchronized (this) {
 			try{
-				float[] state = new float[myDimension];
-				Map<String, Float> bias = new HashMap<String, Float>(5);
+				if (myRunTerminations == null || myRunTerminationsVersion != myDecodedTerminationsVersion) {
+					indexTerminations();
+				}
+				float[] state = myState;
+				for (int k = 0; k < state.length; k++) {
+					state[k] = 0;
+				}
+				float[] biasInputs = myBiasInputs;
+				for (int g = 0; g < biasInputs.length; g++) {
+					biasInputs[g] = 0;
+				}
+				List<float[]> currents = myWeightCurrents; //from terminations with NeuronWeights
+				currents.clear();
 
 				//run terminations and sum state ...
-				DecodedTermination[] dts = super.getDecodedTerminations();
-				for (DecodedTermination t : dts) {
+				DecodedTermination[] dts = myRunTerminations;
+				for (int j = 0; j < dts.length; j++) {
+					DecodedTermination t = dts[j];
 					t.run(startTime, endTime);
 					float[] output = t.getOutput();
+					if (t.getNeuronWeights() != null) {
+						currents.add(t.getNeuronWeights().getCurrents());
+					}
 
-					boolean isModulatory = t.getModulatory();
 					//TODO: handle modulatory bias input
-					if (t instanceof BiasTermination) {
-						String baseName = ((BiasTermination) t).getBaseTerminationName();
-						if (!bias.containsKey(baseName)) {
-                            bias.put(baseName, new Float(0));
-                        }
-						if (!isModulatory) {
-                            bias.put(baseName, new Float(bias.get(baseName).floatValue() + output[0]));
-                        }
-					} else {
-						if (!isModulatory) {
-                            state = MU.sum(state, output);
-                        }
+					if (!t.getModulatory()) {
+						int group = myBiasGroups[j];
+						if (group >= 0) {
+							biasInputs[group] += output[0];
+						} else {
+							for (int k = 0; k < state.length; k++) {
+								state[k] += output[k];
+							}
+						}
 					}
-
 				}
 
 				if ( getMode().equals(SimulationMode.DIRECT) || getMode().equals(SimulationMode.EXPRESS)) {
+					//origins and dynamics only read the state during this step, so the buffer is shared with them
 					//run ensemble dynamics if they exist (e.g. to model adaptation)
 					if (myDirectModeDynamics != null) {
 						TimeSeries dynamicsInput = new TimeSeriesImpl(new float[]{startTime, endTime},
@@ -827,11 +927,31 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 					setTime(endTime);
 					// TODO Have plasticity work in DIRECT mode
 				} else {
-					//multiply state by encoders (cosine tuning), set radial input of each Neuron and run ...
+					//project state onto radius-scaled encoders (cosine tuning), add bias, set radial input of each Neuron and run ...
 					Node[] nodes = getNodes();
+					if (myCurrents == null || myCurrents.length != nodes.length) {
+						myCurrents = new float[nodes.length];
+					}
+					float[] radialInputs = myCurrents;
+					MU.prodInto(getScaledEncoders(), state, radialInputs);
+					for (int g = 0; g < biasInputs.length; g++) {
+						float netBias = biasInputs[g];
+						if (netBias != 0) {
+							float[] biasEncoders = myBiasTerminations[g].getBiasEncoders();
+							for (int i = 0; i < radialInputs.length; i++) {
+								radialInputs[i] += netBias * biasEncoders[i];
+							}
+						}
+					}
+					if (!currents.isEmpty()) {
+						for (float[] current : currents) {
+							for (int i = 0; i < radialInputs.length; i++) {
+								radialInputs[i] += current[i];
+							}
+						}
+					}
 					for (int i = 0; i < nodes.length; i++) {
-						((NEFNode) nodes[i]).setRadialInput(getRadialInput(state, i) +
-						        getBiasInput(bias, myDecodedTerminations, i));
+						((NEFNode) nodes[i]).setRadialInput(radialInputs[i]);
 					}
 					super.run(startTime, endTime);
 				}
@@ -842,17 +962,88 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		}
 	}
 
-	// @param bias Bias input (related to avoidance of negative weights with interneurons)
-	private static float getBiasInput(Map<String, Float> bias, Map<String, DecodedTermination> dt, int node) {
-		float sumBias = 0;
-		Iterator<String> it = bias.keySet().iterator();
-		while (it.hasNext()) {
-			String baseName = it.next();
-			float netBias = bias.get(baseName).floatValue();
-			float biasEncoder = ((BiasTermination) dt.get(baseName+BIAS_SUFFIX)).getBiasEncoders()[node];
-			sumBias += netBias * biasEncoder;
+	/*
+	 * Caches the DecodedTerminations for run(), and groups BiasTerminations by the Termination
+	 * they correct (their input is summed, and multiplied by the bias encoders of the group).
+	 */
+	private void indexTerminations() {
+		DecodedTermination[] dts = super.getDecodedTerminations();
+		int[] groups = new int[dts.length];
+		List<String> baseNames = new ArrayList<String>(2);
+		List<BiasTermination> biasTerminations = new ArrayList<BiasTermination>(2);
+		for (int j = 0; j < dts.length; j++) {
+			groups[j] = -1;
+			if (dts[j] instanceof BiasTermination) {
+				String baseName = ((BiasTermination) dts[j]).getBaseTerminationName();
+				int group = baseNames.indexOf(baseName);
+				if (group < 0) {
+					group = baseNames.size();
+					baseNames.add(baseName);
+					DecodedTermination encoderSource = myDecodedTerminations.get(baseName + BIAS_SUFFIX);
+					biasTerminations.add(encoderSource instanceof BiasTermination ? (BiasTermination) encoderSource : (BiasTermination) dts[j]);
+				}
+				groups[j] = group;
+			}
+		}
+
+		myRunTerminations = dts;
+		myBiasGroups = groups;
+		myBiasTerminations = biasTerminations.toArray(new BiasTermination[0]);
+		myBiasInputs = new float[myBiasTerminations.length];
+		myState = new float[myDimension];
+		myWeightCurrents = new ArrayList<float[]>(2);
+		myRunTerminationsVersion = myDecodedTerminationsVersion;
+	}
+
+	//encoders divided by radii (computed when first needed after encoders or radii change)
+	private float[][] getScaledEncoders() {
+		if (myScaledEncoders == null) {
+			float[][] scaled = new float[myEncoders.length][];
+			for (int i = 0; i < scaled.length; i++) {
+				scaled[i] = myRadiiAreOne ? myEncoders[i] : MU.prodElementwise(myEncoders[i], myInverseRadii);
+			}
+			myScaledEncoders = scaled;
+		}
+		return myScaledEncoders;
+	}
+
+	/**
+	 * In RATE and CONSTANT_RATE modes, runs LIF neurons together with an LIFRateEngine if
+	 * possible.
+	 *
+	 * @see ca.nengo.model.impl.AbstractEnsemble#runNodesTogether(float, float)
+	 */
+	@Override
+	protected boolean runNodesTogether(float startTime, float endTime) throws SimulationException {
+		myRateEngineRan = false;
+		SimulationMode mode = getMode();
+		if (mode != SimulationMode.RATE && mode != SimulationMode.CONSTANT_RATE) {
+			return false;
+		}
+
+		Node[] nodes = getNodes();
+		if (nodes != myRateEngineNodes) {
+			myRateEngine = LIFRateEngine.create(nodes, myUseRateTable);
+			myRateEngineNodes = nodes;
+		}
+
+		if (myRateEngine == null) {
+			return false;
+		} else if (!myRateEngine.run(startTime, endTime)) {
+			myRateEngine = null;
+			return false;
 		}
-		return sumBias;
+		myRateEngineRan = true;
+		return true;
+	}
+
+	/**
+	 * @return Neuron rates, if the last step was run by an LIFRateEngine
+	 * @see ca.nengo.model.nef.impl.DecodableEnsembleImpl#getNodeValues(java.lang.String)
+	 */
+	@Override
+	protected float[] getNodeValues(String nodeOrigin) {
+		return (myRateEngineRan && Neuron.AXON.equals(nodeOrigin)) ? myRateEngine.getRates() : null;
 	}
 
 	/**
@@ -861,11 +1052,8 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	 * @return Radial input to the given node
 	 */
 	public float getRadialInput(float[] state, int node) {
-		//scale state to unit circle if necessary
-		if (!myRadiiAreOne) {
-            state = MU.prodElementwise(state, myInverseRadii);
-        }
-		return MU.prod(state, myEncoders[node]);
+		//encoders are scaled to the unit circle
+		return MU.prod(state, getScaledEncoders()[node]);
 	}
 
 	/**
@@ -874,6 +1062,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	@Override
     public void setMode(SimulationMode mode) {
 		super.setMode(mode);
+		myRateEngineNodes = null;
 
 		Origin[] origins = getOrigins();
 		for (Origin origin : origins) {
@@ -906,8 +1095,8 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 	@Override
     public void reset(boolean randomize) {
 		super.reset(randomize);
-
-		
+		myRateEngineNodes = null;
+		myRateEngineRan = false;
 
 		if (myDirectModeDynamics != null) {
 			myDirectModeDynamics.setState(new float[myDirectModeDynamics.getState().length]);
@@ -963,6 +1152,7 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		redefineNodes(nodes);
 
 		myEncoders = myEnsembleFactory.getEncoderFactory().genVectors(n, getDimension());
+		myScaledEncoders = null;
 
 
 		myDecodingApproximators.clear();
@@ -1055,6 +1245,13 @@ public class NEFEnsembleImpl extends DecodableEnsembleImpl implements NEFEnsembl
 		result.myInverseRadii = myInverseRadii.clone();
 		result.myRadii = myRadii.clone();
 		result.myUnscaledEvalPoints = MU.clone(myUnscaledEvalPoints);
+		result.myRateEngine = null;
+		result.myRateEngineNodes = null;
+		result.myRateEngineRan = false;
+		result.myAnalysis = null;
+		result.myScaledEncoders = null;
+		result.myRunTerminations = null;
+		result.myCurrents = null;
 		return result;
 	}
 
@@ -27,9 +27,16 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.model.nef.impl;
 
+import java.util.Map;
+
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
 import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
 import ca.nengo.model.SimulationMode;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
 import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.nef.NEFNode;
 import ca.nengo.util.MU;
@@ -103,4 +110,74 @@ public class NEFUtil {
 		}
 		return output;
 	}
+
+	/**
+	 * Points the read-only model data of a copy of a Node at the Node's own arrays, so that
+	 * copies (eg the clones that run the trials of a ParameterSweep) share them. This covers the
+	 * encoders, evaluation points, and radii of NEFEnsembleImpls, the decoders of DecodedOrigins,
+	 * and the transforms of DecodedTerminations, in the Node, its Origins and Terminations, and
+	 * the Nodes of a Network. Replaced values are put back, so this also undoes changes that
+	 * were made to the copy with setEncoders(), setDecoders(), etc.
+	 *
+	 * @param prototype A Node
+	 * @param copy A clone of the Node
+	 * @throws StructuralException If the copy doesn't have the Nodes of the prototype
+	 */
+	public static void shareModelData(Node prototype, Node copy) throws StructuralException {
+		if (prototype instanceof NEFEnsembleImpl && copy.getClass() == prototype.getClass()) {
+			((NEFEnsembleImpl) copy).shareModelData((NEFEnsembleImpl) prototype);
+		}
+		for (Origin origin : prototype.getOrigins()) {
+			Origin target = copy.getOrigin(origin.getName());
+			if (origin instanceof DecodedOrigin && target.getClass() == origin.getClass()) {
+				((DecodedOrigin) target).shareModelData((DecodedOrigin) origin);
+			}
+		}
+		for (Termination termination : prototype.getTerminations()) {
+			Termination target = copy.getTermination(termination.getName());
+			if (termination instanceof DecodedTermination && target.getClass() == termination.getClass()) {
+				((DecodedTermination) target).shareModelData((DecodedTermination) termination);
+			}
+		}
+		if (prototype instanceof Network) {
+			for (Node node : ((Network) prototype).getNodes()) {
+				shareModelData(node, ((Network) copy).getNode(node.getName()));
+			}
+		}
+	}
+
+	/**
+	 * @param node A Node
+	 * @param data Map to which the model data of the Node that a simulation doesn't change is
+	 * 		added, as keys and values of an identity map: the arrays that shareModelData()
+	 * 		shares, and the approximators that decoders are found with
+	 */
+	public static void collectModelData(Node node, Map<Object, Object> data) {
+		if (node instanceof NEFEnsembleImpl) {
+			put(((NEFEnsembleImpl) node).getModelData(), data);
+		}
+		for (Origin origin : node.getOrigins()) {
+			if (origin instanceof DecodedOrigin) {
+				put(((DecodedOrigin) origin).getModelData(), data);
+			}
+		}
+		for (Termination termination : node.getTerminations()) {
+			if (termination instanceof DecodedTermination) {
+				put(((DecodedTermination) termination).getModelData(), data);
+			}
+		}
+		if (node instanceof Network) {
+			for (Node child : ((Network) node).getNodes()) {
+				collectModelData(child, data);
+			}
+		}
+	}
+
+	private static void put(Object[] values, Map<Object, Object> data) {
+		for (Object value : values) {
+			if (value != null) {
+				data.put(value, value);
+			}
+		}
+	}
 }
@@ -0,0 +1,390 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "NeuronWeights.java". Description:
+"Precomputed post x pre connection weights for a decoded connection between NEFEnsembles"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.model.nef.impl;
+
+import Jama.Matrix;
+import ca.nengo.dynamics.Integrator;
+import ca.nengo.dynamics.LinearSystem;
+import ca.nengo.dynamics.impl.LTISystem;
+import ca.nengo.model.Resettable;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.util.MU;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.TimeSeriesImpl;
+
+/**
+ * <p>Precomputed post x pre connection weights that stand in for the decoders, transform, and
+ * encoders of a decoded connection between NEFEnsembles.</p>
+ *
+ * <p>Normally a DecodedOrigin decodes a vector from the activities of its Nodes, a
+ * DecodedTermination transforms and filters it, and the NEFEnsemble multiplies the sum of its
+ * Terminations' outputs by each encoder. With NeuronWeights attached to a DecodedTermination,
+ * the activities of the presynaptic Nodes are instead multiplied by the weights
+ * W = E T D<sup>T</sup> (where the encoders E are scaled by the inverse radii), and the
+ * Termination's dynamics are applied to each neuron's current. This is driven by events:
+ * only the columns of Nodes that spiked (or have non-zero rates) are added. Weights can be
+ * stored densely, or sparsely as the non-zero entries of each column (eg if many decoders are
+ * zero).</p>
+ *
+ * <p>Because the dynamics are linear, the result is the same as that of the factored
+ * computation. The dynamics must be LTI with a single state variable (eg the usual
+ * first-order PSC).</p>
+ *
+ * @author agent
+ */
+public class NeuronWeights implements Resettable {
+
+	private final DecodedOrigin myOrigin;
+	private final DecodedTermination myTermination;
+	private final float[][] myEncoders; //scaled by inverse radii
+	private final int myNumPost;
+	private final boolean mySparse;
+	private float[][] myColumns; //dense weights, pre x post (ie transposed), or non-zero entries if sparse
+	private int[][] myRows; //indices of non-zero entries if sparse
+	private int myNumNonZero;
+	private float[] myBias;
+
+	private float[] myInput;
+	private float[] myState;
+	private float[] myCurrents;
+
+	private float myStepSize;
+	private float myA;
+	private float myB;
+	private float myC;
+	private float myD;
+
+	/**
+	 * Starts from the current states of the Termination's dynamics.
+	 *
+	 * @param origin Source of presynaptic activities
+	 * @param termination Termination (on an NEFEnsemble) with which the origin is connected
+	 * @param sparse True if only non-zero weights are to be stored
+	 * @throws StructuralException If dynamics are not supported (see isSupported())
+	 */
+	public NeuronWeights(DecodedOrigin origin, DecodedTermination termination, boolean sparse) throws StructuralException {
+		this(origin, termination, getWeights(origin, termination), sparse);
+	}
+
+	/**
+	 * @param origin Source of presynaptic activities
+	 * @param termination Termination (on an NEFEnsemble) with which the origin is connected
+	 * @param weights Weights given by getWeights(origin, termination)
+	 * @param sparse True if only non-zero weights are to be stored
+	 * @throws StructuralException If dynamics are not supported (see isSupported())
+	 */
+	public NeuronWeights(DecodedOrigin origin, DecodedTermination termination, float[][] weights, boolean sparse)
+			throws StructuralException {
+		if (!isSupported(termination)) {
+			throw new StructuralException("Termination " + termination.getName()
+					+ " must have LTI dynamics with one state variable and no scaling");
+		}
+
+		myOrigin = origin;
+		myTermination = termination;
+		myEncoders = getScaledEncoders((NEFEnsemble) termination.getNode());
+		myNumPost = weights.length;
+		mySparse = sparse;
+
+		float[][] columns = MU.transpose(weights);
+		myNumNonZero = countNonZero(weights);
+		if (sparse) {
+			myColumns = new float[columns.length][];
+			myRows = new int[columns.length][];
+			for (int j = 0; j < columns.length; j++) {
+				int n = 0;
+				for (float w : columns[j]) {
+					if (w != 0) {
+						n++;
+					}
+				}
+				myColumns[j] = new float[n];
+				myRows[j] = new int[n];
+				int k = 0;
+				for (int i = 0; i < columns[j].length; i++) {
+					if (columns[j][i] != 0) {
+						myColumns[j][k] = columns[j][i];
+						myRows[j][k] = i;
+						k++;
+					}
+				}
+			}
+		} else {
+			myColumns = columns;
+		}
+
+		myBias = MU.prod(MU.prod(myEncoders, termination.getTransform()), termination.getStaticBias());
+		myInput = new float[myNumPost];
+		myState = new float[myNumPost];
+		myCurrents = new float[myNumPost];
+		loadState();
+	}
+
+	/**
+	 * @param termination A DecodedTermination
+	 * @return True if NeuronWeights can stand in for the Termination's dynamics
+	 */
+	public static boolean isSupported(DecodedTermination termination) {
+		LinearSystem dynamics = termination.getDimensionDynamics()[0];
+		return (dynamics instanceof LTISystem) && dynamics.getState().length == 1 && dynamics.getInputDimension() == 1
+			&& termination.getScaling() == null && (termination.getNode() instanceof NEFEnsemble);
+	}
+
+	/**
+	 * @param origin Source of presynaptic activities
+	 * @param termination Termination (on an NEFEnsemble) with which the origin is connected
+	 * @return Weights from each presynaptic Node (columns) onto each postsynaptic Node (rows),
+	 * 		ie E T D<sup>T</sup> with encoders scaled by the inverse radii
+	 */
+	public static float[][] getWeights(DecodedOrigin origin, DecodedTermination termination) {
+		float[][] encoders = getScaledEncoders((NEFEnsemble) termination.getNode());
+		return MU.prod(MU.prod(encoders, termination.getTransform()), MU.transpose(origin.getDecoders()));
+	}
+
+	/**
+	 * @param weights A weight matrix
+	 * @return Number of non-zero entries
+	 */
+	public static int countNonZero(float[][] weights) {
+		int result = 0;
+		for (float[] row : weights) {
+			for (float w : row) {
+				if (w != 0) {
+					result++;
+				}
+			}
+		}
+		return result;
+	}
+
+	private static float[][] getScaledEncoders(NEFEnsemble ensemble) {
+		float[][] encoders = ensemble.getEncoders();
+		float[] radii = ensemble.getRadii();
+		float[][] result = new float[encoders.length][];
+		for (int i = 0; i < encoders.length; i++) {
+			result[i] = new float[encoders[i].length];
+			for (int j = 0; j < encoders[i].length; j++) {
+				result[i][j] = encoders[i][j] / radii[j];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return The DecodedOrigin from which activities are read
+	 */
+	public DecodedOrigin getOrigin() {
+		return myOrigin;
+	}
+
+	/**
+	 * @return The DecodedTermination for which these weights stand in
+	 */
+	public DecodedTermination getTermination() {
+		return myTermination;
+	}
+
+	/**
+	 * @return True if only non-zero weights are stored
+	 */
+	public boolean isSparse() {
+		return mySparse;
+	}
+
+	/**
+	 * @return Number of non-zero weights
+	 */
+	public int getNumNonZero() {
+		return myNumNonZero;
+	}
+
+	/**
+	 * Sums the weighted activities of presynaptic Nodes. This is called by the Termination when
+	 * it receives its input, so that activities are read at the same point in the step as
+	 * decoded values would be.
+	 */
+	void collect() {
+		float[] input = myInput;
+		for (int i = 0; i < input.length; i++) {
+			input[i] = myBias[i];
+		}
+
+		float[] activities = myOrigin.getActivities();
+		if (activities == null) {
+			return;
+		}
+		for (int j = 0; j < activities.length; j++) {
+			float a = activities[j];
+			if (a != 0) {
+				float[] column = myColumns[j];
+				if (mySparse) {
+					int[] rows = myRows[j];
+					for (int k = 0; k < column.length; k++) {
+						input[rows[k]] += a * column[k];
+					}
+				} else {
+					for (int i = 0; i < column.length; i++) {
+						input[i] += a * column[i];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Advances the dynamics of each postsynaptic current.
+	 *
+	 * @param startTime Simulation time at which running starts
+	 * @param endTime Simulation time at which running ends
+	 * @throws SimulationException If the dynamics can't be integrated
+	 */
+	public void run(float startTime, float endTime) throws SimulationException {
+		float stepSize = endTime - startTime;
+		if (Math.abs(stepSize - myStepSize) > 1e-6f * stepSize) {
+			findCoefficients(startTime, endTime);
+		}
+
+		float[] input = myInput;
+		float[] state = myState;
+		float[] currents = myCurrents;
+		for (int i = 0; i < state.length; i++) {
+			state[i] = myA * state[i] + myB * input[i];
+			currents[i] = myC * state[i] + myD * input[i];
+		}
+	}
+
+	/**
+	 * @return Current into each postsynaptic Node as of the last run
+	 */
+	public float[] getCurrents() {
+		return myCurrents;
+	}
+
+	//finds the linear map from state and input to state over one step, with the Termination's integrator
+	private void findCoefficients(float startTime, float endTime) throws SimulationException {
+		try {
+			LinearSystem dynamics = (LinearSystem) myTermination.getDimensionDynamics()[0].clone();
+			Integrator integrator = myTermination.getIntegrator();
+
+			dynamics.setState(new float[]{1});
+			integrator.integrate(dynamics, getConstantInput(0, startTime, endTime));
+			myA = dynamics.getState()[0];
+
+			dynamics.setState(new float[]{0});
+			integrator.integrate(dynamics, getConstantInput(1, startTime, endTime));
+			myB = dynamics.getState()[0];
+
+			myC = dynamics.getC(endTime)[0][0];
+			myD = dynamics.getD(endTime)[0][0];
+			myStepSize = endTime - startTime;
+		} catch (CloneNotSupportedException e) {
+			throw new SimulationException(e);
+		}
+	}
+
+	private static TimeSeries getConstantInput(float value, float startTime, float endTime) {
+		float[] u = new float[]{value};
+		return new TimeSeriesImpl(new float[]{startTime, endTime}, new float[][]{u, u}, new Units[]{Units.UNK});
+	}
+
+	//maps the states of the Termination's dynamics onto neurons
+	private void loadState() {
+		LinearSystem[] dynamics = myTermination.getDimensionDynamics();
+		float[] dimensionState = new float[dynamics.length];
+		for (int k = 0; k < dynamics.length; k++) {
+			dimensionState[k] = dynamics[k].getState()[0];
+		}
+		float[] state = MU.prod(myEncoders, dimensionState);
+		System.arraycopy(state, 0, myState, 0, myNumPost);
+
+		LinearSystem d = dynamics[0];
+		float c = d.getC(0)[0][0];
+		for (int i = 0; i < myNumPost; i++) {
+			myCurrents[i] = c * myState[i];
+		}
+	}
+
+	/**
+	 * Writes the neurons' PSC states back to the dynamics of the Termination's dimensions, so
+	 * that it can run as usual. Neuron states are always combinations of encoders, so least
+	 * squares recovers the dimension states.
+	 *
+	 * @param time Simulation time of the Termination output
+	 */
+	public void store(float time) {
+		int dimension = myEncoders[0].length;
+		double[][] encoders = new double[myNumPost][dimension];
+		double[][] state = new double[myNumPost][1];
+		for (int i = 0; i < myNumPost; i++) {
+			for (int k = 0; k < dimension; k++) {
+				encoders[i][k] = myEncoders[i][k];
+			}
+			state[i][0] = myState[i];
+		}
+		Matrix e = new Matrix(encoders);
+		double[][] solution;
+		if (myNumPost >= dimension) {
+			solution = e.solve(new Matrix(state)).getArray();
+		} else {
+			//fewer neurons than dimensions: minimum-norm solution
+			solution = e.transpose().times(e.times(e.transpose()).solve(new Matrix(state))).getArray();
+		}
+
+		float[][] dimensionStates = new float[dimension][];
+		for (int k = 0; k < dimension; k++) {
+			dimensionStates[k] = new float[]{(float) solution[k][0]};
+		}
+		myTermination.setDimensionStates(dimensionStates);
+
+		LinearSystem dynamics = myTermination.getDimensionDynamics()[0];
+		float c = dynamics.getC(time)[0][0];
+		float d = dynamics.getD(time)[0][0];
+		float[] input = new float[dimension];
+		if (myTermination.getInput() != null) {
+			input = MU.prod(myTermination.getTransform(), myTermination.getInput().getValues());
+		}
+		float[] output = new float[dimension];
+		for (int k = 0; k < dimension; k++) {
+			output[k] = c * dimensionStates[k][0] + d * input[k];
+		}
+		myTermination.setOutput(time, output);
+	}
+
+	/**
+	 * Resets neuron states to match the (reset) states of the Termination's dynamics.
+	 *
+	 * @see ca.nengo.model.Resettable#reset(boolean)
+	 */
+	public void reset(boolean randomize) {
+		loadState();
+		for (int i = 0; i < myNumPost; i++) {
+			myInput[i] = myBias[i];
+		}
+	}
+
+}
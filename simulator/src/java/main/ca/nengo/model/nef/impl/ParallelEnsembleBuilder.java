@@ -0,0 +1,208 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "ParallelEnsembleBuilder.java". Description:
+"Builds independent parts of a model (typically NEFEnsembles, including their decoders) concurrently, with reproducible results"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.model.nef.impl;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import ca.nengo.math.PDFTools;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.impl.NetworkArrayImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.NEFEnsembleFactory;
+import ca.nengo.util.ConstructionCancelledException;
+import ca.nengo.util.ConstructionProgress;
+
+/**
+ * <p>Builds independent parts of a model (typically NEFEnsembles, including their decoders)
+ * concurrently, with reproducible results.</p>
+ *
+ * <p>Each task runs with its own random stream (see PDFTools.setThreadRandom()), derived
+ * from the model seed and the path of the part being built (eg "Model/Sub/Ensemble"). A
+ * model built with the same seed therefore gets the same encoders, intercepts, rates, etc.
+ * regardless of the number of threads, the order of completion, or what else is built in
+ * the meantime. Factories used here should not have their own seeds (see
+ * NEFEnsembleFactoryImpl.setSeed()), because those take precedence (together with the path).</p>
+ *
+ * <p>Results are collected through Futures, with get() unwrapping failures. Tasks should not
+ * wait for other tasks of the same builder, since the pool is bounded.</p>
+ *
+ * @author agent
+ */
+public class ParallelEnsembleBuilder {
+
+	private final long mySeed;
+	private final ExecutorService myExecutor;
+
+	/**
+	 * @param seed Model seed
+	 */
+	public ParallelEnsembleBuilder(long seed) {
+		this(seed, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param seed Model seed
+	 * @param numThreads Number of threads with which to build
+	 */
+	public ParallelEnsembleBuilder(long seed, int numThreads) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed");
+		}
+		mySeed = seed;
+		myExecutor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+			private int myCount = 0;
+			public synchronized Thread newThread(Runnable r) {
+				Thread result = new Thread(r, "ensemble builder " + myCount++);
+				result.setDaemon(true);
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * @return Model seed
+	 */
+	public long getSeed() {
+		return mySeed;
+	}
+
+	/**
+	 * Tasks report to the ConstructionProgress monitor of the thread that submits them.
+	 *
+	 * @param path Path of the part of the model that the task builds (determines its random stream)
+	 * @param task Task that builds the part
+	 * @return Result of the task
+	 */
+	public <T> Future<T> submit(String path, Callable<T> task) {
+		return submit(PDFTools.makeStream(mySeed, path), task);
+	}
+
+	/**
+	 * Like submit(path, task), but with a random stream chosen by the caller (eg one derived
+	 * from a seed given for a particular ensemble).
+	 *
+	 * @param stream Random stream for the task, which shouldn't be used by anything else
+	 * @param task Task that builds a part of the model
+	 * @return Result of the task
+	 */
+	public <T> Future<T> submit(final Random stream, final Callable<T> task) {
+		final ConstructionProgress.Monitor monitor = ConstructionProgress.getThreadMonitor();
+		return myExecutor.submit(new Callable<T>() {
+			public T call() throws Exception {
+				Random previous = PDFTools.setThreadRandom(stream);
+				ConstructionProgress.Monitor previousMonitor = ConstructionProgress.setThreadMonitor(monitor);
+				try {
+					return task.call();
+				} finally {
+					ConstructionProgress.setThreadMonitor(previousMonitor);
+					PDFTools.setThreadRandom(previous);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @param path Path of the ensemble in the model (determines its random stream)
+	 * @param factory Factory with which to make the ensemble
+	 * @param name Name of the ensemble
+	 * @param n Number of neurons
+	 * @param radii Radius of the represented space in each dimension
+	 * @return The new ensemble, when it has been made
+	 */
+	public Future<NEFEnsemble> make(final String path, final NEFEnsembleFactory factory, final String name, final int n,
+			final float[] radii) {
+		return submit(path, new Callable<NEFEnsemble>() {
+			public NEFEnsemble call() throws Exception {
+				if (factory instanceof NEFEnsembleFactoryImpl) {
+					return ((NEFEnsembleFactoryImpl) factory).make(path, name, n, radii);
+				}
+				return factory.make(name, n, radii);
+			}
+		});
+	}
+
+	/**
+	 * Makes the ensembles of a NetworkArray concurrently. Ensembles are named "0", "1", etc.
+	 * and the path of each is the given path followed by its name.
+	 *
+	 * @param path Path of the array in the model
+	 * @param factory Factory with which to make each ensemble
+	 * @param name Name of the array
+	 * @param length Number of ensembles
+	 * @param n Number of neurons in each ensemble
+	 * @param radii Radius of the space represented by each ensemble in each dimension
+	 * @return The new array
+	 * @throws StructuralException if an ensemble can't be made
+	 */
+	public NetworkArrayImpl makeArray(String path, NEFEnsembleFactory factory, String name, int length, int n, float[] radii)
+			throws StructuralException {
+		Future<?>[] futures = new Future<?>[length];
+		for (int i = 0; i < length; i++) {
+			futures[i] = make(path + "/" + i, factory, String.valueOf(i), n, radii);
+		}
+
+		NEFEnsembleImpl[] ensembles = new NEFEnsembleImpl[length];
+		for (int i = 0; i < length; i++) {
+			ensembles[i] = (NEFEnsembleImpl) get(futures[i]);
+		}
+		return new NetworkArrayImpl(name, ensembles);
+	}
+
+	/**
+	 * @param future Result of a task
+	 * @return The result, once available
+	 * @throws StructuralException if the task failed or the calling thread was interrupted
+	 * @throws ConstructionCancelledException if the task's monitor was cancelled
+	 */
+	public static <T> T get(Future<T> future) throws StructuralException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new StructuralException("Interrupted while building", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof StructuralException) {
+				throw (StructuralException) cause;
+			} else if (cause instanceof ConstructionCancelledException) {
+				throw (ConstructionCancelledException) cause;
+			}
+			throw new StructuralException("Build task failed", cause);
+		}
+	}
+
+	/**
+	 * Stops the build threads after pending tasks have finished.
+	 */
+	public void shutdown() {
+		myExecutor.shutdown();
+	}
+}
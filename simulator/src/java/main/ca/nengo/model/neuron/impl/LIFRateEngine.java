@@ -0,0 +1,247 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "LIFRateEngine.java". Description:
+"Runs a population of LIF neurons in rate mode in a single pass"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.model.neuron.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.nengo.model.Node;
+import ca.nengo.model.SimulationMode;
+
+/**
+ * <p>Runs a population of LIF neurons in rate mode in a single pass.</p>
+ *
+ * <p>In RATE and CONSTANT_RATE modes, SpikingNeuron.run() builds several time series and
+ * output objects per neuron per step, only to evaluate the LIF rate curve once. When every
+ * Node of an ensemble is a SpikingNeuron with an LIFSpikeGenerator and no synaptic input of its
+ * own (the usual case in NEF ensembles, where input arrives through setRadialInput()), this
+ * class computes all the rates in one loop and writes them straight into each neuron's AXON
+ * Origin.</p>
+ *
+ * <p>Optionally, the rate curve can be read from a precomputed interpolation table
+ * rather than evaluated with a logarithm. Tables are shared between all neurons with the same
+ * tauRC and tauRef. The table is indexed by 1/J (J being the net current), which maps all
+ * suprathreshold currents onto [0, 1); the last few intervals before threshold, where the
+ * curve is steepest, are evaluated exactly. Interpolation error is well below 0.01 spikes/s
+ * for typical time constants.</p>
+ *
+ * @author agent
+ */
+public class LIFRateEngine {
+
+	/**
+	 * Number of intervals in rate lookup tables
+	 */
+	public static final int TABLE_SIZE = 4096;
+
+	private static final int EXACT_INTERVALS = 16;
+	private static final float EXACT_THRESHOLD = 1f - (float) EXACT_INTERVALS / (float) TABLE_SIZE;
+	private static final int MAX_TABLES = 64;
+
+	private static final Map<String, float[]> ourTables = new HashMap<String, float[]>();
+
+	private final SpikingNeuron[] myNeurons;
+	private final LIFSpikeGenerator[] myGenerators;
+	private final float[][] myTables;
+	private final float[] myTauRC;
+	private final float[] myTauRef;
+	private final float[] myRates;
+
+	private LIFRateEngine(SpikingNeuron[] neurons, LIFSpikeGenerator[] generators, boolean useTables) {
+		myNeurons = neurons;
+		myGenerators = generators;
+		myRates = new float[neurons.length];
+
+		myTables = new float[neurons.length][];
+		myTauRC = new float[neurons.length];
+		myTauRef = new float[neurons.length];
+		for (int i = 0; i < generators.length; i++) {
+			myTauRC[i] = generators[i].getTauRC();
+			myTauRef[i] = generators[i].getTauRef();
+			if (useTables) {
+				myTables[i] = getTable(myTauRC[i], myTauRef[i]);
+			}
+		}
+	}
+
+	/**
+	 * @param nodes Nodes of an ensemble
+	 * @param useTables If true, rates are interpolated from lookup tables rather than
+	 * 		computed exactly
+	 * @return An engine for the given Nodes, or null if they are not all LIF neurons
+	 * 		without Terminations or noise
+	 */
+	public static LIFRateEngine create(Node[] nodes, boolean useTables) {
+		return create(nodes, useTables, true);
+	}
+
+	/**
+	 * @param nodes Nodes of an ensemble
+	 * @param useTables If true, rates are interpolated from lookup tables rather than
+	 * 		computed exactly
+	 * @return An engine with which to evaluate the rate curves of the given Nodes through
+	 * 		getRates(float[][], float[][]), whatever their modes, Terminations and noise, or null if
+	 * 		they are not all LIF neurons. The engine must not be run.
+	 */
+	public static LIFRateEngine createForCurves(Node[] nodes, boolean useTables) {
+		return create(nodes, useTables, false);
+	}
+
+	private static LIFRateEngine create(Node[] nodes, boolean useTables, boolean checkSupported) {
+		SpikingNeuron[] neurons = new SpikingNeuron[nodes.length];
+		LIFSpikeGenerator[] generators = new LIFSpikeGenerator[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			if ( !(nodes[i] instanceof SpikingNeuron) ) {
+				return null;
+			}
+			neurons[i] = (SpikingNeuron) nodes[i];
+			if ( !(neurons[i].getGenerator() instanceof LIFSpikeGenerator) ) {
+				return null;
+			}
+			generators[i] = (LIFSpikeGenerator) neurons[i].getGenerator();
+			if (checkSupported && !isSupported(neurons[i], generators[i])) {
+				return null;
+			}
+		}
+		return new LIFRateEngine(neurons, generators, useTables);
+	}
+
+	private static boolean isSupported(SpikingNeuron neuron, LIFSpikeGenerator generator) {
+		SimulationMode mode = generator.getMode();
+		return neuron.getGenerator() == generator
+			&& (mode == SimulationMode.RATE || mode == SimulationMode.CONSTANT_RATE)
+			&& neuron.getNoise() == null
+			&& neuron.getIntegrator() instanceof LinearSynapticIntegrator
+			&& !((LinearSynapticIntegrator) neuron.getIntegrator()).hasTerminations();
+	}
+
+	/**
+	 * @return True if rates are interpolated from lookup tables
+	 */
+	public boolean getUseTables() {
+		return myNeurons.length > 0 && myTables[0] != null;
+	}
+
+	/**
+	 * Runs all neurons for one step, using their current radial inputs, scales and biases.
+	 * Stops if any neuron has been reconfigured so that this engine no longer applies (eg a
+	 * Termination or noise has been added, or the mode has changed). Neurons before that one
+	 * will have been run, which is harmless, because in rate modes they have no state that
+	 * running them again would disturb.
+	 *
+	 * @param startTime Simulation time at start of step
+	 * @param endTime Simulation time at end of step
+	 * @return False if the neurons can no longer be run by this engine, in which case they
+	 * 		should be run individually and the engine discarded
+	 */
+	public boolean run(float startTime, float endTime) {
+		for (int i = 0; i < myNeurons.length; i++) {
+			SpikingNeuron neuron = myNeurons[i];
+			if (!isSupported(neuron, myGenerators[i])
+					|| myGenerators[i].getTauRC() != myTauRC[i] || myGenerators[i].getTauRef() != myTauRef[i]) {
+				return false;
+			}
+
+			float current = neuron.getBias() + neuron.getScale() * neuron.getRadialInput();
+			float rate = getRate(i, current);
+			myRates[i] = rate;
+			neuron.setRateOutput(startTime, endTime, current, rate);
+		}
+		return true;
+	}
+
+	/**
+	 * Computes rates for many radial inputs at once (eg for trials that are run as a batch),
+	 * without changing the neurons.
+	 *
+	 * @param radialInputs Radial inputs, a row per neuron and a column per trial
+	 * @param rates Array of the same size, into which the rates are written
+	 */
+	public void getRates(float[][] radialInputs, float[][] rates) {
+		for (int i = 0; i < myNeurons.length; i++) {
+			float bias = myNeurons[i].getBias();
+			float scale = myNeurons[i].getScale();
+			float[] in = radialInputs[i];
+			float[] out = rates[i];
+			for (int j = 0; j < in.length; j++) {
+				out[j] = getRate(i, bias + scale * in[j]);
+			}
+		}
+	}
+
+	private float getRate(int i, float current) {
+		if (current <= 1) {
+			return 0;
+		} else if (myTables[i] != null) {
+			return interpolate(myTables[i], current, myGenerators[i]);
+		} else {
+			return myGenerators[i].constantRateRun(current);
+		}
+	}
+
+	/**
+	 * @return Rates of each neuron in the last step. The array is reused between steps.
+	 */
+	public float[] getRates() {
+		return myRates;
+	}
+
+	private static float interpolate(float[] table, float current, LIFSpikeGenerator generator) {
+		float x = 1f / current;
+		if (x >= EXACT_THRESHOLD) {
+			return generator.constantRateRun(current);
+		}
+		float position = x * TABLE_SIZE;
+		int index = (int) position;
+		float fraction = position - index;
+		return table[index] + fraction * (table[index+1] - table[index]);
+	}
+
+	/**
+	 * @param tauRC Membrane time constant
+	 * @param tauRef Refractory period
+	 * @return Table of LIF rates at 1/J = 0, 1/TABLE_SIZE, ..., 1, shared between callers
+	 */
+	public static float[] getTable(float tauRC, float tauRef) {
+		String key = tauRC + ":" + tauRef;
+		synchronized (ourTables) {
+			float[] result = ourTables.get(key);
+			if (result == null) {
+				result = new float[TABLE_SIZE + 1];
+				for (int i = 0; i < TABLE_SIZE; i++) {
+					double x = (double) i / (double) TABLE_SIZE;
+					result[i] = (float) (1d / (tauRef - tauRC * Math.log(1d - x)));
+				}
+				result[TABLE_SIZE] = 0;
+
+				if (ourTables.size() >= MAX_TABLES) {
+					ourTables.clear();
+				}
+				ourTables.put(key, result);
+			}
+			return result;
+		}
+	}
+}
@@ -176,6 +176,13 @@ public class LinearSynapticIntegrator implements ExpandableSynapticIntegrator {
 		myCurrentUnits = units;
 	}
 
+	/**
+	 * @return True if there are any Terminations (otherwise run() always produces zero current)
+	 */
+	boolean hasTerminations() {
+		return !myTerminations.isEmpty();
+	}
+
 	/**
 	 * @see ca.nengo.model.neuron.SynapticIntegrator#getTerminations()
 	 */
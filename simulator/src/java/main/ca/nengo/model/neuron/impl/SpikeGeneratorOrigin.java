@@ -53,7 +53,9 @@ public class SpikeGeneratorOrigin implements Origin {
     private String myName;
     private Node myNode;
     private SpikeGenerator myGenerator;
-    private InstantaneousOutput myOutput;
+    private InstantaneousOutput myOutput; //null if a rate has been set but not yet wrapped
+    private float myRate;
+    private float myRateTime;
     private boolean myRequiredOnCPU;
 
     /**
@@ -107,6 +109,9 @@ public class SpikeGeneratorOrigin implements Origin {
      * @see ca.nengo.model.Origin#getValues()
      */
     public InstantaneousOutput getValues() {
+        if (myOutput == null) {
+            myOutput = new RealOutputImpl(new float[]{myRate}, Units.SPIKES_PER_S, myRateTime);
+        }
         return myOutput;
     }
     
@@ -114,6 +119,19 @@ public class SpikeGeneratorOrigin implements Origin {
         myOutput = val;
     }
 
+    /**
+     * Sets a firing rate as the output. The corresponding RealOutput is only created if
+     * getValues() is called.
+     *
+     * @param rate Firing rate
+     * @param time Simulation time at which the rate applies
+     */
+    void setRate(float rate, float time) {
+        myOutput = null;
+        myRate = rate;
+        myRateTime = time;
+    }
+
     /**
      * @see ca.nengo.model.Origin#getNode()
      */
@@ -146,7 +164,7 @@ public class SpikeGeneratorOrigin implements Origin {
     @Override
     public SpikeGeneratorOrigin clone() throws CloneNotSupportedException {
         SpikeGeneratorOrigin result = (SpikeGeneratorOrigin) super.clone();
-        result.myOutput = myOutput.clone();
+        result.myOutput = getValues().clone();
         return result;
     }
     
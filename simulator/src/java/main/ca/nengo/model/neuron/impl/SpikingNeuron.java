@@ -75,7 +75,10 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	private SpikeGeneratorOrigin mySpikeOrigin;
 	private BasicOrigin myCurrentOrigin;
 	private float myUnscaledCurrent;
-	private TimeSeries1D myCurrent;
+	private TimeSeries1D myCurrent; //null after a population rate run (see getCurrent())
+	private float myRateStartTime;
+	private float myRateEndTime;
+	private float myRateCurrent;
 	private String myName;
 	private float myScale;
 	private float myBias;
@@ -108,7 +111,7 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 		}
 		setGenerator(generator);
 
-		myCurrentOrigin = new BasicOrigin(this, CURRENT, 1, Units.ACU);
+		myCurrentOrigin = new CurrentOrigin(this);
 		myCurrentOrigin.setValues(0, 0, new float[]{0});
 		myName = name;
 		myScale = scale;
@@ -141,6 +144,46 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 		myCurrentOrigin.setValues(startTime, endTime, new float[]{myUnscaledCurrent});
 	}
 
+	/**
+	 * Sets the results of a step that has been run in rate mode by an LIFRateEngine, in
+	 * place of run().
+	 *
+	 * @param startTime Simulation time at start of step
+	 * @param endTime Simulation time at end of step
+	 * @param current Net current into the SpikeGenerator
+	 * @param rate Firing rate
+	 */
+	void setRateOutput(float startTime, float endTime, float current, float rate) {
+		myUnscaledCurrent = myRadialInput;
+		myCurrent = null;
+		myRateStartTime = startTime;
+		myRateEndTime = endTime;
+		myRateCurrent = current;
+
+		mySpikeOrigin.setRate(rate, endTime);
+		if (myCurrentOrigin instanceof CurrentOrigin) {
+			((CurrentOrigin) myCurrentOrigin).setValue(startTime, endTime, myUnscaledCurrent);
+		} else {
+			myCurrentOrigin.setValues(startTime, endTime, new float[]{myUnscaledCurrent});
+		}
+	}
+
+	/**
+	 * @return Radial input (see setRadialInput())
+	 */
+	float getRadialInput() {
+		return myRadialInput;
+	}
+
+	//the current history is only created on demand after a population rate run
+	private TimeSeries1D getCurrent() {
+		if (myCurrent == null) {
+			myCurrent = new TimeSeries1DImpl(new float[]{myRateStartTime, myRateEndTime},
+					new float[]{myRateCurrent, myRateCurrent}, Units.UNK);
+		}
+		return myCurrent;
+	}
+
 	/**
 	 * @see ca.nengo.model.neuron.Neuron#getOrigins()
 	 */
@@ -201,10 +244,10 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	public TimeSeries getHistory(String stateName) throws SimulationException {
 		TimeSeries result = null;
 		if (stateName.equals("I")) {
-			result = myCurrent;
+			result = getCurrent();
 		} else if (stateName.equals("rate")) {
 			InstantaneousOutput output = mySpikeOrigin.getValues();
-			float[] times = myCurrent.getTimes();
+			float[] times = getCurrent().getTimes();
 			float rate = 0;
 			if (output instanceof RealOutput) {
 				rate = ((RealOutput) output).getValues()[0];
@@ -213,7 +256,7 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 			}
 			result = new TimeSeries1DImpl(new float[]{times[times.length-1]}, new float[]{rate}, Units.SPIKES_PER_S);
 		} else if (stateName.equals(CURRENT)) {
-			float[] times = myCurrent.getTimes();
+			float[] times = getCurrent().getTimes();
 			result = new TimeSeries1DImpl(new float[]{times[times.length-1]}, new float[]{myUnscaledCurrent}, Units.ACU);
 		} else if (myGenerator instanceof Probeable) {
 			result = ((Probeable) myGenerator).getHistory(stateName);
@@ -371,7 +414,7 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 	@Override
 	public SpikingNeuron clone() throws CloneNotSupportedException {
 		SpikingNeuron result = (SpikingNeuron) super.clone();
-		result.myCurrent = (TimeSeries1D) myCurrent.clone();
+		result.myCurrent = (TimeSeries1D) getCurrent().clone();
 
 		result.myCurrentOrigin = (BasicOrigin) myCurrentOrigin.clone();
 
@@ -404,6 +447,69 @@ public class SpikingNeuron implements Neuron, Probeable, NEFNode {
 		return myNoise;
 	}
 
+	/**
+	 * Origin of the unscaled current, which (without noise) defers wrapping the value in a
+	 * RealOutput until it is asked for.
+	 */
+	private static class CurrentOrigin extends BasicOrigin {
+
+		private static final long serialVersionUID = 1L;
+
+		private boolean myPending;
+		private float myStartTime;
+		private float myEndTime;
+		private float myValue;
+
+		public CurrentOrigin(Node node) {
+			super(node, CURRENT, 1, Units.ACU);
+		}
+
+		public void setValue(float startTime, float endTime, float value) {
+			if (getNoise() != null) {
+				setValues(startTime, endTime, new float[]{value});
+			} else {
+				myPending = true;
+				myStartTime = startTime;
+				myEndTime = endTime;
+				myValue = value;
+			}
+		}
+
+		@Override
+		public void setValues(float startTime, float endTime, float[] values) {
+			myPending = false;
+			super.setValues(startTime, endTime, values);
+		}
+
+		@Override
+		public void setValues(InstantaneousOutput values) {
+			myPending = false;
+			super.setValues(values);
+		}
+
+		@Override
+		public InstantaneousOutput getValues() throws SimulationException {
+			if (myPending) {
+				setValues(myStartTime, myEndTime, new float[]{myValue});
+			}
+			return super.getValues();
+		}
+
+		@Override
+		public void reset(boolean randomize) {
+			myPending = false;
+			super.reset(randomize);
+		}
+
+		@Override
+		public BasicOrigin clone() throws CloneNotSupportedException {
+			if (myPending) {
+				setValues(myStartTime, myEndTime, new float[]{myValue});
+			}
+			return super.clone();
+		}
+	}
+
 	public Node[] getChildren() {
 		return new Node[0];
 	}
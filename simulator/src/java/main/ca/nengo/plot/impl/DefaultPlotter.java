@@ -30,6 +30,8 @@ package ca.nengo.plot.impl;
 import java.awt.BasicStroke;
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
 import java.util.List;
 
 import javax.swing.JFrame;
@@ -52,18 +54,11 @@ import org.jfree.data.xy.XYSeriesCollection;
 import org.jfree.util.ShapeUtilities;
 
 import ca.nengo.math.Function;
-import ca.nengo.model.Noise;
 import ca.nengo.model.Origin;
-import ca.nengo.model.RealOutput;
-import ca.nengo.model.SimulationException;
-import ca.nengo.model.SimulationMode;
 import ca.nengo.model.StructuralException;
 import ca.nengo.model.nef.NEFEnsemble;
-import ca.nengo.model.nef.NEFNode;
 import ca.nengo.model.nef.impl.DecodedOrigin;
-import ca.nengo.model.nef.impl.NEFEnsembleImpl;
-import ca.nengo.model.neuron.Neuron;
-import ca.nengo.model.neuron.impl.SpikingNeuron;
+import ca.nengo.model.nef.impl.EnsembleAnalysis;
 import ca.nengo.plot.Plotter;
 import ca.nengo.util.MU;
 import ca.nengo.util.SpikePattern;
@@ -93,7 +88,7 @@ public class DefaultPlotter extends Plotter {
 	 * @see ca.nengo.plot.Plotter#doPlot(ca.nengo.util.TimeSeries, java.lang.String)
 	 */
 	public void doPlot(TimeSeries series, String title) {
-		XYSeriesCollection dataset = getDataset(series);
+		EnvelopeDataset dataset = getDataset(series);
 		
 		JFreeChart chart = ChartFactory.createXYLineChart(
 				title,
@@ -103,6 +98,7 @@ public class DefaultPlotter extends Plotter {
 				PlotOrientation.VERTICAL, 
 				(series.getDimension() < 10), false, false
 		);
+		chart.getXYPlot().getDomainAxis().addChangeListener(dataset);
 		
 		showChart(chart, "Time Series Plot");
 	}
@@ -111,8 +107,8 @@ public class DefaultPlotter extends Plotter {
 	 * @see ca.nengo.plot.Plotter#doPlot(ca.nengo.util.TimeSeries, ca.nengo.util.TimeSeries, java.lang.String)
 	 */
 	public void doPlot(TimeSeries ideal, TimeSeries actual, String title) {
-		XYSeriesCollection idealDataset = getDataset(ideal);
-		XYSeriesCollection actualDataset = getDataset(actual);
+		EnvelopeDataset idealDataset = getDataset(ideal);
+		EnvelopeDataset actualDataset = getDataset(actual);
 		
 		JFreeChart chart = ChartFactory.createXYLineChart(
 				title,
@@ -125,6 +121,8 @@ public class DefaultPlotter extends Plotter {
 
 		XYPlot plot = (XYPlot) chart.getPlot();		
 		plot.setDataset(1, actualDataset);
+		plot.getDomainAxis().addChangeListener(idealDataset);
+		plot.getDomainAxis().addChangeListener(actualDataset);
 
 		XYLineAndShapeRenderer idealRenderer = new XYLineAndShapeRenderer(true, false);
 		idealRenderer.setDrawSeriesLineAsPath(true);
@@ -159,7 +157,9 @@ public class DefaultPlotter extends Plotter {
 		
 		int i = 0;
 		for (; series != null && i < series.size(); i++) {
-			plot.setDataset(i, getDataset(series.get(i)));			
+			EnvelopeDataset dataset = getDataset(series.get(i));
+			plot.setDataset(i, dataset);
+			plot.getDomainAxis().addChangeListener(dataset);
 			XYLineAndShapeRenderer renderer = new XYLineAndShapeRenderer(true, false);
 			renderer.setDrawSeriesLineAsPath(true);
 			renderer.setPaint(getColor(i));
@@ -174,14 +174,13 @@ public class DefaultPlotter extends Plotter {
 		
 		for (int j = 0; patterns != null && j < patterns.size(); j++) {
 			int index = i+j;
-			plot.setDataset(index, getDataset(patterns.get(j)));
-			XYLineAndShapeRenderer renderer = new XYLineAndShapeRenderer(true, false);
-			configSpikeRenderer(renderer);
-			renderer.setPaint(getColor(j));
-			plot.setRenderer(index, renderer);
+			String name = "Spike Pattern " + j;
+			SpikeRasterAnnotation raster = new SpikeRasterAnnotation(patterns.get(j), getColor(j));
+			plot.setDataset(index, raster.getBoundsDataset(name));
+			plot.setRenderer(index, new XYLineAndShapeRenderer(false, false));
+			plot.addAnnotation(raster);
 			
-			revisedItems.add(getCopy(plot.getLegendItems().get(legendItemIndex), "Spike Pattern " + j));
-			legendItemIndex += patterns.get(j).getNumNeurons();
+			revisedItems.add(new LegendItem(name, null, null, null, ShapeUtilities.createDiamond(3f), getColor(j)));
 		}
 
 		plot.setFixedLegendItems(revisedItems);
@@ -207,37 +206,16 @@ public class DefaultPlotter extends Plotter {
 		);
 	}
 
-	private XYSeriesCollection getDataset(TimeSeries series) {
-		XYSeriesCollection dataset = new XYSeriesCollection();
-		
-		float[] times = series.getTimes();
-		
-		if (times.length > 0) {
-			if (series instanceof TimeSeries1D) {
-				XYSeries xy = new XYSeries(series.getLabels()[0]);
-				
-				float[] values = ((TimeSeries1D) series).getValues1D();
-				for (int i = 0; i < values.length; i++) {
-					xy.add(times[i], values[i]);
-				}
-				
-				dataset.addSeries(xy);
-			} else {
-				float[][] values = series.getValues();
-				
-				for (int j = 0; j < values[0].length; j++) {
-					XYSeries xy = new XYSeries(series.getLabels()[j]);
-					
-					for (int i = 0; i < values.length; i++) {
-						xy.add(times[i], values[i][j]);
-					}
-					
-					dataset.addSeries(xy);
-				}
-			}
-		}
+	//only about as many points as there are pixels across the screen are shown at a time
+	private static EnvelopeDataset getDataset(TimeSeries series) {
+		return new EnvelopeDataset(series, getResolution());
+	}
 
-		return dataset;
+	private static int getResolution() {
+		if (GraphicsEnvironment.isHeadless()) {
+			return 2000;
+		}
+		return Toolkit.getDefaultToolkit().getScreenSize().width;
 	}
 
 	/**
@@ -258,37 +236,12 @@ public class DefaultPlotter extends Plotter {
 				return;
 			}
 			
-			
-//			float[][] encoders = ensemble.getEncoders();
-
-			float[] x = new float[101]; 
-			float[][] idealOutput = new float[x.length][];
-			float[][] actualOutput = new float[x.length][];
-
-			NEFNode[] nodes = (NEFNode[]) ensemble.getNodes();
-			
-			SimulationMode mode = ensemble.getMode();
-			float radius = ensemble.getRadii()[0];
-			for (int i = 0; i < x.length; i++) {
-				x[i] = -radius + (float) i * (2f*radius / (float) (x.length-1));
-								
-				ensemble.setMode(SimulationMode.CONSTANT_RATE);
-				for (int j = 0; j < nodes.length; j++) {
-//					((NEFNode) nodes[j]).setRadialInput(x[i]*encoders[j][0]);
-					((NEFNode) nodes[j]).setRadialInput(getRadialInput(ensemble, j, x[i]));
-					
-					nodes[j].run(0f, 0f);		
-				}
-				origin.run(null, 0f, 1f);
-				actualOutput[i] = ((RealOutput) origin.getValues()).getValues();
-				
-				ensemble.setMode(SimulationMode.DIRECT);
-				float[] state = new float[ensemble.getDimension()];
-				state[0] = x[i];
-				origin.run(state, 0f, 1f);
-				idealOutput[i] = ((RealOutput) origin.getValues()).getValues();
-			}
-			ensemble.setMode(mode);
+			EnsembleAnalysis analysis = ensemble.getAnalysis();
+			float[][] points = analysis.getAxisPoints(101);
+			float[][] idealOutput = EnsembleAnalysis.getIdealOutput(origin, points);
+			float[][] actualOutput = EnsembleAnalysis.getDecodedOutput(origin, 
+					analysis.getAxisActivities(points.length, origin.getNodeOrigin()));
+			float[] x = MU.transpose(points)[0];
 			
 			//one plot per output dimension ... 
 			for (int i = 0; i < idealOutput[0].length; i++) {
@@ -297,65 +250,19 @@ public class DefaultPlotter extends Plotter {
 			
 		} catch (StructuralException e) {
 			throw new RuntimeException("Can't plot origin error", e);
-		} catch (SimulationException e) {
-			e.printStackTrace();
-			throw new RuntimeException("Can't plot origin error", e);
 		}
 	}
 	
 	//plots MSE for each dimension of an Origin
 	public void doPlotMSE(NEFEnsemble ensemble, DecodedOrigin origin, String name) {
-		float [] error=new float[origin.getDimensions()] ;
-		float mseAvg;  //MSE for all of the dimensions of the origin together
+		EnsembleAnalysis.DecodingError error = ensemble.getAnalysis().getError(origin);
+		float[] distortion = error.getDistortion();
 		
-		JPanel panel= new JPanel();
 		JFrame frame=createFrame();
+		frame.getContentPane().add(getBarChart(distortion,"MSE per Dimension for Origin: "+origin.getName()), BorderLayout.CENTER);
+		frame.setTitle("Origin MSE Plot (Overall MSE=" + MU.mean(distortion) + ", RMSE with noise=" + error.getRMSE() + ")");
+		frame.pack();
 		frame.setVisible(true);
-		long time=System.currentTimeMillis()-21;
-
-
-		//plot MSE on continuously updating graph as more samples are used in the calculation
-		for (int i=1;i==1 || frame.isVisible();i++){  //will crash if runtime exceeds 4.1 years
-			//synchronized(ensemble){
-				error=MU.sum(MU.prod(error, ((i-1f)/i)), MU.prod(origin.getError(1),1f/i));
-			//}
-			mseAvg = MU.mean(error);
-			if((System.currentTimeMillis()-time)>20l){  //frame limiter
-				panel = getBarChart(error,"MSE per Dimension for Origin: "+origin.getName());
-				frame.getContentPane().removeAll();
-				frame.getContentPane().add(panel, BorderLayout.CENTER);
-				frame.setTitle("Origin MSE Plot (Overall MSE=" + mseAvg + ")");
-				frame.validate();
-				
-				time=System.currentTimeMillis();
-			}
-			if (i==1){
-				frame.pack();
-				frame.setVisible(true);
-			}
-		}
-	}
-	
-
-	
-	private static float getRadialInput(NEFEnsemble ensemble, int node, float radius) {
-		//plot along preferred direction for multi-dimensional ensembles
-		float radialInput = radius; 
-		
-		//plot along positive axis for one-dimensional ensembles
-		if (ensemble.getDimension() == 1) {
-			if (ensemble instanceof NEFEnsembleImpl) {
-				radialInput = ((NEFEnsembleImpl) ensemble).getRadialInput(new float[]{radius}, node);
-			} else {
-				radialInput = radius*ensemble.getEncoders()[node][0];
-			}
-		} else if (ensemble instanceof NEFEnsembleImpl) {
-			float[] state = new float[ensemble.getDimension()];
-			state[0] = radius;
-			radialInput = ((NEFEnsembleImpl) ensemble).getRadialInput(state, node);
-		}
-		
-		return radialInput;
 	}
 	
 	//used by origin plot
@@ -411,69 +318,16 @@ public class DefaultPlotter extends Plotter {
 	public void doPlot(NEFEnsemble ensemble) {
 		XYSeriesCollection dataset = new XYSeriesCollection();
 		
-		synchronized(ensemble){
-			float[][] encoders = ensemble.getEncoders();
-			NEFNode[] nodes = (NEFNode[]) ensemble.getNodes();
-	
-			float[] x = new float[101];
-			for (int i = 0; i < x.length; i++) {
-				x[i] = -1f + (float) i * (2f / (float) (x.length-1));
-			}
-			
-			SimulationMode mode = ensemble.getMode();
-			ensemble.setMode(SimulationMode.CONSTANT_RATE);
-			
-			
-			
-			float[][] rates = new float[nodes.length][];
-			for (int i = 0; i < nodes.length; i++) {
-	
-				//radius of encoded space in direction of this encoder
-				float radius = MU.pnorm(MU.prodElementwise(encoders[i], ensemble.getRadii()), 2);
-				
-				XYSeries series = new XYSeries("Neuron " + i);
-				rates[i] = new float[x.length];
-				
-				for (int j = 0; j < x.length; j++) {
-					float radialInput = (ensemble.getDimension() == 1) ? x[j]*encoders[i][0] : x[j];
-	//				float radialInput = getRadialInput(ensemble, i, x[j]);
-					
-					((NEFNode) nodes[i]).setRadialInput(radialInput);
-					try {
-						Noise noise=null;
-						if (nodes[i] instanceof SpikingNeuron) {
-							noise=((SpikingNeuron)nodes[i]).getNoise();
-							((SpikingNeuron)nodes[i]).setNoise(null);
-						}
-						nodes[i].run(0f, 0f);
-						RealOutput output = (RealOutput) nodes[i].getOrigin(Neuron.AXON).getValues();
-						series.add(x[j]*radius, output.getValues()[0]);
-						rates[i][j] = output.getValues()[0];
-						nodes[i].reset(false);
-						if (noise!=null) {
-							((SpikingNeuron)nodes[i]).setNoise(noise);
-						}
-					} catch (SimulationException e) {
-						throw new RuntimeException("Can't plot activities: error running neurons", e);
-					} catch (ClassCastException e) {
-						throw new RuntimeException("Can't plot activities: neurons producing spike output", e);					
-					} catch (StructuralException e) {
-						throw new RuntimeException("Can't plot activities: error running neurons", e);
-					}
-				}
-				
-				dataset.addSeries(series);
+		EnsembleAnalysis analysis = ensemble.getAnalysis();
+		float[] x = EnsembleAnalysis.getTuningInputs(101);
+		float[][] rates = analysis.getTuningCurves(x.length);
+		float[] radii = analysis.getTuningRadii();
+		for (int i = 0; i < rates.length; i++) {
+			XYSeries series = new XYSeries("Neuron " + i);
+			for (int j = 0; j < x.length; j++) {
+				series.add(x[j]*radii[i], rates[i][j]);
 			}
-	//		MatlabExporter exporter = new MatlabExporter();
-	//		exporter.add("x", new float[][]{x});
-	//		exporter.add("rates", rates);
-	//		try {
-	//			exporter.write(new File("activities.mat"));
-	//		} catch (IOException e) {
-	//			e.printStackTrace();
-	//		}
-			
-			ensemble.setMode(mode);
+			dataset.addSeries(series);
 		}
 		
 		JFreeChart chart = ChartFactory.createXYLineChart(
@@ -492,45 +346,24 @@ public class DefaultPlotter extends Plotter {
 	 * @see ca.nengo.plot.Plotter#doPlot(ca.nengo.util.SpikePattern)
 	 */
 	public void doPlot(SpikePattern pattern) {
-		XYSeriesCollection dataset = getDataset(pattern);
+		SpikeRasterAnnotation raster = new SpikeRasterAnnotation(pattern, Color.BLACK);
 		
 		JFreeChart chart = ChartFactory.createScatterPlot(
 				"Spike Raster",
 				"Time (s)", 
 				"Neuron #", 
-				dataset, 
+				raster.getBoundsDataset("Spikes"), 
 				PlotOrientation.VERTICAL, 
 				false, false, false
 		);
 
-		XYLineAndShapeRenderer renderer = (XYLineAndShapeRenderer) chart.getXYPlot().getRenderer();
-		configSpikeRenderer(renderer);
+		//spikes are drawn as a bitmap rather than a chart item each
+		XYPlot plot = chart.getXYPlot();
+		plot.setRenderer(new XYLineAndShapeRenderer(false, false));
+		plot.addAnnotation(raster);
 
 		showChart(chart, "Spike Raster");
 	}
-	
-	private static XYSeriesCollection getDataset(SpikePattern pattern) {
-		XYSeriesCollection dataset = new XYSeriesCollection();
-		
-		for (int i = 0; i < pattern.getNumNeurons(); i++) {
-			XYSeries series = new XYSeries("Neuron " + i);
-			float[] spikes = pattern.getSpikeTimes(i);
-			for (int j = 0; j < spikes.length; j++) {
-				series.add(spikes[j], i);
-			}
-			dataset.addSeries(series);
-		}		
-
-		return dataset;
-	}
-	
-	private static void configSpikeRenderer(XYLineAndShapeRenderer renderer) {
-		renderer.setShape(ShapeUtilities.createDiamond(1f));
-		renderer.setShapesVisible(true);
-		renderer.setShapesFilled(true);
-		renderer.setLinesVisible(false);
-		renderer.setPaint(Color.BLACK);
-	}
 
 	/**
 	 * @see ca.nengo.plot.Plotter#doPlot(ca.nengo.math.Function, float, float, float, String)
@@ -0,0 +1,214 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "EnvelopeDataset.java". Description:
+"A JFreeChart dataset that shows a TimeSeries (a series per dimension) through an EnvelopePyramid"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.plot.impl;
+
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.event.AxisChangeEvent;
+import org.jfree.chart.event.AxisChangeListener;
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractXYDataset;
+
+import ca.nengo.util.TimeSeries;
+
+/**
+ * A JFreeChart dataset that shows a TimeSeries (a series per dimension) through an
+ * EnvelopePyramid. It holds only the points needed to draw the visible span of time, at about
+ * one point per pixel, and recomputes them when the domain axis it listens to is zoomed or
+ * panned. Its domain and range bounds are those of the whole series, so auto-ranging still
+ * shows everything.
+ *
+ * @author agent
+ */
+public class EnvelopeDataset extends AbstractXYDataset implements DomainInfo, RangeInfo, AxisChangeListener {
+
+	private static final long serialVersionUID = 1L;
+
+	private final EnvelopePyramid myPyramid;
+	private final String[] myKeys;
+	private final int myMaxPoints;
+	private final double[][] myTimes;
+	private final double[][] myValues;
+	private final int[] myCounts;
+
+	private double myStart;
+	private double myEnd;
+
+	/**
+	 * @param series The TimeSeries to show
+	 * @param maxPoints Approximate number of points to show for each dimension (eg the width of
+	 * 		the plot in pixels)
+	 */
+	public EnvelopeDataset(TimeSeries series, int maxPoints) {
+		myPyramid = new EnvelopePyramid(series);
+		myKeys = series.getLabels();
+		myMaxPoints = Math.max(4, maxPoints);
+		myTimes = new double[myPyramid.getDimension()][myMaxPoints + 4];
+		myValues = new double[myPyramid.getDimension()][myMaxPoints + 4];
+		myCounts = new int[myPyramid.getDimension()];
+		myStart = Double.NaN;
+		myEnd = Double.NaN;
+		setSpan(myPyramid.getStartTime(), myPyramid.getEndTime());
+	}
+
+	/**
+	 * @param start Start of the span of time to show
+	 * @param end End of the span of time to show
+	 */
+	public void setSpan(double start, double end) {
+		if (start == myStart && end == myEnd) {
+			return;
+		}
+		myStart = start;
+		myEnd = end;
+		for (int d = 0; d < myCounts.length; d++) {
+			myCounts[d] = myPyramid.getPoints(d, start, end, myMaxPoints, myTimes[d], myValues[d]);
+		}
+		fireDatasetChanged();
+	}
+
+	/**
+	 * Follows zooming and panning of a domain axis.
+	 *
+	 * @see org.jfree.chart.event.AxisChangeListener#axisChanged(org.jfree.chart.event.AxisChangeEvent)
+	 */
+	public void axisChanged(AxisChangeEvent event) {
+		if (event.getAxis() instanceof ValueAxis) {
+			ValueAxis axis = (ValueAxis) event.getAxis();
+			setSpan(axis.getLowerBound(), axis.getUpperBound());
+		}
+	}
+
+	/**
+	 * @see org.jfree.data.general.SeriesDataset#getSeriesCount()
+	 */
+	public int getSeriesCount() {
+		return myCounts.length;
+	}
+
+	/**
+	 * @see org.jfree.data.general.SeriesDataset#getSeriesKey(int)
+	 */
+	public Comparable<?> getSeriesKey(int series) {
+		return myKeys[series];
+	}
+
+	/**
+	 * @see org.jfree.data.xy.AbstractXYDataset#getDomainOrder()
+	 */
+	public DomainOrder getDomainOrder() {
+		return DomainOrder.ASCENDING;
+	}
+
+	/**
+	 * @see org.jfree.data.xy.XYDataset#getItemCount(int)
+	 */
+	public int getItemCount(int series) {
+		return myCounts[series];
+	}
+
+	/**
+	 * @see org.jfree.data.xy.XYDataset#getX(int, int)
+	 */
+	public Number getX(int series, int item) {
+		return Double.valueOf(myTimes[series][item]);
+	}
+
+	/**
+	 * @see org.jfree.data.xy.AbstractXYDataset#getXValue(int, int)
+	 */
+	public double getXValue(int series, int item) {
+		return myTimes[series][item];
+	}
+
+	/**
+	 * @see org.jfree.data.xy.XYDataset#getY(int, int)
+	 */
+	public Number getY(int series, int item) {
+		return Double.valueOf(myValues[series][item]);
+	}
+
+	/**
+	 * @see org.jfree.data.xy.AbstractXYDataset#getYValue(int, int)
+	 */
+	public double getYValue(int series, int item) {
+		return myValues[series][item];
+	}
+
+	/**
+	 * @see org.jfree.data.DomainInfo#getDomainLowerBound(boolean)
+	 */
+	public double getDomainLowerBound(boolean includeInterval) {
+		return myPyramid.getStartTime();
+	}
+
+	/**
+	 * @see org.jfree.data.DomainInfo#getDomainUpperBound(boolean)
+	 */
+	public double getDomainUpperBound(boolean includeInterval) {
+		return myPyramid.getEndTime();
+	}
+
+	/**
+	 * @see org.jfree.data.DomainInfo#getDomainBounds(boolean)
+	 */
+	public Range getDomainBounds(boolean includeInterval) {
+		return myPyramid.getLength() == 0 ? null : new Range(myPyramid.getStartTime(), myPyramid.getEndTime());
+	}
+
+	/**
+	 * @see org.jfree.data.RangeInfo#getRangeLowerBound(boolean)
+	 */
+	public double getRangeLowerBound(boolean includeInterval) {
+		double result = Double.POSITIVE_INFINITY;
+		for (int d = 0; d < myCounts.length; d++) {
+			result = Math.min(result, myPyramid.getMin(d));
+		}
+		return result;
+	}
+
+	/**
+	 * @see org.jfree.data.RangeInfo#getRangeUpperBound(boolean)
+	 */
+	public double getRangeUpperBound(boolean includeInterval) {
+		double result = Double.NEGATIVE_INFINITY;
+		for (int d = 0; d < myCounts.length; d++) {
+			result = Math.max(result, myPyramid.getMax(d));
+		}
+		return result;
+	}
+
+	/**
+	 * @see org.jfree.data.RangeInfo#getRangeBounds(boolean)
+	 */
+	public Range getRangeBounds(boolean includeInterval) {
+		if (myPyramid.getLength() == 0 || myCounts.length == 0) {
+			return null;
+		}
+		return new Range(getRangeLowerBound(includeInterval), getRangeUpperBound(includeInterval));
+	}
+}
@@ -0,0 +1,280 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "EnvelopePyramid.java". Description:
+"A level-of-detail summary of a TimeSeries, for plotting long recordings"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.plot.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.nengo.util.TimeSeries;
+
+/**
+ * <p>A level-of-detail summary of a TimeSeries, for plotting long recordings. Each level
+ * divides the samples into bins (of 4 samples at the first level, then 8, 16, etc.) and keeps
+ * the minimum and maximum of each dimension in each bin. A plot of any span of time can then
+ * be drawn with about as many points as there are pixels across it, from the coarsest level
+ * that still has a bin per pixel, and the envelope of the signal (including single-sample
+ * peaks) is preserved at every zoom level.</p>
+ *
+ * <p>The levels are built once, in time proportional to the size of the series, and take
+ * about as much memory again as the series itself.</p>
+ *
+ * @author agent
+ */
+public class EnvelopePyramid {
+
+	private static final int FIRST_BIN_SIZE = 4;
+
+	private final float[] myTimes;
+	private final float[][] myValues;
+	private final int myDimension;
+
+	//one entry per level; arrays are indexed by dimension then bin
+	private final List<float[][]> myMins;
+	private final List<float[][]> myMaxs;
+	private final List<boolean[][]> myMaxFirst;
+
+	private final float[] myOverallMin;
+	private final float[] myOverallMax;
+
+	/**
+	 * @param series The TimeSeries to summarize (its times are assumed to be in ascending order)
+	 */
+	public EnvelopePyramid(TimeSeries series) {
+		myTimes = series.getTimes();
+		myValues = series.getValues();
+		myDimension = series.getDimension();
+		myMins = new ArrayList<float[][]>();
+		myMaxs = new ArrayList<float[][]>();
+		myMaxFirst = new ArrayList<boolean[][]>();
+		myOverallMin = new float[myDimension];
+		myOverallMax = new float[myDimension];
+
+		int n = myTimes.length;
+		if (n > FIRST_BIN_SIZE && myDimension > 0) {
+			buildFirstLevel();
+			while (myMins.get(myMins.size()-1)[0].length > 1) {
+				buildNextLevel();
+			}
+		}
+
+		for (int d = 0; d < myDimension; d++) {
+			myOverallMin[d] = Float.POSITIVE_INFINITY;
+			myOverallMax[d] = Float.NEGATIVE_INFINITY;
+		}
+		if (myMins.isEmpty()) {
+			for (int i = 0; i < n; i++) {
+				for (int d = 0; d < myDimension; d++) {
+					myOverallMin[d] = Math.min(myOverallMin[d], myValues[i][d]);
+					myOverallMax[d] = Math.max(myOverallMax[d], myValues[i][d]);
+				}
+			}
+		} else {
+			int top = myMins.size() - 1;
+			for (int d = 0; d < myDimension; d++) {
+				myOverallMin[d] = myMins.get(top)[d][0];
+				myOverallMax[d] = myMaxs.get(top)[d][0];
+			}
+		}
+	}
+
+	private void buildFirstLevel() {
+		int n = myTimes.length;
+		int bins = (n + FIRST_BIN_SIZE - 1) / FIRST_BIN_SIZE;
+		float[][] mins = new float[myDimension][bins];
+		float[][] maxs = new float[myDimension][bins];
+		boolean[][] maxFirst = new boolean[myDimension][bins];
+
+		for (int b = 0; b < bins; b++) {
+			int start = b * FIRST_BIN_SIZE;
+			int end = Math.min(n, start + FIRST_BIN_SIZE);
+			for (int d = 0; d < myDimension; d++) {
+				float min = myValues[start][d];
+				float max = min;
+				int minIndex = start;
+				int maxIndex = start;
+				for (int i = start+1; i < end; i++) {
+					float value = myValues[i][d];
+					if (value < min) {
+						min = value;
+						minIndex = i;
+					} else if (value > max) {
+						max = value;
+						maxIndex = i;
+					}
+				}
+				mins[d][b] = min;
+				maxs[d][b] = max;
+				maxFirst[d][b] = maxIndex < minIndex;
+			}
+		}
+		myMins.add(mins);
+		myMaxs.add(maxs);
+		myMaxFirst.add(maxFirst);
+	}
+
+	private void buildNextLevel() {
+		int last = myMins.size() - 1;
+		float[][] lowerMins = myMins.get(last);
+		float[][] lowerMaxs = myMaxs.get(last);
+		boolean[][] lowerMaxFirst = myMaxFirst.get(last);
+		int lowerBins = lowerMins[0].length;
+		int bins = (lowerBins + 1) / 2;
+
+		float[][] mins = new float[myDimension][bins];
+		float[][] maxs = new float[myDimension][bins];
+		boolean[][] maxFirst = new boolean[myDimension][bins];
+		for (int d = 0; d < myDimension; d++) {
+			for (int b = 0; b < bins; b++) {
+				int a = 2*b;
+				int c = Math.min(a+1, lowerBins-1);
+				boolean minFromA = lowerMins[d][a] <= lowerMins[d][c];
+				boolean maxFromA = lowerMaxs[d][a] >= lowerMaxs[d][c];
+				mins[d][b] = minFromA ? lowerMins[d][a] : lowerMins[d][c];
+				maxs[d][b] = maxFromA ? lowerMaxs[d][a] : lowerMaxs[d][c];
+				if (minFromA == maxFromA) {
+					maxFirst[d][b] = minFromA ? lowerMaxFirst[d][a] : lowerMaxFirst[d][c];
+				} else {
+					maxFirst[d][b] = maxFromA;
+				}
+			}
+		}
+		myMins.add(mins);
+		myMaxs.add(maxs);
+		myMaxFirst.add(maxFirst);
+	}
+
+	/**
+	 * @return Number of samples in the series
+	 */
+	public int getLength() {
+		return myTimes.length;
+	}
+
+	/**
+	 * @return Dimension of the series
+	 */
+	public int getDimension() {
+		return myDimension;
+	}
+
+	/**
+	 * @return Time of the first sample (or NaN if there are none)
+	 */
+	public float getStartTime() {
+		return myTimes.length == 0 ? Float.NaN : myTimes[0];
+	}
+
+	/**
+	 * @return Time of the last sample (or NaN if there are none)
+	 */
+	public float getEndTime() {
+		return myTimes.length == 0 ? Float.NaN : myTimes[myTimes.length-1];
+	}
+
+	/**
+	 * @param dim A dimension of the series
+	 * @return Smallest value of the given dimension
+	 */
+	public float getMin(int dim) {
+		return myOverallMin[dim];
+	}
+
+	/**
+	 * @param dim A dimension of the series
+	 * @return Largest value of the given dimension
+	 */
+	public float getMax(int dim) {
+		return myOverallMax[dim];
+	}
+
+	/**
+	 * Gets points with which to draw one dimension over a span of time. If there are few
+	 * enough samples in the span they are returned as they are. Otherwise each bin of a
+	 * summary level contributes its minimum and maximum (in the order in which they occur),
+	 * at the times of the bin's first and last samples. A sample on either side of the span
+	 * is included so that lines run to the edges of the plot.
+	 *
+	 * @param dim Dimension to draw
+	 * @param start Start of the span
+	 * @param end End of the span
+	 * @param maxPoints Maximum number of points to return (at least 4)
+	 * @param times Array of length at least maxPoints+4 into which to write times
+	 * @param values Array of length at least maxPoints+4 into which to write values
+	 * @return Number of points written
+	 */
+	public int getPoints(int dim, double start, double end, int maxPoints, double[] times, double[] values) {
+		int n = myTimes.length;
+		if (n == 0) {
+			return 0;
+		}
+		int first = Math.max(0, firstIndex(start, false) - 1);
+		int last = Math.min(n - 1, firstIndex(end, true));
+		int count = last - first + 1;
+
+		if (count <= maxPoints || myMins.isEmpty()) {
+			for (int i = 0; i < count; i++) {
+				times[i] = myTimes[first + i];
+				values[i] = myValues[first + i][dim];
+			}
+			return count;
+		}
+
+		int level = 0;
+		int binSize = FIRST_BIN_SIZE;
+		while (level < myMins.size() - 1 && 2 * (count / binSize + 2) > maxPoints) {
+			level++;
+			binSize *= 2;
+		}
+		float[] mins = myMins.get(level)[dim];
+		float[] maxs = myMaxs.get(level)[dim];
+		boolean[] maxFirst = myMaxFirst.get(level)[dim];
+
+		int result = 0;
+		for (int b = first / binSize; b <= last / binSize; b++) {
+			float t0 = myTimes[b * binSize];
+			float t1 = myTimes[Math.min(n, (b+1) * binSize) - 1];
+			times[result] = t0;
+			values[result++] = maxFirst[b] ? maxs[b] : mins[b];
+			times[result] = t1;
+			values[result++] = maxFirst[b] ? mins[b] : maxs[b];
+		}
+		return result;
+	}
+
+	//index of first sample at or after (or if after is true, strictly after) the given time
+	private int firstIndex(double time, boolean after) {
+		int low = 0;
+		int high = myTimes.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (myTimes[mid] < time || (after && myTimes[mid] == time)) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
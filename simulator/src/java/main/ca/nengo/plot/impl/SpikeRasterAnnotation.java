@@ -0,0 +1,190 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "SpikeRasterAnnotation.java". Description:
+"Draws a spike raster as a bitmap the size of the plot"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.plot.impl;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import org.jfree.chart.annotations.AbstractXYAnnotation;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.plot.PlotRenderingInfo;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+import org.jfree.ui.RectangleEdge;
+
+import ca.nengo.util.SpikePattern;
+import ca.nengo.util.impl.SpikePatternImpl;
+
+/**
+ * Draws a spike raster (a row per neuron, a mark per spike) as a bitmap the size of the plot,
+ * rather than as a chart item per spike. Only the spikes in the visible span of time are
+ * visited when the plot is drawn, and a spike costs a few pixel writes. Spikes of a
+ * SpikePatternImpl are looked up in a snapshot of it, a visible row at a time, rather than
+ * copied up front.
+ *
+ * @author agent
+ */
+public class SpikeRasterAnnotation extends AbstractXYAnnotation {
+
+	private final SpikePatternImpl myIndexedPattern;
+	private final float[][] mySpikeTimes; //sorted copies of the spikes of other patterns
+	private final int myNumNeurons;
+	private final int myColor;
+
+	/**
+	 * @param pattern Spikes to draw
+	 * @param color Colour of spikes
+	 */
+	public SpikeRasterAnnotation(SpikePattern pattern, Color color) {
+		myNumNeurons = pattern.getNumNeurons();
+		if (pattern instanceof SpikePatternImpl) {
+			myIndexedPattern = (SpikePatternImpl) ((SpikePatternImpl) pattern).snapshot();
+			mySpikeTimes = null;
+		} else {
+			myIndexedPattern = null;
+			mySpikeTimes = new float[myNumNeurons][];
+			for (int i = 0; i < mySpikeTimes.length; i++) {
+				float[] spikes = pattern.getSpikeTimes(i);
+				if (!isSorted(spikes)) {
+					spikes = spikes.clone();
+					Arrays.sort(spikes);
+				}
+				mySpikeTimes[i] = spikes;
+			}
+		}
+		myColor = color.getRGB();
+	}
+
+	private static boolean isSorted(float[] values) {
+		for (int i = 1; i < values.length; i++) {
+			if (values[i] < values[i-1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param name Series name
+	 * @return A dataset with points at the corners of the raster (for axis ranges and legends)
+	 */
+	public XYSeriesCollection getBoundsDataset(String name) {
+		float start = Float.POSITIVE_INFINITY;
+		float end = Float.NEGATIVE_INFINITY;
+		if (myIndexedPattern != null) {
+			start = myIndexedPattern.getStartTime();
+			end = myIndexedPattern.getEndTime();
+		} else {
+			for (float[] spikes : mySpikeTimes) {
+				if (spikes.length > 0) {
+					start = Math.min(start, spikes[0]);
+					end = Math.max(end, spikes[spikes.length-1]);
+				}
+			}
+		}
+
+		XYSeries series = new XYSeries(name);
+		if (start <= end) {
+			series.add(start, 0);
+			series.add(end, Math.max(0, myNumNeurons - 1));
+		}
+		XYSeriesCollection result = new XYSeriesCollection();
+		result.addSeries(series);
+		return result;
+	}
+
+	/**
+	 * @see org.jfree.chart.annotations.XYAnnotation#draw(java.awt.Graphics2D, org.jfree.chart.plot.XYPlot,
+	 * 		java.awt.geom.Rectangle2D, org.jfree.chart.axis.ValueAxis, org.jfree.chart.axis.ValueAxis, int,
+	 * 		org.jfree.chart.plot.PlotRenderingInfo)
+	 */
+	public void draw(Graphics2D g2, XYPlot plot, Rectangle2D dataArea, ValueAxis domainAxis, ValueAxis rangeAxis,
+			int rendererIndex, PlotRenderingInfo info) {
+		int width = (int) Math.ceil(dataArea.getWidth());
+		int height = (int) Math.ceil(dataArea.getHeight());
+		if (width <= 0 || height <= 0 || myNumNeurons == 0) {
+			return;
+		}
+		RectangleEdge domainEdge = plot.getDomainAxisEdge();
+		RectangleEdge rangeEdge = plot.getRangeAxisEdge();
+		double x0 = dataArea.getX();
+		double y0 = dataArea.getY();
+		double start = domainAxis.getLowerBound();
+		double end = domainAxis.getUpperBound();
+
+		float windowEnd = (float) end + Math.ulp((float) end); //window includes its end
+
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		for (int i = 0; i < myNumNeurons; i++) {
+			double a = rangeAxis.valueToJava2D(i - .4, dataArea, rangeEdge) - y0;
+			double b = rangeAxis.valueToJava2D(i + .4, dataArea, rangeEdge) - y0;
+			int top = Math.max(0, (int) Math.floor(Math.min(a, b)));
+			int bottom = Math.min(height - 1, (int) Math.floor(Math.max(a, b)));
+			if (bottom < 0 || top >= height) {
+				continue;
+			}
+
+			float[] spikes;
+			int first;
+			if (myIndexedPattern != null) {
+				spikes = myIndexedPattern.getSpikeTimes(i, (float) start, windowEnd);
+				first = 0;
+			} else {
+				spikes = mySpikeTimes[i];
+				first = firstIndex(spikes, start);
+			}
+			for (int j = first; j < spikes.length && spikes[j] <= end; j++) {
+				int x = (int) (domainAxis.valueToJava2D(spikes[j], dataArea, domainEdge) - x0);
+				if (x >= 0 && x < width) {
+					for (int y = top; y <= bottom; y++) {
+						pixels[y * width + x] = myColor;
+					}
+				}
+			}
+		}
+		g2.drawImage(image, (int) x0, (int) y0, null);
+	}
+
+	//index of first spike at or after the given time
+	private static int firstIndex(float[] spikes, double time) {
+		int low = 0;
+		int high = spikes.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (spikes[mid] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,375 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "SimulationState.java". Description:
+"A copy of the dynamic state of a simulated Network at a point in simulation time"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * <p>A copy of the dynamic state of a simulated Network at a point in simulation time (eg
+ * membrane potentials, synaptic states, outputs, learned weights, and the state of the shared
+ * random number generator). Unlike a saved model, it holds only values, so it can only be
+ * restored into a Network with the same structure as the one from which it was taken. The
+ * structure is summarized in a fingerprint, which is checked on restore.</p>
+ *
+ * <p>States are held in memory as copies, so they can be written (with write()) on another
+ * thread while the simulation continues. The binary form is a short header followed by raw
+ * values.</p>
+ *
+ * @author agent
+ */
+public class SimulationState {
+
+	private static final int MAGIC = 0x4E53544B; //"NSTK"
+	private static final int VERSION = 1;
+
+	private static final byte BOOLEAN = 1;
+	private static final byte BYTE = 2;
+	private static final byte CHAR = 3;
+	private static final byte SHORT = 4;
+	private static final byte INT = 5;
+	private static final byte LONG = 6;
+	private static final byte FLOAT = 7;
+	private static final byte DOUBLE = 8;
+	private static final byte ARRAY = 16; //added to the element type
+	private static final byte NULL = 0;
+
+	private final float myTime;
+	private final long myFingerprint;
+	private final long[] myRandomState;
+	private final Object[] myValues;
+
+	/**
+	 * @param time Simulation time at which the state was taken
+	 * @param fingerprint Summary of the structure of the Network from which the state was taken
+	 * @param randomState State of the shared random number generator (see PDFTools.getSharedRandom())
+	 * @param values State values, in an order determined by the Network structure. Each is a
+	 * 		boxed primitive, a primitive array, or null.
+	 */
+	public SimulationState(float time, long fingerprint, long[] randomState, Object[] values) {
+		myTime = time;
+		myFingerprint = fingerprint;
+		myRandomState = randomState;
+		myValues = values;
+	}
+
+	/**
+	 * @return Simulation time at which the state was taken (a resumed run starts here)
+	 */
+	public float getTime() {
+		return myTime;
+	}
+
+	/**
+	 * @return Summary of the structure of the Network from which the state was taken
+	 */
+	public long getFingerprint() {
+		return myFingerprint;
+	}
+
+	/**
+	 * @return State of the shared random number generator
+	 */
+	public long[] getRandomState() {
+		return myRandomState;
+	}
+
+	/**
+	 * @return State values
+	 */
+	public Object[] getValues() {
+		return myValues;
+	}
+
+	/**
+	 * @return Number of bytes taken by the values
+	 */
+	public long getSize() {
+		long result = 0;
+		for (Object value : myValues) {
+			result += 1 + getSize(value);
+		}
+		return result;
+	}
+
+	/**
+	 * Writes this state in binary form. The stream is not closed.
+	 *
+	 * @param stream Destination
+	 * @throws IOException If the stream can't be written
+	 */
+	public void write(OutputStream stream) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeFloat(myTime);
+		out.writeLong(myFingerprint);
+		out.writeInt(myRandomState.length);
+		for (long x : myRandomState) {
+			out.writeLong(x);
+		}
+		out.writeInt(myValues.length);
+		for (Object value : myValues) {
+			writeValue(out, value);
+		}
+		out.flush();
+	}
+
+	/**
+	 * @param stream Source of a state written with write()
+	 * @return The state
+	 * @throws IOException If the stream can't be read or doesn't contain a state
+	 */
+	public static SimulationState read(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a simulation state");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported simulation state version " + version);
+		}
+		float time = in.readFloat();
+		long fingerprint = in.readLong();
+		long[] randomState = new long[in.readInt()];
+		for (int i = 0; i < randomState.length; i++) {
+			randomState[i] = in.readLong();
+		}
+		Object[] values = new Object[in.readInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = readValue(in);
+		}
+		return new SimulationState(time, fingerprint, randomState, values);
+	}
+
+	private static void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean(((Boolean) value).booleanValue());
+		} else if (value instanceof Byte) {
+			out.writeByte(BYTE);
+			out.writeByte(((Byte) value).byteValue());
+		} else if (value instanceof Character) {
+			out.writeByte(CHAR);
+			out.writeChar(((Character) value).charValue());
+		} else if (value instanceof Short) {
+			out.writeByte(SHORT);
+			out.writeShort(((Short) value).shortValue());
+		} else if (value instanceof Integer) {
+			out.writeByte(INT);
+			out.writeInt(((Integer) value).intValue());
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong(((Long) value).longValue());
+		} else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat(((Float) value).floatValue());
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble(((Double) value).doubleValue());
+		} else if (value instanceof boolean[]) {
+			boolean[] a = (boolean[]) value;
+			out.writeByte(ARRAY + BOOLEAN);
+			out.writeInt(a.length);
+			for (boolean x : a) {
+				out.writeBoolean(x);
+			}
+		} else if (value instanceof byte[]) {
+			byte[] a = (byte[]) value;
+			out.writeByte(ARRAY + BYTE);
+			out.writeInt(a.length);
+			out.write(a);
+		} else if (value instanceof char[]) {
+			char[] a = (char[]) value;
+			out.writeByte(ARRAY + CHAR);
+			out.writeInt(a.length);
+			for (char x : a) {
+				out.writeChar(x);
+			}
+		} else if (value instanceof short[]) {
+			short[] a = (short[]) value;
+			out.writeByte(ARRAY + SHORT);
+			out.writeInt(a.length);
+			for (short x : a) {
+				out.writeShort(x);
+			}
+		} else if (value instanceof int[]) {
+			int[] a = (int[]) value;
+			out.writeByte(ARRAY + INT);
+			out.writeInt(a.length);
+			for (int x : a) {
+				out.writeInt(x);
+			}
+		} else if (value instanceof long[]) {
+			long[] a = (long[]) value;
+			out.writeByte(ARRAY + LONG);
+			out.writeInt(a.length);
+			for (long x : a) {
+				out.writeLong(x);
+			}
+		} else if (value instanceof float[]) {
+			float[] a = (float[]) value;
+			out.writeByte(ARRAY + FLOAT);
+			out.writeInt(a.length);
+			for (float x : a) {
+				out.writeFloat(x);
+			}
+		} else if (value instanceof double[]) {
+			double[] a = (double[]) value;
+			out.writeByte(ARRAY + DOUBLE);
+			out.writeInt(a.length);
+			for (double x : a) {
+				out.writeDouble(x);
+			}
+		} else {
+			throw new IOException("Can't write state value of type " + value.getClass().getName());
+		}
+	}
+
+	private static Object readValue(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case NULL: return null;
+		case BOOLEAN: return Boolean.valueOf(in.readBoolean());
+		case BYTE: return Byte.valueOf(in.readByte());
+		case CHAR: return Character.valueOf(in.readChar());
+		case SHORT: return Short.valueOf(in.readShort());
+		case INT: return Integer.valueOf(in.readInt());
+		case LONG: return Long.valueOf(in.readLong());
+		case FLOAT: return Float.valueOf(in.readFloat());
+		case DOUBLE: return Double.valueOf(in.readDouble());
+		}
+
+		int length = in.readInt();
+		switch (type) {
+		case ARRAY + BOOLEAN: {
+			boolean[] result = new boolean[length];
+			for (int i = 0; i < length; i++) {
+				result[i] = in.readBoolean();
+			}
+			return result;
+		}
+		case ARRAY + BYTE: {
+			byte[] result = new byte[length];
+			in.readFully(result);
+			return result;
+		}
+		case ARRAY + CHAR: {
+			char[] result = new char[length];
+			for (int i = 0; i < length; i++) {
+				result[i] = in.readChar();
+			}
+			return result;
+		}
+		case ARRAY + SHORT: {
+			short[] result = new short[length];
+			for (int i = 0; i < length; i++) {
+				result[i] = in.readShort();
+			}
+			return result;
+		}
+		case ARRAY + INT: {
+			int[] result = new int[length];
+			for (int i = 0; i < length; i++) {
+				result[i] = in.readInt();
+			}
+			return result;
+		}
+		case ARRAY + LONG: {
+			long[] result = new long[length];
+			for (int i = 0; i < length; i++) {
+				result[i] = in.readLong();
+			}
+			return result;
+		}
+		case ARRAY + FLOAT: {
+			float[] result = new float[length];
+			for (int i = 0; i < length; i++) {
+				result[i] = in.readFloat();
+			}
+			return result;
+		}
+		case ARRAY + DOUBLE: {
+			double[] result = new double[length];
+			for (int i = 0; i < length; i++) {
+				result[i] = in.readDouble();
+			}
+			return result;
+		}
+		default: throw new IOException("Unknown state value type " + type);
+		}
+	}
+
+	private static long getSize(Object value) {
+		if (value == null) {
+			return 0;
+		} else if (value instanceof Boolean || value instanceof Byte) {
+			return 1;
+		} else if (value instanceof Character || value instanceof Short) {
+			return 2;
+		} else if (value instanceof Integer || value instanceof Float) {
+			return 4;
+		} else if (value instanceof Long || value instanceof Double) {
+			return 8;
+		} else if (value instanceof boolean[]) {
+			return 4 + ((boolean[]) value).length;
+		} else if (value instanceof byte[]) {
+			return 4 + ((byte[]) value).length;
+		} else if (value instanceof char[]) {
+			return 4 + 2L * ((char[]) value).length;
+		} else if (value instanceof short[]) {
+			return 4 + 2L * ((short[]) value).length;
+		} else if (value instanceof int[]) {
+			return 4 + 4L * ((int[]) value).length;
+		} else if (value instanceof float[]) {
+			return 4 + 4L * ((float[]) value).length;
+		} else if (value instanceof long[]) {
+			return 4 + 8L * ((long[]) value).length;
+		} else if (value instanceof double[]) {
+			return 4 + 8L * ((double[]) value).length;
+		}
+		return 0;
+	}
+
+	/**
+	 * Implemented by objects that keep values derived from the state of other objects in
+	 * transient fields (eg a copy of another object's output), so that they can be told to
+	 * drop them when a state is restored.
+	 */
+	public static interface Cache {
+
+		/**
+		 * Drops values derived from the state of other objects.
+		 */
+		public void invalidate();
+	}
+}
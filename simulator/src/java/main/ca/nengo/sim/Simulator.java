@@ -151,6 +151,25 @@ public interface Simulator extends VisiblyMutable, Cloneable {
 	 */
 	public void run(float startTime, float endTime, float stepSize, boolean topLevel) throws SimulationException;
 	
+	/**
+	 * Copies the dynamic state of the Network (eg neuron and synapse states, and learned 
+	 * weights), at the end of the last step that was run. The copy can be written to a file, 
+	 * and later restored into the same Network, or one built the same way, to resume a run. 
+	 * 
+	 * @return A copy of the simulation state
+	 * @throws SimulationException if the state can't be read
+	 */
+	public SimulationState checkpoint() throws SimulationException;
+	
+	/**
+	 * Sets the dynamic state of the Network to one taken with checkpoint(). The run can then 
+	 * be resumed from state.getTime(). 
+	 * 
+	 * @param state A simulation state
+	 * @throws SimulationException if the Network's structure doesn't match the state
+	 */
+	public void restore(SimulationState state) throws SimulationException;
+	
 	/**
 	 * @return List of Probes that have been added to this Simulator.  
 	 */
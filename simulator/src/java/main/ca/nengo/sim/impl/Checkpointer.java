@@ -0,0 +1,226 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "Checkpointer.java". Description:
+"Writes SimulationStates to a file during long runs, so that they can be resumed"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.sim.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+
+import ca.nengo.sim.SimulationState;
+
+/**
+ * <p>Writes SimulationStates to a file during long runs, so that they can be resumed after an
+ * interruption (see LocalSimulator.setCheckpointer()). A checkpoint is taken every
+ * getInterval() seconds of simulation time, and also at the next step after request() is
+ * called (eg from a shutdown hook).</p>
+ *
+ * <p>The simulation only pauses while the state is copied. The copy is written on a background
+ * thread, to a temporary file that then replaces the checkpoint file, so the file always holds
+ * a complete checkpoint. At most one write is pending at a time.</p>
+ *
+ * <p>To resume, build the same Network, then:
+ * <code>network.getSimulator().restore(Checkpointer.read(file))</code>, and run from the
+ * state's time.</p>
+ *
+ * @author agent
+ */
+public class Checkpointer {
+
+	private static Logger ourLogger = Logger.getLogger(Checkpointer.class);
+
+	private final File myFile;
+	private float myInterval;
+	private float myNextTime;
+	private volatile boolean myRequested;
+	private volatile float myLastTime;
+	private ExecutorService myExecutor;
+	private Future<?> myPending;
+
+	/**
+	 * @param file File to which checkpoints are written
+	 * @param interval Simulation time between checkpoints (s); 0 to write checkpoints only on request
+	 */
+	public Checkpointer(File file, float interval) {
+		myFile = file;
+		myInterval = interval;
+		myLastTime = Float.NaN;
+	}
+
+	/**
+	 * @return File to which checkpoints are written
+	 */
+	public File getFile() {
+		return myFile;
+	}
+
+	/**
+	 * @return Simulation time between checkpoints (s); 0 if checkpoints are only written on request
+	 */
+	public float getInterval() {
+		return myInterval;
+	}
+
+	/**
+	 * @param interval Simulation time between checkpoints (s); 0 to write checkpoints only on request
+	 */
+	public void setInterval(float interval) {
+		myInterval = interval;
+	}
+
+	/**
+	 * Asks for a checkpoint at the end of the current step. This can be called from any thread.
+	 */
+	public void request() {
+		myRequested = true;
+	}
+
+	/**
+	 * @return Simulation time of the last checkpoint that was written, or NaN if none has been
+	 */
+	public float getLastTime() {
+		return myLastTime;
+	}
+
+	/**
+	 * Called at the start of a run.
+	 *
+	 * @param startTime Simulation time at which the run starts
+	 */
+	public void start(float startTime) {
+		myNextTime = startTime + myInterval;
+	}
+
+	/**
+	 * @param time Simulation time at the end of a step
+	 * @return True if a checkpoint should be taken now
+	 */
+	public boolean isDue(float time) {
+		return myRequested || (myInterval > 0 && time >= myNextTime - 1e-6f);
+	}
+
+	/**
+	 * Writes a state in the background, after any pending write has finished.
+	 *
+	 * @param state A copy of the simulation state
+	 */
+	public synchronized void write(final SimulationState state) {
+		myRequested = false;
+		while (myInterval > 0 && myNextTime <= state.getTime() + 1e-6f) {
+			myNextTime += myInterval;
+		}
+
+		flush();
+		if (myExecutor == null) {
+			myExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread result = new Thread(r, "Checkpoint writer");
+					result.setDaemon(true);
+					return result;
+				}
+			});
+		}
+		myPending = myExecutor.submit(new Runnable() {
+			public void run() {
+				try {
+					write(state, myFile);
+					myLastTime = state.getTime();
+				} catch (IOException e) {
+					ourLogger.error("Can't write checkpoint to " + myFile, e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Waits for any pending write to finish.
+	 */
+	public synchronized void flush() {
+		if (myPending != null) {
+			try {
+				myPending.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				ourLogger.error("Checkpoint write failed", e.getCause());
+			}
+			myPending = null;
+		}
+	}
+
+	/**
+	 * Waits for any pending write and stops the background thread.
+	 */
+	public synchronized void close() {
+		flush();
+		if (myExecutor != null) {
+			myExecutor.shutdown();
+			myExecutor = null;
+		}
+	}
+
+	/**
+	 * Writes a state to a file, replacing it only once the state has been written completely.
+	 *
+	 * @param state A simulation state
+	 * @param file Destination
+	 * @throws IOException If the file can't be written
+	 */
+	public static void write(SimulationState state, File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			state.write(out);
+		} finally {
+			out.close();
+		}
+		if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+			throw new IOException("Can't replace " + file + " with " + temp);
+		}
+	}
+
+	/**
+	 * @param file A file written by a Checkpointer
+	 * @return The state in the file
+	 * @throws IOException If the file can't be read
+	 */
+	public static SimulationState read(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			return SimulationState.read(in);
+		} finally {
+			in.close();
+		}
+	}
+}
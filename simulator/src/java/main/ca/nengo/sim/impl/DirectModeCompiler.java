@@ -0,0 +1,697 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "DirectModeCompiler.java". Description:
+"Compiles a Network whose NEFEnsembles are in DIRECT mode into a DirectModeProgram"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.nengo.dynamics.impl.EulerIntegrator;
+import ca.nengo.dynamics.impl.LTISystem;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.math.impl.IdentityFunction;
+import ca.nengo.math.impl.LinearFunction;
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.Projection;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.impl.BasicOrigin;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkArrayImpl;
+import ca.nengo.model.impl.PassthroughNode;
+import ca.nengo.model.nef.impl.BiasTermination;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.DecodedTermination;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.sim.impl.DirectModeProgram.EnsembleUnit;
+import ca.nengo.sim.impl.DirectModeProgram.Expression;
+import ca.nengo.sim.impl.DirectModeProgram.FilterUnit;
+import ca.nengo.sim.impl.DirectModeProgram.Import;
+import ca.nengo.sim.impl.DirectModeProgram.OriginUnit;
+import ca.nengo.sim.impl.DirectModeProgram.PassthroughUnit;
+import ca.nengo.util.MU;
+
+/**
+ * <p>Compiles a Network whose NEFEnsembles are in DIRECT mode into a DirectModeProgram.</p>
+ *
+ * <p>In DIRECT mode, an NEFEnsemble is just a set of linear filters on transformed inputs,
+ * followed by a function of the filtered state, but the interpreted simulation pays for
+ * several time series and output objects per Termination dimension per step, and for
+ * every Projection and PassthroughNode in between. The compiler works on the flattened
+ * Network (see FlatNetwork, which also folds the PassthroughNode chains) and reduces it to:</p>
+ *
+ * <ul>
+ * <li>One discrete-time filter per DecodedTermination dimension, whose coefficients are
+ * 		found by probing the Termination's integrator, so they match the interpreted
+ * 		simulation;</li>
+ * <li>Affine input expressions, in which each chain of linear maps between a source Origin
+ * 		and a filter (Termination transforms, PassthroughNode transforms, NetworkArray
+ * 		concatenation) is multiplied out into a single matrix;</li>
+ * <li>Origin matrices for linear Origin functions (Identity, unrectified Linear and
+ * 		Constant functions); other functions are evaluated as usual;</li>
+ * <li>Constants, in place of FunctionInputs of ConstantFunctions, Terminations without
+ * 		Projections, and PassthroughNodes whose inputs are all constant.</li>
+ * </ul>
+ *
+ * <p>Anything else (eg ensembles in other modes, Origins with noise, nonlinear dynamics,
+ * Terminations with scaling) is left to run as usual alongside the program.</p>
+ *
+ * <p>Each PassthroughNode delays its input by one step in the interpreted simulation, like
+ * any other Node. By default the compiled program keeps this delay. If passthrough folding is
+ * turned on, consumers of a PassthroughNode read its inputs directly, which removes the delay
+ * and the copy; results then differ slightly from the interpreted simulation.</p>
+ *
+ * @author agent
+ */
+public class DirectModeCompiler {
+
+	private boolean myFoldPassthroughs;
+
+	private FlatNetwork myNetwork;
+	private Map<Origin, Integer> myOffsets;
+	private Map<Origin, Node> myOriginNodes;
+	private Set<FunctionInput> myFoldedInputs;
+	private List<Import> myImports;
+	private Set<PassthroughNode> myPassthroughs;
+	private Set<PassthroughNode> myFolding;
+	private int mySignalLength;
+	private int myNumFused;
+
+	public DirectModeCompiler() {
+		myFoldPassthroughs = false;
+	}
+
+	/**
+	 * @return True if PassthroughNodes are folded into their consumers (removing their
+	 * 		one-step delay)
+	 */
+	public boolean getFoldPassthroughs() {
+		return myFoldPassthroughs;
+	}
+
+	/**
+	 * @param fold True if PassthroughNodes are to be folded into their consumers, so that
+	 * 		transforms on either side are multiplied out and the one-step delay of each
+	 * 		PassthroughNode is removed
+	 */
+	public void setFoldPassthroughs(boolean fold) {
+		myFoldPassthroughs = fold;
+	}
+
+	/**
+	 * @param ensemble An NEFEnsemble
+	 * @return True if the ensemble can be compiled in its current configuration
+	 */
+	public static boolean isCompilable(NEFEnsembleImpl ensemble) {
+		if (ensemble.getClass() != NEFEnsembleImpl.class || ensemble.getMode() != SimulationMode.DIRECT
+				|| ensemble.getDirectModeDynamics() != null) {
+			return false;
+		}
+
+		for (Origin origin : ensemble.getOrigins()) {
+			if (origin instanceof DecodedOrigin) {
+				DecodedOrigin o = (DecodedOrigin) origin;
+				if (o.getMode() != SimulationMode.DIRECT || o.getNoise() != null) {
+					return false;
+				}
+			}
+		}
+
+		for (DecodedTermination t : ensemble.getDecodedTerminations()) {
+			if (isFiltered(t)) {
+				if (t.getScaling() != null || !(t.getIntegrator() instanceof EulerIntegrator)
+						|| !(t.getDimensionDynamics()[0] instanceof LTISystem)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	//terminations that contribute to the state in DIRECT mode
+	private static boolean isFiltered(DecodedTermination t) {
+		return !(t instanceof BiasTermination) && !t.getModulatory();
+	}
+
+	/**
+	 * @param network A Network to compile (with its subnetworks)
+	 * @return A program that runs the Network, starting from its current state
+	 * @throws StructuralException if some part of the Network that the program depends on
+	 * 		can't be read (eg an uncompiled Origin that feeds a compiled Termination produces
+	 * 		spikes)
+	 */
+	public DirectModeProgram compile(Network network) throws StructuralException {
+		return compile(new FlatNetwork(network));
+	}
+
+	/**
+	 * @param network The flattened Network to compile (the compiled Nodes are claimed, so that
+	 * 		later passes over the same run leave them alone)
+	 * @return A program that runs the Network, starting from its current state
+	 * @throws StructuralException if some part of the Network that the program depends on
+	 * 		can't be read
+	 */
+	public synchronized DirectModeProgram compile(FlatNetwork network) throws StructuralException {
+		myNetwork = network;
+		myOffsets = new IdentityHashMap<Origin, Integer>();
+		myOriginNodes = new IdentityHashMap<Origin, Node>();
+		myFoldedInputs = new HashSet<FunctionInput>();
+		myImports = new ArrayList<Import>();
+		myPassthroughs = new HashSet<PassthroughNode>();
+		myFolding = new HashSet<PassthroughNode>();
+		mySignalLength = 0;
+		myNumFused = 0;
+
+		try {
+			List<Node> nodes = network.getNodes();
+
+			List<NEFEnsembleImpl> ensembles = new ArrayList<NEFEnsembleImpl>();
+			List<PassthroughNode> passthroughs = new ArrayList<PassthroughNode>();
+			List<Node> nativeNodes = new ArrayList<Node>();
+			for (Node node : nodes) {
+				if (node instanceof NEFEnsembleImpl && isCompilable((NEFEnsembleImpl) node)) {
+					ensembles.add((NEFEnsembleImpl) node);
+					for (Origin origin : node.getOrigins()) {
+						if (origin instanceof DecodedOrigin) {
+							allocate(origin, node);
+						}
+					}
+				} else if (node.getClass() == PassthroughNode.class) {
+					passthroughs.add((PassthroughNode) node);
+					myPassthroughs.add((PassthroughNode) node);
+					allocate(node.getOrigin(PassthroughNode.ORIGIN), node);
+				} else {
+					nativeNodes.add(node);
+					if (node instanceof FunctionInput && isFoldable((FunctionInput) node)) {
+						myFoldedInputs.add((FunctionInput) node);
+					}
+				}
+			}
+
+			Set<Termination> compiledTerminations = new HashSet<Termination>();
+			for (NEFEnsembleImpl ensemble : ensembles) {
+				for (DecodedTermination t : ensemble.getDecodedTerminations()) {
+					if (isFiltered(t)) {
+						compiledTerminations.add(t);
+					}
+				}
+			}
+			for (PassthroughNode passthrough : passthroughs) {
+				compiledTerminations.addAll(Arrays.asList(passthrough.getTerminations()));
+			}
+
+			List<Origin> nativeOrigins = new ArrayList<Origin>();
+			List<Termination> nativeTerminations = new ArrayList<Termination>();
+			for (Projection projection : network.getProjections()) {
+				List<Termination> leaves = new ArrayList<Termination>();
+				FlatNetwork.collectLeaves(projection.getTermination(), leaves);
+				for (Termination leaf : leaves) {
+					if (!compiledTerminations.contains(leaf)) {
+						nativeOrigins.add(projection.getOrigin());
+						nativeTerminations.add(leaf);
+					}
+				}
+			}
+
+			EnsembleUnit[] ensembleUnits = new EnsembleUnit[ensembles.size()];
+			int numFilters = 0;
+			int numLinearOrigins = 0;
+			for (int i = 0; i < ensembleUnits.length; i++) {
+				NEFEnsembleImpl ensemble = ensembles.get(i);
+				List<FilterUnit> filters = new ArrayList<FilterUnit>();
+				for (DecodedTermination t : ensemble.getDecodedTerminations()) {
+					if (isFiltered(t)) {
+						filters.add(compileFilter(t));
+					}
+				}
+				numFilters += filters.size();
+
+				List<OriginUnit> origins = new ArrayList<OriginUnit>();
+				for (Origin origin : ensemble.getOrigins()) {
+					if (origin instanceof DecodedOrigin) {
+						OriginUnit unit = compileOrigin((DecodedOrigin) origin, ensemble.getDimension());
+						origins.add(unit);
+						if (isLinear(((DecodedOrigin) origin).getFunctions())) {
+							numLinearOrigins++;
+						}
+					}
+				}
+
+				ensembleUnits[i] = new EnsembleUnit(ensemble, filters.toArray(new FilterUnit[0]),
+						origins.toArray(new OriginUnit[0]));
+			}
+
+			PassthroughUnit[] passthroughUnits = new PassthroughUnit[passthroughs.size()];
+			int numFolded = 0;
+			int numConstant = 0;
+			for (int i = 0; i < passthroughUnits.length; i++) {
+				PassthroughNode passthrough = passthroughs.get(i);
+				Origin origin = passthrough.getOrigin(PassthroughNode.ORIGIN);
+				Affine sum = getSum(passthrough);
+				passthroughUnits[i] = new PassthroughUnit((BasicOrigin) origin, sum.toExpression(), myOffsets.get(origin).intValue());
+				if (sum.isConstant() && isCurrent(origin, sum.myConstant)) {
+					numConstant++;
+				} else if (myFoldPassthroughs) {
+					numFolded++;
+				}
+			}
+
+			float[] signals = new float[mySignalLength];
+			for (Map.Entry<Origin, Integer> entry : myOffsets.entrySet()) {
+				float[] values = getValues(entry.getKey(), !myOriginNodes.containsKey(entry.getKey()));
+				if (values != null) {
+					System.arraycopy(values, 0, signals, entry.getValue().intValue(), values.length);
+				}
+			}
+
+			StringBuffer report = new StringBuffer();
+			report.append("Compiled ").append(ensembles.size()).append(" ensembles (");
+			report.append(numFilters).append(" filters, ").append(numLinearOrigins).append(" linear origins) and ");
+			report.append(passthroughs.size()).append(" passthrough nodes into ").append(mySignalLength).append(" signals\n");
+			report.append("Fused ").append(myNumFused).append(" matrix products; ");
+			report.append("folded ").append(numFolded).append(" passthrough nodes, ").append(numConstant);
+			report.append(" constant passthrough nodes and ").append(myFoldedInputs.size()).append(" constant inputs\n");
+			report.append("Running ").append(nativeNodes.size()).append(" nodes as usual");
+			if (!nativeNodes.isEmpty()) {
+				report.append(" (");
+				for (int i = 0; i < nativeNodes.size(); i++) {
+					report.append(i > 0 ? ", " : "").append(nativeNodes.get(i).getName());
+				}
+				report.append(")");
+			}
+			report.append(", with ").append(nativeTerminations.size()).append(" projections and ");
+			report.append(myImports.size()).append(" imported origins\n");
+
+			DirectModeProgram result = new DirectModeProgram(nodes.toArray(new Node[0]),
+					myFoldedInputs.toArray(new FunctionInput[0]), nativeOrigins.toArray(new Origin[0]),
+					nativeTerminations.toArray(new Termination[0]), nativeNodes.toArray(new Node[0]),
+					myImports.toArray(new Import[0]), ensembleUnits, passthroughUnits, signals, report.toString());
+			for (NEFEnsembleImpl ensemble : ensembles) {
+				network.claim(ensemble);
+			}
+			for (PassthroughNode passthrough : passthroughs) {
+				network.claim(passthrough);
+			}
+			return result;
+		} finally {
+			myNetwork = null;
+			myOffsets = null;
+			myOriginNodes = null;
+			myFoldedInputs = null;
+			myImports = null;
+			myPassthroughs = null;
+			myFolding = null;
+		}
+	}
+
+	private void allocate(Origin origin, Node node) {
+		myOffsets.put(origin, Integer.valueOf(mySignalLength));
+		if (node != null) {
+			myOriginNodes.put(origin, node);
+		}
+		mySignalLength += origin.getDimensions();
+	}
+
+	//a constant input can only replace its origin if the origin already has the constant value
+	private static boolean isFoldable(FunctionInput input) throws StructuralException {
+		float[] values = DirectModeProgram.getConstantValues(input.getFunctions());
+		return values != null && isCurrent(input.getOrigin(FunctionInput.ORIGIN_NAME), values);
+	}
+
+	private static boolean isCurrent(Origin origin, float[] values) throws StructuralException {
+		float[] current = getValues(origin, false);
+		return current != null && Arrays.equals(current, values);
+	}
+
+	private static float[] getValues(Origin origin, boolean required) throws StructuralException {
+		InstantaneousOutput values;
+		try {
+			values = origin.getValues();
+		} catch (SimulationException e) {
+			throw new StructuralException(e);
+		}
+
+		if (values instanceof RealOutput) {
+			return ((RealOutput) values).getValues();
+		} else if (required) {
+			throw new StructuralException("Origin " + origin.getName() + " of " + origin.getNode().getName()
+					+ " does not produce real-valued output");
+		} else {
+			return null;
+		}
+	}
+
+	private FilterUnit compileFilter(DecodedTermination termination) throws StructuralException {
+		Origin source = myNetwork.getSource(termination);
+		Affine input;
+		if (source != null) {
+			input = resolve(source).add(Affine.constant(termination.getStaticBias()));
+		} else {
+			//input is whatever was last set (which includes the static bias), or the static bias
+			RealOutput last = termination.getInput();
+			float[] values = last == null ? null : last.getValues();
+			if (values == null || isZero(values)) {
+				values = termination.getStaticBias();
+			}
+			input = Affine.constant(values.clone());
+		}
+
+		Affine transformed = transform(input, termination.getTransform());
+		return new FilterUnit(termination, transformed.toExpression(), termination.getDimensionDynamics(),
+				termination.getIntegrator());
+	}
+
+	private OriginUnit compileOrigin(DecodedOrigin origin, int dimension) {
+		Function[] functions = origin.getFunctions();
+		float[][] matrix = new float[functions.length][dimension];
+		float[] bias = new float[functions.length];
+		Function[] nonlinear = new Function[functions.length];
+		for (int i = 0; i < functions.length; i++) {
+			Function f = functions[i];
+			if (f instanceof IdentityFunction && f.getDimension() == dimension) {
+				matrix[i][((IdentityFunction) f).getIdentityDimension()] = 1;
+			} else if (f instanceof LinearFunction && !((LinearFunction) f).getRectified()
+					&& ((LinearFunction) f).getMap().length == dimension) {
+				System.arraycopy(((LinearFunction) f).getMap(), 0, matrix[i], 0, dimension);
+				bias[i] = ((LinearFunction) f).getBias();
+			} else if (f instanceof ConstantFunction) {
+				bias[i] = ((ConstantFunction) f).getValue();
+			} else {
+				nonlinear[i] = f;
+			}
+		}
+
+		return new OriginUnit(origin, myOffsets.get(origin).intValue(), matrix, bias, nonlinear);
+	}
+
+	private static boolean isLinear(Function[] functions) {
+		for (Function f : functions) {
+			if ( !(f instanceof IdentityFunction || f instanceof ConstantFunction
+					|| (f instanceof LinearFunction && !((LinearFunction) f).getRectified())) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isZero(float[] values) {
+		for (float value : values) {
+			if (value != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return Affine function of the signal vector that gives the current value of the Origin
+	 */
+	private Affine resolve(Origin origin) throws StructuralException {
+		Origin base = FlatNetwork.getBase(origin);
+		if (base != origin) {
+			return resolve(base);
+		}
+
+		if (origin instanceof NetworkArrayImpl.ArrayOrigin) {
+			DecodedOrigin[] parts = ((NetworkArrayImpl.ArrayOrigin) origin).getNodeOrigins();
+			Affine[] resolved = new Affine[parts.length];
+			for (int i = 0; i < parts.length; i++) {
+				resolved[i] = resolve(parts[i]);
+			}
+			return Affine.concatenate(resolved);
+		}
+
+		Integer offset = myOffsets.get(origin);
+		if (offset != null) {
+			Node node = myOriginNodes.get(origin);
+			if (node instanceof PassthroughNode && !myFolding.contains(node)) {
+				PassthroughNode passthrough = (PassthroughNode) node;
+				if (myFoldPassthroughs) {
+					return getSum(passthrough);
+				}
+				Affine sum = getSum(passthrough);
+				if (sum.isConstant() && isCurrent(origin, sum.myConstant)) {
+					return sum;
+				}
+			}
+			return Affine.signal(offset.intValue(), origin.getDimensions());
+		}
+
+		if (origin.getNode() instanceof FunctionInput && myFoldedInputs.contains(origin.getNode())) {
+			return Affine.constant(getValues(origin, true).clone());
+		}
+
+		//an uncompiled origin, which is copied into the signals after its node runs
+		getValues(origin, true);
+		allocate(origin, null);
+		offset = myOffsets.get(origin);
+		myImports.add(new Import(origin, offset.intValue()));
+		return Affine.signal(offset.intValue(), origin.getDimensions());
+	}
+
+	/*
+	 * Sum of the (transformed) inputs of a PassthroughNode. If passthroughs are folded, this
+	 * multiplies out the whole chain of PassthroughNodes that feeds it.
+	 */
+	private Affine getSum(PassthroughNode passthrough) throws StructuralException {
+		myFolding.add(passthrough);
+		try {
+			int dimension = passthrough.getOrigin(PassthroughNode.ORIGIN).getDimensions();
+			final Affine[] result = new Affine[]{Affine.constant(new float[dimension])};
+			Set<PassthroughNode> through = myFoldPassthroughs ? myPassthroughs : Collections.<PassthroughNode>emptySet();
+			myNetwork.fold(passthrough, through, new FlatNetwork.ChainVisitor() {
+				public void node(PassthroughNode node, float[][] matrix, int depth) {
+				}
+
+				public void input(Origin origin, float[][] matrix, int depth) throws StructuralException {
+					Affine input;
+					if (myFoldPassthroughs && myOriginNodes.get(FlatNetwork.getBase(origin)) instanceof PassthroughNode) {
+						//the fold stopped here because of a cycle
+						input = Affine.signal(myOffsets.get(FlatNetwork.getBase(origin)).intValue(), origin.getDimensions());
+					} else {
+						input = resolve(origin);
+					}
+					result[0] = result[0].add(matrix == null ? input : transform(input, matrix));
+				}
+
+				public void constant(float[] values, float[][] matrix, int depth) {
+					Affine input = Affine.constant(values.clone());
+					result[0] = result[0].add(matrix == null ? input : input.transform(matrix));
+				}
+			});
+			return result[0];
+		} finally {
+			myFolding.remove(passthrough);
+		}
+	}
+
+	private Affine transform(Affine input, float[][] transform) {
+		if (isIdentity(transform)) {
+			return input;
+		}
+		for (Term term : input.myTerms) {
+			if (term.myMatrix != null) {
+				myNumFused++;
+			}
+		}
+		return input.transform(transform);
+	}
+
+	private static boolean isIdentity(float[][] matrix) {
+		for (int i = 0; i < matrix.length; i++) {
+			if (matrix[i].length != matrix.length) {
+				return false;
+			}
+			for (int j = 0; j < matrix[i].length; j++) {
+				if (matrix[i][j] != (i == j ? 1 : 0)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A product of a matrix and a range of the signal vector, which contributes to a range of
+	 * rows of an Affine.
+	 */
+	private static class Term {
+
+		private final int myRow;
+		private final int mySignalOffset;
+		private final int mySignalDim;
+		private final float[][] myMatrix; //null for identity
+
+		public Term(int row, int signalOffset, int signalDim, float[][] matrix) {
+			myRow = row;
+			mySignalOffset = signalOffset;
+			mySignalDim = signalDim;
+			myMatrix = matrix;
+		}
+
+		public int getRows() {
+			return myMatrix == null ? mySignalDim : myMatrix.length;
+		}
+
+		public float[][] getMatrix() {
+			if (myMatrix != null) {
+				return myMatrix;
+			}
+			float[][] result = new float[mySignalDim][mySignalDim];
+			for (int i = 0; i < mySignalDim; i++) {
+				result[i][i] = 1;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * An affine function of the signal vector, built up while compiling and then converted
+	 * into an Expression.
+	 */
+	private static class Affine {
+
+		private final float[] myConstant;
+		private final List<Term> myTerms;
+
+		private Affine(float[] constant, List<Term> terms) {
+			myConstant = constant;
+			myTerms = terms;
+		}
+
+		public static Affine constant(float[] values) {
+			return new Affine(values, new ArrayList<Term>(1));
+		}
+
+		public static Affine signal(int offset, int dimension) {
+			List<Term> terms = new ArrayList<Term>(1);
+			terms.add(new Term(0, offset, dimension, null));
+			return new Affine(new float[dimension], terms);
+		}
+
+		public static Affine concatenate(Affine[] parts) {
+			int dimension = 0;
+			for (Affine part : parts) {
+				dimension += part.myConstant.length;
+			}
+
+			float[] constant = new float[dimension];
+			List<Term> terms = new ArrayList<Term>();
+			int row = 0;
+			for (Affine part : parts) {
+				System.arraycopy(part.myConstant, 0, constant, row, part.myConstant.length);
+				for (Term term : part.myTerms) {
+					terms.add(new Term(row + term.myRow, term.mySignalOffset, term.mySignalDim, term.myMatrix));
+				}
+				row += part.myConstant.length;
+			}
+			return new Affine(constant, terms);
+		}
+
+		public boolean isConstant() {
+			return myTerms.isEmpty();
+		}
+
+		public Affine add(Affine other) {
+			if (other.myConstant.length != myConstant.length) {
+				throw new IllegalArgumentException("Can't add inputs of dimension " + myConstant.length
+						+ " and " + other.myConstant.length);
+			}
+			List<Term> terms = new ArrayList<Term>(myTerms);
+			terms.addAll(other.myTerms);
+			return new Affine(MU.sum(myConstant, other.myConstant), merge(terms));
+		}
+
+		//multiplies out the transform with the matrix of each term
+		public Affine transform(float[][] transform) {
+			List<Term> terms = new ArrayList<Term>(myTerms.size());
+			for (Term term : myTerms) {
+				float[][] columns = new float[transform.length][term.getRows()];
+				for (int i = 0; i < transform.length; i++) {
+					System.arraycopy(transform[i], term.myRow, columns[i], 0, term.getRows());
+				}
+				float[][] product = term.myMatrix == null ? columns : MU.prod(columns, term.myMatrix);
+				terms.add(new Term(0, term.mySignalOffset, term.mySignalDim, product));
+			}
+			return new Affine(MU.prod(transform, myConstant), merge(terms));
+		}
+
+		//sums terms that apply to the same signals and rows
+		private static List<Term> merge(List<Term> terms) {
+			Map<String, Term> merged = new HashMap<String, Term>();
+			List<String> order = new ArrayList<String>();
+			for (Term term : terms) {
+				String key = term.myRow + ":" + term.getRows() + ":" + term.mySignalOffset + ":" + term.mySignalDim;
+				Term existing = merged.get(key);
+				if (existing == null) {
+					merged.put(key, term);
+					order.add(key);
+				} else {
+					merged.put(key, new Term(term.myRow, term.mySignalOffset, term.mySignalDim,
+							MU.sum(existing.getMatrix(), term.getMatrix())));
+				}
+			}
+
+			List<Term> result = new ArrayList<Term>(order.size());
+			for (String key : order) {
+				Term term = merged.get(key);
+				if (term.myMatrix != null && isIdentity(term.myMatrix)) {
+					term = new Term(term.myRow, term.mySignalOffset, term.mySignalDim, null);
+				}
+				result.add(term);
+			}
+			return result;
+		}
+
+		public Expression toExpression() {
+			int n = myTerms.size();
+			int[] rows = new int[n];
+			int[] offsets = new int[n];
+			int[] dims = new int[n];
+			float[][][] matrices = new float[n][][];
+			for (int i = 0; i < n; i++) {
+				Term term = myTerms.get(i);
+				rows[i] = term.myRow;
+				offsets[i] = term.mySignalOffset;
+				dims[i] = term.mySignalDim;
+				matrices[i] = term.myMatrix;
+			}
+			return new Expression(myConstant.clone(), rows, offsets, dims, matrices);
+		}
+	}
+}
@@ -0,0 +1,546 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "DirectModeProgram.java". Description:
+"A flattened Network in DIRECT mode, compiled by a DirectModeCompiler into a dataflow program over float arrays"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.sim.impl;
+
+import ca.nengo.dynamics.Integrator;
+import ca.nengo.dynamics.LinearSystem;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.Termination;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.BasicOrigin;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.DecodedTermination;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.TimeSeriesImpl;
+
+/**
+ * <p>A flattened Network in DIRECT mode, compiled by a DirectModeCompiler into a dataflow
+ * program over float arrays.</p>
+ *
+ * <p>Each compiled Origin owns a range of a signal vector. Each step, compiled units read the
+ * signals as they were at the end of the previous step and write the next signals, which
+ * preserves the one-step delay of Projections in the interpreted simulation. Nodes that could
+ * not be compiled run as usual; their Origins are copied into the signal vector after they
+ * run, and Projections onto their Terminations are made as usual.</p>
+ *
+ * <p>Outputs of compiled Origins are written back to the Origin objects after each step, so
+ * that Probes and uncompiled Nodes see them. States and outputs of Termination dynamics are
+ * written back by finish().</p>
+ *
+ * @author agent
+ */
+public class DirectModeProgram {
+
+	private final Node[] myNodes;
+	private final SimulationMode[] myModes;
+	private final FunctionInput[] myFoldedInputs;
+	private final Function[][] myFoldedFunctions;
+	private final float[][] myFoldedValues;
+
+	private final Origin[] myNativeOrigins;
+	private final Termination[] myNativeTerminations;
+	private final Node[] myNativeNodes;
+	private final Import[] myImports;
+	private final EnsembleUnit[] myEnsembles;
+	private final PassthroughUnit[] myPassthroughs;
+
+	private float[] mySignals;
+	private float[] myNextSignals;
+	private final String myReport;
+
+	DirectModeProgram(Node[] nodes, FunctionInput[] foldedInputs, Origin[] nativeOrigins, Termination[] nativeTerminations,
+			Node[] nativeNodes, Import[] imports, EnsembleUnit[] ensembles, PassthroughUnit[] passthroughs,
+			float[] signals, String report) {
+		myNodes = nodes;
+		myModes = new SimulationMode[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			myModes[i] = nodes[i].getMode();
+		}
+
+		myFoldedInputs = foldedInputs;
+		myFoldedFunctions = new Function[foldedInputs.length][];
+		myFoldedValues = new float[foldedInputs.length][];
+		for (int i = 0; i < foldedInputs.length; i++) {
+			myFoldedFunctions[i] = foldedInputs[i].getFunctions();
+			myFoldedValues[i] = getConstantValues(myFoldedFunctions[i]);
+		}
+
+		myNativeOrigins = nativeOrigins;
+		myNativeTerminations = nativeTerminations;
+		myNativeNodes = nativeNodes;
+		myImports = imports;
+		myEnsembles = ensembles;
+		myPassthroughs = passthroughs;
+		mySignals = signals;
+		myNextSignals = signals.clone();
+		myReport = report;
+	}
+
+	/**
+	 * @param functions Functions of a FunctionInput
+	 * @return Values of the functions if they are all ConstantFunctions, otherwise null
+	 */
+	static float[] getConstantValues(Function[] functions) {
+		float[] result = new float[functions.length];
+		for (int i = 0; i < functions.length; i++) {
+			if ( !(functions[i] instanceof ConstantFunction) ) {
+				return null;
+			}
+			result[i] = ((ConstantFunction) functions[i]).getValue();
+		}
+		return result;
+	}
+
+	/**
+	 * Runs the network for one step.
+	 *
+	 * @param startTime Simulation time at start of step
+	 * @param endTime Simulation time at end of step
+	 * @return False if the network has changed in a way that invalidates this program (eg a Node
+	 * 		has changed mode, or a folded constant input has changed), in which case nothing has
+	 * 		been run, and the program should be finished and recompiled
+	 * @throws SimulationException if an uncompiled Node or Projection fails
+	 */
+	public boolean step(float startTime, float endTime) throws SimulationException {
+		if (!isValid()) {
+			return false;
+		}
+
+		for (int i = 0; i < myNativeTerminations.length; i++) {
+			myNativeTerminations[i].setValues(myNativeOrigins[i].getValues());
+		}
+
+		for (EnsembleUnit ensemble : myEnsembles) {
+			ensemble.run(mySignals, myNextSignals, endTime - startTime);
+		}
+		for (PassthroughUnit passthrough : myPassthroughs) {
+			passthrough.run(mySignals, myNextSignals);
+		}
+
+		for (Node node : myNativeNodes) {
+			node.run(startTime, endTime);
+		}
+		for (Import in : myImports) {
+			in.run(myNextSignals);
+		}
+
+		float[] swap = mySignals;
+		mySignals = myNextSignals;
+		myNextSignals = swap;
+
+		for (EnsembleUnit ensemble : myEnsembles) {
+			ensemble.writeOutputs(mySignals, endTime);
+		}
+		for (PassthroughUnit passthrough : myPassthroughs) {
+			passthrough.writeOutput(mySignals, endTime);
+		}
+		return true;
+	}
+
+	private boolean isValid() {
+		for (int i = 0; i < myNodes.length; i++) {
+			if (myNodes[i].getMode() != myModes[i]) {
+				return false;
+			}
+		}
+		for (int i = 0; i < myFoldedInputs.length; i++) {
+			Function[] functions = myFoldedInputs[i].getFunctions();
+			if (functions != myFoldedFunctions[i]) {
+				return false;
+			}
+			for (int j = 0; j < functions.length; j++) {
+				if (((ConstantFunction) functions[j]).getValue() != myFoldedValues[i][j]) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the states and outputs of compiled Termination dynamics back to their
+	 * DecodedTerminations, so that the network can be run without this program afterwards.
+	 *
+	 * @param time Simulation time at which the program stopped
+	 */
+	public void finish(float time) {
+		for (EnsembleUnit ensemble : myEnsembles) {
+			for (FilterUnit filter : ensemble.myFilters) {
+				filter.writeState(time);
+			}
+		}
+	}
+
+	/**
+	 * @return Description of what was compiled, fused, and folded
+	 */
+	public String getReport() {
+		return myReport;
+	}
+
+	/**
+	 * @return Nodes that run as usual rather than as compiled code
+	 */
+	public Node[] getNativeNodes() {
+		return myNativeNodes.clone();
+	}
+
+	/**
+	 * @return Number of NEFEnsembles that were compiled
+	 */
+	public int getNumCompiledEnsembles() {
+		return myEnsembles.length;
+	}
+
+	/**
+	 * @return Number of PassthroughNodes that were compiled
+	 */
+	public int getNumCompiledPassthroughs() {
+		return myPassthroughs.length;
+	}
+
+	/**
+	 * @return Total length of the signal vector
+	 */
+	public int getSignalLength() {
+		return mySignals.length;
+	}
+
+	/**
+	 * A sum of matrix-vector products over ranges of the signal vector, plus a constant.
+	 * Terms with a null matrix are copies.
+	 */
+	static class Expression {
+
+		private final float[] myConstant;
+		private final int[] myRows;
+		private final int[] mySignalOffsets;
+		private final int[] mySignalDims;
+		private final float[][][] myMatrices;
+
+		Expression(float[] constant, int[] rows, int[] signalOffsets, int[] signalDims, float[][][] matrices) {
+			myConstant = constant;
+			myRows = rows;
+			mySignalOffsets = signalOffsets;
+			mySignalDims = signalDims;
+			myMatrices = matrices;
+		}
+
+		int getDimension() {
+			return myConstant.length;
+		}
+
+		void evaluate(float[] signals, float[] out, int outOffset) {
+			System.arraycopy(myConstant, 0, out, outOffset, myConstant.length);
+			for (int t = 0; t < myRows.length; t++) {
+				int row = outOffset + myRows[t];
+				int offset = mySignalOffsets[t];
+				float[][] matrix = myMatrices[t];
+				if (matrix == null) {
+					for (int i = 0; i < mySignalDims[t]; i++) {
+						out[row+i] += signals[offset+i];
+					}
+				} else {
+					for (int i = 0; i < matrix.length; i++) {
+						float[] m = matrix[i];
+						float sum = 0;
+						for (int j = 0; j < m.length; j++) {
+							sum += m[j] * signals[offset+j];
+						}
+						out[row+i] += sum;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies values of an uncompiled Origin into the signal vector.
+	 */
+	static class Import {
+
+		private final Origin myOrigin;
+		private final int myOffset;
+
+		Import(Origin origin, int offset) {
+			myOrigin = origin;
+			myOffset = offset;
+		}
+
+		void run(float[] signals) throws SimulationException {
+			InstantaneousOutput values = myOrigin.getValues();
+			if ( !(values instanceof RealOutput) ) {
+				throw new SimulationException("Origin " + myOrigin.getName() + " of " + myOrigin.getNode().getName()
+						+ " no longer produces real-valued output");
+			}
+			float[] v = ((RealOutput) values).getValues();
+			System.arraycopy(v, 0, signals, myOffset, v.length);
+		}
+	}
+
+	/**
+	 * The LTI dynamics of a DecodedTermination, as an exact discrete-time update for the
+	 * current step size (found by probing the Termination's own integrator).
+	 */
+	static class FilterUnit {
+
+		private final DecodedTermination myTermination;
+		private final Expression myInput;
+		private final LinearSystem mySystem;
+		private final Integrator myIntegrator;
+		private final float[][] myStates;
+		private final float[] myOutputs;
+		private final float[] myInputValues;
+		private final float[] myScratch;
+
+		private float myStepSize;
+		private Discretization myDiscretization;
+
+		FilterUnit(DecodedTermination termination, Expression input, LinearSystem[] dynamics, Integrator integrator) {
+			myTermination = termination;
+			myInput = input;
+			mySystem = dynamics[0];
+			myIntegrator = integrator;
+
+			myStates = new float[dynamics.length][];
+			for (int i = 0; i < dynamics.length; i++) {
+				myStates[i] = dynamics[i].getState().clone();
+			}
+			myOutputs = termination.getOutput().clone();
+			myInputValues = new float[dynamics.length];
+			myScratch = new float[myStates[0].length];
+			myStepSize = Float.NaN;
+		}
+
+		/**
+		 * Adds the output of the dynamics of each dimension to the given state.
+		 */
+		void run(float[] signals, float[] state, float stepSize) {
+			if (stepSize != myStepSize) {
+				discretize(stepSize);
+			}
+
+			myInput.evaluate(signals, myInputValues, 0);
+			Discretization z = myDiscretization;
+			int n = myScratch.length;
+			for (int d = 0; d < myStates.length; d++) {
+				float[] x = myStates[d];
+				float u = myInputValues[d];
+
+				float y = z.myPassthrough * u;
+				for (int k = 0; k < n; k++) {
+					y += z.myOutputVector[k] * x[k];
+				}
+				for (int k = 0; k < n; k++) {
+					float sum = z.myInputVector[k] * u;
+					float[] row = z.myStateMatrix[k];
+					for (int j = 0; j < n; j++) {
+						sum += row[j] * x[j];
+					}
+					myScratch[k] = sum;
+				}
+				System.arraycopy(myScratch, 0, x, 0, n);
+
+				myOutputs[d] = y;
+				state[d] += y;
+			}
+		}
+
+		private void discretize(float stepSize) {
+			myDiscretization = new Discretization(mySystem, myIntegrator, stepSize);
+			myStepSize = stepSize;
+		}
+
+		void writeState(float time) {
+			float[][] states = new float[myStates.length][];
+			for (int i = 0; i < states.length; i++) {
+				states[i] = myStates[i].clone();
+			}
+			myTermination.setDimensionStates(states);
+			myTermination.setOutput(time, myOutputs.clone());
+		}
+	}
+
+	/**
+	 * A single-input single-output LinearSystem as a discrete-time update for a given step
+	 * size. The integrator is linear, so the state and output at the end of a step are linear
+	 * in the state at the start and the (constant) input; the coefficients are found by
+	 * probing the integrator. Probing changes the state of the system.
+	 */
+	static class Discretization {
+
+		final float[][] myStateMatrix;
+		final float[] myInputVector;
+		final float[] myOutputVector;
+		final float myPassthrough;
+
+		Discretization(LinearSystem system, Integrator integrator, float stepSize) {
+			int n = system.getState().length;
+			myStateMatrix = new float[n][n];
+			myOutputVector = new float[n];
+			for (int k = 0; k < n; k++) {
+				float[] x0 = new float[n];
+				x0[k] = 1;
+				myOutputVector[k] = probe(system, integrator, x0, 0, stepSize);
+				float[] x = system.getState();
+				for (int j = 0; j < n; j++) {
+					myStateMatrix[j][k] = x[j];
+				}
+			}
+
+			myPassthrough = probe(system, integrator, new float[n], 1, stepSize);
+			myInputVector = system.getState().clone();
+		}
+
+		private static float probe(LinearSystem system, Integrator integrator, float[] state, float input, float stepSize) {
+			system.setState(state);
+			float[] u = new float[]{input};
+			TimeSeries in = new TimeSeriesImpl(new float[]{0, stepSize}, new float[][]{u, u}, new Units[1]);
+			TimeSeries out = integrator.integrate(system, in);
+			return out.getValues()[out.getValues().length-1][0];
+		}
+	}
+
+	/**
+	 * A DecodedOrigin, with linear functions collected into a matrix.
+	 */
+	static class OriginUnit {
+
+		private final DecodedOrigin myOrigin;
+		private final int myOffset;
+		private final float[][] myMatrix;
+		private final float[] myBias;
+		private final Function[] myFunctions;
+
+		/**
+		 * @param matrix Rows of linear functions of the state (rows of nonlinear functions are ignored)
+		 * @param bias Constant terms of linear functions
+		 * @param functions Nonlinear functions, or null for rows given by the matrix
+		 */
+		OriginUnit(DecodedOrigin origin, int offset, float[][] matrix, float[] bias, Function[] functions) {
+			myOrigin = origin;
+			myOffset = offset;
+			myMatrix = matrix;
+			myBias = bias;
+			myFunctions = functions;
+		}
+
+		void run(float[] state, float[] signals) {
+			for (int i = 0; i < myFunctions.length; i++) {
+				float value;
+				if (myFunctions[i] != null) {
+					value = myFunctions[i].map(state);
+				} else {
+					float[] m = myMatrix[i];
+					value = myBias[i];
+					for (int j = 0; j < m.length; j++) {
+						value += m[j] * state[j];
+					}
+				}
+				signals[myOffset+i] = value;
+			}
+		}
+
+		void writeOutput(float[] signals, float time) {
+			float[] values = new float[myFunctions.length];
+			System.arraycopy(signals, myOffset, values, 0, values.length);
+			myOrigin.setValues(new RealOutputImpl(values, Units.UNK, time));
+		}
+	}
+
+	/**
+	 * An NEFEnsemble in DIRECT mode: sums the outputs of Termination dynamics and maps the
+	 * sum through the functions of each DecodedOrigin.
+	 */
+	static class EnsembleUnit {
+
+		private final NEFEnsembleImpl myEnsemble;
+		private final FilterUnit[] myFilters;
+		private final OriginUnit[] myOrigins;
+		private final float[] myState;
+
+		EnsembleUnit(NEFEnsembleImpl ensemble, FilterUnit[] filters, OriginUnit[] origins) {
+			myEnsemble = ensemble;
+			myFilters = filters;
+			myOrigins = origins;
+			myState = new float[ensemble.getDimension()];
+		}
+
+		void run(float[] signals, float[] nextSignals, float stepSize) {
+			for (int i = 0; i < myState.length; i++) {
+				myState[i] = 0;
+			}
+			for (FilterUnit filter : myFilters) {
+				filter.run(signals, myState, stepSize);
+			}
+			for (OriginUnit origin : myOrigins) {
+				origin.run(myState, nextSignals);
+			}
+		}
+
+		void writeOutputs(float[] signals, float time) {
+			for (OriginUnit origin : myOrigins) {
+				origin.writeOutput(signals, time);
+			}
+			myEnsemble.setTime(time);
+		}
+	}
+
+	/**
+	 * A PassthroughNode: the (transformed) sum of its inputs.
+	 */
+	static class PassthroughUnit {
+
+		private final BasicOrigin myOrigin;
+		private final Expression mySum;
+		private final int myOffset;
+
+		PassthroughUnit(BasicOrigin origin, Expression sum, int offset) {
+			myOrigin = origin;
+			mySum = sum;
+			myOffset = offset;
+		}
+
+		void run(float[] signals, float[] nextSignals) {
+			mySum.evaluate(signals, nextSignals, myOffset);
+		}
+
+		void writeOutput(float[] signals, float time) {
+			float[] values = new float[mySum.getDimension()];
+			System.arraycopy(signals, myOffset, values, 0, values.length);
+			myOrigin.setValues(new RealOutputImpl(values, Units.UNK, time));
+		}
+	}
+}
@@ -0,0 +1,357 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "FlatNetwork.java". Description:
+"A Network flattened for a simulation run"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.Probeable;
+import ca.nengo.model.Projection;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.impl.EnsembleTermination;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.PassthroughNode;
+import ca.nengo.util.MU;
+import ca.nengo.util.Probe;
+import ca.nengo.util.impl.LiveDataBus;
+import ca.nengo.util.impl.LiveWatch;
+import ca.nengo.util.impl.NodeThreadPool;
+
+/**
+ * <p>A Network flattened for a simulation run: the Nodes and Projections of the Network and
+ * its subnetworks (with NetworkArrays broken down into their ensembles), and the source of
+ * each Termination, with Origins and Terminations resolved through the wrappers that expose
+ * them on Networks.</p>
+ *
+ * <p>This is shared by the passes that rewrite a run (DirectModeCompiler, PassthroughFuser,
+ * and TrialBatch). It notes which Nodes are observed during the run (by Probes and LiveDataBus
+ * watches of the Network's simulators when it is flattened), so that passes can leave their
+ * outputs up to date. It also folds chains of PassthroughNodes: fold() walks back from a
+ * PassthroughNode through the Nodes it is allowed to pass, multiplying out the Termination
+ * transforms along the way, and reports each input of the chain with its composed matrix and
+ * its delay in steps. A pass can claim the Nodes it takes over, so that later passes over the
+ * same run leave them alone.</p>
+ *
+ * @author agent
+ */
+public class FlatNetwork {
+
+	private final Network myNetwork;
+	private final List<Node> myNodes;
+	private final List<Projection> myProjections;
+	private final Map<Termination, List<Origin>> mySources;
+	private final Map<Origin, Boolean> myExposed;
+	private final Map<Node, Boolean> myObserved;
+	private final Map<Node, Boolean> myClaimed;
+
+	/**
+	 * @param network The Network to be run
+	 */
+	public FlatNetwork(Network network) {
+		myNetwork = network;
+		Node[] topNodes = network.getNodes();
+		myNodes = Collections.unmodifiableList(NodeThreadPool.collectNodes(topNodes, true));
+		myProjections = Collections.unmodifiableList(NodeThreadPool.collectProjections(topNodes, network.getProjections()));
+
+		mySources = new IdentityHashMap<Termination, List<Origin>>();
+		for (Projection projection : myProjections) {
+			List<Termination> leaves = new ArrayList<Termination>(1);
+			collectLeaves(projection.getTermination(), leaves);
+			for (Termination leaf : leaves) {
+				List<Origin> list = mySources.get(leaf);
+				if (list == null) {
+					list = new ArrayList<Origin>(1);
+					mySources.put(leaf, list);
+				}
+				list.add(projection.getOrigin());
+			}
+		}
+
+		myExposed = new IdentityHashMap<Origin, Boolean>();
+		for (Origin origin : network.getOrigins()) {
+			myExposed.put(getBase(origin), Boolean.TRUE);
+		}
+
+		myObserved = new IdentityHashMap<Node, Boolean>();
+		observeProbes(network);
+		if (network.getSimulator() instanceof LocalSimulator) {
+			LiveDataBus bus = ((LocalSimulator) network.getSimulator()).findLiveDataBus();
+			if (bus != null) {
+				for (LiveWatch watch : bus.getWatches()) {
+					LiveWatch.Source source = watch.getSource();
+					if (source instanceof LiveWatch.OriginSource) {
+						observe(((LiveWatch.OriginSource) source).getOrigin());
+					} else if (source instanceof LiveWatch.StateSource) {
+						observe(((LiveWatch.StateSource) source).getTarget());
+					}
+				}
+			}
+		}
+
+		myClaimed = new IdentityHashMap<Node, Boolean>();
+	}
+
+	//targets of the Probes of the Network and its subnetworks
+	private void observeProbes(Network network) {
+		if (network.getSimulator() != null) {
+			for (Probe probe : network.getSimulator().getProbes()) {
+				observe(probe.getTarget());
+			}
+		}
+		for (Node node : network.getNodes()) {
+			if (node instanceof Network) {
+				observeProbes((Network) node);
+			}
+		}
+	}
+
+	//Networks are flattened, so a probed Network isn't itself a Node of the run
+	private void observe(Probeable target) {
+		if (target instanceof Node && !(target instanceof Network)) {
+			myObserved.put((Node) target, Boolean.TRUE);
+		}
+	}
+
+	private void observe(Origin origin) {
+		Node node = getBase(origin).getNode();
+		if (node != null) {
+			myObserved.put(node, Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * @return The Network that was flattened
+	 */
+	public Network getNetwork() {
+		return myNetwork;
+	}
+
+	/**
+	 * @return Nodes of the Network and its subnetworks, other than Networks (NetworkArrays are
+	 * 		broken down into their Nodes)
+	 */
+	public List<Node> getNodes() {
+		return myNodes;
+	}
+
+	/**
+	 * @return Projections of the Network and its subnetworks
+	 */
+	public List<Projection> getProjections() {
+		return myProjections;
+	}
+
+	/**
+	 * @param termination A Termination of a Node in the flattened Network (not a wrapper)
+	 * @return Origins of the Projections onto the Termination, in the order of the Projections
+	 * 		(empty if there are none)
+	 */
+	public List<Origin> getSources(Termination termination) {
+		List<Origin> result = mySources.get(termination);
+		return result == null ? Collections.<Origin>emptyList() : result;
+	}
+
+	/**
+	 * @param termination A Termination of a Node in the flattened Network (not a wrapper)
+	 * @return Origin of the last Projection onto the Termination, or null if there is none
+	 */
+	public Origin getSource(Termination termination) {
+		List<Origin> sources = mySources.get(termination);
+		return sources == null ? null : sources.get(sources.size() - 1);
+	}
+
+	/**
+	 * @param origin An Origin of a Node in the flattened Network
+	 * @return True if the Origin is exposed as an Origin of the top-level Network
+	 */
+	public boolean isExposed(Origin origin) {
+		return myExposed.containsKey(getBase(origin));
+	}
+
+	/**
+	 * @param node A Node in the flattened Network
+	 * @return True if the Node (or one of its outputs) was probed or watched when the Network
+	 * 		was flattened
+	 */
+	public boolean isObserved(Node node) {
+		return myObserved.containsKey(node);
+	}
+
+	/**
+	 * Marks a Node as taken over by a pass over this run, so that later passes leave it alone.
+	 *
+	 * @param node A Node in the flattened Network
+	 */
+	public void claim(Node node) {
+		myClaimed.put(node, Boolean.TRUE);
+	}
+
+	/**
+	 * @param node A Node in the flattened Network
+	 * @return True if a pass has taken over the Node
+	 */
+	public boolean isClaimed(Node node) {
+		return myClaimed.containsKey(node);
+	}
+
+	/**
+	 * Walks back from the output of a PassthroughNode to the inputs of the chain of
+	 * PassthroughNodes that feeds it. Each PassthroughNode delays its inputs by one step, so
+	 * inputs that pass through d nodes are reported at depth d. The walk stops at Nodes that
+	 * aren't in the given set, and at Nodes that are already on the path (ie cycles).
+	 *
+	 * @param node The PassthroughNode whose output is to be folded
+	 * @param through PassthroughNodes that may be folded into the chain (besides node)
+	 * @param visitor Receives the Nodes and inputs of the chain
+	 * @throws StructuralException if a Termination of a PassthroughNode isn't a PassthroughTermination
+	 */
+	public void fold(PassthroughNode node, Set<? extends Node> through, ChainVisitor visitor) throws StructuralException {
+		fold(node, null, 0, through, visitor, new IdentityHashMap<Node, Boolean>());
+	}
+
+	private void fold(PassthroughNode node, float[][] matrix, int depth, Set<? extends Node> through,
+			ChainVisitor visitor, Map<Node, Boolean> path) throws StructuralException {
+		path.put(node, Boolean.TRUE);
+		visitor.node(node, matrix, depth);
+
+		for (Termination t : node.getTerminations()) {
+			if ( !(t instanceof PassthroughNode.PassthroughTermination) ) {
+				throw new StructuralException("Termination " + t.getName() + " of PassthroughNode "
+						+ node.getName() + " is not a PassthroughTermination");
+			}
+			PassthroughNode.PassthroughTermination termination = (PassthroughNode.PassthroughTermination) t;
+			Origin source = getSource(termination);
+			if (source == null) {
+				InstantaneousOutput values = termination.getValues();
+				if (values instanceof RealOutput) {
+					visitor.constant(((RealOutput) values).getValues(), matrix, depth + 1);
+				}
+				continue;
+			}
+
+			float[][] composed = compose(matrix, termination.getTransform());
+			Node sourceNode = getBase(source).getNode();
+			if (through.contains(sourceNode) && !path.containsKey(sourceNode)) {
+				fold((PassthroughNode) sourceNode, composed, depth + 1, through, visitor, path);
+			} else {
+				visitor.input(source, composed, depth + 1);
+			}
+		}
+		path.remove(node);
+	}
+
+	//matrix * transform, where null stands for identity
+	private static float[][] compose(float[][] matrix, float[][] transform) {
+		if (matrix == null) {
+			return transform;
+		} else if (transform == null) {
+			return matrix;
+		} else {
+			return MU.prod(matrix, transform);
+		}
+	}
+
+	/**
+	 * @param termination A Termination, possibly a wrapper or an EnsembleTermination
+	 * @param leaves List to which the Terminations of Nodes that ultimately receive the input
+	 * 		are added
+	 */
+	public static void collectLeaves(Termination termination, List<Termination> leaves) {
+		if (termination instanceof NetworkImpl.TerminationWrapper) {
+			collectLeaves(((NetworkImpl.TerminationWrapper) termination).getBaseTermination(), leaves);
+		} else if (termination instanceof EnsembleTermination) {
+			for (Termination t : ((EnsembleTermination) termination).getNodeTerminations()) {
+				collectLeaves(t, leaves);
+			}
+		} else {
+			leaves.add(termination);
+		}
+	}
+
+	/**
+	 * @param termination A Termination, possibly exposed on a Network
+	 * @return The Termination that the wrapper exposes, or the Termination itself
+	 */
+	public static Termination getBase(Termination termination) {
+		if (termination instanceof NetworkImpl.TerminationWrapper) {
+			return ((NetworkImpl.TerminationWrapper) termination).getBaseTermination();
+		}
+		return termination;
+	}
+
+	/**
+	 * @param origin An Origin, possibly exposed on a Network
+	 * @return The Origin that the wrapper exposes, or the Origin itself
+	 */
+	public static Origin getBase(Origin origin) {
+		if (origin instanceof NetworkImpl.OriginWrapper) {
+			return ((NetworkImpl.OriginWrapper) origin).getBaseOrigin();
+		}
+		return origin;
+	}
+
+	/**
+	 * Receives the parts of a chain of PassthroughNodes from fold(). Matrices map values at
+	 * the given point in the chain onto the output of the chain (null stands for identity).
+	 */
+	public static interface ChainVisitor {
+
+		/**
+		 * @param node A PassthroughNode in the chain
+		 * @param matrix Map from the node's output to the output of the chain
+		 * @param depth Number of PassthroughNodes after this one in the chain
+		 * @throws StructuralException if the node can't be folded
+		 */
+		public void node(PassthroughNode node, float[][] matrix, int depth) throws StructuralException;
+
+		/**
+		 * @param origin An Origin that feeds the chain (as it appears in the Projection)
+		 * @param matrix Map from the Origin's output to the output of the chain
+		 * @param depth Number of PassthroughNodes between the Origin and the output of the chain
+		 * @throws StructuralException if the input can't be folded
+		 */
+		public void input(Origin origin, float[][] matrix, int depth) throws StructuralException;
+
+		/**
+		 * @param values The (transformed) value of a Termination in the chain that doesn't
+		 * 		receive a Projection
+		 * @param matrix Map from the Termination's node's output to the output of the chain
+		 * @param depth Number of PassthroughNodes between the Termination and the output of the chain
+		 * @throws StructuralException if the constant can't be folded
+		 */
+		public void constant(float[] values, float[][] matrix, int depth) throws StructuralException;
+	}
+
+}
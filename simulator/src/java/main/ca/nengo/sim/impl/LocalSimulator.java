@@ -37,6 +37,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.log4j.Logger;
+
 import ca.nengo.model.Ensemble;
 import ca.nengo.model.InstantaneousOutput;
 import ca.nengo.model.Network;
@@ -44,9 +46,12 @@ import ca.nengo.model.Node;
 import ca.nengo.model.Probeable;
 import ca.nengo.model.Projection;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
 import ca.nengo.model.Termination;
 import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.impl.DecodedTermination;
 import ca.nengo.model.plasticity.impl.PlasticEnsembleTermination;
+import ca.nengo.sim.SimulationState;
 import ca.nengo.sim.Simulator;
 import ca.nengo.sim.SimulatorEvent;
 import ca.nengo.sim.SimulatorListener;
@@ -54,8 +59,11 @@ import ca.nengo.util.Probe;
 import ca.nengo.util.ThreadTask;
 import ca.nengo.util.VisiblyMutable;
 import ca.nengo.util.VisiblyMutableUtils;
+import ca.nengo.util.impl.LiveDataBus;
 import ca.nengo.util.impl.NodeThreadPool;
 import ca.nengo.util.impl.ProbeImpl;
+import ca.nengo.util.impl.Profiler;
+import ca.nengo.util.impl.SimulationMetrics;
 
 /**
  * A Simulator that runs locally (ie in the Java Virtual Machine in which it is
@@ -66,6 +74,8 @@ import ca.nengo.util.impl.ProbeImpl;
 public class LocalSimulator implements Simulator, java.io.Serializable {
     private static final long serialVersionUID = 1L;
 
+    private static Logger ourLogger = Logger.getLogger(LocalSimulator.class);
+
     private Projection[] myProjections;
     private Node[] myNodes;
     private ThreadTask[] myTasks;
@@ -76,6 +86,22 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
     private boolean myDisplayProgress;
     private transient List<VisiblyMutable.Listener> myChangeListeners;
     private transient NodeThreadPool myNodeThreadPool;
+    private transient LiveDataBus myLiveDataBus;
+    private transient RealTimePacer myPacer;
+    private transient Profiler myProfiler;
+    private transient DirectModeCompiler myDirectModeCompiler;
+    private transient DirectModeProgram myDirectModeProgram;
+    private transient PassthroughFuser myPassthroughFuser;
+    private transient PassthroughFusion myPassthroughFusion;
+    private transient Projection[] myFusedProjections;
+    private transient Node[] myFusedNodes;
+    private transient WeightMatrixSelector myWeightMatrixSelector;
+    private transient DecodedTermination[] myWeightedTerminations;
+    private transient SimulationMetrics myMetrics;
+    private transient SimulationMetrics myRunMetrics;
+    private transient Checkpointer myCheckpointer;
+    private transient float myTime;
+    private transient boolean mySingleThreaded;
 
     /**
      * Collection of Simulator
@@ -124,6 +150,10 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
             it.next().reset();
         }
 
+        if (myLiveDataBus != null) {
+            myLiveDataBus.reset(false);
+        }
+
         for(Node node : myNodes)
         {
             if(node instanceof Network) {
@@ -145,108 +175,386 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
      */
     public synchronized void run(float startTime, float endTime, float stepSize, boolean topLevel)
             throws SimulationException {
-    	
-    	 myNodeThreadPool = null;
-         myNodeThreadPool = new NodeThreadPool(myNetwork, myProbeTasks);
-
-        //		float pre_time = System.nanoTime();
 
+        myNodeThreadPool = null;
+        myDirectModeProgram = null;
+        myPassthroughFusion = null;
+        myWeightedTerminations = null;
+        myRunMetrics = null;
+        boolean checkpointing = myCheckpointer != null && topLevel;
         double time = startTime;
-        double thisStepSize = stepSize;
 
-        if(topLevel)
-        {
-            resetProbes();
-        }
+        try {
+            FlatNetwork flat = null;
+            if (topLevel && (myDirectModeCompiler != null || myPassthroughFuser != null)) {
+                flat = new FlatNetwork(myNetwork);
+            }
+            if (myDirectModeCompiler != null && topLevel) {
+                myDirectModeProgram = compileDirectMode(flat);
+            }
+
+            List<ThreadTask> tasks = myProbeTasks;
+            if (myLiveDataBus != null) {
+                tasks = new ArrayList<ThreadTask>(myProbeTasks);
+                tasks.add(myLiveDataBus);
+            }
+            if (myProfiler != null && topLevel) {
+                myProfiler.initialize(myNetwork);
+            }
+            if (myPassthroughFuser != null && topLevel) {
+                fusePassthroughs(flat);
+            }
+            if (myDirectModeProgram == null && !mySingleThreaded) {
+                myNodeThreadPool = new NodeThreadPool(myNetwork, tasks, myProfiler, myPassthroughFusion);
+            }
+            if (myWeightMatrixSelector != null && topLevel) {
+                myWeightedTerminations = myWeightMatrixSelector.apply(myNetwork, stepSize);
+            }
 
-        fireSimulatorEvent(new SimulatorEvent(0, SimulatorEvent.Type.STARTED));
+            //		float pre_time = System.nanoTime();
 
-        // for (int i = 0; i < myNodes.length; i++) {
-        // myNodes[i].setMode(mode);
-        // }
+            double thisStepSize = stepSize;
 
-        // //make each node produce its initial output
-        // for (int i = 0; i < myNodes.length; i++) {
-        // myNodes[i].run(startTime, startTime);
-        // }
-        //
+            if(topLevel)
+            {
+                resetProbes();
+            }
 
+            fireSimulatorEvent(new SimulatorEvent(0, SimulatorEvent.Type.STARTED));
 
+            // for (int i = 0; i < myNodes.length; i++) {
+            // myNodes[i].setMode(mode);
+            // }
 
-        // Casting the float to a double above causes some unexpected rounding.  To avoid this
-        //  we force the stepSize to be divisible by 0.000001 (1 microsecond)
+            // //make each node produce its initial output
+            // for (int i = 0; i < myNodes.length; i++) {
+            // myNodes[i].run(startTime, startTime);
+            // }
+            //
 
-        thisStepSize=Math.round(thisStepSize*1000000)/1000000.0;
-        if (thisStepSize<0.000001) {
-            thisStepSize=0.000001;
-        }
 
-        int c = 0;
-        boolean interrupt=false;
-        
-        while (time < endTime && !interrupt) {
 
-            if (c++ % 100 == 99 && myDisplayProgress) {
-                System.out.println("Step " + c + " " + Math.min(endTime, time + thisStepSize));
+            // Casting the float to a double above causes some unexpected rounding.  To avoid this
+            //  we force the stepSize to be divisible by 0.000001 (1 microsecond)
+
+            thisStepSize=Math.round(thisStepSize*1000000)/1000000.0;
+            if (thisStepSize<0.000001) {
+                thisStepSize=0.000001;
+            }
+
+            int c = 0;
+            boolean interrupt=false;
+
+            if (myPacer != null) {
+                myPacer.start(startTime);
             }
 
-            if (time + 1.5*thisStepSize > endTime) { //fudge step size to hit end exactly
-                thisStepSize = endTime - time;
+            myRunMetrics = topLevel ? myMetrics : null;
+            if (myRunMetrics != null) {
+                if (myNodeThreadPool != null) {
+                    myNodeThreadPool.setMetrics(myRunMetrics);
+                }
+                myRunMetrics.start(myNetwork, startTime);
+            }
+            myTime = startTime;
+            if (checkpointing) {
+                myCheckpointer.start(startTime);
             }
 
-            step((float) time, (float) (time+thisStepSize));
+            while (time < endTime && !interrupt) {
 
-            float currentProgress = ((float) time - startTime) / (endTime - startTime);
-            
-            SimulatorEvent event=new SimulatorEvent(currentProgress,
-                    SimulatorEvent.Type.STEP_TAKEN);
-            fireSimulatorEvent(event);
-            if (event.getInterrupt()) interrupt=true;
+                if (c++ % 100 == 99 && myDisplayProgress) {
+                    System.out.println("Step " + c + " " + Math.min(endTime, time + thisStepSize));
+                }
+
+                if (time + 1.5*thisStepSize > endTime) { //fudge step size to hit end exactly
+                    thisStepSize = endTime - time;
+                }
+
+                step((float) time, (float) (time+thisStepSize));
+
+                float currentProgress = ((float) time - startTime) / (endTime - startTime);
+
+                SimulatorEvent event=new SimulatorEvent(currentProgress,
+                        SimulatorEvent.Type.STEP_TAKEN);
+                fireSimulatorEvent(event);
+                if (event.getInterrupt()) interrupt=true;
+
+                time += thisStepSize;
+                myTime = (float) time;
+
+                if (myPacer != null) {
+                    myPacer.pace(time);
+                }
+
+                if (myRunMetrics != null) {
+                    myRunMetrics.step((float) time);
+                }
 
-            time += thisStepSize;
+                if (checkpointing && myCheckpointer.isDue((float) time)) {
+                    myCheckpointer.write(capture());
+                }
+            }
+        } finally {
+            finishRun((float) time, checkpointing);
         }
 
         fireSimulatorEvent(new SimulatorEvent(1f, SimulatorEvent.Type.FINISHED));
+    }
+
+    /*
+     * Undoes everything run() sets up for a single run. This runs whether or not the run
+     * completed, so that eg weight-matrix paths and fused relays don't stay attached to the
+     * network after a step fails. Every part is released even if an earlier part fails.
+     */
+    private void finishRun(float time, boolean checkpointing) throws SimulationException {
+        myRunMetrics = null;
+        try {
+            if (checkpointing) {
+                myCheckpointer.flush();
+            }
+
+            if (myPacer != null) {
+                myPacer.restore();
+            }
 
+            if (myDirectModeProgram != null) {
+                DirectModeProgram program = myDirectModeProgram;
+                myDirectModeProgram = null;
+                program.finish(time);
+            }
+        } finally {
+            try {
+                if (myPassthroughFusion != null) {
+                    PassthroughFusion fusion = myPassthroughFusion;
+                    myPassthroughFusion = null;
+                    myFusedNodes = null;
+                    myFusedProjections = null;
+                    fusion.finish();
+                }
+            } finally {
+                if (myWeightedTerminations != null) {
+                    WeightMatrixSelector.release(myWeightedTerminations);
+                    myWeightedTerminations = null;
+                }
 
-        if(myNodeThreadPool != null){
-            myNodeThreadPool.kill();
-            myNodeThreadPool = null;
+                if(myNodeThreadPool != null){
+                    myNodeThreadPool.kill();
+                    myNodeThreadPool = null;
+                }
+            }
         }
+    }
+
+    /**
+     * @return True if this simulator runs in the calling thread, regardless of
+     *      NodeThreadPool.isMultithreading()
+     */
+    public boolean isSingleThreaded() {
+        return mySingleThreaded;
+    }
+
+    /**
+     * @param singleThreaded True if this simulator should run in the calling thread, regardless
+     *      of NodeThreadPool.isMultithreading() (eg because many simulations run in parallel).
+     *      This doesn't apply to subnetworks, which have their own simulators.
+     */
+    public void setSingleThreaded(boolean singleThreaded) {
+        mySingleThreaded = singleThreaded;
+    }
+
+    /**
+     * @see ca.nengo.sim.Simulator#checkpoint()
+     */
+    public synchronized SimulationState checkpoint() throws SimulationException {
+        return capture();
+    }
+
+    /**
+     * @see ca.nengo.sim.Simulator#restore(ca.nengo.sim.SimulationState)
+     */
+    public synchronized void restore(SimulationState state) throws SimulationException {
+        StateWalker.restore(myNetwork, state);
+        myTime = state.getTime();
+    }
 
+    //copies the state of the network, first writing back state that is held elsewhere during a run
+    private SimulationState capture() throws SimulationException {
+        if (myDirectModeProgram != null) {
+            myDirectModeProgram.finish(myTime);
+        }
+        if (myPassthroughFusion != null) {
+            myPassthroughFusion.finish();
+        }
+        if (myWeightedTerminations != null) {
+            for (DecodedTermination termination : myWeightedTerminations) {
+                termination.getNeuronWeights().store(myTime);
+            }
+        }
+        return StateWalker.capture(myNetwork, myTime);
     }
 
     public void step(float startTime, float endTime)
             throws SimulationException {
 
     	myNetwork.fireStepListeners(startTime);
+
+        if (myDirectModeProgram != null && stepDirectMode(startTime, endTime)) {
+            return;
+        }
     	
         if(NodeThreadPool.isMultithreading() && myNodeThreadPool != null){
             myNodeThreadPool.step(startTime, endTime);
+        }else if (myPassthroughFusion != null) {
+            stepFused(startTime, endTime);
         }else{
+            long interval;
+            long phaseTime = myRunMetrics != null ? System.nanoTime() : 0;
+            
             for (Projection myProjection : myProjections) {
+                interval = myProfiler != null ? System.nanoTime() : 0;
                 InstantaneousOutput values = myProjection.getOrigin().getValues();
                 myProjection.getTermination().setValues(values);
+                if (myProfiler != null) {
+                    myProfiler.record(myProjection, Profiler.Category.PROJECTION, System.nanoTime() - interval);
+                }
+            }
+            if (myRunMetrics != null) {
+                phaseTime = myRunMetrics.phase(SimulationMetrics.Phase.PROJECTIONS, phaseTime);
             }
 
             for (Node myNode : myNodes) {
                 if(myNode instanceof NetworkImpl) {
+                    //subnetwork nodes are profiled by the subnetwork's simulator
                     ((NetworkImpl)myNode).run(startTime, endTime, false);
                 } else {
+                    interval = myProfiler != null ? System.nanoTime() : 0;
                     myNode.run(startTime, endTime);
+                    if (myProfiler != null) {
+                        myProfiler.record(myNode, Profiler.Category.NODE, System.nanoTime() - interval);
+                    }
                 }
             }
+            if (myRunMetrics != null) {
+                phaseTime = myRunMetrics.phase(SimulationMetrics.Phase.NODES, phaseTime);
+            }
 
-            
-            for (ThreadTask myTask : myTasks) {
-                myTask.run(startTime, endTime);
+            runTasksAndProbes(startTime, endTime);
+            if (myRunMetrics != null) {
+                myRunMetrics.phase(SimulationMetrics.Phase.TASKS, phaseTime);
             }
-            
-            Iterator<Probe> it = myProbes.iterator();
-            while (it.hasNext()) {
-                it.next().collect(endTime);
+        }
+    }
+
+    //runs a step of the flattened network, with fused passthrough nodes replaced by relays
+    private void stepFused(float startTime, float endTime) throws SimulationException {
+        long interval;
+        long phaseTime = myRunMetrics != null ? System.nanoTime() : 0;
+        for (Projection projection : myFusedProjections) {
+            interval = myProfiler != null ? System.nanoTime() : 0;
+            projection.getTermination().setValues(projection.getOrigin().getValues());
+            if (myProfiler != null) {
+                myProfiler.record(projection, Profiler.Category.PROJECTION, System.nanoTime() - interval);
+            }
+        }
+        if (myRunMetrics != null) {
+            phaseTime = myRunMetrics.phase(SimulationMetrics.Phase.PROJECTIONS, phaseTime);
+        }
+
+        for (Node node : myFusedNodes) {
+            interval = myProfiler != null ? System.nanoTime() : 0;
+            node.run(startTime, endTime);
+            if (myProfiler != null) {
+                myProfiler.record(node, Profiler.Category.NODE, System.nanoTime() - interval);
             }
         }
+        if (myRunMetrics != null) {
+            phaseTime = myRunMetrics.phase(SimulationMetrics.Phase.NODES, phaseTime);
+        }
+
+        runTasksAndProbes(startTime, endTime);
+        for (ThreadTask relay : myPassthroughFusion.getTasks()) {
+            relay.run(startTime, endTime);
+        }
+        collectSubnetworkProbes(myNodes, endTime);
+        if (myRunMetrics != null) {
+            myRunMetrics.phase(SimulationMetrics.Phase.TASKS, phaseTime);
+        }
+    }
+
+    //nodes that a DirectModeProgram has already claimed in the flattened network are left to it
+    private void fusePassthroughs(FlatNetwork flat) throws SimulationException {
+        myPassthroughFusion = myPassthroughFuser.fuse(flat);
+        ourLogger.info(myPassthroughFusion.getReport());
+
+        List<Node> nodes = new ArrayList<Node>(flat.getNodes());
+        List<Projection> projections = new ArrayList<Projection>(flat.getProjections());
+        myPassthroughFusion.apply(nodes, projections, new ArrayList<ThreadTask>());
+        myFusedNodes = nodes.toArray(new Node[0]);
+        myFusedProjections = projections.toArray(new Projection[0]);
+    }
+
+    private void runTasksAndProbes(float startTime, float endTime) throws SimulationException {
+        long interval;
+        for (ThreadTask myTask : myTasks) {
+            interval = myProfiler != null ? System.nanoTime() : 0;
+            myTask.run(startTime, endTime);
+            if (myProfiler != null) {
+                myProfiler.record(myTask, Profiler.Category.TASK, System.nanoTime() - interval);
+            }
+        }
+
+        for (Probe probe : myProbes) {
+            interval = myProfiler != null ? System.nanoTime() : 0;
+            probe.collect(endTime);
+            if (myProfiler != null) {
+                myProfiler.record(probe.getProbeTask(), Profiler.Category.PROBE, System.nanoTime() - interval);
+            }
+        }
+
+        if (myLiveDataBus != null) {
+            myLiveDataBus.collect();
+        }
+    }
+
+    //runs a step with the compiled program, recompiling it if the network has changed
+    private boolean stepDirectMode(float startTime, float endTime) throws SimulationException {
+        if (!myDirectModeProgram.step(startTime, endTime)) {
+            myDirectModeProgram.finish(startTime);
+            myDirectModeProgram = compileDirectMode(new FlatNetwork(myNetwork));
+            if (myDirectModeProgram == null || !myDirectModeProgram.step(startTime, endTime)) {
+                myDirectModeProgram = null;
+                return false;
+            }
+        }
+
+        runTasksAndProbes(startTime, endTime);
+        collectSubnetworkProbes(myNodes, endTime);
+        return true;
+    }
+
+    //probes of flattened subnetworks are normally collected when their simulators step
+    private static void collectSubnetworkProbes(Node[] nodes, float time) throws SimulationException {
+        for (Node node : nodes) {
+            if (node instanceof Network && !node.getClass().getCanonicalName().contains("CCMModelNetwork")) {
+                Probe[] probes = ((Network) node).getSimulator().getProbes();
+                for (Probe probe : probes) {
+                    probe.collect(time);
+                }
+                collectSubnetworkProbes(((Network) node).getNodes(), time);
+            }
+        }
+    }
+
+    private DirectModeProgram compileDirectMode(FlatNetwork flat) {
+        try {
+            DirectModeProgram result = myDirectModeCompiler.compile(flat);
+            ourLogger.info(result.getReport());
+            return result;
+        } catch (StructuralException e) {
+            ourLogger.warn("Can't compile network in DIRECT mode; running it as usual", e);
+            return null;
+        }
     }
 
     /**
@@ -382,6 +690,168 @@ public class LocalSimulator implements Simulator, java.io.Serializable {
         return myProbes.toArray(new Probe[0]);
     }
 
+    /**
+     * @return A bus through which live samples of Origins and Probeable states can be
+     *      subscribed to while this Simulator runs. The bus is sampled after every step
+     *      and reset along with the Probes.
+     */
+    public LiveDataBus getLiveDataBus() {
+        if (myLiveDataBus == null) {
+            myLiveDataBus = new LiveDataBus();
+        }
+        return myLiveDataBus;
+    }
+
+    //the bus, or null if getLiveDataBus() hasn't been called
+    LiveDataBus findLiveDataBus() {
+        return myLiveDataBus;
+    }
+
+    /**
+     * @return The pacer that holds runs to wall-clock time, or null if runs go as fast as possible
+     */
+    public RealTimePacer getPacer() {
+        return myPacer;
+    }
+
+    /**
+     * @param pacer A pacer that holds runs to wall-clock time (its overrun counters are reset
+     *      at the start of each run), or null to run as fast as possible
+     */
+    public void setPacer(RealTimePacer pacer) {
+        myPacer = pacer;
+    }
+
+    /**
+     * @return The profiler that collects step times, or null if profiling is off
+     */
+    public Profiler getProfiler() {
+        return myProfiler;
+    }
+
+    /**
+     * Turns on profiling of the time spent in each node, projection, task and probe 
+     * (and barrier waits when multithreading). The profiler is also given to the 
+     * simulators of subnetworks, so that times can be aggregated by network hierarchy.
+     * 
+     * @param profiler A profiler to collect step times, or null to turn profiling off
+     */
+    public void setProfiler(Profiler profiler) {
+        myProfiler = profiler;
+        if (myNodes != null) {
+            for (Node node : myNodes) {
+                if (node instanceof Network && ((Network) node).getSimulator() instanceof LocalSimulator) {
+                    ((LocalSimulator) ((Network) node).getSimulator()).setProfiler(profiler);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The compiler with which top-level runs are compiled, or null if they are not compiled
+     */
+    public DirectModeCompiler getDirectModeCompiler() {
+        return myDirectModeCompiler;
+    }
+
+    /**
+     * Turns on compilation of the network into a DirectModeProgram at the start of each 
+     * top-level run. This pays off for networks that are largely in DIRECT mode; other 
+     * nodes run as usual (on a single thread) alongside the program. 
+     * 
+     * @param compiler A compiler, or null to run networks as usual
+     */
+    public void setDirectModeCompiler(DirectModeCompiler compiler) {
+        myDirectModeCompiler = compiler;
+    }
+
+    /**
+     * @return The fuser with which PassthroughNodes are removed from top-level runs, or null
+     */
+    public PassthroughFuser getPassthroughFuser() {
+        return myPassthroughFuser;
+    }
+
+    /**
+     * Turns on fusion of PassthroughNode chains into relays at the start of each top-level run
+     * (see PassthroughFuser). PassthroughNodes that are compiled in DIRECT mode are left to the 
+     * DirectModeProgram. 
+     * 
+     * @param fuser A fuser, or null to run PassthroughNodes as usual
+     */
+    public void setPassthroughFuser(PassthroughFuser fuser) {
+        myPassthroughFuser = fuser;
+    }
+
+    /**
+     * @return What was fused for the current run, or null if nothing is fused (or not running)
+     */
+    public PassthroughFusion getPassthroughFusion() {
+        return myPassthroughFusion;
+    }
+
+    /**
+     * @return The selector with which decoded projections are switched to weight matrices
+     *      for top-level runs, or null
+     */
+    public WeightMatrixSelector getWeightMatrixSelector() {
+        return myWeightMatrixSelector;
+    }
+
+    /**
+     * Turns on per-projection selection between decoded and weight-matrix simulation at the
+     * start of each top-level run (see WeightMatrixSelector). Weights are removed again at the
+     * end of the run.
+     *
+     * @param selector A selector, or null to simulate decoded projections as usual
+     */
+    public void setWeightMatrixSelector(WeightMatrixSelector selector) {
+        myWeightMatrixSelector = selector;
+    }
+
+    /**
+     * @return The checkpointer that saves the simulation state during top-level runs, or null
+     */
+    public Checkpointer getCheckpointer() {
+        return myCheckpointer;
+    }
+
+    /**
+     * Turns on checkpoints of the simulation state during top-level runs (see Checkpointer), 
+     * so that long runs can be resumed after an interruption.  
+     *
+     * @param checkpointer A checkpointer, or null to turn checkpoints off
+     */
+    public void setCheckpointer(Checkpointer checkpointer) {
+        myCheckpointer = checkpointer;
+    }
+
+    /**
+     * @return Metrics fed by top-level runs, or null
+     */
+    public SimulationMetrics getMetrics() {
+        return myMetrics;
+    }
+
+    /**
+     * Turns on runtime metrics (step rate, phase latencies, allocation rate, probe buffer 
+     * occupancy, and ensemble firing rates; see SimulationMetrics) for top-level runs. 
+     * These can be published with MetricsMBean or MetricsReporter while the simulation runs.
+     *
+     * @param metrics Metrics to update during runs, or null to turn metrics off
+     */
+    public void setMetrics(SimulationMetrics metrics) {
+        myMetrics = metrics;
+    }
+
+    /**
+     * @return The program with which the current run is being simulated, or null if the 
+     *      network is not compiled (or not running)
+     */
+    public DirectModeProgram getDirectModeProgram() {
+        return myDirectModeProgram;
+    }
+
     public void setDisplayProgress(boolean display)
     {
         myDisplayProgress = display;
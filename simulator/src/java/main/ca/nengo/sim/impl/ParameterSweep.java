@@ -0,0 +1,270 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "ParameterSweep.java". Description:
+"Runs many trials of a Network in parallel, eg to see how sensitive its output is to a parameter or to noise"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import ca.nengo.math.PDFTools;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.nef.impl.NEFUtil;
+import ca.nengo.sim.SimulationState;
+import ca.nengo.util.Probe;
+import ca.nengo.util.TimeSeries;
+
+/**
+ * <p>Runs many trials of a Network in parallel, eg to see how sensitive its output is to a
+ * parameter or to noise. The Network is built once. Each worker thread gets one clone of it,
+ * and the clones share the prototype's encoders, evaluation points, decoders, and decoded
+ * Termination transforms, so memory use grows with the number of threads rather than the
+ * number of trials. Dynamic state (neuron, synapse, and noise states, outputs, probes) is
+ * private to each clone.</p>
+ *
+ * <p>Every trial starts from the state that the prototype had when run() was called (as copied
+ * by clone()), and has its own random stream, derived from the sweep's seed and the trial index,
+ * so results don't depend on the number of threads or the order in which trials run. A Trial can change the clone before
+ * it runs (eg change an input function or set a new transform), but it mustn't change the
+ * shared arrays in place. Parameters that it replaces are put back before the next trial.</p>
+ *
+ * @author agent
+ */
+public class ParameterSweep {
+
+	private static Logger ourLogger = Logger.getLogger(ParameterSweep.class);
+
+
+	private final Network myPrototype;
+	private final List<String[]> myProbes;
+	private int myNumThreads;
+	private long mySeed;
+
+	/**
+	 * @param prototype The Network of which to run trials. It isn't run by the sweep, and
+	 * 		shouldn't be changed while a sweep is running.
+	 */
+	public ParameterSweep(Network prototype) {
+		myPrototype = prototype;
+		myProbes = new ArrayList<String[]>(5);
+		myNumThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * A change made to a clone of the prototype before a trial runs.
+	 */
+	public static interface Trial {
+
+		/**
+		 * Called in the worker thread, with that thread's random stream already set for the trial.
+		 *
+		 * @param network The clone that will run the trial
+		 * @param index Index of the trial
+		 * @throws Exception If the network can't be set up for the trial
+		 */
+		public void configure(Network network, int index) throws Exception;
+	}
+
+	/**
+	 * @return Number of trials that run at once (the number of clones)
+	 */
+	public int getNumThreads() {
+		return myNumThreads;
+	}
+
+	/**
+	 * @param numThreads Number of trials that run at once (the number of clones); defaults to the
+	 * 		number of processors
+	 */
+	public void setNumThreads(int numThreads) {
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("Need at least one thread");
+		}
+		myNumThreads = numThreads;
+	}
+
+	/**
+	 * @return Seed from which the random stream of each trial is derived
+	 */
+	public long getSeed() {
+		return mySeed;
+	}
+
+	/**
+	 * @param seed Seed from which the random stream of each trial is derived
+	 */
+	public void setSeed(long seed) {
+		mySeed = seed;
+	}
+
+	/**
+	 * Records a state of a top-level node in each trial.
+	 *
+	 * @param nodeName Name of a node in the prototype
+	 * @param state Name of the state to record
+	 * @throws SimulationException If the prototype has no such node
+	 */
+	public void addProbe(String nodeName, String state) throws SimulationException {
+		try {
+			myPrototype.getNode(nodeName);
+		} catch (StructuralException e) {
+			throw new SimulationException(e);
+		}
+		myProbes.add(new String[]{nodeName, state});
+	}
+
+	/**
+	 * Runs trials, several at once.
+	 *
+	 * @param numTrials Number of trials
+	 * @param startTime Simulation time at which each trial starts
+	 * @param endTime Simulation time at which each trial ends
+	 * @param trial Changes made to the Network for each trial, or null to vary only the random streams
+	 * @return Recorded data, indexed by trial then by probe (in the order probes were added)
+	 * @throws SimulationException If a trial fails (the remaining trials are cancelled)
+	 */
+	public TimeSeries[][] run(final int numTrials, final float startTime, final float endTime, final Trial trial)
+			throws SimulationException {
+		final Network first;
+		try {
+			first = makeInstance();
+		} catch (CloneNotSupportedException e) {
+			throw new SimulationException("Can't copy the network", e);
+		}
+		final SimulationState initial = StateWalker.capture(first, startTime);
+		final TimeSeries[][] result = new TimeSeries[numTrials][];
+		final AtomicInteger next = new AtomicInteger(0);
+
+		int numThreads = Math.min(myNumThreads, numTrials);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numThreads), new ThreadFactory() {
+			private int myCount = 0;
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Sweep " + myCount++);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			List<Future<Object>> workers = new ArrayList<Future<Object>>(numThreads);
+			for (int i = 0; i < numThreads; i++) {
+				final boolean isFirst = (i == 0);
+				workers.add(executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						Network instance = isFirst ? first : makeInstance();
+						for (int index = next.getAndIncrement(); index < numTrials; index = next.getAndIncrement()) {
+							instance = runTrial(instance, index, initial, startTime, endTime, trial, result);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Object> worker : workers) {
+				worker.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SimulationException("Interrupted", e);
+		} catch (ExecutionException e) {
+			next.set(numTrials);
+			throw new SimulationException("Trial failed: " + e.getCause().getMessage(), e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return result;
+	}
+
+	//runs one trial; returns the clone to use for the next one
+	private Network runTrial(Network instance, int index, SimulationState initial, float startTime, float endTime,
+			Trial trial, TimeSeries[][] result) throws Exception {
+		NEFUtil.shareModelData(myPrototype, instance);
+		try {
+			StateWalker.restore(instance, initial, false);
+		} catch (SimulationException e) {
+			//the last trial changed the structure (eg replaced a function with a different kind)
+			ourLogger.debug("Replacing sweep network after trial " + (index - 1), e);
+			instance = makeInstance();
+			StateWalker.restore(instance, initial, false);
+		}
+
+		Random previous = PDFTools.setThreadRandom(PDFTools.makeStream(mySeed, "trial" + index));
+		try {
+			if (trial != null) {
+				trial.configure(instance, index);
+			}
+			instance.run(startTime, endTime);
+		} finally {
+			PDFTools.setThreadRandom(previous);
+		}
+
+		Probe[] probes = instance.getSimulator().getProbes();
+		TimeSeries[] data = new TimeSeries[probes.length];
+		for (int i = 0; i < probes.length; i++) {
+			data[i] = probes[i].getData();
+		}
+		result[index] = data;
+		return instance;
+	}
+
+	private Network makeInstance() throws CloneNotSupportedException, SimulationException {
+		Network result;
+		synchronized (myPrototype) {
+			result = (Network) myPrototype.clone();
+		}
+		try {
+			NEFUtil.shareModelData(myPrototype, result);
+		} catch (StructuralException e) {
+			throw new SimulationException(e);
+		}
+		setSingleThreaded(result);
+		for (String[] probe : myProbes) {
+			result.getSimulator().addProbe(probe[0], probe[1], true);
+		}
+		return result;
+	}
+
+	private static void setSingleThreaded(Network network) {
+		if (network.getSimulator() instanceof LocalSimulator) {
+			LocalSimulator simulator = (LocalSimulator) network.getSimulator();
+			simulator.setSingleThreaded(true);
+			simulator.setDisplayProgress(false);
+		}
+		for (Node node : network.getNodes()) {
+			if (node instanceof Network) {
+				setSingleThreaded((Network) node);
+			}
+		}
+	}
+}
@@ -0,0 +1,289 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "PassthroughFuser.java". Description:
+"Collapses chains of PassthroughNodes into composed linear maps for a simulation run"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.Projection;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.impl.PassthroughNode;
+import ca.nengo.model.impl.ProjectionImpl;
+import ca.nengo.sim.impl.PassthroughFusion.Relay;
+import ca.nengo.util.MU;
+
+/**
+ * <p>Collapses chains of PassthroughNodes into composed linear maps for a simulation run.</p>
+ *
+ * <p>A PassthroughNode copies (and optionally transforms and sums) its inputs at every step,
+ * which costs an output object per Termination, a Node run, and a step of delay for every
+ * relay. The fuser works on the flattened Network (see FlatNetwork) and finds PassthroughNodes
+ * that can be removed from the run: those whose Terminations each receive exactly one Projection of
+ * real-valued output. Each remaining Projection out of such a node is replaced by a Projection
+ * from a relay that computes sum_i M_i x_i directly, where x_i are the Origins that ultimately
+ * feed the chain, and M_i are the products of the Termination transforms along the way. </p>
+ *
+ * <p>By default each relay keeps the one-step delay of every PassthroughNode it replaces (with
+ * a ring buffer of pending outputs), so results match the usual simulation exactly. If delay
+ * removal is turned on, Terminations receive the composed values of the current inputs
+ * instead, as if they were connected directly.</p>
+ *
+ * <p>PassthroughNodes that are exposed as Origins of the top-level Network, that are probed or
+ * watched (through the simulator's LiveDataBus) when the run starts, that are part of a cycle of
+ * PassthroughNodes, or that receive spikes, are left to run as usual, so that their outputs
+ * are up to date at every step. PassthroughNodes that another pass has claimed for the run
+ * (see FlatNetwork) are left to that pass.</p>
+ *
+ * @author agent
+ */
+public class PassthroughFuser {
+
+	private boolean myRemoveDelay;
+
+	/**
+	 * @return True if fused Terminations receive current values rather than values delayed by
+	 * 		one step per PassthroughNode
+	 */
+	public boolean getRemoveDelay() {
+		return myRemoveDelay;
+	}
+
+	/**
+	 * @param remove True if fused Terminations are to receive current values rather than values
+	 * 		delayed by one step per PassthroughNode (default false)
+	 */
+	public void setRemoveDelay(boolean remove) {
+		myRemoveDelay = remove;
+	}
+
+	/**
+	 * @param network The Network to be run
+	 * @return The changes to the flattened network for the run
+	 * @throws SimulationException if an Origin's output can't be read
+	 */
+	public PassthroughFusion fuse(Network network) throws SimulationException {
+		return fuse(new FlatNetwork(network));
+	}
+
+	/**
+	 * @param network The flattened Network to be run (PassthroughNodes that another pass has
+	 * 		claimed are left alone)
+	 * @return The changes to the flattened network for the run
+	 * @throws SimulationException if an Origin's output can't be read
+	 */
+	public PassthroughFusion fuse(FlatNetwork network) throws SimulationException {
+		Map<Node, Origin[]> candidates = new IdentityHashMap<Node, Origin[]>();
+		for (Node node : network.getNodes()) {
+			if (node.getClass().equals(PassthroughNode.class) && !network.isClaimed(node)) {
+				Origin[] inputs = getInputs((PassthroughNode) node, network);
+				if (inputs != null) {
+					candidates.put(node, inputs);
+				}
+			}
+		}
+
+		Map<Node, Origin[]> fused = new IdentityHashMap<Node, Origin[]>();
+		for (Node node : candidates.keySet()) {
+			if (!isInCycle(node, node, candidates, new IdentityHashMap<Node, Boolean>())) {
+				fused.put(node, candidates.get(node));
+			}
+		}
+
+		PassthroughFusion result = new PassthroughFusion(myRemoveDelay, fused, fused.size() + 1);
+		Map<Node, Relay> relays = new IdentityHashMap<Node, Relay>();
+		for (Projection projection : network.getProjections()) {
+			Node target = FlatNetwork.getBase(projection.getTermination()).getNode();
+			Node source = FlatNetwork.getBase(projection.getOrigin()).getNode();
+			boolean fusedTarget = fused.containsKey(target);
+			boolean fusedSource = fused.containsKey(source);
+
+			if (fusedSource && !fusedTarget) {
+				Relay relay = relays.get(source);
+				if (relay == null) {
+					relay = makeRelay((PassthroughNode) source, network, fused.keySet(), result);
+					relays.put(source, relay);
+				}
+				Projection replacement = new ProjectionImpl(relay.getOrigin(), projection.getTermination(), projection.getNetwork());
+				result.replace(projection, replacement, relay);
+			} else if (fusedSource || fusedTarget) {
+				result.replace(projection, null, null);
+			}
+		}
+		for (Node node : fused.keySet()) {
+			result.addFusedNode(node);
+			network.claim(node);
+		}
+
+		return result;
+	}
+
+	//the source of each termination, or null if the node can't be fused
+	private static Origin[] getInputs(PassthroughNode node, FlatNetwork network) throws SimulationException {
+		try {
+			if (network.isExposed(node.getOrigin(PassthroughNode.ORIGIN)) || network.isObserved(node)) {
+				return null;
+			}
+		} catch (StructuralException e) {
+			throw new SimulationException(e);
+		}
+
+		Termination[] terminations = node.getTerminations();
+		Origin[] result = new Origin[terminations.length];
+		for (int i = 0; i < terminations.length; i++) {
+			List<Origin> list = network.getSources(terminations[i]);
+			if (list.size() != 1) {
+				return null;
+			}
+			InstantaneousOutput values = list.get(0).getValues();
+			if ( !(values instanceof RealOutput) ) {
+				return null;
+			}
+			result[i] = list.get(0);
+		}
+		return result;
+	}
+
+	private static boolean isInCycle(Node start, Node node, Map<Node, Origin[]> candidates, Map<Node, Boolean> visited) {
+		visited.put(node, Boolean.TRUE);
+		for (Origin input : candidates.get(node)) {
+			Node source = FlatNetwork.getBase(input).getNode();
+			if (source == start) {
+				return true;
+			}
+			if (candidates.containsKey(source) && !visited.containsKey(source)
+					&& isInCycle(start, source, candidates, visited)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Relay makeRelay(PassthroughNode node, FlatNetwork network, Set<Node> fused, PassthroughFusion fusion)
+			throws SimulationException {
+		int dimension;
+		try {
+			dimension = node.getOrigin(PassthroughNode.ORIGIN).getDimensions();
+		} catch (StructuralException e) {
+			throw new SimulationException(e);
+		}
+
+		final List<Origin> origins = new ArrayList<Origin>();
+		final List<float[][]> matrices = new ArrayList<float[][]>();
+		final List<Integer> depths = new ArrayList<Integer>();
+		final List<float[]> initial = new ArrayList<float[]>();
+		final List<String> path = new ArrayList<String>();
+		try {
+			network.fold(node, fused, new FlatNetwork.ChainVisitor() {
+				//the node's current output is what is delivered at its depth in the first step
+				public void node(PassthroughNode n, float[][] matrix, int depth) throws StructuralException {
+					path.add(n.getName());
+					InstantaneousOutput current;
+					try {
+						current = n.getOrigin(PassthroughNode.ORIGIN).getValues();
+					} catch (SimulationException e) {
+						throw new StructuralException(e);
+					}
+					if ( !(current instanceof RealOutput) ) {
+						throw new StructuralException("PassthroughNode " + n.getName() + " holds non-real output");
+					}
+					float[] values = ((RealOutput) current).getValues();
+					float[] contribution = matrix == null ? values.clone() : MU.prod(matrix, values);
+					while (initial.size() <= depth) {
+						initial.add(null);
+					}
+					initial.set(depth, initial.get(depth) == null ? contribution : MU.sum(initial.get(depth), contribution));
+				}
+
+				public void input(Origin origin, float[][] matrix, int depth) {
+					origins.add(origin);
+					matrices.add(matrix);
+					depths.add(Integer.valueOf(depth));
+				}
+
+				//fused nodes receive a projection on every termination
+				public void constant(float[] values, float[][] matrix, int depth) {
+				}
+			});
+		} catch (StructuralException e) {
+			throw new SimulationException(e);
+		}
+
+		int maxDepth = 0;
+		for (Integer depth : depths) {
+			maxDepth = Math.max(maxDepth, depth.intValue());
+		}
+		float[][] slots = new float[maxDepth + 1][];
+		for (int d = 0; d <= maxDepth; d++) {
+			slots[d] = (d < initial.size() && initial.get(d) != null) ? initial.get(d) : new float[dimension];
+		}
+
+		//merge terms that share an origin and depth
+		List<Origin> mergedOrigins = new ArrayList<Origin>();
+		List<float[][]> mergedMatrices = new ArrayList<float[][]>();
+		List<Integer> mergedDepths = new ArrayList<Integer>();
+		for (int i = 0; i < origins.size(); i++) {
+			int match = -1;
+			for (int j = 0; j < mergedOrigins.size() && match < 0; j++) {
+				if (mergedOrigins.get(j) == origins.get(i) && mergedDepths.get(j).equals(depths.get(i))) {
+					match = j;
+				}
+			}
+			if (match < 0) {
+				mergedOrigins.add(origins.get(i));
+				mergedMatrices.add(matrices.get(i));
+				mergedDepths.add(depths.get(i));
+			} else {
+				mergedMatrices.set(match, MU.sum(toMatrix(mergedMatrices.get(match), dimension),
+						toMatrix(matrices.get(i), dimension)));
+			}
+		}
+
+		int[] depthArray = new int[mergedDepths.size()];
+		InstantaneousOutput[][] histories = new InstantaneousOutput[mergedOrigins.size()][];
+		for (int i = 0; i < depthArray.length; i++) {
+			depthArray[i] = myRemoveDelay ? 0 : mergedDepths.get(i).intValue();
+			histories[i] = fusion.getHistory(mergedOrigins.get(i));
+		}
+
+		return new Relay(node, mergedOrigins.toArray(new Origin[0]), mergedMatrices.toArray(new float[0][][]),
+				depthArray, myRemoveDelay ? new float[1][dimension] : slots, histories, path);
+	}
+
+	//null stands for identity (a termination without a transform has the same dimension as its node)
+	private static float[][] toMatrix(float[][] matrix, int dimension) {
+		return matrix == null ? MU.I(dimension) : matrix;
+	}
+
+}
@@ -0,0 +1,417 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "PassthroughFusion.java". Description:
+"The result of PassthroughFuser.fuse()"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.Projection;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.BasicOrigin;
+import ca.nengo.model.impl.PassthroughNode;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.util.MU;
+import ca.nengo.util.ThreadTask;
+
+/**
+ * <p>The result of PassthroughFuser.fuse(): PassthroughNodes to leave out of a run, the
+ * Projections that replace those into and out of them, and the relay tasks that compute the
+ * composed values.</p>
+ *
+ * <p>Each relay computes its output for the next step after the Nodes have run (as a
+ * ThreadTask), so that the replacement Projections only copy a reference, like any other
+ * Projection.</p>
+ *
+ * @author agent
+ */
+public class PassthroughFusion {
+
+	private final boolean myRemoveDelay;
+	private final Map<Node, Boolean> myFusedNodes;
+	private final Map<Projection, Boolean> myReplacedProjections;
+	private final List<Projection> myProjections;
+	private final List<Relay> myRelays;
+	private final Map<Node, Origin[]> myInputs;
+	private final Map<Node, float[]> myInitialValues;
+	private final Map<Origin, InstantaneousOutput[]> myHistories;
+	private final int myHistoryLength;
+
+	/**
+	 * @param removeDelay True if relays deliver current values
+	 * @param inputs The source of each Termination of each fused node
+	 * @param historyLength Number of steps of input history to keep (more than the longest chain)
+	 */
+	PassthroughFusion(boolean removeDelay, Map<Node, Origin[]> inputs, int historyLength) throws SimulationException {
+		myRemoveDelay = removeDelay;
+		myInputs = inputs;
+		myHistoryLength = historyLength;
+		myHistories = new IdentityHashMap<Origin, InstantaneousOutput[]>();
+		myInitialValues = new IdentityHashMap<Node, float[]>();
+		for (Node node : inputs.keySet()) {
+			try {
+				InstantaneousOutput values = node.getOrigin(PassthroughNode.ORIGIN).getValues();
+				if ( !(values instanceof RealOutput) ) {
+					throw new SimulationException("PassthroughNode " + node.getName() + " holds non-real output");
+				}
+				myInitialValues.put(node, ((RealOutput) values).getValues());
+			} catch (StructuralException e) {
+				throw new SimulationException(e);
+			}
+		}
+		myFusedNodes = new IdentityHashMap<Node, Boolean>();
+		myReplacedProjections = new IdentityHashMap<Projection, Boolean>();
+		myProjections = new ArrayList<Projection>();
+		myRelays = new ArrayList<Relay>();
+	}
+
+	//recent outputs of an input origin, indexed by step modulo history length
+	InstantaneousOutput[] getHistory(Origin origin) {
+		InstantaneousOutput[] result = myHistories.get(origin);
+		if (result == null) {
+			result = new InstantaneousOutput[myHistoryLength];
+			myHistories.put(origin, result);
+		}
+		return result;
+	}
+
+	void addFusedNode(Node node) {
+		myFusedNodes.put(node, Boolean.TRUE);
+	}
+
+	void replace(Projection original, Projection replacement, Relay relay) {
+		myReplacedProjections.put(original, Boolean.TRUE);
+		if (replacement != null) {
+			myProjections.add(replacement);
+		}
+		if (relay != null && !myRelays.contains(relay)) {
+			myRelays.add(relay);
+		}
+	}
+
+	/**
+	 * @param node A node in the flattened network
+	 * @return True if the node is replaced by relays and should not be run
+	 */
+	public boolean isFused(Node node) {
+		return myFusedNodes.containsKey(node);
+	}
+
+	/**
+	 * @return Number of PassthroughNodes that are replaced by relays
+	 */
+	public int getNumFusedNodes() {
+		return myFusedNodes.size();
+	}
+
+	/**
+	 * @return Projections from relays, which replace Projections out of fused nodes
+	 */
+	public Projection[] getProjections() {
+		return myProjections.toArray(new Projection[0]);
+	}
+
+	/**
+	 * @return Tasks that update the relays, to be run after Nodes in each step
+	 */
+	public ThreadTask[] getTasks() {
+		return myRelays.toArray(new ThreadTask[0]);
+	}
+
+	/**
+	 * Removes fused Nodes and their Projections from the given lists, and adds the replacement
+	 * Projections and relay tasks.
+	 *
+	 * @param nodes Nodes of the flattened network
+	 * @param projections Projections of the flattened network
+	 * @param tasks Tasks of the flattened network
+	 */
+	public void apply(List<Node> nodes, List<Projection> projections, List<ThreadTask> tasks) {
+		for (int i = nodes.size() - 1; i >= 0; i--) {
+			if (isFused(nodes.get(i))) {
+				nodes.remove(i);
+			}
+		}
+		for (int i = projections.size() - 1; i >= 0; i--) {
+			if (myReplacedProjections.containsKey(projections.get(i))) {
+				projections.remove(i);
+			}
+		}
+		projections.addAll(myProjections);
+		tasks.addAll(myRelays);
+	}
+
+	/**
+	 * Sets the output of each fused PassthroughNode to the value it would have had at this point
+	 * in the usual simulation, so that the network can run again without fusion. This is
+	 * reconstructed from the recent outputs of the relays' inputs. Fused nodes that feed
+	 * nothing keep their values from before the run.
+	 */
+	public void finish() throws SimulationException {
+		if (myRelays.isEmpty()) {
+			return;
+		}
+		int steps = myRelays.get(0).getSteps();
+		float time = myRelays.get(0).getTime();
+
+		Map<Node, float[]> values = new IdentityHashMap<Node, float[]>();
+		for (Node node : myInputs.keySet()) {
+			float[] value = getValue(node, steps);
+			if (value != null) {
+				values.put(node, value);
+			}
+		}
+		for (Node node : values.keySet()) {
+			try {
+				node.getOrigin(PassthroughNode.ORIGIN).setValues(new RealOutputImpl(values.get(node), Units.UNK, time));
+			} catch (StructuralException e) {
+				throw new SimulationException(e);
+			}
+		}
+	}
+
+	//output of a fused node at the start of the given step, or null if its inputs weren't recorded
+	private float[] getValue(Node node, int step) {
+		if (!myRemoveDelay && step == 0) {
+			return myInitialValues.get(node);
+		}
+		int inputStep = myRemoveDelay ? step : step - 1;
+
+		Termination[] terminations = node.getTerminations();
+		Origin[] inputs = myInputs.get(node);
+		float[] result = new float[myInitialValues.get(node).length];
+		for (int i = 0; i < terminations.length; i++) {
+			float[] x;
+			Node source = FlatNetwork.getBase(inputs[i]).getNode();
+			if (myInputs.containsKey(source)) {
+				x = getValue(source, inputStep);
+			} else {
+				InstantaneousOutput[] history = myHistories.get(inputs[i]);
+				InstantaneousOutput output = history == null ? null : history[inputStep % myHistoryLength];
+				x = output == null ? null : ((RealOutput) output).getValues();
+			}
+			if (x == null) {
+				return null;
+			}
+
+			float[][] transform = ((PassthroughNode.PassthroughTermination) terminations[i]).getTransform();
+			float[] transformed = transform == null ? x : MU.prod(transform, x);
+			for (int j = 0; j < result.length; j++) {
+				result[j] += transformed[j];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return Description of what was fused
+	 */
+	public String getReport() {
+		StringBuffer result = new StringBuffer();
+		result.append("Fused ").append(myFusedNodes.size()).append(" passthrough nodes into ")
+			.append(myRelays.size()).append(" relays feeding ").append(myProjections.size()).append(" projections ")
+			.append(myRemoveDelay ? "(relay delays removed)" : "(relay delays kept)");
+		for (Relay relay : myRelays) {
+			result.append("\n  ").append(relay.getDescription());
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Computes the output of a chain of fused PassthroughNodes from the Origins that feed it.
+	 * Contributions of inputs that pass through d nodes are delivered d steps later, from a
+	 * ring buffer of pending outputs.
+	 */
+	static class Relay implements ThreadTask {
+
+		private PassthroughNode myNode;
+		private Origin[] myInputs;
+		private float[][][] myMatrices; //null for identity
+		private int[] myDepths;
+		private float[][] mySlots;
+		private int myIndex;
+		private InstantaneousOutput[][] myHistories;
+		private int myStep;
+		private float myTime;
+		private BasicOrigin myOrigin;
+		private String myDescription;
+
+		/**
+		 * @param node The last PassthroughNode in the chain
+		 * @param inputs Origins that feed the chain
+		 * @param matrices Composed transform from each input to the output (null for identity)
+		 * @param depths Delay of each input in steps
+		 * @param slots Pending outputs, starting with the one delivered in the first step
+		 * @param histories Recent outputs of each input (shared with other relays)
+		 * @param path Names of the fused nodes
+		 */
+		Relay(PassthroughNode node, Origin[] inputs, float[][][] matrices, int[] depths, float[][] slots,
+				InstantaneousOutput[][] histories, List<String> path) throws SimulationException {
+			myNode = node;
+			myInputs = inputs;
+			myMatrices = matrices;
+			myDepths = depths;
+			mySlots = slots;
+			myIndex = 0;
+			myHistories = histories;
+			myStep = 0;
+
+			int dimension = slots[0].length;
+			myOrigin = new BasicOrigin(node, PassthroughNode.ORIGIN, dimension, Units.UNK);
+			float time = 0;
+			try {
+				time = node.getOrigin(PassthroughNode.ORIGIN).getValues().getTime();
+			} catch (StructuralException e) {
+				throw new SimulationException(e);
+			}
+			collect();
+			publish(time);
+
+			StringBuffer description = new StringBuffer();
+			for (int i = 0; i < inputs.length; i++) {
+				description.append(i == 0 ? "" : " + ").append(inputs[i].getNode().getName()).append(':')
+					.append(inputs[i].getName()).append(myDepths[i] > 0 ? " (delay " + myDepths[i] + ")" : "");
+			}
+			description.append(" -> ").append(path);
+			myDescription = description.toString();
+		}
+
+		/**
+		 * @return Origin from which fused Terminations read the relay's output
+		 */
+		public Origin getOrigin() {
+			return myOrigin;
+		}
+
+		/**
+		 * @return Inputs and fused nodes of this relay
+		 */
+		public String getDescription() {
+			return myDescription;
+		}
+
+		//adds the contribution of current input values to the slots in which they are delivered
+		private void collect() throws SimulationException {
+			for (int i = 0; i < myInputs.length; i++) {
+				InstantaneousOutput output = myInputs[i].getValues();
+				if ( !(output instanceof RealOutput) ) {
+					throw new SimulationException("Fused passthrough " + myNode.getName()
+							+ " received non-real input from " + myInputs[i].getName());
+				}
+				InstantaneousOutput[] history = myHistories[i];
+				history[myStep % history.length] = output;
+				float[] x = ((RealOutput) output).getValues();
+				float[] slot = mySlots[(myIndex + myDepths[i]) % mySlots.length];
+				float[][] matrix = myMatrices[i];
+				if (matrix == null) {
+					for (int r = 0; r < slot.length; r++) {
+						slot[r] += x[r];
+					}
+				} else {
+					for (int r = 0; r < slot.length; r++) {
+						float[] row = matrix[r];
+						float sum = 0;
+						for (int c = 0; c < row.length; c++) {
+							sum += row[c] * x[c];
+						}
+						slot[r] += sum;
+					}
+				}
+			}
+		}
+
+		private void publish(float time) {
+			myTime = time;
+			myOrigin.setValues(new RealOutputImpl(mySlots[myIndex].clone(), Units.UNK, time));
+		}
+
+		/**
+		 * @return Number of steps run
+		 */
+		int getSteps() {
+			return myStep;
+		}
+
+		/**
+		 * @return Time of the current output
+		 */
+		float getTime() {
+			return myTime;
+		}
+
+		/**
+		 * Advances to the next step's output, which includes the contribution of the inputs'
+		 * new values.
+		 *
+		 * @see ca.nengo.util.ThreadTask#run(float, float)
+		 */
+		public void run(float startTime, float endTime) throws SimulationException {
+			float[] delivered = mySlots[myIndex];
+			for (int r = 0; r < delivered.length; r++) {
+				delivered[r] = 0;
+			}
+			myIndex = (myIndex + 1) % mySlots.length;
+			myStep++;
+			collect();
+			publish(endTime);
+		}
+
+		/**
+		 * @see ca.nengo.util.ThreadTask#isFinished()
+		 */
+		public boolean isFinished() {
+			return false;
+		}
+
+		/**
+		 * @see ca.nengo.model.Resettable#reset(boolean)
+		 */
+		public void reset(boolean randomize) {
+			for (float[] slot : mySlots) {
+				for (int r = 0; r < slot.length; r++) {
+					slot[r] = 0;
+				}
+			}
+		}
+
+		@Override
+		public Relay clone() throws CloneNotSupportedException {
+			Relay result = (Relay) super.clone();
+			result.mySlots = new float[mySlots.length][];
+			for (int i = 0; i < mySlots.length; i++) {
+				result.mySlots[i] = mySlots[i].clone();
+			}
+			return result;
+		}
+	}
+}
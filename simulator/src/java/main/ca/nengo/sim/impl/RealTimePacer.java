@@ -0,0 +1,350 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "RealTimePacer.java". Description:
+"Holds a running simulation to a fixed ratio of simulation time to wall-clock time, eg for controlling physical hardware"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.nengo.model.Node;
+import ca.nengo.model.SimulationMode;
+
+/**
+ * <p>Holds a running simulation to a fixed ratio of simulation time to wall-clock time,
+ * eg for controlling physical hardware.</p>
+ *
+ * <p>Deadlines are computed from a fixed anchor (the wall time at which the run started)
+ * rather than by accumulating per-step delays, so timing errors do not accumulate. The
+ * pacer sleeps until shortly before each deadline and then spins for the remainder,
+ * which is much more precise than Thread.sleep() alone.</p>
+ *
+ * <p>When the simulation falls behind, the step is counted as an overrun. If it falls
+ * more than the maximum lag behind, the anchor is moved so that the simulation does not
+ * try to catch up by running flat out. Optionally, designated Nodes can be switched to a
+ * cheaper SimulationMode (eg RATE or DIRECT) after a number of consecutive overruns, and
+ * switched back once there is enough slack again.</p>
+ *
+ * <p>Wall time is read from a Clock, which is the system clock unless another one is given
+ * (eg a simulated clock, so that pacing can be tested without waiting).</p>
+ *
+ * @author agent
+ */
+public class RealTimePacer {
+
+	private static final long DEFAULT_SPIN_NANOS = 2000000L;
+	private static final long DEFAULT_MAX_LAG_NANOS = 100000000L;
+	private static final int DEFAULT_DEGRADE_AFTER = 10;
+	private static final int DEFAULT_RESTORE_AFTER = 1000;
+
+	private final Clock myClock;
+	private float myRatio;
+	private long mySpinNanos;
+	private long myMaxLagNanos;
+	private int myDegradeAfter;
+	private int myRestoreAfter;
+
+	private long myAnchorWallTime;
+	private double myAnchorSimTime;
+	private double myLastSimTime;
+
+	private long myNumSteps;
+	private long myNumOverruns;
+	private long myMaxLateness;
+	private long myTotalLateness;
+	private int myConsecutiveOverruns;
+	private int myConsecutiveOnTime;
+
+	private final List<Node> myDegradableNodes;
+	private final List<SimulationMode> myDegradedModes;
+	private SimulationMode[] myRestoreModes;
+
+	/**
+	 * @param ratio Simulation seconds per wall-clock second (1 for real time)
+	 */
+	public RealTimePacer(float ratio) {
+		this(ratio, new SystemClock());
+	}
+
+	/**
+	 * @param ratio Simulation seconds per wall-clock second (1 for real time)
+	 * @param clock Source of wall time
+	 */
+	public RealTimePacer(float ratio, Clock clock) {
+		myClock = clock;
+		setRatio(ratio);
+		mySpinNanos = DEFAULT_SPIN_NANOS;
+		myMaxLagNanos = DEFAULT_MAX_LAG_NANOS;
+		myDegradeAfter = DEFAULT_DEGRADE_AFTER;
+		myRestoreAfter = DEFAULT_RESTORE_AFTER;
+		myDegradableNodes = new ArrayList<Node>(5);
+		myDegradedModes = new ArrayList<SimulationMode>(5);
+		start(0);
+	}
+
+	/**
+	 * @return Simulation seconds per wall-clock second
+	 */
+	public float getRatio() {
+		return myRatio;
+	}
+
+	/**
+	 * @param ratio Simulation seconds per wall-clock second (1 for real time). Takes effect
+	 * 		from the current point in the run.
+	 */
+	public void setRatio(float ratio) {
+		if (ratio <= 0) {
+			throw new IllegalArgumentException("Ratio must be positive");
+		}
+		myRatio = ratio;
+		anchor(myLastSimTime);
+	}
+
+	/**
+	 * @return Time before each deadline (ns) during which the pacer spins rather than sleeps
+	 */
+	public long getSpinNanos() {
+		return mySpinNanos;
+	}
+
+	/**
+	 * @param nanos Time before each deadline (ns) during which the pacer spins rather than
+	 * 		sleeps. Larger values are more precise but burn more CPU.
+	 */
+	public void setSpinNanos(long nanos) {
+		mySpinNanos = nanos;
+	}
+
+	/**
+	 * @return Lateness (ns) beyond which the pacer gives up trying to catch up
+	 */
+	public long getMaxLagNanos() {
+		return myMaxLagNanos;
+	}
+
+	/**
+	 * @param nanos Lateness (ns) beyond which the pacer gives up trying to catch up, and
+	 * 		instead re-anchors the schedule at the current time
+	 */
+	public void setMaxLagNanos(long nanos) {
+		myMaxLagNanos = nanos;
+	}
+
+	/**
+	 * @param overruns Number of consecutive overruns after which degradable Nodes are
+	 * 		switched to their degraded modes
+	 * @param onTimeSteps Number of consecutive on-time steps after which they are switched back
+	 */
+	public void setDegradationThresholds(int overruns, int onTimeSteps) {
+		myDegradeAfter = overruns;
+		myRestoreAfter = onTimeSteps;
+	}
+
+	/**
+	 * @param node A Node whose mode can be changed when the simulation falls behind
+	 * @param degradedMode The mode to use while behind (eg SimulationMode.RATE)
+	 */
+	public void addDegradableNode(Node node, SimulationMode degradedMode) {
+		myDegradableNodes.add(node);
+		myDegradedModes.add(degradedMode);
+	}
+
+	/**
+	 * @param node A Node previously added with addDegradableNode()
+	 */
+	public void removeDegradableNode(Node node) {
+		restore();
+		int index = myDegradableNodes.indexOf(node);
+		if (index >= 0) {
+			myDegradableNodes.remove(index);
+			myDegradedModes.remove(index);
+		}
+	}
+
+	/**
+	 * @return True if degradable Nodes are currently in their degraded modes
+	 */
+	public boolean isDegraded() {
+		return myRestoreModes != null;
+	}
+
+	/**
+	 * @return Number of steps paced since start()
+	 */
+	public long getNumSteps() {
+		return myNumSteps;
+	}
+
+	/**
+	 * @return Number of steps since start() that finished after their deadlines
+	 */
+	public long getNumOverruns() {
+		return myNumOverruns;
+	}
+
+	/**
+	 * @return Largest lateness (ns) of any step since start()
+	 */
+	public long getMaxLatenessNanos() {
+		return myMaxLateness;
+	}
+
+	/**
+	 * @return Mean lateness (ns) of overrun steps since start()
+	 */
+	public double getMeanLatenessNanos() {
+		return myNumOverruns == 0 ? 0 : (double) myTotalLateness / (double) myNumOverruns;
+	}
+
+	/**
+	 * Anchors the schedule at the current wall time and clears the overrun counters.
+	 * Call at the start of a run, or after the simulation has been paused.
+	 *
+	 * @param simTime Simulation time at which the run (re)starts
+	 */
+	public void start(double simTime) {
+		myLastSimTime = simTime;
+		anchor(simTime);
+		myNumSteps = 0;
+		myNumOverruns = 0;
+		myMaxLateness = 0;
+		myTotalLateness = 0;
+		myConsecutiveOverruns = 0;
+		myConsecutiveOnTime = 0;
+	}
+
+	/**
+	 * Waits until the wall-clock deadline corresponding to the given simulation time.
+	 * To be called after each step, with the simulation time at the end of the step.
+	 *
+	 * @param simTime Simulation time that has been reached
+	 */
+	public void pace(double simTime) {
+		myNumSteps++;
+		myLastSimTime = simTime;
+		long deadline = myAnchorWallTime + (long) ((simTime - myAnchorSimTime) / myRatio * 1e9);
+		long now = myClock.nanoTime();
+
+		if (now > deadline) {
+			long lateness = now - deadline;
+			myNumOverruns++;
+			myTotalLateness += lateness;
+			myMaxLateness = Math.max(myMaxLateness, lateness);
+			myConsecutiveOnTime = 0;
+			myConsecutiveOverruns++;
+
+			if (lateness > myMaxLagNanos) {
+				anchor(simTime);
+			}
+			if (myConsecutiveOverruns >= myDegradeAfter && !isDegraded() && !myDegradableNodes.isEmpty()) {
+				degrade();
+			}
+		} else {
+			myConsecutiveOverruns = 0;
+			myConsecutiveOnTime++;
+			if (myConsecutiveOnTime >= myRestoreAfter && isDegraded()) {
+				restore();
+			}
+			myClock.waitUntil(deadline, mySpinNanos);
+		}
+	}
+
+	/**
+	 * Switches degradable Nodes back to the modes they had before degradation, if
+	 * they are currently degraded.
+	 */
+	public void restore() {
+		if (myRestoreModes != null) {
+			for (int i = 0; i < myRestoreModes.length; i++) {
+				myDegradableNodes.get(i).setMode(myRestoreModes[i]);
+			}
+			myRestoreModes = null;
+		}
+	}
+
+	private void degrade() {
+		myRestoreModes = new SimulationMode[myDegradableNodes.size()];
+		for (int i = 0; i < myRestoreModes.length; i++) {
+			Node node = myDegradableNodes.get(i);
+			myRestoreModes[i] = node.getMode();
+			node.setMode(myDegradedModes.get(i));
+		}
+	}
+
+	private void anchor(double simTime) {
+		myAnchorWallTime = myClock.nanoTime();
+		myAnchorSimTime = simTime;
+	}
+
+	/**
+	 * A source of wall time.
+	 */
+	public static interface Clock {
+
+		/**
+		 * @return Current wall time (ns), from an arbitrary origin
+		 */
+		public long nanoTime();
+
+		/**
+		 * Waits until a given wall time.
+		 *
+		 * @param deadline Wall time (ns) to wait for
+		 * @param spinNanos Time before the deadline (ns) during which to spin rather than sleep
+		 */
+		public void waitUntil(long deadline, long spinNanos);
+	}
+
+	/**
+	 * System.nanoTime(), with a sleep followed by a spin for waiting.
+	 */
+	public static class SystemClock implements Clock {
+
+		/**
+		 * @see ca.nengo.sim.impl.RealTimePacer.Clock#nanoTime()
+		 */
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+
+		/**
+		 * @see ca.nengo.sim.impl.RealTimePacer.Clock#waitUntil(long, long)
+		 */
+		public void waitUntil(long deadline, long spinNanos) {
+			long sleepNanos = deadline - System.nanoTime() - spinNanos;
+			if (sleepNanos > 0) {
+				try {
+					Thread.sleep(sleepNanos / 1000000L, (int) (sleepNanos % 1000000L));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+
+			while (System.nanoTime() < deadline) {
+				Thread.yield();
+			}
+		}
+	}
+}
@@ -0,0 +1,392 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "StateWalker.java". Description:
+"Captures and restores the SimulationState of a Network"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.sim.impl;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EventListener;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ca.nengo.math.PDFTools;
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Projection;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.StepListener;
+import ca.nengo.model.nef.impl.NEFUtil;
+import ca.nengo.sim.SimulationState;
+import ca.nengo.sim.Simulator;
+import ca.nengo.sim.SimulatorListener;
+import ca.nengo.util.Probe;
+import ca.nengo.util.VisiblyMutable;
+import ca.nengo.util.impl.NodeThreadPool;
+
+/**
+ * <p>Captures and restores the SimulationState of a Network. The Network's object graph is
+ * walked in a fixed order (fields by name, superclass fields first, String-keyed maps by key),
+ * and every non-transient primitive field and primitive array found in ca.nengo model objects
+ * is copied. This covers neuron and synapse states, Termination dynamics, outputs, and learned
+ * transforms, without each class having to save itself. Fields marked transient are treated as
+ * caches that can be rebuilt, as they are by serialization. Model data that a simulation
+ * doesn't change (encoders, evaluation points, decoders, decoded Termination transforms, and
+ * the approximators that decoders are found with; see NEFUtil.collectModelData()) is left out.</p>
+ *
+ * <p>Simulators, Probes, and listeners (other than Nodes) aren't walked, so recorded data and UI state are left
+ * alone. Sets and maps with keys other than Strings aren't walked either, because their order
+ * isn't reproducible.</p>
+ *
+ * <p>Restored arrays are new copies, put in place of the Network's arrays rather than written
+ * into them, because the old arrays may also be held by recorded data (eg a Probe holds the
+ * outputs that it has recorded). A shared array is saved once for each reference to it, because
+ * whether arrays are shared, eg empty ones, can differ between otherwise identical Networks.
+ * References that shared an array get the same copy if their saved values are the same. Objects
+ * that are SimulationState.Caches are invalidated after a restore.</p>
+ *
+ * @author agent
+ */
+public class StateWalker {
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private static final Map<Class<?>, Field[]> ourFields = new HashMap<Class<?>, Field[]>();
+
+	private final List<Slot> mySlots;
+	private final Map<Object, Object> myVisited;
+	private final List<SimulationState.Cache> myCaches;
+	private long myFingerprint;
+
+	private StateWalker(Network network) throws SimulationException {
+		deliverInputs(network);
+		mySlots = new ArrayList<Slot>(1000);
+		myVisited = new IdentityHashMap<Object, Object>();
+		NEFUtil.collectModelData(network, myVisited);
+		myCaches = new ArrayList<SimulationState.Cache>();
+		myFingerprint = FNV_OFFSET;
+		try {
+			visit(network);
+		} catch (IllegalAccessException e) {
+			throw new SimulationException("Can't read simulation state", e);
+		}
+		mix(String.valueOf(mySlots.size()));
+	}
+
+	/**
+	 * @param network A Network (which should not be running)
+	 * @param time Current simulation time
+	 * @return A copy of the Network's dynamic state
+	 * @throws SimulationException If the state can't be read
+	 */
+	public static SimulationState capture(Network network, float time) throws SimulationException {
+		StateWalker walker = new StateWalker(network);
+		Object[] values = new Object[walker.mySlots.size()];
+		try {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = walker.mySlots.get(i).get();
+			}
+		} catch (IllegalAccessException e) {
+			throw new SimulationException("Can't read simulation state", e);
+		}
+		return new SimulationState(time, walker.myFingerprint, PDFTools.getSharedRandom().getState(), values);
+	}
+
+	/**
+	 * @param network A Network with the same structure as the one from which the state was
+	 * 		taken (eg built by the same script)
+	 * @param state A state returned by capture()
+	 * @throws SimulationException If the Network's structure doesn't match the state
+	 */
+	public static void restore(Network network, SimulationState state) throws SimulationException {
+		restore(network, state, true);
+	}
+
+	/**
+	 * @param network A Network with the same structure as the one from which the state was taken
+	 * @param state A state returned by capture()
+	 * @param random True if the shared random number generator should also be restored
+	 * @throws SimulationException If the Network's structure doesn't match the state
+	 */
+	static void restore(Network network, SimulationState state, boolean random) throws SimulationException {
+		StateWalker walker = new StateWalker(network);
+		Object[] values = state.getValues();
+		if (walker.myFingerprint != state.getFingerprint() || walker.mySlots.size() != values.length) {
+			throw new SimulationException("Network structure doesn't match the saved state (expected "
+					+ values.length + " state values, found " + walker.mySlots.size() + ")");
+		}
+		//arrays that have been replaced, with the saved value and the copy that replaced them
+		Map<Object, Object[]> replaced = new IdentityHashMap<Object, Object[]>();
+		try {
+			for (int i = 0; i < values.length; i++) {
+				Slot slot = walker.mySlots.get(i);
+				Object current = slot.current();
+				Object[] replacement = (current == null) ? null : replaced.get(current);
+				if (replacement != null && sameValues(replacement[0], values[i])) {
+					slot.set(replacement[1]);
+				} else {
+					Object value = copy(values[i]);
+					if (current != null && current.getClass().isArray()) {
+						replaced.put(current, new Object[]{values[i], value});
+					}
+					slot.set(value);
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new SimulationException("Can't write simulation state", e);
+		} catch (IllegalArgumentException e) {
+			throw new SimulationException("Can't write simulation state", e);
+		}
+		for (SimulationState.Cache cache : walker.myCaches) {
+			cache.invalidate();
+		}
+		if (random) {
+			PDFTools.getSharedRandom().setState(state.getRandomState());
+		}
+	}
+
+	/**
+	 * @param network A Network
+	 * @return Summary of the Network's structure, as stored in its SimulationStates
+	 * @throws SimulationException If the Network can't be walked
+	 */
+	public static long getFingerprint(Network network) throws SimulationException {
+		return new StateWalker(network).myFingerprint;
+	}
+
+	/*
+	 * Passes origin values to terminations, as at the start of a step. These are overwritten
+	 * at the start of the next step anyway, and it gives networks that haven't run yet the same
+	 * structure as networks that have.
+	 */
+	private static void deliverInputs(Network network) throws SimulationException {
+		List<Projection> projections = NodeThreadPool.collectProjections(network.getNodes(), network.getProjections());
+		for (Projection projection : projections) {
+			InstantaneousOutput values = projection.getOrigin().getValues();
+			if (values != null) {
+				projection.getTermination().setValues(values);
+			}
+		}
+	}
+
+	private void visit(Object o) throws IllegalAccessException {
+		if (o == null || isSkipped(o) || myVisited.containsKey(o)) {
+			return;
+		}
+		myVisited.put(o, o);
+
+		if (o instanceof Object[]) {
+			Object[] array = (Object[]) o;
+			mix("[" + array.length);
+			Class<?> component = array.getClass().getComponentType();
+			if (component.isArray() && component.getComponentType().isPrimitive()) {
+				for (int i = 0; i < array.length; i++) {
+					mySlots.add(new ElementSlot(array, i));
+				}
+			} else {
+				for (Object element : array) {
+					visit(element);
+				}
+			}
+		} else if (o instanceof List<?>) {
+			for (Object element : (List<?>) o) {
+				visit(element);
+			}
+		} else if (o instanceof Map<?, ?>) {
+			Map<?, ?> map = (Map<?, ?>) o;
+			TreeMap<String, Object> sorted = new TreeMap<String, Object>();
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				if ( !(entry.getKey() instanceof String) ) {
+					return;
+				}
+				sorted.put((String) entry.getKey(), entry.getValue());
+			}
+			for (Object value : sorted.values()) {
+				visit(value);
+			}
+		} else if (o.getClass().getName().startsWith("ca.nengo.")) {
+			mix(o.getClass().getName());
+			if (o instanceof SimulationState.Cache) {
+				myCaches.add((SimulationState.Cache) o);
+			}
+			for (Field field : getFields(o.getClass())) {
+				Class<?> type = field.getType();
+				if (type.isPrimitive()) {
+					if (!Modifier.isFinal(field.getModifiers())) {
+						mySlots.add(new FieldSlot(o, field));
+					}
+				} else if (type.isArray() && type.getComponentType().isPrimitive()) {
+					if (!myVisited.containsKey(field.get(o))) {
+						mySlots.add(new FieldSlot(o, field));
+					}
+				} else {
+					visit(field.get(o));
+				}
+			}
+		}
+	}
+
+	private static boolean isSkipped(Object o) {
+		if (o instanceof Simulator || o instanceof Probe || o instanceof Enum<?>) {
+			return true;
+		}
+		if ( !(o instanceof Node) && (o instanceof VisiblyMutable.Listener || o instanceof SimulatorListener
+				|| o instanceof StepListener || o instanceof EventListener) ) {
+			return true;
+		}
+		if (o instanceof Object[] || o instanceof List<?> || o instanceof Map<?, ?>) {
+			return false;
+		}
+		String name = o.getClass().getName();
+		return !name.startsWith("ca.nengo.") || name.startsWith("ca.nengo.ui.");
+	}
+
+	private void mix(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			myFingerprint ^= s.charAt(i);
+			myFingerprint *= FNV_PRIME;
+		}
+	}
+
+	//non-static, non-transient fields of ca.nengo classes, superclass fields first and sorted by name
+	private static Field[] getFields(Class<?> c) {
+		synchronized (ourFields) {
+			Field[] result = ourFields.get(c);
+			if (result == null) {
+				List<Field> fields = new ArrayList<Field>();
+				if (c.getSuperclass() != null && c.getSuperclass().getName().startsWith("ca.nengo.")) {
+					fields.addAll(Arrays.asList(getFields(c.getSuperclass())));
+				}
+				Field[] declared = c.getDeclaredFields();
+				Arrays.sort(declared, new Comparator<Field>() {
+					public int compare(Field a, Field b) {
+						return a.getName().compareTo(b.getName());
+					}
+				});
+				for (Field field : declared) {
+					int modifiers = field.getModifiers();
+					if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+						field.setAccessible(true);
+						fields.add(field);
+					}
+				}
+				result = fields.toArray(new Field[0]);
+				ourFields.put(c, result);
+			}
+			return result;
+		}
+	}
+
+	private static Object copy(Object value) {
+		if (value == null || !value.getClass().isArray()) {
+			return value;
+		}
+		int length = Array.getLength(value);
+		Object result = Array.newInstance(value.getClass().getComponentType(), length);
+		System.arraycopy(value, 0, result, 0, length);
+		return result;
+	}
+
+	//true if two saved values are equal (arrays element by element)
+	private static boolean sameValues(Object a, Object b) {
+		if (a == null || b == null || a.getClass() != b.getClass()) {
+			return a == b;
+		} else if (!a.getClass().isArray()) {
+			return a.equals(b);
+		}
+		int length = Array.getLength(a);
+		if (Array.getLength(b) != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (!Array.get(a, i).equals(Array.get(b, i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A place where a state value is kept.
+	 */
+	private static interface Slot {
+		public Object current() throws IllegalAccessException;
+		public Object get() throws IllegalAccessException;
+		public void set(Object value) throws IllegalAccessException;
+	}
+
+	private static class FieldSlot implements Slot {
+
+		private final Object myOwner;
+		private final Field myField;
+
+		public FieldSlot(Object owner, Field field) {
+			myOwner = owner;
+			myField = field;
+		}
+
+		public Object current() throws IllegalAccessException {
+			return myField.get(myOwner);
+		}
+
+		public Object get() throws IllegalAccessException {
+			return copy(myField.get(myOwner));
+		}
+
+		public void set(Object value) throws IllegalAccessException {
+			myField.set(myOwner, value);
+		}
+	}
+
+	private static class ElementSlot implements Slot {
+
+		private final Object[] myArray;
+		private final int myIndex;
+
+		public ElementSlot(Object[] array, int index) {
+			myArray = array;
+			myIndex = index;
+		}
+
+		public Object current() {
+			return myArray[myIndex];
+		}
+
+		public Object get() {
+			return copy(myArray[myIndex]);
+		}
+
+		public void set(Object value) {
+			myArray[myIndex] = value;
+		}
+	}
+}
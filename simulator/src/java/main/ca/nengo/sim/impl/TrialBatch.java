@@ -0,0 +1,653 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "TrialBatch.java". Description:
+"Runs a Network on many different inputs at once"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.nengo.dynamics.Integrator;
+import ca.nengo.dynamics.LinearSystem;
+import ca.nengo.dynamics.impl.EulerIntegrator;
+import ca.nengo.dynamics.impl.LTISystem;
+import ca.nengo.math.Function;
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkArrayImpl;
+import ca.nengo.model.nef.impl.BiasTermination;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.DecodedTermination;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.impl.LIFRateEngine;
+import ca.nengo.sim.impl.DirectModeProgram.Discretization;
+import ca.nengo.util.MU;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.TimeSeriesImpl;
+
+/**
+ * <p>Runs a Network on many different inputs at once. Each FunctionInput can be given
+ * different functions for each trial in the batch, and the trials advance together, one step
+ * at a time. Every signal in the Network (the output of each Origin, the state of each
+ * Termination's dynamics, each ensemble's state, currents, and rates) is held as a matrix with
+ * one column per trial, so the encoders, decoders, and transforms are each read once per step
+ * for the whole batch, and the products with them are matrix-matrix rather than matrix-vector
+ * products.</p>
+ *
+ * <p>Neurons that spike carry their own state from step to step, so only NEFEnsembles of LIF
+ * neurons in RATE or CONSTANT_RATE mode can be batched (see isBatchable()), along with
+ * FunctionInputs, subnetworks, and NetworkArrays of such ensembles. Results match separate
+ * runs of the Network (to within rounding error) when each FunctionInput starts with its
+ * trial's functions.</p>
+ *
+ * <p>The Network itself is only read. Its current state (Origin outputs and Termination
+ * states) is the starting state of every trial.</p>
+ *
+ * @author agent
+ */
+public class TrialBatch {
+
+	private final Network myNetwork;
+	private final int myBatchSize;
+	private final Map<FunctionInput, Function[][]> myInputs;
+	private final List<Origin> myProbes;
+
+	/**
+	 * @param network The Network to run
+	 * @param batchSize Number of trials that run together
+	 */
+	public TrialBatch(Network network, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		myNetwork = network;
+		myBatchSize = batchSize;
+		myInputs = new IdentityHashMap<FunctionInput, Function[][]>();
+		myProbes = new ArrayList<Origin>(5);
+	}
+
+	/**
+	 * @return Number of trials that run together
+	 */
+	public int getBatchSize() {
+		return myBatchSize;
+	}
+
+	/**
+	 * @param input A FunctionInput in the Network
+	 * @param functions Functions of time for each trial (functions[i] has a function for each
+	 * 		dimension of the input in trial i)
+	 * @throws StructuralException If there isn't a function for each trial and dimension, or
+	 * 		a function isn't a function of time
+	 */
+	public void setInputs(FunctionInput input, Function[][] functions) throws StructuralException {
+		int dimension = input.getOrigin(FunctionInput.ORIGIN_NAME).getDimensions();
+		if (functions.length != myBatchSize) {
+			throw new StructuralException("Need functions for " + myBatchSize + " trials, got " + functions.length);
+		}
+		for (Function[] trial : functions) {
+			if (trial.length != dimension) {
+				throw new StructuralException("Need " + dimension + " functions for each trial");
+			}
+			for (Function function : trial) {
+				if (function.getDimension() != 1) {
+					throw new StructuralException("Input functions must be 1-D functions of time");
+				}
+			}
+		}
+		myInputs.put(input, functions);
+	}
+
+	/**
+	 * Records the output of an Origin in each trial.
+	 *
+	 * @param origin A DecodedOrigin or FunctionInput Origin in the Network (or an Origin that
+	 * 		exposes one)
+	 */
+	public void addProbe(Origin origin) {
+		myProbes.add(origin);
+	}
+
+	/**
+	 * @param ensemble An NEFEnsemble
+	 * @return True if the ensemble can be run in a batch in its current configuration
+	 */
+	public static boolean isBatchable(NEFEnsembleImpl ensemble) {
+		SimulationMode mode = ensemble.getMode();
+		if (mode != SimulationMode.RATE && mode != SimulationMode.CONSTANT_RATE) {
+			return false;
+		}
+		if (LIFRateEngine.create(ensemble.getNodes(), false) == null) {
+			return false;
+		}
+
+		for (Origin origin : ensemble.getOrigins()) {
+			if (origin instanceof DecodedOrigin) {
+				DecodedOrigin o = (DecodedOrigin) origin;
+				if (o.getMode() == SimulationMode.DIRECT || o.getMode() == SimulationMode.EXPRESS
+						|| o.getNoise() != null || o.getSTPDynamics() != null
+						|| !Neuron.AXON.equals(o.getNodeOrigin())) {
+					return false;
+				}
+			}
+		}
+
+		for (DecodedTermination t : ensemble.getDecodedTerminations()) {
+			if (!t.getModulatory() && (t instanceof BiasTermination || t.getScaling() != null
+					|| t.getNeuronWeights() != null || !(t.getIntegrator() instanceof EulerIntegrator)
+					|| !(t.getDimensionDynamics()[0] instanceof LTISystem))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Runs every trial from startTime to endTime.
+	 *
+	 * @param startTime Simulation time at which the trials start
+	 * @param endTime Simulation time at which the trials end
+	 * @param stepSize Simulation step size
+	 * @return Recorded outputs, indexed by trial then by probe (in the order probes were added)
+	 * @throws SimulationException If the Network can't be run in a batch
+	 */
+	public TimeSeries[][] run(float startTime, float endTime, float stepSize) throws SimulationException {
+		Program program;
+		try {
+			program = compile(startTime);
+		} catch (StructuralException e) {
+			throw new SimulationException(e);
+		}
+
+		Signal[] probed = new Signal[myProbes.size()];
+		List<float[]> times = new ArrayList<float[]>(1);
+		List<List<float[]>> data = new ArrayList<List<float[]>>(probed.length * myBatchSize);
+		for (int p = 0; p < probed.length; p++) {
+			probed[p] = program.getSignal(myProbes.get(p));
+			for (int b = 0; b < myBatchSize; b++) {
+				data.add(new ArrayList<float[]>(1000));
+			}
+		}
+
+		//same stepping as LocalSimulator
+		double time = startTime;
+		double thisStepSize = Math.round(stepSize*1000000)/1000000.0;
+		if (thisStepSize < 0.000001) {
+			thisStepSize = 0.000001;
+		}
+		List<Float> stepTimes = new ArrayList<Float>(1000);
+		while (time < endTime) {
+			if (time + 1.5*thisStepSize > endTime) {
+				thisStepSize = endTime - time;
+			}
+			program.step((float) time, (float) (time+thisStepSize));
+			time += thisStepSize;
+			stepTimes.add(Float.valueOf((float) time));
+
+			for (int p = 0; p < probed.length; p++) {
+				float[][] values = probed[p].myValues;
+				for (int b = 0; b < myBatchSize; b++) {
+					float[] sample = new float[values.length];
+					for (int d = 0; d < sample.length; d++) {
+						sample[d] = values[d][b];
+					}
+					data.get(p * myBatchSize + b).add(sample);
+				}
+			}
+		}
+		times.add(new float[stepTimes.size()]);
+		for (int i = 0; i < stepTimes.size(); i++) {
+			times.get(0)[i] = stepTimes.get(i).floatValue();
+		}
+
+		TimeSeries[][] result = new TimeSeries[myBatchSize][probed.length];
+		for (int b = 0; b < myBatchSize; b++) {
+			for (int p = 0; p < probed.length; p++) {
+				float[][] values = data.get(p * myBatchSize + b).toArray(new float[0][]);
+				Origin origin = myProbes.get(p);
+				TimeSeriesImpl series = new TimeSeriesImpl(times.get(0), values, Units.uniform(Units.UNK, origin.getDimensions()));
+				series.setName(origin.getNode().getName() + ":" + origin.getName());
+				result[b][p] = series;
+			}
+		}
+		return result;
+	}
+
+	private Program compile(float startTime) throws StructuralException {
+		FlatNetwork network = new FlatNetwork(myNetwork);
+		Program program = new Program();
+		List<NEFEnsembleImpl> ensembles = new ArrayList<NEFEnsembleImpl>();
+		for (Node node : network.getNodes()) {
+			if (node instanceof NEFEnsembleImpl) {
+				NEFEnsembleImpl ensemble = (NEFEnsembleImpl) node;
+				if (!isBatchable(ensemble)) {
+					throw new StructuralException("Ensemble " + node.getName() + " can't be run in a batch "
+							+ "(only LIF neurons in rate modes, without noise or short-term plasticity, are supported)");
+				}
+				ensembles.add(ensemble);
+				for (Origin origin : ensemble.getOrigins()) {
+					if (origin instanceof DecodedOrigin) {
+						program.mySignals.put(origin, new Signal(getValues(origin), myBatchSize));
+					}
+				}
+			} else if (node instanceof FunctionInput) {
+				FunctionInput input = (FunctionInput) node;
+				Origin origin = input.getOrigin(FunctionInput.ORIGIN_NAME);
+				Signal signal = new Signal(getValues(origin), myBatchSize);
+				program.mySignals.put(origin, signal);
+				Function[][] functions = myInputs.get(input);
+				if (functions != null) {
+					InputUnit unit = new InputUnit(functions, signal);
+					unit.run(startTime, signal.myValues);
+					program.myInputs.add(unit);
+				}
+			} else {
+				throw new StructuralException("Node " + node.getName() + " can't be run in a batch "
+						+ "(only FunctionInputs and NEFEnsembles are supported)");
+			}
+		}
+
+		for (NEFEnsembleImpl ensemble : ensembles) {
+			List<FilterUnit> filters = new ArrayList<FilterUnit>();
+			for (DecodedTermination t : ensemble.getDecodedTerminations()) {
+				if (!t.getModulatory()) {
+					Origin source = network.getSource(t);
+					filters.add(new FilterUnit(t, source == null ? null : program.resolve(source), myBatchSize));
+				}
+			}
+
+			List<OriginUnit> origins = new ArrayList<OriginUnit>();
+			for (Origin origin : ensemble.getOrigins()) {
+				if (origin instanceof DecodedOrigin) {
+					origins.add(new OriginUnit((DecodedOrigin) origin, program.mySignals.get(origin)));
+				}
+			}
+			program.myEnsembles.add(new EnsembleUnit(ensemble, filters.toArray(new FilterUnit[0]),
+					origins.toArray(new OriginUnit[0]), myBatchSize));
+		}
+		return program;
+	}
+
+	private static float[] getValues(Origin origin) throws StructuralException {
+		InstantaneousOutput values;
+		try {
+			values = origin.getValues();
+		} catch (SimulationException e) {
+			throw new StructuralException(e);
+		}
+		if ( !(values instanceof RealOutput) ) {
+			throw new StructuralException("Origin " + origin.getName() + " of " + origin.getNode().getName()
+					+ " does not produce real-valued output");
+		}
+		return ((RealOutput) values).getValues();
+	}
+
+	/**
+	 * out += matrix * in, where in and out have a row per dimension and a column per trial.
+	 */
+	static void multiplyAdd(float[][] matrix, float[][] in, float[][] out) {
+		for (int r = 0; r < matrix.length; r++) {
+			float[] m = matrix[r];
+			float[] o = out[r];
+			for (int c = 0; c < m.length; c++) {
+				float w = m[c];
+				if (w != 0) {
+					float[] x = in[c];
+					for (int b = 0; b < o.length; b++) {
+						o[b] += w * x[b];
+					}
+				}
+			}
+		}
+	}
+
+	private static void clear(float[][] values) {
+		for (float[] row : values) {
+			for (int b = 0; b < row.length; b++) {
+				row[b] = 0;
+			}
+		}
+	}
+
+	/**
+	 * The output of an Origin in each trial, at the end of the last step and (while a step is
+	 * running) at the end of the current step.
+	 */
+	private static class Signal {
+
+		private float[][] myValues;
+		private float[][] myNextValues;
+
+		public Signal(float[] initial, int batchSize) {
+			myValues = new float[initial.length][batchSize];
+			myNextValues = new float[initial.length][batchSize];
+			for (int d = 0; d < initial.length; d++) {
+				for (int b = 0; b < batchSize; b++) {
+					myValues[d][b] = initial[d];
+				}
+			}
+		}
+
+		public void swap() {
+			float[][] swap = myValues;
+			myValues = myNextValues;
+			myNextValues = swap;
+		}
+	}
+
+	/**
+	 * A compiled Network.
+	 */
+	private static class Program {
+
+		private final Map<Origin, Signal> mySignals;
+		private final List<InputUnit> myInputs;
+		private final List<EnsembleUnit> myEnsembles;
+
+		public Program() {
+			mySignals = new LinkedHashMap<Origin, Signal>();
+			myInputs = new ArrayList<InputUnit>();
+			myEnsembles = new ArrayList<EnsembleUnit>();
+		}
+
+		//the signals whose concatenation is the output of an Origin
+		public Signal[] resolve(Origin origin) throws StructuralException {
+			Origin base = FlatNetwork.getBase(origin);
+			if (base != origin) {
+				return resolve(base);
+			}
+			if (origin instanceof NetworkArrayImpl.ArrayOrigin) {
+				List<Signal> result = new ArrayList<Signal>();
+				for (DecodedOrigin part : ((NetworkArrayImpl.ArrayOrigin) origin).getNodeOrigins()) {
+					for (Signal signal : resolve(part)) {
+						result.add(signal);
+					}
+				}
+				return result.toArray(new Signal[0]);
+			}
+			Signal signal = mySignals.get(origin);
+			if (signal == null) {
+				throw new StructuralException("Origin " + origin.getName() + " of " + origin.getNode().getName()
+						+ " can't be run in a batch");
+			}
+			return new Signal[]{signal};
+		}
+
+		public Signal getSignal(Origin origin) throws SimulationException {
+			try {
+				Signal[] signals = resolve(origin);
+				if (signals.length != 1) {
+					throw new SimulationException("Can't probe " + origin.getName() + " (probe the Origins of its ensembles instead)");
+				}
+				return signals[0];
+			} catch (StructuralException e) {
+				throw new SimulationException(e);
+			}
+		}
+
+		public void step(float startTime, float endTime) {
+			for (EnsembleUnit ensemble : myEnsembles) {
+				ensemble.run(endTime - startTime);
+			}
+			for (InputUnit input : myInputs) {
+				input.run(endTime, input.mySignal.myNextValues);
+			}
+			for (InputUnit input : myInputs) {
+				input.mySignal.swap();
+			}
+			for (EnsembleUnit ensemble : myEnsembles) {
+				for (OriginUnit origin : ensemble.myOrigins) {
+					origin.mySignal.swap();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A FunctionInput with different functions in each trial.
+	 */
+	private static class InputUnit {
+
+		private final Function[][] myFunctions;
+		private final Signal mySignal;
+		private final float[] myTime;
+
+		public InputUnit(Function[][] functions, Signal signal) {
+			myFunctions = functions;
+			mySignal = signal;
+			myTime = new float[1];
+		}
+
+		public void run(float time, float[][] out) {
+			myTime[0] = time;
+			for (int b = 0; b < myFunctions.length; b++) {
+				for (int d = 0; d < out.length; d++) {
+					out[d][b] = myFunctions[b][d].map(myTime);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The transform and LTI dynamics of a DecodedTermination.
+	 */
+	private static class FilterUnit {
+
+		private final Signal[] mySources;
+		private final float[] myBias;
+		private final float[][] myInput; //input (plus static bias) before the transform
+		private final float[][] myTransform;
+		private final float[][] myTransformed;
+		private final LinearSystem mySystem;
+		private final Integrator myIntegrator;
+		private final float[][][] myStates; //dimension, state variable, trial
+		private final float[] myScratch;
+
+		private float myStepSize;
+		private Discretization myDiscretization;
+
+		public FilterUnit(DecodedTermination termination, Signal[] sources, int batchSize) throws StructuralException {
+			int inputDim = termination.getDimensions();
+			mySources = sources;
+			myInput = new float[inputDim][batchSize];
+			if (sources == null) {
+				//input is whatever was last set (which includes the static bias), or the static bias
+				RealOutput last = termination.getInput();
+				float[] values = last == null ? null : last.getValues();
+				if (values == null || isZero(values)) {
+					values = termination.getStaticBias();
+				}
+				for (int i = 0; i < inputDim; i++) {
+					for (int b = 0; b < batchSize; b++) {
+						myInput[i][b] = values[i];
+					}
+				}
+				myBias = null;
+			} else {
+				myBias = termination.getStaticBias();
+			}
+
+			myTransform = termination.getTransform();
+			myTransformed = new float[myTransform.length][batchSize];
+			LinearSystem[] dynamics = termination.getDimensionDynamics();
+			try {
+				mySystem = (LinearSystem) dynamics[0].clone();
+			} catch (CloneNotSupportedException e) {
+				throw new StructuralException(e);
+			}
+			myIntegrator = termination.getIntegrator();
+
+			myStates = new float[dynamics.length][][];
+			for (int d = 0; d < dynamics.length; d++) {
+				float[] state = dynamics[d].getState();
+				myStates[d] = new float[state.length][batchSize];
+				for (int k = 0; k < state.length; k++) {
+					for (int b = 0; b < batchSize; b++) {
+						myStates[d][k][b] = state[k];
+					}
+				}
+			}
+			myScratch = new float[myStates[0].length];
+			myStepSize = Float.NaN;
+		}
+
+		private static boolean isZero(float[] values) {
+			for (float value : values) {
+				if (value != 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		//adds the output of the dynamics of each dimension to the given state
+		public void run(float[][] state, float stepSize) {
+			if (stepSize != myStepSize) {
+				myDiscretization = new Discretization(mySystem, myIntegrator, stepSize);
+				myStepSize = stepSize;
+			}
+
+			if (mySources != null) {
+				int row = 0;
+				for (Signal source : mySources) {
+					float[][] values = source.myValues;
+					for (int i = 0; i < values.length; i++, row++) {
+						float[] in = values[i];
+						float[] out = myInput[row];
+						float bias = myBias[row];
+						for (int b = 0; b < out.length; b++) {
+							out[b] = in[b] + bias;
+						}
+					}
+				}
+			}
+			clear(myTransformed);
+			multiplyAdd(myTransform, myInput, myTransformed);
+
+			Discretization z = myDiscretization;
+			int n = myScratch.length;
+			for (int d = 0; d < myStates.length; d++) {
+				float[][] x = myStates[d];
+				float[] u = myTransformed[d];
+				float[] sum = state[d];
+				for (int b = 0; b < u.length; b++) {
+					float y = z.myPassthrough * u[b];
+					for (int k = 0; k < n; k++) {
+						y += z.myOutputVector[k] * x[k][b];
+					}
+					for (int k = 0; k < n; k++) {
+						float next = z.myInputVector[k] * u[b];
+						float[] row = z.myStateMatrix[k];
+						for (int j = 0; j < n; j++) {
+							next += row[j] * x[j][b];
+						}
+						myScratch[k] = next;
+					}
+					for (int k = 0; k < n; k++) {
+						x[k][b] = myScratch[k];
+					}
+					sum[b] += y;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A DecodedOrigin: decoders applied to the rates of every trial.
+	 */
+	private static class OriginUnit {
+
+		private final float[][] myDecoders; //transposed: a row per output dimension
+		private final Signal mySignal;
+
+		public OriginUnit(DecodedOrigin origin, Signal signal) {
+			myDecoders = MU.transpose(origin.getDecoders());
+			mySignal = signal;
+		}
+
+		public void run(float[][] rates) {
+			float[][] out = mySignal.myNextValues;
+			clear(out);
+			multiplyAdd(myDecoders, rates, out);
+		}
+	}
+
+	/**
+	 * An NEFEnsemble of LIF neurons in a rate mode.
+	 */
+	private static class EnsembleUnit {
+
+		private final FilterUnit[] myFilters;
+		private final OriginUnit[] myOrigins;
+		private final float[][] myEncoders; //divided by radii
+		private final LIFRateEngine myEngine;
+		private final float[][] myState;
+		private final float[][] myRadialInputs;
+		private final float[][] myRates;
+
+		public EnsembleUnit(NEFEnsembleImpl ensemble, FilterUnit[] filters, OriginUnit[] origins, int batchSize) {
+			myFilters = filters;
+			myOrigins = origins;
+
+			float[][] encoders = ensemble.getEncoders();
+			float[] radii = ensemble.getRadii();
+			for (int i = 0; i < encoders.length; i++) {
+				for (int k = 0; k < radii.length; k++) {
+					if (radii[k] != 1) {
+						encoders[i][k] *= 1f / radii[k];
+					}
+				}
+			}
+			myEncoders = encoders;
+			myEngine = LIFRateEngine.create(ensemble.getNodes(), ensemble.getUseRateTable());
+			myState = new float[ensemble.getDimension()][batchSize];
+			myRadialInputs = new float[encoders.length][batchSize];
+			myRates = new float[encoders.length][batchSize];
+		}
+
+		public void run(float stepSize) {
+			clear(myState);
+			for (FilterUnit filter : myFilters) {
+				filter.run(myState, stepSize);
+			}
+			clear(myRadialInputs);
+			multiplyAdd(myEncoders, myState, myRadialInputs);
+			myEngine.getRates(myRadialInputs, myRates);
+			for (OriginUnit origin : myOrigins) {
+				origin.run(myRates);
+			}
+		}
+	}
+}
@@ -0,0 +1,281 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "WeightMatrixSelector.java". Description:
+"Chooses how to simulate each decoded Projection between NEFEnsembles"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.Projection;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
+import ca.nengo.model.nef.impl.BiasOrigin;
+import ca.nengo.model.nef.impl.BiasTermination;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.DecodedTermination;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.nef.impl.NeuronWeights;
+import ca.nengo.util.impl.NEFGPUInterface;
+import ca.nengo.util.impl.NodeThreadPool;
+
+/**
+ * <p>Chooses, for each decoded Projection between NEFEnsembles, whether to simulate it in the
+ * usual factored form (decoding, transform, and encoding) or through precomputed post x pre
+ * weights (see NeuronWeights), stored densely or sparsely.</p>
+ *
+ * <p>The choice is made with a cost model of multiply-adds per step. For a Projection from
+ * N<sub>pre</sub> neurons with a D<sub>in</sub>-dimensional origin, onto N<sub>post</sub>
+ * neurons representing D<sub>post</sub> dimensions:</p>
+ * <ul>
+ * <li>factored: D<sub>post</sub> D<sub>in</sub> + N<sub>post</sub> D<sub>post</sub> + D<sub>post</sub>
+ * 		(the decoding is shared with other uses of the origin, so it isn't counted)</li>
+ * <li>dense: A N<sub>post</sub> + N<sub>post</sub>, where A is the expected number of active
+ * 		presynaptic neurons per step (all of them in rate modes, otherwise N<sub>pre</sub>
+ * 		times the expected spike rate times the step size)</li>
+ * <li>sparse: A k c + N<sub>post</sub>, where k is the mean number of non-zero weights per
+ * 		presynaptic neuron and c is the overhead of indexing (default 2)</li>
+ * </ul>
+ * <p>Weights are only used if there are no more than getMaxWeights() of them. This pays off
+ * for connections between small, high-dimensional ensembles, and for sparse decoders. Since
+ * the sparse cost is at least N<sub>post</sub>, the weights are only formed (to count their
+ * non-zero entries) if the dense or sparse cost can be lower than the factored one.</p>
+ *
+ * @author agent
+ */
+public class WeightMatrixSelector {
+
+	private static Logger ourLogger = Logger.getLogger(WeightMatrixSelector.class);
+
+	/**
+	 * Ways in which a decoded Projection can be simulated.
+	 */
+	public static enum Path {
+		/**
+		 * Decoders, transform, and encoders (as usual)
+		 */
+		FACTORED,
+
+		/**
+		 * A full post x pre weight matrix
+		 */
+		DENSE,
+
+		/**
+		 * The non-zero entries of the post x pre weight matrix
+		 */
+		SPARSE
+	}
+
+	private float myExpectedRate;
+	private int myMaxWeights;
+	private float mySparseOverhead;
+
+	/**
+	 * Uses an expected rate of 40 spikes/s and at most 250000 weights per Projection.
+	 */
+	public WeightMatrixSelector() {
+		myExpectedRate = 40f;
+		myMaxWeights = 250000;
+		mySparseOverhead = 2f;
+	}
+
+	/**
+	 * @return Expected mean spike rate of presynaptic neurons (spikes/s)
+	 */
+	public float getExpectedRate() {
+		return myExpectedRate;
+	}
+
+	/**
+	 * @param rate Expected mean spike rate of presynaptic neurons (spikes/s)
+	 */
+	public void setExpectedRate(float rate) {
+		myExpectedRate = rate;
+	}
+
+	/**
+	 * @return Largest number of weights (post x pre) for which a Projection may use weights
+	 */
+	public int getMaxWeights() {
+		return myMaxWeights;
+	}
+
+	/**
+	 * @param max Largest number of weights (post x pre) for which a Projection may use weights
+	 */
+	public void setMaxWeights(int max) {
+		myMaxWeights = max;
+	}
+
+	/**
+	 * @return Cost of a sparse weight relative to a dense one
+	 */
+	public float getSparseOverhead() {
+		return mySparseOverhead;
+	}
+
+	/**
+	 * @param overhead Cost of a sparse weight relative to a dense one
+	 */
+	public void setSparseOverhead(float overhead) {
+		mySparseOverhead = overhead;
+	}
+
+	/**
+	 * @param projection A Projection
+	 * @param stepSize Simulation step size
+	 * @return The cheapest way to simulate the Projection (FACTORED if weights can't be used)
+	 */
+	public Path choose(Projection projection, float stepSize) {
+		Choice choice = getChoice(projection, stepSize);
+		return choice == null ? Path.FACTORED : choice.path;
+	}
+
+	/**
+	 * Attaches NeuronWeights to the Terminations of Projections for which weights are cheaper.
+	 *
+	 * @param network Network to be run (including subnetworks)
+	 * @param stepSize Simulation step size
+	 * @return Terminations to which NeuronWeights were attached (these should be removed with
+	 * 		release() after the run)
+	 * @throws SimulationException If weights can't be made for a Termination
+	 */
+	public DecodedTermination[] apply(Network network, float stepSize) throws SimulationException {
+		List<Projection> projections = NodeThreadPool.collectProjections(network.getNodes(), network.getProjections());
+		List<DecodedTermination> result = new ArrayList<DecodedTermination>();
+		int numDecoded = 0;
+		for (Projection projection : projections) {
+			Choice choice = getChoice(projection, stepSize);
+			if (choice != null) {
+				numDecoded++;
+				if (choice.path != Path.FACTORED) {
+					try {
+						choice.termination.setNeuronWeights(new NeuronWeights(choice.origin, choice.termination,
+								choice.weights, choice.path == Path.SPARSE));
+					} catch (StructuralException e) {
+						throw new SimulationException(e);
+					}
+					result.add(choice.termination);
+				}
+			}
+		}
+		ourLogger.info("Using weight matrices for " + result.size() + " of " + numDecoded + " decoded projections");
+		return result.toArray(new DecodedTermination[0]);
+	}
+
+	/**
+	 * Removes NeuronWeights, restoring the usual dynamics of each Termination.
+	 *
+	 * @param terminations Terminations returned by apply()
+	 */
+	public static void release(DecodedTermination[] terminations) {
+		for (DecodedTermination termination : terminations) {
+			termination.setNeuronWeights(null);
+		}
+	}
+
+	//null if the projection isn't eligible
+	private Choice getChoice(Projection projection, float stepSize) {
+		Origin o = FlatNetwork.getBase(projection.getOrigin());
+		Termination t = FlatNetwork.getBase(projection.getTermination());
+		if ( !(o instanceof DecodedOrigin) || (o instanceof BiasOrigin)
+				|| !(t instanceof DecodedTermination) || (t instanceof BiasTermination) ) {
+			return null;
+		}
+		DecodedOrigin origin = (DecodedOrigin) o;
+		DecodedTermination termination = (DecodedTermination) t;
+		if (origin.getNoise() != null || origin.getSTPDynamics() != null || termination.getModulatory()
+				|| !isNeuronMode(origin.getNode()) || !isNeuronMode(termination.getNode())
+				|| !NeuronWeights.isSupported(termination)) {
+			return null;
+		}
+
+		Choice result = new Choice();
+		result.origin = origin;
+		result.termination = termination;
+		result.path = Path.FACTORED;
+
+		NEFEnsembleImpl pre = (NEFEnsembleImpl) origin.getNode();
+		NEFEnsembleImpl post = (NEFEnsembleImpl) termination.getNode();
+		int numPre = pre.getNodes().length;
+		int numPost = post.getNodes().length;
+		if ((long) numPre * numPost > myMaxWeights) {
+			return result;
+		}
+
+		float active = numPre;
+		if (pre.getMode() == SimulationMode.DEFAULT) {
+			active = numPre * Math.min(1f, myExpectedRate * stepSize);
+		}
+		int inDimension = termination.getDimensions();
+		int postDimension = post.getDimension();
+		float factored = postDimension * inDimension + numPost * postDimension + postDimension;
+		float dense = active * numPost + numPost;
+
+		//sparse costs at least numPost, so if neither weighted path can beat factored,
+		//don't form the weights (post x pre) at all
+		if (dense >= factored && numPost >= factored) {
+			return result;
+		}
+
+		float[][] weights = NeuronWeights.getWeights(origin, termination);
+		float perColumn = (float) NeuronWeights.countNonZero(weights) / numPre;
+		float sparse = active * perColumn * mySparseOverhead + numPost;
+
+		if (sparse < dense && sparse < factored) {
+			result.path = Path.SPARSE;
+		} else if (dense < factored) {
+			result.path = Path.DENSE;
+		}
+		if (result.path != Path.FACTORED) {
+			result.weights = weights;
+		}
+		return result;
+	}
+
+	//true if the node is an NEFEnsembleImpl that runs its neurons on the CPU
+	private static boolean isNeuronMode(Node node) {
+		if ( !(node instanceof NEFEnsembleImpl)
+				|| (NEFGPUInterface.getUseGPU() && ((NEFEnsembleImpl) node).getUseGPU()) ) {
+			return false;
+		}
+		SimulationMode mode = node.getMode();
+		return mode == SimulationMode.DEFAULT || mode == SimulationMode.RATE || mode == SimulationMode.CONSTANT_RATE;
+	}
+
+	private static class Choice {
+		public DecodedOrigin origin;
+		public DecodedTermination termination;
+		public float[][] weights; //null unless path is DENSE or SPARSE
+		public Path path;
+	}
+
+}
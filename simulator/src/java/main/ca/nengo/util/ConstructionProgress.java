@@ -0,0 +1,111 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "ConstructionProgress.java". Description:
+"Progress reports from, and cancellation of, slow model construction (eg making ensembles and solving for their decoders)"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.util;
+
+/**
+ * <p>Progress reports from, and cancellation of, slow model construction (eg making ensembles
+ * and solving for their decoders). A Monitor is installed for a thread, as a random stream is
+ * (see PDFTools.setThreadRandom()), so that construction code reports to it however deeply it
+ * is nested, and whether it is called from Java or from a script, without the monitor having
+ * to be passed down.</p>
+ *
+ * <p>Construction code calls report() at the start of each step. If the monitor has been
+ * cancelled, report() throws a ConstructionCancelledException, which abandons the construction.</p>
+ *
+ * @author agent
+ */
+public final class ConstructionProgress {
+
+	private static final ThreadLocal<Monitor> ourMonitor = new ThreadLocal<Monitor>();
+
+	private ConstructionProgress() {
+	}
+
+	/**
+	 * Receives progress reports from construction on the threads on which it is installed.
+	 * Reports may come from several threads at once (see ParallelEnsembleBuilder).
+	 */
+	public interface Monitor {
+
+		/**
+		 * @param description Description of a step of construction that is starting (eg
+		 * 		"Solving decoders for A.X")
+		 */
+		public void stepStarted(String description);
+
+		/**
+		 * @return True if construction should be abandoned
+		 */
+		public boolean isCancelled();
+	}
+
+	/**
+	 * @param monitor Monitor to which construction on the calling thread reports (null for none)
+	 * @return The monitor that was previously installed for the calling thread, so that it can
+	 * 		be restored
+	 */
+	public static Monitor setThreadMonitor(Monitor monitor) {
+		Monitor previous = ourMonitor.get();
+		ourMonitor.set(monitor);
+		return previous;
+	}
+
+	/**
+	 * @return Monitor installed for the calling thread (may be null)
+	 */
+	public static Monitor getThreadMonitor() {
+		return ourMonitor.get();
+	}
+
+	/**
+	 * Reports the start of a step of construction to the calling thread's monitor, if any.
+	 *
+	 * @param description Description of the step
+	 * @throws ConstructionCancelledException If the monitor has been cancelled
+	 */
+	public static void report(String description) {
+		Monitor monitor = ourMonitor.get();
+		if (monitor != null) {
+			checkCancelled(monitor);
+			monitor.stepStarted(description);
+		}
+	}
+
+	/**
+	 * @throws ConstructionCancelledException If the calling thread's monitor has been cancelled
+	 */
+	public static void checkCancelled() {
+		Monitor monitor = ourMonitor.get();
+		if (monitor != null) {
+			checkCancelled(monitor);
+		}
+	}
+
+	private static void checkCancelled(Monitor monitor) {
+		if (monitor.isCancelled()) {
+			throw new ConstructionCancelledException();
+		}
+	}
+}
@@ -31,14 +31,18 @@ a recipient may use your version of this file under either the MPL or the GPL Li
  */
 package ca.nengo.util;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
-import ca.nengo.dynamics.Integrator;
-import ca.nengo.dynamics.impl.EulerIntegrator;
-import ca.nengo.dynamics.impl.LTISystem;
-import ca.nengo.dynamics.impl.SimpleLTISystem;
 import ca.nengo.model.Ensemble;
 import ca.nengo.model.Node;
+import ca.nengo.model.Units;
 import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.neuron.impl.SpikingNeuron;
 import ca.nengo.util.impl.SpikePatternImpl;
@@ -54,34 +58,307 @@ import ca.nengo.util.impl.TimeSeriesImpl;
  */
 public class DataUtils {
 
+	//below this many samples x dimensions, kernels run in the calling thread
+	private static final int PARALLEL_THRESHOLD = 1 << 18;
+
+	private static ExecutorService ourExecutor;
+
 	/**
+	 * Applies a first-order low-pass filter (with impulse response exp(-t/tau)/tau) to each
+	 * dimension of a TimeSeries. The filter is solved exactly for input that varies linearly
+	 * between samples, so it is accurate with any spacing of samples, and the result has a
+	 * sample at each time of the original. The filter starts at zero.
+	 *
 	 * @param series A TimeSeries to which to apply a 1-D linear filter
 	 * @param tau Filter time constant
 	 * @return Filtered TimeSeries
 	 */
 	public static TimeSeries filter(TimeSeries series, float tau) {
+		float[][] result = new float[series.getTimes().length][series.getDimension()];
+		filter(series.getTimes(), series.getValues(), tau, result);
+		return new TimeSeriesImpl(series.getTimes(), result, series.getUnits().clone());
+	}
+
+	/**
+	 * As filter(TimeSeries, float), on raw sample arrays.
+	 *
+	 * @param times Sample times (ascending)
+	 * @param values Values at each time
+	 * @param tau Filter time constant
+	 * @param result Matrix the size of values into which to write the filtered values
+	 * 		(can be values itself, to filter in place)
+	 */
+	public static void filter(float[] times, final float[][] values, float tau, final float[][] result) {
+		int n = times.length;
+		if (n == 0) {
+			return;
+		}
+
+		//y[i] = a[i]*y[i-1] + b[i]*u[i-1] + c[i]*u[i], the same for every dimension
+		final float[] a = new float[n];
+		final float[] b = new float[n];
+		final float[] c = new float[n];
+		for (int i = 1; i < n; i++) {
+			double dt = times[i] - times[i-1];
+			if (tau <= 0) {
+				c[i] = 1;
+			} else if (dt <= 0) {
+				a[i] = 1;
+			} else {
+				double decay = Math.exp(-dt / tau);
+				double r = tau / dt * (1 - decay);
+				a[i] = (float) decay;
+				b[i] = (float) (r - decay);
+				c[i] = (float) (1 - r);
+			}
+		}
+
+		runColumns(values[0].length, n, new ColumnKernel() {
+			public void run(int from, int to) {
+				float[] y = new float[to - from];
+				float[] previous = new float[to - from];
+				float[] row = values[0];
+				for (int d = from; d < to; d++) {
+					previous[d-from] = row[d];
+					result[0][d] = 0;
+				}
+				for (int i = 1; i < a.length; i++) {
+					float ai = a[i], bi = b[i], ci = c[i];
+					float[] in = values[i];
+					float[] out = result[i];
+					for (int d = from; d < to; d++) {
+						float u = in[d];
+						float value = ai * y[d-from] + bi * previous[d-from] + ci * u;
+						y[d-from] = value;
+						previous[d-from] = u;
+						out[d] = value;
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Applies an alpha filter (with impulse response t*exp(-t/tau)/tau^2, ie two first-order
+	 * filters in series) to each dimension of a TimeSeries.
+	 *
+	 * @param series A TimeSeries to filter
+	 * @param tau Filter time constant
+	 * @return Filtered TimeSeries, with a sample at each time of the original
+	 */
+	public static TimeSeries filterAlpha(TimeSeries series, float tau) {
+		float[][] result = new float[series.getTimes().length][series.getDimension()];
+		filter(series.getTimes(), series.getValues(), tau, result);
+		filter(series.getTimes(), result, tau, result);
+		return new TimeSeriesImpl(series.getTimes(), result, series.getUnits().clone());
+	}
+
+	/**
+	 * Reduces the number of samples in a TimeSeries by averaging over consecutive blocks of
+	 * samples (unlike subsample(), which drops samples, this doesn't alias high frequencies).
+	 *
+	 * @param series Any TimeSeries
+	 * @param factor Number of samples per block
+	 * @return TimeSeries with a sample for each block (at the mean of the block's times) that
+	 * 		is the mean of the block's values
+	 */
+	public static TimeSeries decimate(TimeSeries series, final int factor) {
+		if (factor < 1) {
+			throw new IllegalArgumentException("Decimation factor must be at least 1");
+		}
 		float[] times = series.getTimes();
-		float meanStepSize = (times[times.length-1] - times[1]) / times.length;
-		float integrationStepSize = Math.min(meanStepSize/2f, tau/2f);
-		
-		Integrator integrator = new EulerIntegrator(integrationStepSize);
-		
-		int dim = series.getDimension();
-		float[] A = new float[dim];
-		float[][] B = new float[dim][];
-		float[][] C = new float[dim][];
-		for (int i = 0; i < dim; i++) {
-			A[i] = -1f / tau;
-			B[i] = new float[dim];
-			B[i][i] = 1f;
-			C[i] = new float[dim];
-			C[i][i] = 1f / tau;
-		}		
-		LTISystem filter = new SimpleLTISystem(A, B, C, new float[dim], series.getUnits());
-		
-		return integrator.integrate(filter, series);		
+		final float[][] values = series.getValues();
+		final int n = times.length;
+		int m = (n + factor - 1) / factor;
+
+		float[] resultTimes = new float[m];
+		final float[][] result = new float[m][series.getDimension()];
+		for (int k = 0; k < m; k++) {
+			int end = Math.min(n, (k+1) * factor);
+			double sum = 0;
+			for (int i = k * factor; i < end; i++) {
+				sum += times[i];
+			}
+			resultTimes[k] = (float) (sum / (end - k * factor));
+		}
+
+		runColumns(series.getDimension(), n, new ColumnKernel() {
+			public void run(int from, int to) {
+				for (int k = 0; k < result.length; k++) {
+					int begin = k * factor;
+					int end = Math.min(n, begin + factor);
+					float[] out = result[k];
+					for (int i = begin; i < end; i++) {
+						float[] in = values[i];
+						for (int d = from; d < to; d++) {
+							out[d] += in[d];
+						}
+					}
+					float scale = 1f / (end - begin);
+					for (int d = from; d < to; d++) {
+						out[d] *= scale;
+					}
+				}
+			}
+		});
+
+		return new TimeSeriesImpl(resultTimes, result, series.getUnits().clone());
 	}
-	
+
+	/**
+	 * @param actual A TimeSeries
+	 * @param ideal A TimeSeries with the same times and dimension as actual
+	 * @param window Number of samples over which to average
+	 * @return One-dimensional TimeSeries of the root-mean-squared difference between the
+	 * 		series, over all dimensions and the last <code>window</code> samples (or fewer, at
+	 * 		the start)
+	 */
+	public static TimeSeries rmse(TimeSeries actual, TimeSeries ideal, int window) {
+		final float[][] a = actual.getValues();
+		final float[][] b = ideal.getValues();
+		if (a.length != b.length || actual.getDimension() != ideal.getDimension()) {
+			throw new IllegalArgumentException("Series have different numbers of samples or dimensions");
+		}
+		if (window < 1) {
+			throw new IllegalArgumentException("Window must be at least 1 sample");
+		}
+
+		//squared error of each sample (here the work is split over samples rather than dimensions)
+		final int dim = actual.getDimension();
+		final double[] squared = new double[a.length];
+		runColumns(a.length, dim, new ColumnKernel() {
+			public void run(int from, int to) {
+				for (int i = from; i < to; i++) {
+					double sum = 0;
+					for (int d = 0; d < dim; d++) {
+						double error = a[i][d] - b[i][d];
+						sum += error * error;
+					}
+					squared[i] = sum;
+				}
+			}
+		});
+
+		float[] result = new float[a.length];
+		double sum = 0;
+		for (int i = 0; i < a.length; i++) {
+			sum += squared[i];
+			if (i >= window) {
+				sum -= squared[i - window];
+			}
+			int count = Math.min(i + 1, window) * dim;
+			result[i] = (float) Math.sqrt(Math.max(0, sum) / count);
+		}
+		return new TimeSeries1DImpl(actual.getTimes(), result, actual.getUnits()[0]);
+	}
+
+	/**
+	 * Estimates the firing rate of each neuron in a SpikePattern, by filtering its spike train
+	 * with exp(-t/tau)/tau.
+	 *
+	 * @param pattern Any SpikePattern
+	 * @param times Times (ascending) at which to estimate rates
+	 * @param tau Filter time constant
+	 * @return TimeSeries with a dimension for each neuron
+	 */
+	public static TimeSeries toRates(final SpikePattern pattern, final float[] times, final float tau) {
+		if (tau <= 0) {
+			throw new IllegalArgumentException("Time constant must be positive");
+		}
+		final int n = times.length;
+		final float[][] result = new float[n][pattern.getNumNeurons()];
+		final float[] decay = new float[n];
+		for (int i = 1; i < n; i++) {
+			decay[i] = (float) Math.exp(-(times[i] - times[i-1]) / tau);
+		}
+
+		runColumns(pattern.getNumNeurons(), n, new ColumnKernel() {
+			public void run(int from, int to) {
+				for (int d = from; d < to; d++) {
+					float[] spikes = pattern.getSpikeTimes(d);
+					if (!isSorted(spikes)) {
+						spikes = spikes.clone();
+						Arrays.sort(spikes);
+					}
+					int next = 0;
+					double rate = 0;
+					for (int i = 0; i < n; i++) {
+						rate *= decay[i];
+						for (; next < spikes.length && spikes[next] <= times[i]; next++) {
+							rate += Math.exp(-(times[i] - spikes[next]) / tau) / tau;
+						}
+						result[i][d] = (float) rate;
+					}
+				}
+			}
+		});
+
+		return new TimeSeriesImpl(times, result, Units.uniform(Units.SPIKES_PER_S, pattern.getNumNeurons()));
+	}
+
+	private static boolean isSorted(float[] values) {
+		for (int i = 1; i < values.length; i++) {
+			if (values[i] < values[i-1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A loop over a range of dimensions.
+	 */
+	private static interface ColumnKernel {
+		public void run(int from, int to);
+	}
+
+	//runs a kernel over blocks of dimensions, in parallel if there is enough work
+	private static void runColumns(int dimension, int samples, ColumnKernel kernel) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (threads == 1 || dimension < 2 || (long) dimension * samples < PARALLEL_THRESHOLD) {
+			kernel.run(0, dimension);
+			return;
+		}
+
+		int blocks = Math.min(threads, dimension);
+		List<Future<?>> futures = new ArrayList<Future<?>>(blocks);
+		ExecutorService executor = getExecutor();
+		for (int k = 0; k < blocks; k++) {
+			final int from = k * dimension / blocks;
+			final int to = (k+1) * dimension / blocks;
+			final ColumnKernel block = kernel;
+			futures.add(executor.submit(new Runnable() {
+				public void run() {
+					block.run(from, to);
+				}
+			}));
+		}
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (ourExecutor == null) {
+			ourExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				private int myCount = 0;
+				public synchronized Thread newThread(Runnable r) {
+					Thread result = new Thread(r, "DataUtils " + myCount++);
+					result.setDaemon(true);
+					return result;
+				}
+			});
+		}
+		return ourExecutor;
+	}
+
 	/**
 	 * @param series An n-dimensional TimeSeries
 	 * @param dim Index (less than n-1) of dimension to extract 
@@ -92,8 +369,13 @@ public class DataUtils {
 			throw new IllegalArgumentException("Dimension " + dim 
 					+ " is out of range; should be between 0 and " + (series.getDimension()-1));
 		}
-		
-		return new TimeSeries1DImpl(series.getTimes(), MU.transpose(series.getValues())[dim], series.getUnits()[dim]);
+
+		float[][] values = series.getValues();
+		float[] column = new float[values.length];
+		for (int i = 0; i < values.length; i++) {
+			column[i] = values[i][dim];
+		}
+		return new TimeSeries1DImpl(series.getTimes(), column, series.getUnits()[dim]);
 	}
 	
 	/**
@@ -101,21 +383,34 @@ public class DataUtils {
 	 * @param start Beginning of extracted portion of series
 	 * @param end End of extracted portion of series 
 	 * @return A TimeSeries that includes any samples in the given TimeSeries between the start and end times
+	 * 		(the samples' values are shared with the given series)
 	 */
 	public static TimeSeries extractTime(TimeSeries series, float start, float end) {
-		MU.VectorExpander times = new MU.VectorExpander();
-		MU.MatrixExpander values = new MU.MatrixExpander();
-		
 		float[] originalTimes = series.getTimes();
-		float[][] originalValues = series.getValues();
-		for (int i = 0; i < originalTimes.length; i++) {
-			if (originalTimes[i] >= start && originalTimes[i] <= end) {
-				times.add(originalTimes[i]);
-				values.add(originalValues[i]);
+		int first = firstIndex(originalTimes, start, false);
+		int last = firstIndex(originalTimes, end, true);
+		int n = Math.max(0, last - first);
+
+		float[] times = new float[n];
+		float[][] values = new float[n][];
+		System.arraycopy(originalTimes, first, times, 0, n);
+		System.arraycopy(series.getValues(), first, values, 0, n);
+		return new TimeSeriesImpl(times, values, series.getUnits());
+	}
+
+	//index of first time that is >= (or > if after) the given time, in ascending times
+	private static int firstIndex(float[] times, float time, boolean after) {
+		int low = 0;
+		int high = times.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (times[mid] < time || (after && times[mid] == time)) {
+				low = mid + 1;
+			} else {
+				high = mid;
 			}
 		}
-		
-		return new TimeSeriesImpl(times.toArray(), values.toArray(), series.getUnits());
+		return low;
 	}
 	
 	/**
@@ -126,17 +421,17 @@ public class DataUtils {
 	 * @return New TimeSeries composed of one of every <code>period</code> samples in the original 
 	 */
 	public static TimeSeries subsample(TimeSeries series, int period) {
-		MU.VectorExpander times = new MU.VectorExpander();
-		MU.MatrixExpander values = new MU.MatrixExpander();
-		
 		float[] originalTimes = series.getTimes();
 		float[][] originalValues = series.getValues();
-		for (int i = 0; i < originalTimes.length; i = i + period) {
-			times.add(originalTimes[i]);
-			values.add(originalValues[i]);
+		int n = (originalTimes.length + period - 1) / period;
+
+		float[] times = new float[n];
+		float[][] values = new float[n][];
+		for (int k = 0, i = 0; k < n; k++, i += period) {
+			times[k] = originalTimes[i];
+			values[k] = originalValues[i];
 		}
-		
-		return new TimeSeriesImpl(times.toArray(), values.toArray(), series.getUnits());
+		return new TimeSeriesImpl(times, values, series.getUnits());
 	}
 	
 	/**
@@ -159,9 +454,14 @@ public class DataUtils {
 	 * 
 	 * @param pattern Any SpikePattern
 	 * @param indices Indices of neurons in original pattern from which to extract spikes
-	 * @return Spikes from selected neurons in the original pattern
+	 * @return Spikes from selected neurons in the original pattern (shared with it rather than 
+	 * 		copied if it is a SpikePatternImpl; see SpikePatternImpl.subset())
 	 */
 	public static SpikePattern subset(SpikePattern pattern, int[] indices) {
+		if (pattern instanceof SpikePatternImpl) {
+			return ((SpikePatternImpl) pattern).subset(indices);
+		}
+
 		SpikePatternImpl result = new SpikePatternImpl(indices.length);
 		
 		for (int i = 0; i < indices.length; i++) {
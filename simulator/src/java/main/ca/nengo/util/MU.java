@@ -247,6 +247,47 @@ public class MU {
 		return result;
 	}
 	
+	/**
+	 * As prod(A, X), but writes into an existing vector rather than allocating one. Rows are
+	 * processed in blocks of four, so that each element of X is loaded once per block.
+	 * 
+	 * @param A Any matrix 
+	 * @param X Any vector with the same number of elements as there are columns in A
+	 * @param result A vector with the same number of elements as there are rows in A, into which
+	 * 		AX is written
+	 */
+	public static void prodInto(float[][] A, float[] X, float[] result) {
+		int rows = A.length;
+		int n = X.length;
+		int i = 0;
+		for (; i + 3 < rows; i += 4) {
+			float[] a0 = A[i];
+			float[] a1 = A[i+1];
+			float[] a2 = A[i+2];
+			float[] a3 = A[i+3];
+			float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+			for (int j = 0; j < n; j++) {
+				float x = X[j];
+				s0 += a0[j] * x;
+				s1 += a1[j] * x;
+				s2 += a2[j] * x;
+				s3 += a3[j] * x;
+			}
+			result[i] = s0;
+			result[i+1] = s1;
+			result[i+2] = s2;
+			result[i+3] = s3;
+		}
+		for (; i < rows; i++) {
+			float[] a = A[i];
+			float s = 0;
+			for (int j = 0; j < n; j++) {
+				s += a[j] * X[j];
+			}
+			result[i] = s;
+		}
+	}
+	
 	/**
 	 * @param A Any m x n matrix 
 	 * @param B Any n x p matrix 
@@ -0,0 +1,247 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "MetricsRegistry.java". Description:
+"A set of named runtime metrics: counters, gauges, and timers"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.util;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import ca.nengo.util.impl.TimingHistogram;
+
+/**
+ * <p>A set of named runtime metrics: counters, gauges, and timers. Metrics are cheap to update
+ * from simulation threads, and are read all at once with snapshot(), typically from another
+ * thread (eg by a JMX MBean or a periodic reporter; see ca.nengo.util.impl.MetricsMBean and
+ * ca.nengo.util.impl.MetricsReporter).</p>
+ *
+ * <p>Names are dot-separated (eg "phase.nodes"). Each timer appears in snapshots as several
+ * values: name.count, and name.mean, name.p50, name.p90, name.p99 and name.max in
+ * milliseconds.</p>
+ *
+ * @author agent
+ */
+public class MetricsRegistry {
+
+	/**
+	 * A value that is computed when a snapshot is taken.
+	 */
+	public interface Gauge {
+
+		/**
+		 * @return Current value (NaN if unknown)
+		 */
+		public double getValue();
+	}
+
+	/**
+	 * A count that is incremented by a single thread.
+	 */
+	public static class Counter {
+
+		private volatile long myCount;
+
+		/**
+		 * Adds one to the count.
+		 */
+		public void increment() {
+			myCount++;
+		}
+
+		/**
+		 * @param n Amount to add to the count
+		 */
+		public void add(long n) {
+			myCount += n;
+		}
+
+		/**
+		 * @return Current count
+		 */
+		public long getCount() {
+			return myCount;
+		}
+
+		/**
+		 * Sets the count to zero.
+		 */
+		public void reset() {
+			myCount = 0;
+		}
+	}
+
+	/**
+	 * A distribution of durations.
+	 */
+	public static class Timer {
+
+		private final TimingHistogram myHistogram;
+
+		private Timer() {
+			myHistogram = new TimingHistogram();
+		}
+
+		/**
+		 * @param nanos A duration in nanoseconds
+		 */
+		public synchronized void record(long nanos) {
+			myHistogram.record(nanos);
+		}
+
+		/**
+		 * Clears recorded durations.
+		 */
+		public synchronized void reset() {
+			myHistogram.reset();
+		}
+
+		/**
+		 * @return A copy of the durations recorded so far
+		 */
+		public synchronized TimingHistogram getHistogram() {
+			TimingHistogram result = new TimingHistogram();
+			result.add(myHistogram);
+			return result;
+		}
+	}
+
+	private static final double NANOS_PER_MILLI = 1e6;
+
+	private volatile TreeMap<String, Object> myMetrics;
+
+	public MetricsRegistry() {
+		myMetrics = new TreeMap<String, Object>();
+	}
+
+	/**
+	 * @param name Name of a counter
+	 * @return The counter with the given name (created if necessary)
+	 */
+	public synchronized Counter counter(String name) {
+		Object existing = myMetrics.get(name);
+		if (existing instanceof Counter) {
+			return (Counter) existing;
+		}
+		Counter result = new Counter();
+		register(name, result);
+		return result;
+	}
+
+	/**
+	 * @param name Name of a timer
+	 * @return The timer with the given name (created if necessary)
+	 */
+	public synchronized Timer timer(String name) {
+		Object existing = myMetrics.get(name);
+		if (existing instanceof Timer) {
+			return (Timer) existing;
+		}
+		Timer result = new Timer();
+		register(name, result);
+		return result;
+	}
+
+	/**
+	 * @param name Name of the gauge
+	 * @param gauge A gauge (replaces any metric of the same name)
+	 */
+	public synchronized void gauge(String name, Gauge gauge) {
+		register(name, gauge);
+	}
+
+	/**
+	 * @param name Name of a metric
+	 * @return True if a metric was removed
+	 */
+	public synchronized boolean remove(String name) {
+		if (!myMetrics.containsKey(name)) {
+			return false;
+		}
+		TreeMap<String, Object> metrics = new TreeMap<String, Object>(myMetrics);
+		metrics.remove(name);
+		myMetrics = metrics;
+		return true;
+	}
+
+	/**
+	 * @param prefix Start of the names of metrics to remove (eg "ensemble.")
+	 */
+	public synchronized void removeAll(String prefix) {
+		TreeMap<String, Object> metrics = new TreeMap<String, Object>(myMetrics);
+		metrics.subMap(prefix, prefix + Character.MAX_VALUE).clear();
+		myMetrics = metrics;
+	}
+
+	/**
+	 * @return Names of registered metrics
+	 */
+	public String[] getNames() {
+		return myMetrics.keySet().toArray(new String[0]);
+	}
+
+	/**
+	 * Sets counters to zero and clears timers. Gauges are unaffected.
+	 */
+	public void reset() {
+		for (Object metric : myMetrics.values()) {
+			if (metric instanceof Counter) {
+				((Counter) metric).reset();
+			} else if (metric instanceof Timer) {
+				((Timer) metric).reset();
+			}
+		}
+	}
+
+	/**
+	 * @return Current values of all metrics, by name (timers expanded as described above)
+	 */
+	public SortedMap<String, Double> snapshot() {
+		SortedMap<String, Double> result = new TreeMap<String, Double>();
+		for (Map.Entry<String, Object> entry : myMetrics.entrySet()) {
+			String name = entry.getKey();
+			Object metric = entry.getValue();
+			if (metric instanceof Counter) {
+				result.put(name, Double.valueOf(((Counter) metric).getCount()));
+			} else if (metric instanceof Gauge) {
+				result.put(name, Double.valueOf(((Gauge) metric).getValue()));
+			} else if (metric instanceof Timer) {
+				TimingHistogram histogram = ((Timer) metric).getHistogram();
+				result.put(name + ".count", Double.valueOf(histogram.getCount()));
+				result.put(name + ".mean", Double.valueOf(histogram.getMean() / NANOS_PER_MILLI));
+				result.put(name + ".p50", Double.valueOf(histogram.getPercentile(.5) / NANOS_PER_MILLI));
+				result.put(name + ".p90", Double.valueOf(histogram.getPercentile(.9) / NANOS_PER_MILLI));
+				result.put(name + ".p99", Double.valueOf(histogram.getPercentile(.99) / NANOS_PER_MILLI));
+				result.put(name + ".max", Double.valueOf(histogram.getMax() / NANOS_PER_MILLI));
+			}
+		}
+		return result;
+	}
+
+	//copy on write, so that snapshots and hot-path lookups don't need locks
+	private void register(String name, Object metric) {
+		TreeMap<String, Object> metrics = new TreeMap<String, Object>(myMetrics);
+		metrics.put(name, metric);
+		myMetrics = metrics;
+	}
+}
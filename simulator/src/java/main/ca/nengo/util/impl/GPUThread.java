@@ -25,8 +25,20 @@ public class GPUThread extends NodeThread {
 	}
 	
 	protected void runNodes(float startTime, float endTime) throws SimulationException{
+		long interval = myProfiler != null ? System.nanoTime() : 0;
 		
 		myNEFGPUInterface.step(startTime, endTime);
+		
+		if (myProfiler != null) {
+			myProfiler.record(myNEFGPUInterface, Profiler.Category.NODE, System.nanoTime() - interval);
+		}
+	}
+	
+	public void setProfiler(Profiler profiler) {
+		super.setProfiler(profiler);
+		if (profiler != null) {
+			profiler.register(myNEFGPUInterface, Profiler.Category.NODE);
+		}
 	}
 	
 	public NEFGPUInterface getNEFGPUInterface(){
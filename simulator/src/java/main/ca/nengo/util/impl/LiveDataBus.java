@@ -0,0 +1,224 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "LiveDataBus.java". Description:
+"Distributes live samples from a running simulation to LiveWatch subscribers"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.util.impl;
+
+import ca.nengo.model.Origin;
+import ca.nengo.model.Probeable;
+import ca.nengo.model.SimulationException;
+import ca.nengo.util.ThreadTask;
+
+/**
+ * <p>Distributes live samples from a running simulation to LiveWatch subscribers.</p>
+ *
+ * <p>This is a lighter-weight alternative to Probes for interactive displays: rather than
+ * accumulating a full history, each subscription retains a fixed number of recent samples
+ * in a lock-free ring buffer, which display threads read at their own pace. The bus is
+ * a ThreadTask, so it can be run by a NodeThreadPool after each step, or collect() can be
+ * called directly by whatever drives the simulation.</p>
+ *
+ * @author agent
+ */
+public class LiveDataBus implements ThreadTask {
+
+	/**
+	 * Default number of samples retained per subscription.
+	 */
+	public static final int DEFAULT_CAPACITY = 4001;
+
+	private volatile LiveWatch[] myWatches;
+	private volatile long myTick;
+	private int myCapacity;
+
+	/**
+	 * Creates a bus with DEFAULT_CAPACITY.
+	 */
+	public LiveDataBus() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity Number of samples retained per subscription
+	 */
+	public LiveDataBus(int capacity) {
+		myWatches = new LiveWatch[0];
+		myCapacity = capacity;
+		myTick = 0;
+	}
+
+	/**
+	 * @return Number of samples retained by new subscriptions
+	 */
+	public int getCapacity() {
+		return myCapacity;
+	}
+
+	/**
+	 * @param capacity Number of samples retained by new subscriptions (existing
+	 * 		subscriptions are not affected)
+	 */
+	public void setCapacity(int capacity) {
+		myCapacity = capacity;
+	}
+
+	/**
+	 * @return Number of times collect() has been called since the last reset
+	 */
+	public long getTick() {
+		return myTick;
+	}
+
+	/**
+	 * @return Current subscriptions
+	 */
+	public LiveWatch[] getWatches() {
+		return myWatches.clone();
+	}
+
+	/**
+	 * @param origin Origin to sample every tick
+	 * @return A new subscription
+	 */
+	public LiveWatch subscribe(Origin origin) {
+		return subscribe(origin, 1f, 1);
+	}
+
+	/**
+	 * @param origin Origin to sample
+	 * @param scale Factor by which real-valued samples are multiplied
+	 * @param decimation A sample is retained every this many ticks
+	 * @return A new subscription
+	 */
+	public LiveWatch subscribe(Origin origin, float scale, int decimation) {
+		return subscribe(new LiveWatch.OriginSource(origin, scale), decimation);
+	}
+
+	/**
+	 * @param target Probeable to sample every tick
+	 * @param stateName Name of the state variable to sample
+	 * @return A new subscription
+	 * @throws SimulationException if the target does not have the named state
+	 */
+	public LiveWatch subscribe(Probeable target, String stateName) throws SimulationException {
+		return subscribe(new LiveWatch.StateSource(target, stateName), 1);
+	}
+
+	/**
+	 * Subscribes to an arbitrary source. The source is sampled immediately, so that the
+	 * current value is available before the next tick.
+	 *
+	 * @param source Source of samples
+	 * @param decimation A sample is retained every this many ticks
+	 * @return A new subscription
+	 */
+	public synchronized LiveWatch subscribe(LiveWatch.Source source, int decimation) {
+		LiveWatch watch = new LiveWatch(source, myCapacity, decimation);
+		watch.reset(myTick);
+		try {
+			watch.sample(myTick);
+		} catch (SimulationException e) {
+			throw new RuntimeException("Can't sample new subscription", e);
+		}
+
+		LiveWatch[] watches = new LiveWatch[myWatches.length + 1];
+		System.arraycopy(myWatches, 0, watches, 0, myWatches.length);
+		watches[myWatches.length] = watch;
+		myWatches = watches;
+		return watch;
+	}
+
+	/**
+	 * @param watch A subscription to cancel
+	 */
+	public synchronized void unsubscribe(LiveWatch watch) {
+		int index = -1;
+		for (int i = 0; i < myWatches.length && index < 0; i++) {
+			if (myWatches[i] == watch) {
+				index = i;
+			}
+		}
+
+		if (index >= 0) {
+			LiveWatch[] watches = new LiveWatch[myWatches.length - 1];
+			System.arraycopy(myWatches, 0, watches, 0, index);
+			System.arraycopy(myWatches, index + 1, watches, index, watches.length - index);
+			myWatches = watches;
+		}
+	}
+
+	/**
+	 * Advances the tick count and samples all subscriptions. To be called after every
+	 * network time step.
+	 *
+	 * @throws SimulationException if a source can not be read
+	 */
+	public synchronized void collect() throws SimulationException {
+		myTick++;
+		LiveWatch[] watches = myWatches;
+		for (int i = 0; i < watches.length; i++) {
+			watches[i].sample(myTick);
+		}
+	}
+
+	/**
+	 * Discards all samples, resets the tick count to zero, and samples all subscriptions
+	 * at tick zero.
+	 *
+	 * @see ca.nengo.model.Resettable#reset(boolean)
+	 */
+	public synchronized void reset(boolean randomize) {
+		myTick = 0;
+		LiveWatch[] watches = myWatches;
+		for (int i = 0; i < watches.length; i++) {
+			watches[i].reset(0);
+			try {
+				watches[i].sample(0);
+			} catch (SimulationException e) {
+				throw new RuntimeException("Can't sample subscription on reset", e);
+			}
+		}
+	}
+
+	/**
+	 * @see ca.nengo.util.ThreadTask#isFinished()
+	 */
+	public boolean isFinished() {
+		return true;
+	}
+
+	/**
+	 * @see ca.nengo.util.ThreadTask#run(float, float)
+	 */
+	public void run(float startTime, float endTime) throws SimulationException {
+		collect();
+	}
+
+	/**
+	 * @return A new bus with the same capacity and no subscriptions
+	 */
+	@Override
+	public LiveDataBus clone() throws CloneNotSupportedException {
+		return new LiveDataBus(myCapacity);
+	}
+}
@@ -0,0 +1,404 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "LiveWatch.java". Description:
+"A subscription to a stream of samples from an Origin or a Probeable state"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.util.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.nengo.model.InstantaneousOutput;
+import ca.nengo.model.Origin;
+import ca.nengo.model.Probeable;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SpikeOutput;
+import ca.nengo.util.TimeSeries;
+
+/**
+ * <p>A subscription to a stream of samples from an Origin or a Probeable state, for
+ * live display while a simulation is running.</p>
+ *
+ * <p>Samples are pushed by the simulation (through a LiveDataBus) into a SampleRingBuffer,
+ * so the simulation never waits on a display thread. Readers can ask for raw or
+ * exponentially filtered samples by tick. Filtered values are computed lazily on the
+ * reading thread and cached per filter constant, so the simulation only pays for
+ * copying the raw values.</p>
+ *
+ * @author agent
+ */
+public class LiveWatch {
+
+	/**
+	 * Something that can be sampled into a primitive array once per tick.
+	 */
+	public interface Source {
+
+		/**
+		 * @return Number of values in each sample
+		 */
+		public int getDimension();
+
+		/**
+		 * @param into Array of length getDimension() into which the current values are copied
+		 * @throws SimulationException if the values can not be read
+		 */
+		public void sample(float[] into) throws SimulationException;
+	}
+
+	private final Source mySource;
+	private final SampleRingBuffer myBuffer;
+	private final float[] myFrame;
+	private final int myDecimation;
+	private volatile long myFirstTick;
+	private final Map<Float, FilterChannel> myFilters;
+
+	/**
+	 * @param source Source of samples
+	 * @param capacity Number of (decimated) samples retained
+	 * @param decimation A sample is retained every this many ticks
+	 */
+	public LiveWatch(Source source, int capacity, int decimation) {
+		if (decimation < 1) {
+			throw new IllegalArgumentException("Decimation must be at least 1");
+		}
+		mySource = source;
+		myBuffer = new SampleRingBuffer(source.getDimension(), capacity);
+		myFrame = new float[source.getDimension()];
+		myDecimation = decimation;
+		myFilters = new HashMap<Float, FilterChannel>(4);
+	}
+
+	/**
+	 * @return The source of samples
+	 */
+	public Source getSource() {
+		return mySource;
+	}
+
+	/**
+	 * @return Number of values in each sample
+	 */
+	public int getDimension() {
+		return myBuffer.getDimension();
+	}
+
+	/**
+	 * @return A sample is retained every this many ticks
+	 */
+	public int getDecimation() {
+		return myDecimation;
+	}
+
+	/**
+	 * @return Tick of the oldest retained sample, or -1 if there are none
+	 */
+	public long getOldestTick() {
+		long index = myBuffer.getOldestTick();
+		return index < 0 ? -1 : toTick(index);
+	}
+
+	/**
+	 * @return Tick of the newest sample, or -1 if there are none
+	 */
+	public long getNewestTick() {
+		long index = myBuffer.getNewestTick();
+		return index < 0 ? -1 : toTick(index);
+	}
+
+	/**
+	 * Discards all samples. Subsequent ticks are counted from the given tick.
+	 * Called by the LiveDataBus; must not be called concurrently with sample().
+	 *
+	 * @param tick Tick of the next sample
+	 */
+	public void reset(long tick) {
+		myBuffer.clear();
+		myFirstTick = tick;
+		synchronized (myFilters) {
+			myFilters.clear();
+		}
+	}
+
+	/**
+	 * Samples the source if the given tick is retained under the decimation setting.
+	 * Called by the LiveDataBus from a simulation thread.
+	 *
+	 * @param tick Current tick
+	 * @throws SimulationException if the source can not be read
+	 */
+	public void sample(long tick) throws SimulationException {
+		long offset = tick - myFirstTick;
+		if (offset >= 0 && offset % myDecimation == 0) {
+			mySource.sample(myFrame);
+			myBuffer.write(offset / myDecimation, myFrame);
+		}
+	}
+
+	/**
+	 * @param tick A tick number
+	 * @param into Array of length getDimension() into which the most recent sample at or
+	 * 		before the given tick is copied
+	 * @return True if such a sample was available
+	 */
+	public boolean get(long tick, float[] into) {
+		long offset = tick - myFirstTick;
+		return offset >= 0 && myBuffer.read(offset / myDecimation, into);
+	}
+
+	/**
+	 * @return The oldest retained sample, or null if there are none
+	 */
+	public float[] getFirst() {
+		float[] result = new float[getDimension()];
+		long index = myBuffer.getOldestTick();
+		while (index >= 0 && !myBuffer.read(index, result)) {
+			//lapped by the writer; try the new oldest sample
+			long next = myBuffer.getOldestTick();
+			index = next > index ? next : -1;
+		}
+		return index < 0 ? null : result;
+	}
+
+	/**
+	 * @param start First tick
+	 * @param count Number of ticks
+	 * @param dtTau Ratio of the simulation time step to the time constant of an exponential
+	 * 		filter to apply, or zero for unfiltered samples
+	 * @return Samples for each tick in the range, with null for ticks that are not available
+	 */
+	public float[][] get(long start, int count, float dtTau) {
+		float[][] result = new float[count][];
+
+		if (dtTau > 0) {
+			FilterChannel channel;
+			synchronized (myFilters) {
+				Float key = Float.valueOf(dtTau);
+				channel = myFilters.get(key);
+				if (channel == null) {
+					channel = new FilterChannel(dtTau);
+					myFilters.put(key, channel);
+				}
+			}
+			synchronized (channel) {
+				channel.update();
+				fill(channel.myFiltered, start, result);
+			}
+		} else {
+			fill(myBuffer, start, result);
+		}
+
+		return result;
+	}
+
+	private void fill(SampleRingBuffer buffer, long start, float[][] result) {
+		float[] frame = null;
+		long lastIndex = -1;
+		for (int i = 0; i < result.length; i++) {
+			long offset = start + i - myFirstTick;
+			if (offset < 0) {
+				continue;
+			}
+			long index = offset / myDecimation;
+			if (index != lastIndex) {
+				frame = new float[getDimension()];
+				if (!buffer.read(index, frame)) {
+					frame = null;
+				}
+				lastIndex = index;
+			}
+			result[i] = frame;
+		}
+	}
+
+	private long toTick(long index) {
+		return myFirstTick + index * myDecimation;
+	}
+
+	/**
+	 * Lazily maintained exponential filter over the raw samples. Only touched by readers,
+	 * under the channel's monitor.
+	 */
+	private class FilterChannel {
+
+		private final float myDecay;
+		private final SampleRingBuffer myFiltered;
+		private final float[] myState;
+		private final float[] myInput;
+		private long myNextIndex;
+
+		public FilterChannel(float dtTau) {
+			myDecay = (float) Math.exp(-dtTau * myDecimation);
+			myFiltered = new SampleRingBuffer(myBuffer.getDimension(), myBuffer.getCapacity());
+			myState = new float[myBuffer.getDimension()];
+			myInput = new float[myBuffer.getDimension()];
+			myNextIndex = -1;
+		}
+
+		public void update() {
+			long newest = myBuffer.getNewestTick();
+			long oldest = myBuffer.getOldestTick();
+			if (newest < 0) {
+				return;
+			}
+
+			if (myNextIndex < oldest) {
+				//we've fallen behind the raw buffer (or just started), so restart from zero state
+				myFiltered.clear();
+				for (int j = 0; j < myState.length; j++) {
+					myState[j] = 0;
+				}
+				myNextIndex = oldest;
+			}
+
+			for (long i = myNextIndex; i <= newest; i++) {
+				if (!myBuffer.read(i, myInput)) {
+					//overwritten since we checked; pick up from the new oldest next time
+					myNextIndex = -1;
+					return;
+				}
+				for (int j = 0; j < myState.length; j++) {
+					myState[j] = myState[j] * myDecay + myInput[j] * (1 - myDecay);
+				}
+				myFiltered.write(i, myState);
+			}
+			myNextIndex = newest + 1;
+		}
+	}
+
+	/**
+	 * Samples the instantaneous output of an Origin. Spike outputs are sampled as 1 for a
+	 * spike and 0 otherwise, whatever the scale, so that an Origin that switches between
+	 * spikes and rates (e.g. an ensemble's AXON Origin when its mode changes) can be scaled
+	 * to show rates on the same footing as spikes.
+	 */
+	public static class OriginSource implements Source {
+
+		private final Origin myOrigin;
+		private final float myScale;
+
+		/**
+		 * @param origin Origin to sample
+		 * @param scale Factor by which real-valued samples are multiplied
+		 */
+		public OriginSource(Origin origin, float scale) {
+			myOrigin = origin;
+			myScale = scale;
+		}
+
+		/**
+		 * @return The sampled Origin
+		 */
+		public Origin getOrigin() {
+			return myOrigin;
+		}
+
+		/**
+		 * @see ca.nengo.util.impl.LiveWatch.Source#getDimension()
+		 */
+		public int getDimension() {
+			return myOrigin.getDimensions();
+		}
+
+		/**
+		 * @see ca.nengo.util.impl.LiveWatch.Source#sample(float[])
+		 */
+		public void sample(float[] into) throws SimulationException {
+			InstantaneousOutput output = myOrigin.getValues();
+			if (output instanceof RealOutput) {
+				float[] values = ((RealOutput) output).getValues();
+				int n = Math.min(values.length, into.length);
+				for (int i = 0; i < n; i++) {
+					into[i] = values[i] * myScale;
+				}
+				zero(into, n);
+			} else if (output instanceof SpikeOutput) {
+				boolean[] values = ((SpikeOutput) output).getValues();
+				int n = Math.min(values.length, into.length);
+				for (int i = 0; i < n; i++) {
+					into[i] = values[i] ? 1f : 0f;
+				}
+				zero(into, n);
+			} else {
+				zero(into, 0);
+			}
+		}
+	}
+
+	/**
+	 * Samples the most recent value of a Probeable state variable.
+	 */
+	public static class StateSource implements Source {
+
+		private final Probeable myTarget;
+		private final String myStateName;
+		private final int myDimension;
+
+		/**
+		 * @param target Probeable to sample
+		 * @param stateName Name of the state variable to sample
+		 * @throws SimulationException if the target does not have the named state
+		 */
+		public StateSource(Probeable target, String stateName) throws SimulationException {
+			myTarget = target;
+			myStateName = stateName;
+			myDimension = target.getHistory(stateName).getDimension();
+		}
+
+		/**
+		 * @return The sampled Probeable
+		 */
+		public Probeable getTarget() {
+			return myTarget;
+		}
+
+		/**
+		 * @see ca.nengo.util.impl.LiveWatch.Source#getDimension()
+		 */
+		public int getDimension() {
+			return myDimension;
+		}
+
+		/**
+		 * @see ca.nengo.util.impl.LiveWatch.Source#sample(float[])
+		 */
+		public void sample(float[] into) throws SimulationException {
+			TimeSeries history = myTarget.getHistory(myStateName);
+			float[][] values = history.getValues();
+			if (values.length == 0) {
+				zero(into, 0);
+			} else {
+				float[] last = values[values.length - 1];
+				int n = Math.min(last.length, into.length);
+				System.arraycopy(last, 0, into, 0, n);
+				zero(into, n);
+			}
+		}
+	}
+
+	private static void zero(float[] values, int from) {
+		for (int i = from; i < values.length; i++) {
+			values[i] = 0;
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "MetricsMBean.java". Description:
+"Publishes the metrics in a MetricsRegistry as attributes of a JMX MBean"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.util.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import ca.nengo.util.MetricsRegistry;
+
+/**
+ * <p>Publishes the metrics in a MetricsRegistry as read-only attributes of a JMX MBean, so
+ * that they can be watched with jconsole or collected by a monitoring agent. Attributes are
+ * taken from a fresh snapshot each time they are read, so metrics that are added later (eg
+ * for the Probes and ensembles of the next run) appear automatically.</p>
+ *
+ * @author agent
+ */
+public class MetricsMBean implements DynamicMBean {
+
+	/**
+	 * Domain of the ObjectNames under which metrics are registered
+	 */
+	public static final String DOMAIN = "ca.nengo";
+
+	private final MetricsRegistry myRegistry;
+	private ObjectName myName;
+
+	/**
+	 * @param registry Registry to publish
+	 */
+	public MetricsMBean(MetricsRegistry registry) {
+		myRegistry = registry;
+	}
+
+	/**
+	 * Registers this MBean with the platform MBean server, as ca.nengo:type=Metrics,name=[name].
+	 *
+	 * @param name Name of the simulation (eg the Network name)
+	 * @throws JMException If the MBean can't be registered (eg the name is in use)
+	 */
+	public synchronized void register(String name) throws JMException {
+		unregister();
+		ObjectName objectName = new ObjectName(DOMAIN + ":type=Metrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		myName = objectName;
+	}
+
+	/**
+	 * Removes this MBean from the platform MBean server, if it is registered.
+	 *
+	 * @throws JMException If the MBean can't be unregistered
+	 */
+	public synchronized void unregister() throws JMException {
+		if (myName != null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(myName)) {
+				server.unregisterMBean(myName);
+			}
+			myName = null;
+		}
+	}
+
+	/**
+	 * @return Name under which this MBean is registered, or null if it isn't registered
+	 */
+	public ObjectName getObjectName() {
+		return myName;
+	}
+
+	/**
+	 * @see javax.management.DynamicMBean#getAttribute(java.lang.String)
+	 */
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		Double result = myRegistry.snapshot().get(attribute);
+		if (result == null) {
+			throw new AttributeNotFoundException("No metric named " + attribute);
+		}
+		return result;
+	}
+
+	/**
+	 * @see javax.management.DynamicMBean#getAttributes(java.lang.String[])
+	 */
+	public AttributeList getAttributes(String[] attributes) {
+		SortedMap<String, Double> snapshot = myRegistry.snapshot();
+		AttributeList result = new AttributeList();
+		for (String attribute : attributes) {
+			Double value = snapshot.get(attribute);
+			if (value != null) {
+				result.add(new Attribute(attribute, value));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @see javax.management.DynamicMBean#getMBeanInfo()
+	 */
+	public MBeanInfo getMBeanInfo() {
+		SortedMap<String, Double> snapshot = myRegistry.snapshot();
+		MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[snapshot.size()];
+		int i = 0;
+		for (Map.Entry<String, Double> entry : snapshot.entrySet()) {
+			attributes[i++] = new MBeanAttributeInfo(entry.getKey(), Double.class.getName(), entry.getKey(), true, false, false);
+		}
+		return new MBeanInfo(getClass().getName(), "Simulation metrics", attributes, null, new MBeanOperationInfo[0], null);
+	}
+
+	/**
+	 * Metrics are read-only.
+	 *
+	 * @see javax.management.DynamicMBean#setAttribute(javax.management.Attribute)
+	 */
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Metrics are read-only");
+	}
+
+	/**
+	 * Metrics are read-only, so no attributes are set.
+	 *
+	 * @see javax.management.DynamicMBean#setAttributes(javax.management.AttributeList)
+	 */
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	/**
+	 * There are no operations.
+	 *
+	 * @see javax.management.DynamicMBean#invoke(java.lang.String, java.lang.Object[], java.lang.String[])
+	 */
+	public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+		throw new ReflectionException(new NoSuchMethodException(actionName), "No operation named " + actionName);
+	}
+}
@@ -0,0 +1,151 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "MetricsReporter.java". Description:
+"Periodically writes snapshots of a MetricsRegistry to a file or a stream (eg System.out)"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.util.impl;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.log4j.Logger;
+
+import ca.nengo.util.MetricsRegistry;
+
+/**
+ * <p>Periodically writes snapshots of a MetricsRegistry to a file or a stream (eg System.out).
+ * Each snapshot is one line: the wall-clock time in milliseconds, followed by tab-separated
+ * name=value pairs. Lines are appended to files, so they can be followed with tail.</p>
+ *
+ * <p>Reports are written from a daemon thread, so a simulation only pays for them through
+ * the snapshot itself.</p>
+ *
+ * @author agent
+ */
+public class MetricsReporter {
+
+	private static Logger ourLogger = Logger.getLogger(MetricsReporter.class);
+
+	private final MetricsRegistry myRegistry;
+	private final File myFile;
+	private final PrintStream myStream;
+	private Timer myTimer;
+
+	/**
+	 * @param registry Registry to report
+	 * @param file File to which reports are appended
+	 */
+	public MetricsReporter(MetricsRegistry registry, File file) {
+		myRegistry = registry;
+		myFile = file;
+		myStream = null;
+	}
+
+	/**
+	 * @param registry Registry to report
+	 * @param stream Stream to which reports are printed (eg System.out)
+	 */
+	public MetricsReporter(MetricsRegistry registry, PrintStream stream) {
+		myRegistry = registry;
+		myFile = null;
+		myStream = stream;
+	}
+
+	/**
+	 * Starts writing reports (stopping any earlier schedule).
+	 *
+	 * @param periodMillis Time between reports (ms)
+	 */
+	public synchronized void start(long periodMillis) {
+		stop();
+		myTimer = new Timer("Metrics reporter", true);
+		myTimer.scheduleAtFixedRate(new TimerTask() {
+			public void run() {
+				try {
+					report();
+				} catch (IOException e) {
+					ourLogger.warn("Can't write metrics", e);
+				}
+			}
+		}, periodMillis, periodMillis);
+	}
+
+	/**
+	 * Stops writing reports.
+	 */
+	public synchronized void stop() {
+		if (myTimer != null) {
+			myTimer.cancel();
+			myTimer = null;
+		}
+	}
+
+	/**
+	 * @return True if reports are being written periodically
+	 */
+	public synchronized boolean isRunning() {
+		return myTimer != null;
+	}
+
+	/**
+	 * Writes a report now.
+	 *
+	 * @throws IOException If the file can't be written
+	 */
+	public void report() throws IOException {
+		String line = format(System.currentTimeMillis(), myRegistry.snapshot());
+		if (myStream != null) {
+			myStream.println(line);
+		} else {
+			PrintWriter writer = new PrintWriter(new FileWriter(myFile, true));
+			try {
+				writer.println(line);
+			} finally {
+				writer.close();
+			}
+		}
+	}
+
+	/**
+	 * @param timeMillis Wall-clock time of the snapshot
+	 * @param snapshot A snapshot of metrics
+	 * @return One-line report of the snapshot
+	 */
+	public static String format(long timeMillis, SortedMap<String, Double> snapshot) {
+		StringBuffer result = new StringBuffer();
+		result.append(timeMillis);
+		for (Map.Entry<String, Double> entry : snapshot.entrySet()) {
+			result.append('\t');
+			result.append(entry.getKey());
+			result.append('=');
+			result.append(entry.getValue());
+		}
+		return result.toString();
+	}
+}
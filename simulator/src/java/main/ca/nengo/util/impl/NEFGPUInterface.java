@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.apache.log4j.Logger;
+
 import ca.nengo.math.impl.MultiLevelKLNetworkPartitioner;
 import ca.nengo.model.Node;
 import ca.nengo.model.Origin;
@@ -34,10 +36,9 @@ import ca.nengo.model.neuron.impl.SpikingNeuron;
  * @author Eric Crawford
  */
 public class NEFGPUInterface {
-	private static boolean myUseGPU = false;
+	private static Logger ourLogger = Logger.getLogger(NEFGPUInterface.class);
+
 	private static int myNumDevices = 0;
-	private static int myNumAvailableDevices = 0;
-	private static String myErrorMessage;
 	
 	private static boolean showTiming = false;
 	private boolean myShowTiming;
@@ -65,30 +66,35 @@ public class NEFGPUInterface {
 	float[][] spikeOutput;
 	boolean[][] inputOnGPU;
 	
-	/**	Load the shared library that contains the native functions.
-	 * This is called just once, when this class is initially loaded.
-	 * 
+	/**
+	 * Loads the shared library that contains the native functions. This happens the first
+	 * time GPU devices are queried rather than when this class is loaded, so that sessions
+	 * that never simulate on the GPU don't pay for probing it.
 	 */
-	static{
-		try {
-			myErrorMessage = "";
-			System.loadLibrary("NengoGPU");
-			myNumAvailableDevices = nativeGetNumDevices();
-			
-			if(myNumAvailableDevices < 1)
-			{
-				myErrorMessage = "No CUDA-enabled GPU detected.";
-				System.out.println(myErrorMessage);
+	private static class NativeSupport {
+		static final int NUM_AVAILABLE_DEVICES;
+		static final String ERROR_MESSAGE;
+
+		static {
+			int numDevices = 0;
+			String message = "";
+			try {
+				System.loadLibrary("NengoGPU");
+				numDevices = nativeGetNumDevices();
+				if (numDevices < 1) {
+					message = "No CUDA-enabled GPU detected.";
+				}
+			} catch (UnsatisfiedLinkError e) {
+				message = "Couldn't load native library NengoGPU.";
+			} catch (Exception e) {
+				message = e.getMessage();
+				ourLogger.warn("Error initializing GPU simulation", e);
 			}
-			
-		} catch (java.lang.UnsatisfiedLinkError e) {
-			myNumAvailableDevices = 0;
-			myErrorMessage = "Couldn't load native library NengoGPU.";
-			System.out.println(myErrorMessage);
-		} catch (Exception e) {
-			myNumAvailableDevices = 0;
-			myErrorMessage = e.getMessage();
-			System.out.println(e.getStackTrace());
+			if (numDevices < 1) {
+				ourLogger.info(message);
+			}
+			NUM_AVAILABLE_DEVICES = numDevices;
+			ERROR_MESSAGE = message;
 		}
 	}
 
@@ -111,11 +117,11 @@ public class NEFGPUInterface {
     }
 
 	public static int getNumAvailableDevices(){
-		return myNumAvailableDevices;
+		return NativeSupport.NUM_AVAILABLE_DEVICES;
 	}
 	
 	public static void setRequestedNumDevices(int value){
-		myNumDevices = Math.min(Math.max(value, 0), myNumAvailableDevices);
+		myNumDevices = Math.min(Math.max(value, 0), getNumAvailableDevices());
 	}
 	
 	public static int getRequestedNumDevices(){
@@ -140,7 +146,7 @@ public class NEFGPUInterface {
 	}
 	
 	public static String getErrorMessage(){
-		return myErrorMessage;
+		return NativeSupport.ERROR_MESSAGE;
 	}
 	
 	/**
@@ -30,6 +30,7 @@ public class NodeThread extends Thread {
 	private int myEndIndexInTasks;
 
 	private boolean myCollectTimings;
+	protected Profiler myProfiler;
 
 	private double myAverageTimeOnProjectionsPerStep;
 	private double myAverageTimeOnNodesPerStep;
@@ -74,19 +75,28 @@ public class NodeThread extends Thread {
 	}
 
 	public void finished() {
+		long interval = myProfiler != null ? System.nanoTime() : 0;
 		try {
 			myNodeThreadPool.threadFinished();
 		} catch (Exception e) {
 		}
+		if (myProfiler != null) {
+			myProfiler.record(this, Profiler.Category.BARRIER, System.nanoTime() - interval);
+		}
 	}
 
 	// might have to make these protected?
 	protected void runProjections(float startTime, float endTime) throws SimulationException{
 		
 		for (int i = myStartIndexInProjections; i < myEndIndexInProjections; i++) {
+			long interval = myProfiler != null ? System.nanoTime() : 0;
 			
 			InstantaneousOutput values = myProjections[i].getOrigin().getValues();
 			myProjections[i].getTermination().setValues(values);
+			
+			if (myProfiler != null) {
+				myProfiler.record(myProjections[i], Profiler.Category.PROJECTION, System.nanoTime() - interval);
+			}
 		}
 		
 	}
@@ -95,8 +105,13 @@ public class NodeThread extends Thread {
 		
 		
 		for (int i = myStartIndexInNodes; i < myEndIndexInNodes; i++) {
+			long interval = myProfiler != null ? System.nanoTime() : 0;
 			
 			myNodes[i].run(startTime, endTime);
+			
+			if (myProfiler != null) {
+				myProfiler.record(myNodes[i], Profiler.Category.NODE, System.nanoTime() - interval);
+			}
 		}
 		
 	}
@@ -104,7 +119,14 @@ public class NodeThread extends Thread {
 	protected void runTasks(float startTime, float endTime) throws SimulationException {
 		
 		for (int i = myStartIndexInTasks; i < myEndIndexInTasks; i++) {
+			long interval = myProfiler != null ? System.nanoTime() : 0;
+			
             myTasks[i].run(startTime, endTime);
+            
+			if (myProfiler != null) {
+				myProfiler.record(myTasks[i], myTasks[i] instanceof ProbeTask ? 
+						Profiler.Category.PROBE : Profiler.Category.TASK, System.nanoTime() - interval);
+			}
         }
 	}
 	
@@ -179,6 +201,27 @@ public class NodeThread extends Thread {
 		this.myCollectTimings = myCollectTimings;
 	}
 	
+	/**
+	 * @param profiler Profiler to which the time of each projection, node, task and barrier 
+	 * 		wait is reported, or null to disable profiling
+	 */
+	public void setProfiler(Profiler profiler) {
+		myProfiler = profiler;
+		if (profiler != null) {
+			for (int i = myStartIndexInProjections; i < myEndIndexInProjections; i++) {
+				profiler.register(myProjections[i], Profiler.Category.PROJECTION);
+			}
+			for (int i = myStartIndexInNodes; i < myEndIndexInNodes; i++) {
+				profiler.register(myNodes[i], Profiler.Category.NODE);
+			}
+			for (int i = myStartIndexInTasks; i < myEndIndexInTasks; i++) {
+				profiler.register(myTasks[i], myTasks[i] instanceof ProbeTask ? 
+						Profiler.Category.PROBE : Profiler.Category.TASK);
+			}
+			profiler.register(this, Profiler.Category.BARRIER);
+		}
+	}
+	
 	public double getMyAverageTimeOnProjectionsPerStep() {
 		return myAverageTimeOnProjectionsPerStep;
 	}
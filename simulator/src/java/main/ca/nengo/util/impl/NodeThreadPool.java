@@ -11,6 +11,7 @@ import ca.nengo.model.Network;
 import ca.nengo.model.Node;
 import ca.nengo.model.Projection;
 import ca.nengo.model.impl.NetworkArrayImpl;
+import ca.nengo.sim.impl.PassthroughFusion;
 import ca.nengo.util.TaskSpawner;
 import ca.nengo.util.ThreadTask;
 
@@ -45,6 +46,9 @@ public class NodeThreadPool {
 	protected float myEndTime;
 	
 	protected static boolean myCollectTimings;
+	protected Profiler myProfiler;
+	protected PassthroughFusion myFusion;
+	protected SimulationMetrics myMetrics;
 	protected long myRunStartTime;
 	protected double myAverageTimePerStep;
 	protected int myNumSteps;
@@ -99,6 +103,19 @@ public class NodeThreadPool {
 		initialize(network, threadTasks);
 	}
 	
+	/**
+	 * @param network Network to run
+	 * @param threadTasks Tasks to run in addition to those of the Network's nodes (eg probe tasks)
+	 * @param profiler Profiler to which the time of each projection, node, task and barrier 
+	 * 		wait is reported, or null to disable profiling
+	 * @param fusion PassthroughNodes to leave out in favour of relays, or null to run all nodes
+	 */
+	public NodeThreadPool(Network network, List<ThreadTask> threadTasks, Profiler profiler, PassthroughFusion fusion){
+		myProfiler = profiler;
+		myFusion = fusion;
+		initialize(network, threadTasks);
+	}
+	
 	/**
 	 * 1. Checks whether the GPU is to be used for the simulation. If it is, creates
 	 * a GPU Thread, passes this thread the nodes and projections which are to be run on the GPU,
@@ -123,6 +140,9 @@ public class NodeThreadPool {
 		List<Projection> projList = collectProjections(nodes, projections);
 		List<ThreadTask> taskList = collectTasks(nodes);
 		taskList.addAll(threadTasks);
+		if (myFusion != null) {
+			myFusion.apply(nodeList, projList, taskList);
+		}
 		
 		myNodes = nodeList.toArray(new Node[0]);
 		myProjections = projList.toArray(new Projection[0]);
@@ -157,6 +177,7 @@ public class NodeThreadPool {
 			
 			
 			gpuThread.setCollectTimings(myCollectTimings);
+			gpuThread.setProfiler(myProfiler);
 			gpuThread.setName("GPUThread0");
 			
 			myThreads[myNumJavaThreads] = gpuThread;
@@ -205,6 +226,7 @@ public class NodeThreadPool {
 			
 			myThreads[i].setCollectTimings(myCollectTimings);
 			myThreads[i].setName("JavaThread" + i);
+			myThreads[i].setProfiler(myProfiler);
 
 			myThreads[i].setPriority(Thread.MAX_PRIORITY);
 			myThreads[i].start();
@@ -235,14 +257,25 @@ public class NodeThreadPool {
 			int oldPriority = Thread.currentThread().getPriority();
 			Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
 
+			long phaseTime = myMetrics != null ? System.nanoTime() : 0;
+
 			// start the projection processing, wait for it to finish
 			startThreads();
+			if (myMetrics != null) {
+				phaseTime = myMetrics.phase(SimulationMetrics.Phase.PROJECTIONS, phaseTime);
+			}
 
 			// start the node processing, wait for it to finish
 			startThreads();
+			if (myMetrics != null) {
+				phaseTime = myMetrics.phase(SimulationMetrics.Phase.NODES, phaseTime);
+			}
 
 			// start the task processing, wait for it to finish
 			startThreads();
+			if (myMetrics != null) {
+				myMetrics.phase(SimulationMetrics.Phase.TASKS, phaseTime);
+			}
 
 			Thread.currentThread().setPriority(oldPriority);
 		}
@@ -317,6 +350,13 @@ public class NodeThreadPool {
 		}
 	}
 
+	/**
+	 * @param metrics Metrics to which the duration of each step phase is reported, or null
+	 */
+	public void setMetrics(SimulationMetrics metrics) {
+		myMetrics = metrics;
+	}
+
 	/**
 	 * Kill the threads in the pool by interrupting them. Each thread will handle
 	 * the interrupt signal by ending its run method, which kills it.
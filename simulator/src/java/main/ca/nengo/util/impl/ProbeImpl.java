@@ -37,16 +37,22 @@ import ca.nengo.util.TimeSeries;
 /**
  * <p>Collects information from <code>Probeable</code> objects.</p> 
  * 
+ * <p>Samples are appended to fixed-size chunks that are never changed once written, so 
+ * getData() can return a TimeSeriesSnapshot that shares them, without copying.</p>
+ * 
  * @author Bryan Tripp
  */
 public class ProbeImpl implements Probe, java.io.Serializable {
 	private static final long serialVersionUID = 1L;
 	
+	private static final int CHUNK_SIZE = 4096;
+	
 	private Probeable myTarget;
 	private String myStateName;
 	private boolean myRecord;
-	private float[] myTimes;
-	private List<float[]> myValues;
+	private List<float[]> myTimeChunks;
+	private List<float[][]> myValueChunks;
+	private int myCount;
 	private Units[] myUnits;
 	private float mySamplingPeriod = -1;
 	private float myLastSampleTime = -100000;
@@ -83,8 +89,14 @@ public class ProbeImpl implements Probe, java.io.Serializable {
 	 */
 	public void reset() {
 		myUnits = null; //will be reset on first doCollect()
-		myTimes = new float[1000];
-		myValues = new ArrayList<float[]>(1000);
+		clear();
+	}
+	
+	//starts new chunks (existing ones may be shared with snapshots)
+	private void clear() {
+		myTimeChunks = new ArrayList<float[]>(10);
+		myValueChunks = new ArrayList<float[][]>(10);
+		myCount = 0;
 	}
 	
 	/**
@@ -118,18 +130,26 @@ public class ProbeImpl implements Probe, java.io.Serializable {
 		float[][] values = stepData.getValues();
 		int len = times.length;		
 		
-		if (myRecord) {
-			if (myValues.size() + len >= myTimes.length) {
-				grow();
-			}		
-			System.arraycopy(times, 0, myTimes, myValues.size(), len); //don't move this to after the values update			
+		if (!myRecord) {
+			//only the latest step is kept
+			clear();
+			float[][] latest = new float[len][];
+			System.arraycopy(values, 0, latest, 0, len);
+			myTimeChunks.add(times);
+			myValueChunks.add(latest);
+			myCount = len;
 		} else {
-			myTimes = times;
-			myValues = new ArrayList<float[]>(10);
-		}
-		
-		for (int i = 0; i < len; i++) {
-			myValues.add(values[i]);
+			for (int i = 0; i < len; i++) {
+				int offset = myCount % CHUNK_SIZE;
+				if (offset == 0) {
+					myTimeChunks.add(new float[CHUNK_SIZE]);
+					myValueChunks.add(new float[CHUNK_SIZE][]);
+				}
+				int chunk = myCount / CHUNK_SIZE;
+				myTimeChunks.get(chunk)[offset] = times[i];
+				myValueChunks.get(chunk)[offset] = values[i];
+				myCount++;
+			}
 		}
 		
 		if (myUnits == null) {
@@ -137,24 +157,30 @@ public class ProbeImpl implements Probe, java.io.Serializable {
 		}
 	}
 	
-	private void grow() {
-		float[] newTimes = new float[myTimes.length + 1000];
-		System.arraycopy(myTimes, 0, newTimes, 0, myTimes.length);
-		myTimes = newTimes;
+	/**
+	 * @return Number of samples currently held
+	 */
+	public int getSampleCount() {
+		return myCount;
 	}
-	
+
+	/**
+	 * @return Number of samples that can be held before the buffer grows
+	 */
+	public int getCapacity() {
+		return myTimeChunks.size() * CHUNK_SIZE;
+	}
+
 	/**
+	 * Returns a TimeSeriesSnapshot of the data collected so far, which shares the probe's 
+	 * storage (it isn't affected by later collection or by reset()). 
+	 * 
 	 * @see ca.nengo.util.Probe#getData()
 	 */
 	public TimeSeries getData() {
-		float[] times = new float[myValues.size()];
-		System.arraycopy(myTimes, 0, times, 0, myValues.size());
-		
-		float[][] values = myValues.toArray(new float[0][]);
-		
-		TimeSeriesImpl result = new TimeSeriesImpl(times, values, (myUnits == null) ? new Units[]{Units.UNK} : myUnits);
-		result.setName(((myTarget instanceof Node) ? ((Node) myTarget).getName()+":" : "") + myStateName);
-		return result;
+		return new TimeSeriesSnapshot(myTimeChunks.toArray(new float[0][]), myValueChunks.toArray(new float[0][][]), 
+				myCount, (myUnits == null) ? new Units[]{Units.UNK} : myUnits, 
+				((myTarget instanceof Node) ? ((Node) myTarget).getName()+":" : "") + myStateName);
 	}
 
 	/**
@@ -0,0 +1,354 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "Profiler.java". Description:
+"Collects step-time histograms for each part of a running simulation"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.util.impl;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Projection;
+import ca.nengo.util.ThreadTask;
+
+/**
+ * <p>Collects step-time histograms for each part of a running simulation: every flattened
+ * Node's run(), every Projection's transfer, every ThreadTask, every Probe collection, and
+ * the time each thread spends waiting at the NodeThreadPool barriers.</p>
+ *
+ * <p>Each entry is named by its path in the Network hierarchy (eg "Model/Sub/Ensemble"), so
+ * that times can be totalled by subnetwork. Results can be queried through getEntries()
+ * and getTotal(), printed with getReport(), or written to a file with dump().</p>
+ *
+ * <p>Entries are usually registered before the simulation threads start. Recording
+ * against an already registered key takes no locks; each key should only be recorded by
+ * one thread at a time (which is how NodeThreadPool partitions work anyway).</p>
+ *
+ * @author agent
+ */
+public class Profiler {
+
+	/**
+	 * Kinds of work that are profiled.
+	 */
+	public enum Category {
+		NODE, PROJECTION, TASK, PROBE, BARRIER
+	}
+
+	/**
+	 * Timing data for one profiled object.
+	 */
+	public static class Entry {
+
+		private final Category myCategory;
+		private final String myPath;
+		private final TimingHistogram myHistogram;
+
+		private Entry(Category category, String path) {
+			myCategory = category;
+			myPath = path;
+			myHistogram = new TimingHistogram();
+		}
+
+		/**
+		 * @return Kind of work
+		 */
+		public Category getCategory() {
+			return myCategory;
+		}
+
+		/**
+		 * @return Path of the object in the Network hierarchy
+		 */
+		public String getPath() {
+			return myPath;
+		}
+
+		/**
+		 * @return Durations of each run of the object
+		 */
+		public TimingHistogram getHistogram() {
+			return myHistogram;
+		}
+	}
+
+	private static final String SEPARATOR = "/";
+
+	private Map<Object, String> myPaths;
+	private volatile Map<Object, Entry> myEntries;
+
+	public Profiler() {
+		myPaths = new IdentityHashMap<Object, String>();
+		myEntries = new IdentityHashMap<Object, Entry>();
+	}
+
+	/**
+	 * Names the Nodes and Projections of a Network (recursively) by their paths in the
+	 * hierarchy. Previously collected data are kept.
+	 *
+	 * @param network The top-level Network to be profiled
+	 */
+	public synchronized void initialize(Network network) {
+		Map<Object, String> paths = new IdentityHashMap<Object, String>();
+		addPaths(network, network.getName(), paths);
+		myPaths = paths;
+	}
+
+	private static void addPaths(Network network, String path, Map<Object, String> paths) {
+		paths.put(network, path);
+
+		Projection[] projections = network.getProjections();
+		for (Projection projection : projections) {
+			String name = projection.getOrigin().getNode().getName() + "." + projection.getOrigin().getName()
+				+ "->" + projection.getTermination().getNode().getName() + "." + projection.getTermination().getName();
+			paths.put(projection, path + SEPARATOR + name);
+		}
+
+		Node[] nodes = network.getNodes();
+		for (Node node : nodes) {
+			String nodePath = path + SEPARATOR + node.getName();
+			if (node instanceof Network) {
+				addPaths((Network) node, nodePath, paths);
+			} else {
+				paths.put(node, nodePath);
+			}
+		}
+	}
+
+	/**
+	 * Creates an entry for an object, if there isn't one already. It is cheaper to
+	 * register objects before recording begins, but record() will register them if needed.
+	 *
+	 * @param key Object to be profiled (eg a Node, Projection, ThreadTask, or Thread)
+	 * @param category Kind of work
+	 * @return The entry for the given key
+	 */
+	public synchronized Entry register(Object key, Category category) {
+		Entry result = myEntries.get(key);
+		if (result == null) {
+			result = new Entry(category, getPath(key));
+			Map<Object, Entry> entries = new IdentityHashMap<Object, Entry>(myEntries);
+			entries.put(key, result);
+			myEntries = entries;
+		}
+		return result;
+	}
+
+	/**
+	 * @param key A profiled object
+	 * @param category Kind of work (used if the key has not been registered)
+	 * @param nanos Duration of one run of the object
+	 */
+	public void record(Object key, Category category, long nanos) {
+		Entry entry = myEntries.get(key);
+		if (entry == null) {
+			entry = register(key, category);
+		}
+		entry.myHistogram.record(nanos);
+	}
+
+	/**
+	 * Clears all collected data, keeping registrations.
+	 */
+	public synchronized void reset() {
+		for (Entry entry : myEntries.values()) {
+			entry.myHistogram.reset();
+		}
+	}
+
+	/**
+	 * @param key A profiled object
+	 * @return Its entry, or null if it has not been registered
+	 */
+	public Entry getEntry(Object key) {
+		return myEntries.get(key);
+	}
+
+	/**
+	 * @return All entries, in order of decreasing total time
+	 */
+	public Entry[] getEntries() {
+		Entry[] result = myEntries.values().toArray(new Entry[0]);
+		Arrays.sort(result, new Comparator<Entry>() {
+			public int compare(Entry a, Entry b) {
+				long ta = a.myHistogram.getTotal();
+				long tb = b.myHistogram.getTotal();
+				return ta > tb ? -1 : (ta < tb ? 1 : a.myPath.compareTo(b.myPath));
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * @param category A kind of work
+	 * @return Entries of the given kind, in order of decreasing total time
+	 */
+	public Entry[] getEntries(Category category) {
+		List<Entry> result = new ArrayList<Entry>();
+		for (Entry entry : getEntries()) {
+			if (entry.myCategory == category) {
+				result.add(entry);
+			}
+		}
+		return result.toArray(new Entry[0]);
+	}
+
+	/**
+	 * @param path A path in the Network hierarchy (eg "Model/Sub")
+	 * @return Total time (ns) spent in Nodes, Projections and Tasks at or below the given
+	 * 		path (barrier waits are not included)
+	 */
+	public long getTotal(String path) {
+		long result = 0;
+		for (Entry entry : myEntries.values()) {
+			if (entry.myCategory != Category.BARRIER && isWithin(entry.myPath, path)) {
+				result += entry.myHistogram.getTotal();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return A summary of total times, indented by Network hierarchy, followed by the
+	 * 		thread barrier waits
+	 */
+	public String getReport() {
+		Map<String, long[]> totals = new TreeMap<String, long[]>(new Comparator<String>() {
+			public int compare(String a, String b) { //keep children directly under their parents
+				return a.replace(SEPARATOR.charAt(0), '\0').compareTo(b.replace(SEPARATOR.charAt(0), '\0'));
+			}
+		});
+		List<Entry> barriers = new ArrayList<Entry>();
+		long grandTotal = 0;
+		for (Entry entry : myEntries.values()) {
+			if (entry.myCategory == Category.BARRIER) {
+				barriers.add(entry);
+				continue;
+			}
+			long total = entry.myHistogram.getTotal();
+			grandTotal += total;
+			String[] parts = entry.myPath.split(SEPARATOR);
+			StringBuffer prefix = new StringBuffer();
+			for (int i = 0; i < parts.length; i++) {
+				if (i > 0) {
+					prefix.append(SEPARATOR);
+				}
+				prefix.append(parts[i]);
+				long[] sum = totals.get(prefix.toString());
+				if (sum == null) {
+					sum = new long[1];
+					totals.put(prefix.toString(), sum);
+				}
+				sum[0] += total;
+			}
+		}
+
+		StringBuffer result = new StringBuffer();
+		result.append("Profile (total ms, % of profiled time):\n");
+		for (Map.Entry<String, long[]> total : totals.entrySet()) {
+			String path = total.getKey();
+			int depth = path.split(SEPARATOR).length - 1;
+			for (int i = 0; i < depth; i++) {
+				result.append("  ");
+			}
+			result.append(path.substring(path.lastIndexOf(SEPARATOR) + 1));
+			result.append(": ").append(format(total.getValue()[0] / 1e6));
+			result.append(" (").append(format(grandTotal == 0 ? 0 : 100.0 * total.getValue()[0] / grandTotal)).append("%)\n");
+		}
+
+		if (barriers.size() > 0) {
+			result.append("Barrier waits (total ms):\n");
+			for (Entry entry : barriers) {
+				result.append("  ").append(entry.myPath).append(": ");
+				result.append(format(entry.myHistogram.getTotal() / 1e6)).append("\n");
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Writes one tab-delimited line per entry, with times in microseconds.
+	 *
+	 * @param file Destination file
+	 * @throws IOException if the file can't be written
+	 */
+	public void dump(File file) throws IOException {
+		PrintWriter writer = new PrintWriter(new FileWriter(file));
+		try {
+			writer.println("category\tpath\tcount\ttotal\tmean\tmin\tp50\tp90\tp99\tmax");
+			for (Entry entry : getEntries()) {
+				TimingHistogram h = entry.myHistogram;
+				writer.print(entry.myCategory + "\t" + entry.myPath + "\t" + h.getCount());
+				writer.print("\t" + format(h.getTotal() / 1e3) + "\t" + format(h.getMean() / 1e3));
+				writer.print("\t" + format(h.getMin() / 1e3) + "\t" + format(h.getPercentile(.5) / 1e3));
+				writer.print("\t" + format(h.getPercentile(.9) / 1e3) + "\t" + format(h.getPercentile(.99) / 1e3));
+				writer.println("\t" + format(h.getMax() / 1e3));
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private String getPath(Object key) {
+		String path = myPaths.get(key);
+		if (path != null) {
+			return path;
+		}
+
+		if (key instanceof ProbeTask) {
+			Object parent = ((ProbeTask) key).getParent();
+			String parentPath = myPaths.get(parent);
+			return (parentPath != null ? parentPath : String.valueOf(parent)) + SEPARATOR + "probe";
+		} else if (key instanceof LearningTask) {
+			String parentPath = myPaths.get(((LearningTask) key).getParent());
+			if (parentPath != null) {
+				return parentPath + SEPARATOR + "learning";
+			}
+		} else if (key instanceof Thread) {
+			return ((Thread) key).getName();
+		} else if (key instanceof Node) {
+			return ((Node) key).getName();
+		} else if (key instanceof ThreadTask) {
+			return key.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(key));
+		}
+		return String.valueOf(key);
+	}
+
+	private static boolean isWithin(String path, String ancestor) {
+		return path.equals(ancestor) || path.startsWith(ancestor + SEPARATOR);
+	}
+
+	private static String format(double value) {
+		return String.valueOf(Math.round(value * 1000) / 1000.0);
+	}
+}
@@ -0,0 +1,150 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "SampleRingBuffer.java". Description:
+"A fixed-capacity ring of float frames, indexed by a monotonically increasing tick number"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.util.impl;
+
+/**
+ * <p>A fixed-capacity ring of float frames, indexed by a monotonically increasing tick
+ * number.</p>
+ *
+ * <p>The buffer is written by a single thread (normally a simulation thread) and can be
+ * read concurrently by any number of other threads without locking. A reader copies a
+ * frame and then checks that the writer has not lapped it in the meantime; if it has,
+ * the read fails and the caller treats the sample as no longer available.</p>
+ *
+ * @author agent
+ */
+public class SampleRingBuffer {
+
+	private final int myDimension;
+	private final int myCapacity;
+	private final float[] myData;
+	private final long[] myTicks;
+
+	/**
+	 * Tick of the most recently completed write, or -1 if the buffer is empty. Written
+	 * after the frame data so that readers never observe a half-written frame as current.
+	 */
+	private volatile long myNewestTick;
+	private volatile long myOldestTick;
+
+	/**
+	 * @param dimension Number of values per frame
+	 * @param capacity Maximum number of frames retained
+	 */
+	public SampleRingBuffer(int dimension, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be at least 1");
+		}
+		myDimension = dimension;
+		myCapacity = capacity;
+		myData = new float[dimension * capacity];
+		myTicks = new long[capacity];
+		clear();
+	}
+
+	/**
+	 * @return Number of values per frame
+	 */
+	public int getDimension() {
+		return myDimension;
+	}
+
+	/**
+	 * @return Maximum number of frames retained
+	 */
+	public int getCapacity() {
+		return myCapacity;
+	}
+
+	/**
+	 * @return Tick of the most recent frame, or -1 if there are none
+	 */
+	public long getNewestTick() {
+		return myNewestTick;
+	}
+
+	/**
+	 * @return Tick of the oldest frame still retained, or -1 if there are none
+	 */
+	public long getOldestTick() {
+		return myNewestTick < 0 ? -1 : myOldestTick;
+	}
+
+	/**
+	 * Discards all frames. Must not be called concurrently with write().
+	 */
+	public void clear() {
+		myNewestTick = -1;
+		myOldestTick = -1;
+		for (int i = 0; i < myCapacity; i++) {
+			myTicks[i] = -1;
+		}
+	}
+
+	/**
+	 * Stores a frame. Ticks must be written in contiguous increasing order (callers
+	 * that decimate their source should number the retained frames, not the steps).
+	 *
+	 * @param tick Tick number of the frame
+	 * @param frame Frame values (only the first getDimension() are used)
+	 */
+	public void write(long tick, float[] frame) {
+		int slot = (int) (tick % myCapacity);
+		myTicks[slot] = -1; //invalidate while the slot is being overwritten
+		System.arraycopy(frame, 0, myData, slot * myDimension, myDimension);
+		myTicks[slot] = tick;
+
+		if (myNewestTick < 0) {
+			myOldestTick = tick;
+		} else if (tick - myOldestTick >= myCapacity) {
+			myOldestTick = tick - myCapacity + 1;
+		}
+		myNewestTick = tick;
+	}
+
+	/**
+	 * Copies a frame out of the buffer.
+	 *
+	 * @param tick Tick number of the requested frame
+	 * @param into Destination array of length at least getDimension()
+	 * @return True if the frame was available and copied intact, false if it was never
+	 * 		written, has been overwritten, or was overwritten while being copied
+	 */
+	public boolean read(long tick, float[] into) {
+		if (tick < 0 || tick > myNewestTick) {
+			return false;
+		}
+
+		int slot = (int) (tick % myCapacity);
+		if (myTicks[slot] != tick) {
+			return false;
+		}
+		System.arraycopy(myData, slot * myDimension, into, 0, myDimension);
+
+		//the writer may have lapped us during the copy
+		long newest = myNewestTick;
+		return newest - tick < myCapacity && myTicks[slot] == tick;
+	}
+}
@@ -0,0 +1,341 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "SimulationMetrics.java". Description:
+"Runtime metrics of a running simulation, published through a MetricsRegistry"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.util.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import ca.nengo.model.Network;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.StructuralException;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.util.MetricsRegistry;
+import ca.nengo.util.Probe;
+
+/**
+ * <p>Runtime metrics of a running simulation, published through a MetricsRegistry. A
+ * LocalSimulator feeds these (see LocalSimulator.setMetrics()) during top-level runs:</p>
+ * <ul>
+ * <li>simulation.steps, simulation.time: steps taken and simulation time reached in the current run</li>
+ * <li>simulation.stepsPerSecond, simulation.realTimeRatio: recent step rate, and simulation
+ * 		time per unit of wall-clock time (&gt;1 is faster than real time)</li>
+ * <li>phase.projections, phase.nodes, phase.tasks: timers of each step phase</li>
+ * <li>memory.allocatedBytes, memory.allocationRate: bytes allocated by all live threads since
+ * 		the run started, and the mean rate (bytes/s); -1 if the JVM doesn't count allocations</li>
+ * <li>probe.[path].samples, probe.[path].occupancy: samples held by each Probe, and the fraction
+ * 		of its buffer that is in use</li>
+ * <li>ensemble.[path].rate: recent mean firing rate of each NEFEnsemble's neurons (spikes/s)</li>
+ * </ul>
+ *
+ * <p>On the simulation thread, each step costs a few calls to System.nanoTime() and one pass
+ * over the activities of each ensemble. Everything else is computed when a snapshot is taken.</p>
+ *
+ * @author agent
+ */
+public class SimulationMetrics {
+
+	private static Logger ourLogger = Logger.getLogger(SimulationMetrics.class);
+
+	private static ThreadMXBean ourThreadBean;
+	private static Method ourAllocatedBytesMethod;
+
+	/**
+	 * Phases of a simulation step.
+	 */
+	public enum Phase {
+		PROJECTIONS, NODES, TASKS
+	}
+
+	private static final double NANOS_PER_SECOND = 1e9;
+
+	private final MetricsRegistry myRegistry;
+	private final MetricsRegistry.Timer[] myPhaseTimers;
+	private final MetricsRegistry.Counter mySteps;
+	private float mySmoothing;
+
+	private volatile float myTime;
+	private volatile float myStartTime;
+	private volatile double myStepNanos; //smoothed wall time per step
+	private volatile double myStepSize; //smoothed simulation time per step
+	private long myLastStepNanos;
+	private volatile long myStartNanos;
+	private volatile long myStartAllocated;
+
+	private DecodedOrigin[] myOrigins;
+	private volatile float[] myRates;
+
+	public SimulationMetrics() {
+		this(new MetricsRegistry());
+	}
+
+	/**
+	 * @param registry Registry in which to publish metrics
+	 */
+	public SimulationMetrics(MetricsRegistry registry) {
+		myRegistry = registry;
+		mySmoothing = .01f;
+
+		Phase[] phases = Phase.values();
+		myPhaseTimers = new MetricsRegistry.Timer[phases.length];
+		for (int i = 0; i < phases.length; i++) {
+			myPhaseTimers[i] = registry.timer("phase." + phases[i].name().toLowerCase());
+		}
+		mySteps = registry.counter("simulation.steps");
+
+		registry.gauge("simulation.time", new MetricsRegistry.Gauge() {
+			public double getValue() {
+				return myTime;
+			}
+		});
+		registry.gauge("simulation.stepsPerSecond", new MetricsRegistry.Gauge() {
+			public double getValue() {
+				return myStepNanos > 0 ? NANOS_PER_SECOND / myStepNanos : Double.NaN;
+			}
+		});
+		registry.gauge("simulation.realTimeRatio", new MetricsRegistry.Gauge() {
+			public double getValue() {
+				return myStepNanos > 0 ? myStepSize * NANOS_PER_SECOND / myStepNanos : Double.NaN;
+			}
+		});
+		registry.gauge("memory.allocatedBytes", new MetricsRegistry.Gauge() {
+			public double getValue() {
+				long allocated = getAllocatedBytes();
+				return allocated < 0 ? -1 : Math.max(0, allocated - myStartAllocated);
+			}
+		});
+		registry.gauge("memory.allocationRate", new MetricsRegistry.Gauge() {
+			public double getValue() {
+				long allocated = getAllocatedBytes();
+				double elapsed = (System.nanoTime() - myStartNanos) / NANOS_PER_SECOND;
+				if (allocated < 0) {
+					return -1;
+				}
+				return elapsed > 0 ? Math.max(0, allocated - myStartAllocated) / elapsed : Double.NaN;
+			}
+		});
+
+		myOrigins = new DecodedOrigin[0];
+		myRates = new float[0];
+	}
+
+	/**
+	 * @return Registry in which metrics are published
+	 */
+	public MetricsRegistry getRegistry() {
+		return myRegistry;
+	}
+
+	/**
+	 * @return Weight of each new step in the smoothed step rate and firing rates
+	 */
+	public float getSmoothing() {
+		return mySmoothing;
+	}
+
+	/**
+	 * @param smoothing Weight of each new step in the smoothed step rate and firing rates
+	 * 		(between 0 and 1; default .01)
+	 */
+	public void setSmoothing(float smoothing) {
+		mySmoothing = smoothing;
+	}
+
+	/**
+	 * Resets metrics, and registers Probe and ensemble metrics for the given Network.
+	 *
+	 * @param network Network that is about to run
+	 * @param startTime Simulation time at which the run starts
+	 */
+	public void start(Network network, float startTime) {
+		myRegistry.reset();
+		myRegistry.removeAll("probe.");
+		myRegistry.removeAll("ensemble.");
+
+		List<DecodedOrigin> origins = new ArrayList<DecodedOrigin>();
+		addMetrics(network, network.getName(), origins);
+		myOrigins = origins.toArray(new DecodedOrigin[0]);
+		myRates = new float[myOrigins.length];
+		for (int i = 0; i < myRates.length; i++) {
+			myRates[i] = Float.NaN;
+		}
+
+		myStartTime = startTime;
+		myTime = startTime;
+		myStepNanos = 0;
+		myStepSize = 0;
+		myStartAllocated = Math.max(0, getAllocatedBytes());
+		myStartNanos = System.nanoTime();
+		myLastStepNanos = myStartNanos;
+	}
+
+	/**
+	 * Records the duration of a phase. Usage:
+	 * <code>long t = System.nanoTime(); ...; t = metrics.phase(Phase.NODES, t); ...</code>
+	 *
+	 * @param phase A step phase
+	 * @param startNanos System.nanoTime() at the start of the phase
+	 * @return System.nanoTime() at the end of the phase
+	 */
+	public long phase(Phase phase, long startNanos) {
+		long now = System.nanoTime();
+		myPhaseTimers[phase.ordinal()].record(now - startNanos);
+		return now;
+	}
+
+	/**
+	 * Records the end of a step.
+	 *
+	 * @param time Simulation time at the end of the step
+	 */
+	public void step(float time) {
+		long now = System.nanoTime();
+		double nanos = now - myLastStepNanos;
+		double size = time - myTime;
+		myLastStepNanos = now;
+		myTime = time;
+
+		if (mySteps.getCount() == 0) {
+			myStepNanos = nanos;
+			myStepSize = size;
+		} else {
+			myStepNanos += mySmoothing * (nanos - myStepNanos);
+			myStepSize += mySmoothing * (size - myStepSize);
+		}
+		mySteps.increment();
+
+		for (int i = 0; i < myOrigins.length; i++) {
+			float[] activities = myOrigins[i].getActivities();
+			if (activities != null && activities.length > 0) {
+				float sum = 0;
+				for (int j = 0; j < activities.length; j++) {
+					sum += activities[j];
+				}
+				float rate = sum / activities.length;
+				myRates[i] = Float.isNaN(myRates[i]) ? rate : myRates[i] + mySmoothing * (rate - myRates[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return Simulation time elapsed since the start of the run
+	 */
+	public float getElapsedTime() {
+		return myTime - myStartTime;
+	}
+
+	private void addMetrics(Network network, String path, List<DecodedOrigin> origins) {
+		Probe[] probes = network.getSimulator().getProbes();
+		for (Probe probe : probes) {
+			if (probe instanceof ProbeImpl) {
+				String target = (probe.getTarget() instanceof Node) ? ((Node) probe.getTarget()).getName() : "?";
+				addProbeMetrics((ProbeImpl) probe, "probe." + path + "." + target + ":" + probe.getStateName());
+			}
+		}
+
+		Node[] nodes = network.getNodes();
+		for (Node node : nodes) {
+			String nodePath = path + "." + node.getName();
+			if (node instanceof Network) {
+				addMetrics((Network) node, nodePath, origins);
+			} else if (node instanceof NEFEnsemble) {
+				try {
+					Origin origin = node.getOrigin(NEFEnsemble.X);
+					if (origin instanceof DecodedOrigin) {
+						addRateMetric(origins.size(), "ensemble." + nodePath + ".rate");
+						origins.add((DecodedOrigin) origin);
+					}
+				} catch (StructuralException e) {
+					ourLogger.debug("No X origin on " + nodePath, e);
+				}
+			}
+		}
+	}
+
+	private void addProbeMetrics(final ProbeImpl probe, String name) {
+		myRegistry.gauge(name + ".samples", new MetricsRegistry.Gauge() {
+			public double getValue() {
+				return probe.getSampleCount();
+			}
+		});
+		myRegistry.gauge(name + ".occupancy", new MetricsRegistry.Gauge() {
+			public double getValue() {
+				return (double) probe.getSampleCount() / (double) probe.getCapacity();
+			}
+		});
+	}
+
+	private void addRateMetric(final int index, String name) {
+		myRegistry.gauge(name, new MetricsRegistry.Gauge() {
+			public double getValue() {
+				float[] rates = myRates;
+				return index < rates.length ? rates[index] : Double.NaN;
+			}
+		});
+	}
+
+	/**
+	 * @return Bytes allocated so far by all live threads, or -1 if the JVM doesn't count
+	 * 		allocations (this relies on com.sun.management.ThreadMXBean, which is looked up
+	 * 		reflectively)
+	 */
+	public static long getAllocatedBytes() {
+		if (ourAllocatedBytesMethod == null) {
+			return -1;
+		}
+		try {
+			long[] ids = ourThreadBean.getAllThreadIds();
+			long[] allocated = (long[]) ourAllocatedBytesMethod.invoke(ourThreadBean, new Object[]{ids});
+			long result = 0;
+			for (long bytes : allocated) {
+				if (bytes > 0) {
+					result += bytes;
+				}
+			}
+			return result;
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+	static {
+		try {
+			ourThreadBean = ManagementFactory.getThreadMXBean();
+			Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+			if (type.isInstance(ourThreadBean)
+					&& ((Boolean) type.getMethod("isThreadAllocatedMemoryEnabled").invoke(ourThreadBean)).booleanValue()) {
+				ourAllocatedBytesMethod = type.getMethod("getThreadAllocatedBytes", long[].class);
+			}
+		} catch (Exception e) {
+			ourLogger.debug("Thread allocation counts are not available", e);
+		}
+	}
+}
@@ -31,7 +31,15 @@ import ca.nengo.util.MU;
 import ca.nengo.util.SpikePattern;
 
 /**
- * Default implementation of SpikePattern. 
+ * <p>Default implementation of SpikePattern.</p>
+ * 
+ * <p>Each neuron's spikes are kept in the order in which they were added, which is normally 
+ * the order of time. Views of a window of time (eg a raster plot of the last second of a long 
+ * run) can therefore find the spikes they need by binary search, through getSpikeTimes(int, float, float), 
+ * getSpikeTimes(int, int, float, float), and getSpikeCounts(...), rather than copying and scanning 
+ * each neuron's whole history. Views that follow a running simulation can use a Cursor to get 
+ * only the spikes added since they last looked. (Neurons whose spikes were added out of order 
+ * are found by a linear scan instead.)</p>
  * 
  * @author Bryan Tripp
  */
@@ -41,12 +49,15 @@ public class SpikePatternImpl implements SpikePattern {
 	
 	int[] myIndices;
 	float[][] mySpikeTimes;
+	private boolean myFrozen;
+	private boolean[] myUnordered; //true for neurons with spikes that were added out of order of time
 	
 	/**
 	 * @param neurons Number of neurons in the Ensemble that this SpikePattern belongs to
 	 */
 	public SpikePatternImpl(int neurons) {
 		myIndices = new int[neurons];
+		myUnordered = new boolean[neurons];
 		
 		mySpikeTimes = new float[neurons][];		
 		for (int i = 0; i < neurons; i++) {
@@ -59,9 +70,15 @@ public class SpikePatternImpl implements SpikePattern {
 	 * @param time Spike time
 	 */
 	public void addSpike(int neuron, float time) {
+		if (myFrozen) {
+			throw new IllegalStateException("Spikes can't be added to a snapshot");
+		}
 		if (myIndices[neuron] == mySpikeTimes[neuron].length) {
 			mySpikeTimes[neuron] = expand(mySpikeTimes[neuron]);
 		}
+		if (myIndices[neuron] > 0 && time < mySpikeTimes[neuron][myIndices[neuron]-1]) {
+			getUnordered()[neuron] = true;
+		}
 		
 		mySpikeTimes[neuron][myIndices[neuron]++] = time;
 	}
@@ -77,7 +94,213 @@ public class SpikePatternImpl implements SpikePattern {
 	 * @see ca.nengo.util.SpikePattern#getSpikeTimes(int)
 	 */
 	public float[] getSpikeTimes(int neuron) {
-		return contract(mySpikeTimes[neuron], myIndices[neuron]);
+		int count = myIndices[neuron];
+		return contract(mySpikeTimes[neuron], count);
+	}
+
+	/**
+	 * @param neuron Index of a neuron
+	 * @return Number of times the neuron has spiked
+	 */
+	public int getSpikeCount(int neuron) {
+		return myIndices[neuron];
+	}
+
+	/**
+	 * @param neuron Index of a neuron
+	 * @param startTime Start of a window of time
+	 * @param endTime End of the window
+	 * @return Times at which the neuron spiked in [startTime, endTime), in the order in which 
+	 * 		they were added
+	 */
+	public float[] getSpikeTimes(int neuron, float startTime, float endTime) {
+		int count = myIndices[neuron];
+		float[] spikes = mySpikeTimes[neuron];
+
+		if (getUnordered()[neuron]) {
+			float[] result = new float[count];
+			int n = 0;
+			for (int i = 0; i < count; i++) {
+				if (spikes[i] >= startTime && spikes[i] < endTime) {
+					result[n++] = spikes[i];
+				}
+			}
+			return contract(result, n);
+		}
+
+		int first = firstIndex(spikes, count, startTime);
+		int end = firstIndex(spikes, count, endTime);
+		float[] result = new float[Math.max(0, end - first)];
+		System.arraycopy(spikes, first, result, 0, result.length);
+		return result;
+	}
+
+	/**
+	 * @param firstNeuron Index of the first neuron of interest
+	 * @param endNeuron One more than the index of the last neuron of interest
+	 * @param startTime Start of a window of time
+	 * @param endTime End of the window
+	 * @return Times at which each neuron in [firstNeuron, endNeuron) spiked in [startTime, endTime)
+	 */
+	public float[][] getSpikeTimes(int firstNeuron, int endNeuron, float startTime, float endTime) {
+		float[][] result = new float[endNeuron - firstNeuron][];
+		for (int i = firstNeuron; i < endNeuron; i++) {
+			result[i - firstNeuron] = getSpikeTimes(i, startTime, endTime);
+		}
+		return result;
+	}
+
+	/**
+	 * Counts spikes in consecutive bins of time (eg for maps of firing rates). 
+	 * 
+	 * @param firstNeuron Index of the first neuron of interest
+	 * @param endNeuron One more than the index of the last neuron of interest
+	 * @param startTime Start of the first bin
+	 * @param binWidth Width of each bin
+	 * @param numBins Number of bins
+	 * @return Number of spikes of each neuron in [firstNeuron, endNeuron) (first index) in each 
+	 * 		bin (second index), where bin b covers [startTime + b*binWidth, startTime + (b+1)*binWidth)  
+	 */
+	public int[][] getSpikeCounts(int firstNeuron, int endNeuron, float startTime, float binWidth, int numBins) {
+		if (binWidth <= 0) {
+			throw new IllegalArgumentException("Bin width must be positive");
+		}
+		float endTime = startTime + numBins * binWidth;
+		int[][] result = new int[endNeuron - firstNeuron][numBins];
+		for (int i = firstNeuron; i < endNeuron; i++) {
+			int count = myIndices[i];
+			float[] spikes = mySpikeTimes[i];
+			boolean unordered = getUnordered()[i];
+			int first = unordered ? 0 : firstIndex(spikes, count, startTime);
+			for (int j = first; j < count; j++) {
+				float time = spikes[j];
+				if (time >= endTime) {
+					if (unordered) {
+						continue;
+					}
+					break;
+				}
+				if (time >= startTime) {
+					int bin = Math.min(numBins - 1, (int) ((time - startTime) / binWidth));
+					result[i - firstNeuron][bin]++;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return Time of the earliest spike (or NaN if there are none)
+	 */
+	public float getStartTime() {
+		float result = Float.NaN;
+		for (int i = 0; i < myIndices.length; i++) {
+			int count = myIndices[i];
+			float[] spikes = mySpikeTimes[i];
+			int n = getUnordered()[i] ? count : Math.min(1, count);
+			for (int j = 0; j < n; j++) {
+				if (!(spikes[j] >= result)) {
+					result = spikes[j];
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return Time of the latest spike (or NaN if there are none)
+	 */
+	public float getEndTime() {
+		float result = Float.NaN;
+		for (int i = 0; i < myIndices.length; i++) {
+			int count = myIndices[i];
+			float[] spikes = mySpikeTimes[i];
+			int first = getUnordered()[i] ? 0 : Math.max(0, count - 1);
+			for (int j = first; j < count; j++) {
+				if (!(spikes[j] <= result)) {
+					result = spikes[j];
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param firstNeuron Index of the first neuron of interest
+	 * @param endNeuron One more than the index of the last neuron of interest
+	 * @return A Cursor that starts with the spikes that these neurons have now
+	 */
+	public Cursor newCursor(int firstNeuron, int endNeuron) {
+		return new Cursor(firstNeuron, endNeuron);
+	}
+
+	/**
+	 * Follows a range of neurons in a SpikePatternImpl as spikes are added to it, returning 
+	 * each spike once. 
+	 */
+	public class Cursor {
+
+		private final int myFirstNeuron;
+		private final int[] myPositions;
+
+		private Cursor(int firstNeuron, int endNeuron) {
+			myFirstNeuron = firstNeuron;
+			myPositions = new int[endNeuron - firstNeuron];
+		}
+
+		/**
+		 * @return Times of the spikes of each neuron in the cursor's range that have been added 
+		 * 		since the last call (or, the first time, all of them)
+		 */
+		public float[][] getNewSpikeTimes() {
+			float[][] result = new float[myPositions.length][];
+			for (int i = 0; i < myPositions.length; i++) {
+				int neuron = myFirstNeuron + i;
+				int count = myIndices[neuron];
+				float[] spikes = mySpikeTimes[neuron];
+				result[i] = new float[count - myPositions[i]];
+				System.arraycopy(spikes, myPositions[i], result[i], 0, result[i].length);
+				myPositions[i] = count;
+			}
+			return result;
+		}
+
+		/**
+		 * Skips the spikes that have been added so far. 
+		 */
+		public void skipToEnd() {
+			for (int i = 0; i < myPositions.length; i++) {
+				myPositions[i] = myIndices[myFirstNeuron + i];
+			}
+		}
+	}
+
+	//index of first of the first count spikes at or after the given time
+	private static int firstIndex(float[] spikes, int count, float time) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (spikes[mid] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	//patterns serialized before spike order was tracked are checked when first queried
+	private boolean[] getUnordered() {
+		if (myUnordered == null) {
+			myUnordered = new boolean[myIndices.length];
+			for (int i = 0; i < myIndices.length; i++) {
+				for (int j = 1; j < myIndices[i] && !myUnordered[i]; j++) {
+					myUnordered[i] = mySpikeTimes[i][j] < mySpikeTimes[i][j-1];
+				}
+			}
+		}
+		return myUnordered;
 	}
 	
 	private static float[] expand(float[] list) {
@@ -92,11 +315,53 @@ public class SpikePatternImpl implements SpikePattern {
 		return result;
 	}
 
+	/**
+	 * Spikes are only ever appended (and arrays that fill up are replaced rather than changed), 
+	 * so a snapshot can share this pattern's arrays, and costs only a copy of the spike count 
+	 * of each neuron. 
+	 * 
+	 * @return An unchangeable copy of this pattern as it is now, which isn't affected by spikes 
+	 * 		added later 
+	 */
+	public SpikePattern snapshot() {
+		SpikePatternImpl result = new SpikePatternImpl(0);
+		result.myIndices = myIndices.clone();
+		result.mySpikeTimes = mySpikeTimes.clone();
+		result.myUnordered = getUnordered().clone();
+		result.myFrozen = true;
+		return result;
+	}
+
+	/**
+	 * Like a snapshot, the subset shares this pattern's arrays, so it costs a copy of the spike 
+	 * count of each of the selected neurons. 
+	 * 
+	 * @param indices Indices of neurons in this pattern
+	 * @return An unchangeable pattern of the spikes of the given neurons as they are now, with 
+	 * 		neuron i of the result being neuron indices[i] of this pattern
+	 */
+	public SpikePattern subset(int[] indices) {
+		SpikePatternImpl result = new SpikePatternImpl(0);
+		result.myIndices = new int[indices.length];
+		result.mySpikeTimes = new float[indices.length][];
+		result.myUnordered = new boolean[indices.length];
+		boolean[] unordered = getUnordered();
+		for (int i = 0; i < indices.length; i++) {
+			result.myIndices[i] = myIndices[indices[i]];
+			result.mySpikeTimes[i] = mySpikeTimes[indices[i]];
+			result.myUnordered[i] = unordered[indices[i]];
+		}
+		result.myFrozen = true;
+		return result;
+	}
+
 	@Override
 	public SpikePattern clone() throws CloneNotSupportedException {
 		SpikePatternImpl result = (SpikePatternImpl) super.clone();
 		result.myIndices = myIndices.clone();
 		result.mySpikeTimes = MU.clone(mySpikeTimes);
+		result.myUnordered = getUnordered().clone();
+		result.myFrozen = false;
 		return result;
 	}
 
@@ -0,0 +1,235 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "TimeSeriesSnapshot.java". Description:
+"An immutable view of the samples a Probe had recorded when the view was taken"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.util.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+
+import ca.nengo.model.Units;
+import ca.nengo.util.TimeSeries;
+
+/**
+ * <p>An immutable view of the samples a Probe had recorded when the view was taken. The view
+ * shares the Probe's storage rather than copying it. Probes only ever append samples, into
+ * fixed-size chunks, so the samples a snapshot covers never change, and taking a snapshot costs
+ * one reference per chunk. The arrays returned by getTimes() and getValues() are assembled the
+ * first time they are asked for.</p>
+ *
+ * <p>A snapshot that is kept for a long time (eg results of earlier simulations in the UI) can
+ * be spilled to a temporary file, which releases its memory. It is read back the next time its
+ * samples are asked for.</p>
+ *
+ * @author agent
+ */
+public class TimeSeriesSnapshot implements TimeSeries {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int myCount;
+	private final Units[] myUnits;
+	private final String myName;
+
+	private transient float[][] myTimeChunks;
+	private transient float[][][] myValueChunks;
+	private transient float[] myTimes;
+	private transient float[][] myValues;
+	private transient File mySpillFile;
+
+	/**
+	 * @param timeChunks Chunks of sample times (all but the last are full)
+	 * @param valueChunks Chunks of sample values, parallel to timeChunks
+	 * @param count Number of samples in the snapshot
+	 * @param units Units of each dimension
+	 * @param name Name of the series
+	 */
+	TimeSeriesSnapshot(float[][] timeChunks, float[][][] valueChunks, int count, Units[] units, String name) {
+		myTimeChunks = timeChunks;
+		myValueChunks = valueChunks;
+		myCount = count;
+		myUnits = units;
+		myName = name;
+	}
+
+	/**
+	 * @see ca.nengo.util.TimeSeries#getName()
+	 */
+	public String getName() {
+		return myName;
+	}
+
+	/**
+	 * @see ca.nengo.util.TimeSeries#getTimes()
+	 */
+	public synchronized float[] getTimes() {
+		load();
+		return myTimes;
+	}
+
+	/**
+	 * @see ca.nengo.util.TimeSeries#getValues()
+	 */
+	public synchronized float[][] getValues() {
+		load();
+		return myValues;
+	}
+
+	/**
+	 * @see ca.nengo.util.TimeSeries#getDimension()
+	 */
+	public int getDimension() {
+		return myUnits.length;
+	}
+
+	/**
+	 * @see ca.nengo.util.TimeSeries#getUnits()
+	 */
+	public Units[] getUnits() {
+		return myUnits.clone();
+	}
+
+	/**
+	 * @see ca.nengo.util.TimeSeries#getLabels()
+	 */
+	public String[] getLabels() {
+		String[] result = new String[myUnits.length];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = String.valueOf(i+1);
+		}
+		return result;
+	}
+
+	/**
+	 * @return Number of samples
+	 */
+	public int getLength() {
+		return myCount;
+	}
+
+	/**
+	 * @return True if the samples are currently held in a file rather than in memory
+	 */
+	public synchronized boolean isSpilled() {
+		return mySpillFile != null;
+	}
+
+	/**
+	 * Writes the samples to a temporary file and releases them from memory. (Memory that is
+	 * shared with the Probe or with other snapshots is only freed once they have released it
+	 * too.)
+	 *
+	 * @throws IOException If the file can't be written
+	 */
+	public synchronized void spill() throws IOException {
+		if (mySpillFile != null) {
+			return;
+		}
+		load();
+
+		File file = File.createTempFile("nengo-probe", ".dat");
+		file.deleteOnExit();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			for (int i = 0; i < myCount; i++) {
+				out.writeFloat(myTimes[i]);
+				float[] row = myValues[i];
+				out.writeInt(row.length);
+				for (float value : row) {
+					out.writeFloat(value);
+				}
+			}
+		} finally {
+			out.close();
+		}
+
+		mySpillFile = file;
+		myTimes = null;
+		myValues = null;
+	}
+
+	private void load() {
+		if (myTimes != null) {
+			return;
+		}
+
+		float[] times = new float[myCount];
+		float[][] values = new float[myCount][];
+		if (mySpillFile != null) {
+			try {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mySpillFile)));
+				try {
+					for (int i = 0; i < myCount; i++) {
+						times[i] = in.readFloat();
+						values[i] = new float[in.readInt()];
+						for (int j = 0; j < values[i].length; j++) {
+							values[i][j] = in.readFloat();
+						}
+					}
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException("Can't read spilled probe data from " + mySpillFile, e);
+			}
+			mySpillFile.delete();
+			mySpillFile = null;
+		} else {
+			int offset = 0;
+			for (int c = 0; offset < myCount; c++) {
+				int length = Math.min(myTimeChunks[c].length, myCount - offset);
+				System.arraycopy(myTimeChunks[c], 0, times, offset, length);
+				System.arraycopy(myValueChunks[c], 0, values, offset, length);
+				offset += length;
+			}
+			myTimeChunks = null;
+			myValueChunks = null;
+		}
+		myTimes = times;
+		myValues = values;
+	}
+
+	/**
+	 * @see ca.nengo.util.TimeSeries#clone()
+	 */
+	@Override
+	public TimeSeries clone() throws CloneNotSupportedException {
+		TimeSeriesImpl result = new TimeSeriesImpl(getTimes().clone(), getValues().clone(), getUnits(), getLabels());
+		result.setName(myName);
+		return result;
+	}
+
+	//serialized as an ordinary TimeSeries
+	private Object writeReplace() throws ObjectStreamException {
+		TimeSeriesImpl result = new TimeSeriesImpl(getTimes(), getValues(), getUnits(), getLabels());
+		result.setName(myName);
+		return result;
+	}
+}
@@ -0,0 +1,169 @@
+/*
+The contents of this file are subject to the Mozilla Public License Version 1.1
+(the "License"); you may not use this file except in compliance with the License.
+You may obtain a copy of the License at http://www.mozilla.org/MPL/
+
+Software distributed under the License is distributed on an "AS IS" basis, WITHOUT
+WARRANTY OF ANY KIND, either express or implied. See the License for the specific
+language governing rights and limitations under the License.
+
+The Original Code is "TimingHistogram.java". Description:
+"A compact histogram of durations in nanoseconds, with logarithmic bins"
+
+The Initial Developer of the Original Code is Bryan Tripp & Centre for Theoretical Neuroscience, University of Waterloo. Copyright (C) 2006-2008. All Rights Reserved.
+
+Alternatively, the contents of this file may be used under the terms of the GNU
+Public License license (the GPL License), in which case the provisions of GPL
+License are applicable  instead of those above. If you wish to allow use of your
+version of this file only under the terms of the GPL License and not to allow
+others to use your version of this file under the MPL, indicate your decision
+by deleting the provisions above and replace  them with the notice and other
+provisions required by the GPL License.  If you do not delete the provisions above,
+a recipient may use your version of this file under either the MPL or the GPL License.
+*/
+
+package ca.nengo.util.impl;
+
+/**
+ * <p>A compact histogram of durations in nanoseconds, with logarithmic bins.</p>
+ *
+ * <p>Each power of two is split into four bins, so percentiles are accurate to within
+ * about 20%, which is plenty for finding out where time goes. Recording is a few
+ * arithmetic operations and no allocation. Instances are not synchronized; each should be
+ * written by a single thread at a time.</p>
+ *
+ * @author agent
+ */
+public class TimingHistogram {
+
+	private static final int SUB_BINS = 4;
+	private static final int NUM_BINS = 64 * SUB_BINS;
+
+	private final long[] myBins;
+	private long myCount;
+	private long myTotal;
+	private long myMin;
+	private long myMax;
+
+	public TimingHistogram() {
+		myBins = new long[NUM_BINS];
+		reset();
+	}
+
+	/**
+	 * Clears all recorded durations.
+	 */
+	public void reset() {
+		for (int i = 0; i < myBins.length; i++) {
+			myBins[i] = 0;
+		}
+		myCount = 0;
+		myTotal = 0;
+		myMin = Long.MAX_VALUE;
+		myMax = 0;
+	}
+
+	/**
+	 * @param nanos A duration in nanoseconds
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		myBins[getBin(nanos)]++;
+		myCount++;
+		myTotal += nanos;
+		if (nanos < myMin) {
+			myMin = nanos;
+		}
+		if (nanos > myMax) {
+			myMax = nanos;
+		}
+	}
+
+	/**
+	 * @param other A histogram whose counts are to be added to this one
+	 */
+	public void add(TimingHistogram other) {
+		for (int i = 0; i < myBins.length; i++) {
+			myBins[i] += other.myBins[i];
+		}
+		myCount += other.myCount;
+		myTotal += other.myTotal;
+		myMin = Math.min(myMin, other.myMin);
+		myMax = Math.max(myMax, other.myMax);
+	}
+
+	/**
+	 * @return Number of durations recorded
+	 */
+	public long getCount() {
+		return myCount;
+	}
+
+	/**
+	 * @return Sum of durations recorded (ns)
+	 */
+	public long getTotal() {
+		return myTotal;
+	}
+
+	/**
+	 * @return Mean duration (ns), or 0 if none have been recorded
+	 */
+	public double getMean() {
+		return myCount == 0 ? 0 : (double) myTotal / (double) myCount;
+	}
+
+	/**
+	 * @return Shortest duration (ns), or 0 if none have been recorded
+	 */
+	public long getMin() {
+		return myCount == 0 ? 0 : myMin;
+	}
+
+	/**
+	 * @return Longest duration (ns)
+	 */
+	public long getMax() {
+		return myMax;
+	}
+
+	/**
+	 * @param fraction A fraction between 0 and 1 (eg .99 for the 99th percentile)
+	 * @return Approximate duration (ns) below which the given fraction of durations fall
+	 */
+	public long getPercentile(double fraction) {
+		if (myCount == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(fraction * myCount);
+		long seen = 0;
+		for (int i = 0; i < myBins.length; i++) {
+			seen += myBins[i];
+			if (seen >= rank && myBins[i] > 0) {
+				return Math.max(getMin(), Math.min(myMax, getUpperBound(i)));
+			}
+		}
+		return myMax;
+	}
+
+	private static int getBin(long nanos) {
+		if (nanos < SUB_BINS) {
+			return (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) ((nanos >> (exponent - 2)) & (SUB_BINS - 1));
+		return (exponent - 1) * SUB_BINS + sub;
+	}
+
+	private static long getUpperBound(int bin) {
+		if (bin < SUB_BINS) {
+			return bin;
+		}
+		int exponent = bin / SUB_BINS + 1;
+		int sub = bin % SUB_BINS;
+		return ((long) (SUB_BINS + sub + 1) << (exponent - 2)) - 1;
+	}
+}
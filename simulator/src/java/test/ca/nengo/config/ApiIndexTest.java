@@ -0,0 +1,87 @@
+package ca.nengo.config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+
+/**
+ * Unit tests for ApiIndex.
+ *
+ * @author agent
+ */
+public class ApiIndexTest extends TestCase {
+
+	private ApiIndex myIndex;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		List<Class<?>> classes = new ArrayList<Class<?>>();
+		classes.add(NEFEnsembleImpl.class);
+		classes.add(NEFEnsemble.class);
+		classes.add(FunctionInput.class);
+
+		JavaSourceParser.setUseIndex(false);
+		JavaSourceParser.addSource(new File("src/java/main"));
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ApiIndex.write(classes, out);
+			myIndex = new ApiIndex(ByteBuffer.wrap(out.toByteArray()));
+		} finally {
+			JavaSourceParser.setUseIndex(true);
+		}
+	}
+
+	public void testClasses() {
+		assertEquals(3, myIndex.getClassCount());
+		assertTrue(myIndex.contains(NEFEnsemble.class.getName()));
+		assertFalse(myIndex.contains(String.class.getName()));
+		assertNull(myIndex.getDocs(String.class.getName()));
+		assertNull(myIndex.getMembers(String.class.getName(), ""));
+	}
+
+	public void testMembers() throws Exception {
+		String name = NEFEnsembleImpl.class.getName();
+		List<ApiIndex.Member> all = myIndex.getMembers(name, "");
+		int expected = NEFEnsembleImpl.class.getFields().length + NEFEnsembleImpl.class.getMethods().length
+			+ NEFEnsembleImpl.class.getConstructors().length;
+		assertEquals(expected, all.size());
+		for (int i = 1; i < all.size(); i++) {
+			assertTrue(all.get(i-1).getName().compareTo(all.get(i).getName()) <= 0);
+		}
+
+		List<ApiIndex.Member> radii = myIndex.getMembers(name, "setRad");
+		assertEquals(1, radii.size());
+		ApiIndex.Member member = radii.get(0);
+		assertEquals("setRadii(float[] radii)", member.getSignature());
+		assertEquals(ApiIndex.METHOD, member.getKind());
+		assertFalse(member.isStatic());
+		assertEquals("void", member.getReturnType());
+
+		//matches what is parsed from source
+		Method m = NEFEnsembleImpl.class.getMethod("setRadii", float[].class);
+		JavaSourceParser.setUseIndex(false);
+		try {
+			assertEquals(JavaSourceParser.getDocs(m), member.getDocs());
+			assertEquals(JavaSourceParser.getArgDocs(m, 0), member.getParamDocs(0));
+		} finally {
+			JavaSourceParser.setUseIndex(true);
+		}
+
+		assertNotNull(myIndex.getMember(name, "setRadii", ApiIndex.METHOD, new String[]{"float[]"}));
+		assertNull(myIndex.getMember(name, "setRadii", ApiIndex.METHOD, new String[]{"float"}));
+		assertNotNull(myIndex.getMember(name, "X", ApiIndex.FIELD, null));
+		assertTrue(myIndex.getMember(name, "X", ApiIndex.FIELD, null).isStatic());
+		assertEquals(0, myIndex.getMembers(name, "zzz").size());
+	}
+
+}
@@ -0,0 +1,143 @@
+package ca.nengo.math.impl;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+
+/**
+ * Unit tests for SignConstrainedApproximator.
+ *
+ * @author agent
+ */
+public class SignConstrainedApproximatorTest extends TestCase {
+
+	private float[][] myEvalPoints;
+	private float[][] myValues;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		//rectified-linear tuning curves on [-1, 1]
+		Random random = new Random(1);
+		myEvalPoints = new float[200][];
+		for (int k = 0; k < myEvalPoints.length; k++) {
+			myEvalPoints[k] = new float[]{-1f + 2f * k / (myEvalPoints.length - 1)};
+		}
+		myValues = new float[40][];
+		for (int i = 0; i < myValues.length; i++) {
+			float encoder = random.nextBoolean() ? 1 : -1;
+			float intercept = random.nextFloat() * 1.8f - .9f;
+			myValues[i] = new float[myEvalPoints.length];
+			for (int k = 0; k < myEvalPoints.length; k++) {
+				myValues[i][k] = Math.max(0, 100 * (encoder * myEvalPoints[k][0] - intercept));
+			}
+		}
+	}
+
+	public void testFindCoefficients() {
+		Function target = new PostfixFunction("x0^2", 1);
+
+		SignConstrainedApproximator approximator = new SignConstrainedApproximator(myEvalPoints, myValues, true, 0);
+		float[] coefficients = approximator.findCoefficients(target);
+		for (float c : coefficients) {
+			assertTrue(c >= 0);
+		}
+		assertTrue(rmse(coefficients, target) < .02f);
+		assertOptimal(coefficients, target, 1);
+
+		SignConstrainedApproximator negative = new SignConstrainedApproximator(myEvalPoints, myValues, false, 0);
+		Function negativeTarget = new PostfixFunction("0-x0^2", 1);
+		float[] negativeCoefficients = negative.findCoefficients(negativeTarget);
+		for (int i = 0; i < coefficients.length; i++) {
+			assertEquals(-coefficients[i], negativeCoefficients[i], 1e-5f);
+		}
+
+		//a target that can't be made from positive coefficients gets the best it can
+		float[] clipped = approximator.findCoefficients(negativeTarget);
+		for (float c : clipped) {
+			assertEquals(0f, c, 1e-10f);
+		}
+	}
+
+	public void testNoise() {
+		Function target = new IdentityFunction(1, 0);
+		float[] exact = new SignConstrainedApproximator(myEvalPoints, myValues, true, 0).findCoefficients(target);
+		float[] regularized = new SignConstrainedApproximator(myEvalPoints, myValues, true, .1f).findCoefficients(target);
+		assertTrue(norm(regularized) < norm(exact));
+	}
+
+	public void testMultipleTargets() throws CloneNotSupportedException {
+		Function[] targets = new Function[]{new IdentityFunction(1, 0), new PostfixFunction("x0^2", 1),
+				new PostfixFunction("x0^4", 1), new ConstantFunction(1, .5f), new PostfixFunction("x0+1", 1)};
+
+		SignConstrainedApproximator approximator = new SignConstrainedApproximator(myEvalPoints, myValues, true, .05f);
+		approximator.setNumThreads(3);
+		assertEquals(3, approximator.getNumThreads());
+		float[][] parallel = approximator.findCoefficients(targets);
+
+		SignConstrainedApproximator serial = (SignConstrainedApproximator) approximator.clone();
+		serial.setNumThreads(1);
+		for (int j = 0; j < targets.length; j++) {
+			float[] expected = serial.clone().findCoefficients(targets[j]);
+			for (int i = 0; i < expected.length; i++) {
+				assertEquals(expected[i], parallel[j][i], 1e-3f * Math.max(1e-3f, Math.abs(expected[i])) + 1e-6f);
+			}
+		}
+	}
+
+	public void testFactory() throws CloneNotSupportedException {
+		SignConstrainedApproximator.Factory factory = new SignConstrainedApproximator.Factory(false, .1f);
+		SignConstrainedApproximator.Factory copy = (SignConstrainedApproximator.Factory) factory.clone();
+		copy.setPositive(true);
+		copy.setNoise(.2f);
+		assertFalse(factory.getPositive());
+		assertEquals(.1f, factory.getNoise(), 0f);
+		assertTrue(((SignConstrainedApproximator) copy.getApproximator(myEvalPoints, myValues)).getPositive());
+	}
+
+	//KKT conditions: zero gradient where coefficients are free, non-negative where they are at the bound
+	private void assertOptimal(float[] coefficients, Function target, float sign) {
+		float[] error = new float[myEvalPoints.length];
+		for (int k = 0; k < error.length; k++) {
+			float estimate = 0;
+			for (int i = 0; i < coefficients.length; i++) {
+				estimate += coefficients[i] * myValues[i][k];
+			}
+			error[k] = estimate - target.map(myEvalPoints[k]);
+		}
+		for (int i = 0; i < coefficients.length; i++) {
+			float gradient = 0;
+			for (int k = 0; k < error.length; k++) {
+				gradient += sign * error[k] * myValues[i][k] / error.length;
+			}
+			if (coefficients[i] != 0) {
+				assertEquals(0f, gradient, 1e-3f);
+			} else {
+				assertTrue(gradient > -1e-3f);
+			}
+		}
+	}
+
+	private float rmse(float[] coefficients, Function target) {
+		double sum = 0;
+		for (int k = 0; k < myEvalPoints.length; k++) {
+			float estimate = 0;
+			for (int i = 0; i < coefficients.length; i++) {
+				estimate += coefficients[i] * myValues[i][k];
+			}
+			float error = estimate - target.map(myEvalPoints[k]);
+			sum += error * error;
+		}
+		return (float) Math.sqrt(sum / myEvalPoints.length);
+	}
+
+	private static float norm(float[] x) {
+		float sum = 0;
+		for (float element : x) {
+			sum += element * element;
+		}
+		return (float) Math.sqrt(sum);
+	}
+}
@@ -0,0 +1,47 @@
+package ca.nengo.model.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.model.Origin;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.Units;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+
+/**
+ * Unit tests for NetworkArrayImpl.
+ *
+ * @author agent
+ */
+public class NetworkArrayImplTest extends TestCase {
+
+	public void testArrayOrigin() throws Exception {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl[] ensembles = new NEFEnsembleImpl[3];
+		for (int i = 0; i < ensembles.length; i++) {
+			ensembles[i] = (NEFEnsembleImpl) ef.make(String.valueOf(i), 10, i == 1 ? 2 : 1);
+		}
+		NetworkArrayImpl array = new NetworkArrayImpl("array", ensembles);
+		array.setMode(SimulationMode.DIRECT);
+		Origin origin = array.getOrigin(NEFEnsemble.X);
+		assertEquals(4, origin.getDimensions());
+
+		origin.setValues(new RealOutputImpl(new float[]{1, 2, 3, 4}, Units.UNK, .5f));
+		RealOutput values = (RealOutput) origin.getValues();
+		assertEquals(4, values.getValues().length);
+		assertEquals(.5f, values.getTime(), 0f);
+		for (int i = 0; i < 4; i++) {
+			assertEquals(i + 1f, values.getValues()[i], 0f);
+		}
+		assertEquals(3f, ((RealOutput) ensembles[1].getOrigin(NEFEnsemble.X).getValues()).getValues()[1], 0f);
+
+		//shared until an ensemble produces new output
+		assertSame(values, origin.getValues());
+		ensembles[2].getOrigin(NEFEnsemble.X).setValues(new RealOutputImpl(new float[]{5}, Units.UNK, .6f));
+		RealOutput changed = (RealOutput) origin.getValues();
+		assertNotSame(values, changed);
+		assertEquals(5f, changed.getValues()[3], 0f);
+		assertEquals(4f, values.getValues()[3], 0f);
+	}
+}
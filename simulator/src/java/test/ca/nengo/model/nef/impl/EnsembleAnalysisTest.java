@@ -0,0 +1,109 @@
+package ca.nengo.model.nef.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.PostfixFunction;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+import ca.nengo.util.MU;
+
+/**
+ * Unit tests for EnsembleAnalysis.
+ *
+ * @author agent
+ */
+public class EnsembleAnalysisTest extends TestCase {
+
+	private NEFEnsembleImpl myEnsemble;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		myEnsemble = (NEFEnsembleImpl) ef.make("test", 50, 2);
+		myEnsemble.setRadii(new float[]{1f, 2f});
+	}
+
+	public void testActivities() throws Exception {
+		EnsembleAnalysis analysis = myEnsemble.getAnalysis();
+		assertSame(analysis, myEnsemble.getAnalysis());
+
+		float[][] points = analysis.getAxisPoints(11);
+		assertEquals(-1f, points[0][0], 1e-6f);
+		assertEquals(1f, points[10][0], 1e-6f);
+		assertEquals(0f, points[5][1], 0f);
+
+		//matches neurons run one at a time
+		float[][] expected = myEnsemble.getConstantOutputs(points, Neuron.AXON);
+		float[][] actual = analysis.getAxisActivities(11, Neuron.AXON);
+		for (int i = 0; i < expected.length; i++) {
+			for (int j = 0; j < expected[i].length; j++) {
+				assertEquals(expected[i][j], actual[i][j], 1e-3f);
+			}
+		}
+		assertSame(actual, analysis.getAxisActivities(11, Neuron.AXON));
+	}
+
+	public void testTuningCurves() throws Exception {
+		EnsembleAnalysis analysis = myEnsemble.getAnalysis();
+		float[][] curves = analysis.getTuningCurves(21);
+		assertEquals(50, curves.length);
+		assertEquals(21, curves[0].length);
+		assertSame(curves, analysis.getTuningCurves(21));
+
+		//a neuron's tuning curve is its activity along its encoder (scaled by the radii)
+		float[] x = EnsembleAnalysis.getTuningInputs(21);
+		float[] direction = MU.prodElementwise(myEnsemble.getEncoders()[3], myEnsemble.getRadii());
+		assertEquals(MU.pnorm(direction, 2), analysis.getTuningRadii()[3], 1e-6f);
+		float[][] points = new float[x.length][];
+		for (int j = 0; j < x.length; j++) {
+			points[j] = MU.prod(direction, x[j]);
+		}
+		float[] expected = myEnsemble.getConstantOutput(3, points, Neuron.AXON);
+		for (int j = 0; j < x.length; j++) {
+			assertEquals(expected[j], curves[3][j], 1e-3f);
+		}
+
+		//changes to the ensemble clear the cache
+		myEnsemble.setEncoders(MU.prod(myEnsemble.getEncoders(), -1f));
+		float[][] changed = analysis.getTuningCurves(21);
+		assertNotSame(curves, changed);
+		myEnsemble.addDecodedOrigin("sum", new Function[]{new PostfixFunction("x0+x1", 2)}, Neuron.AXON);
+		assertNotSame(changed, analysis.getTuningCurves(21));
+	}
+
+	public void testError() throws Exception {
+		EnsembleAnalysis analysis = myEnsemble.getAnalysis();
+		DecodedOrigin origin = (DecodedOrigin) myEnsemble.getOrigin(NEFEnsemble.X);
+
+		//decoded output matches the origin run in CONSTANT_RATE mode
+		float[][] points = analysis.getAxisPoints(11);
+		float[][] expected = NEFUtil.getOutput(origin, points, SimulationMode.CONSTANT_RATE);
+		float[][] actual = EnsembleAnalysis.getDecodedOutput(origin, analysis.getAxisActivities(11, Neuron.AXON));
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i][0], actual[i][0], 1e-4f);
+			assertEquals(expected[i][1], actual[i][1], 1e-4f);
+		}
+
+		EnsembleAnalysis.DecodingError error = analysis.getError(origin);
+		float[] distortion = error.getDistortion();
+		assertEquals(2, distortion.length);
+		assertTrue(distortion[0] > 0 && distortion[0] < .01f);
+		assertTrue(distortion[1] > 0 && distortion[1] < .04f);
+		assertTrue(error.getNoise()[0] > 0);
+		assertEquals(Math.sqrt(MU.mean(error.getMSE())), error.getRMSE(), 1e-6f);
+
+		//the same points are used until the ensemble changes
+		assertEquals(distortion[0], origin.getError()[0], 0f);
+
+		//including by origins that decode other node outputs
+		DecodedOrigin current = (DecodedOrigin) myEnsemble.addDecodedOrigin("current",
+				new Function[]{new PostfixFunction("x0", 2)}, SpikingNeuron.CURRENT);
+		distortion = analysis.getError(origin).getDistortion();
+		analysis.getError(current);
+		assertEquals(distortion[0], analysis.getError(origin).getDistortion()[0], 0f);
+	}
+
+}
@@ -9,11 +9,15 @@ import ca.nengo.math.impl.AbstractFunction;
 import ca.nengo.model.Network;
 import ca.nengo.model.Node;
 import ca.nengo.model.Projection;
+import ca.nengo.model.RealOutput;
 import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
 import ca.nengo.model.StructuralException;
+import ca.nengo.model.Termination;
 import ca.nengo.model.Units;
 import ca.nengo.model.impl.FunctionInput;
 import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.RealOutputImpl;
 import ca.nengo.model.nef.NEFEnsemble;
 import ca.nengo.model.nef.NEFEnsembleFactory;
 import ca.nengo.model.nef.impl.BiasOrigin;
@@ -332,4 +336,44 @@ public class NEFEnsembleImplTest extends TestCase {
 			fail("Error creating per-node signal origin");
 	}
 
+
+	public void testRadialInput() throws StructuralException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) ef.make("test", 10, 2);
+		ensemble.setRadii(new float[]{2, .5f});
+		float[] state = new float[]{.6f, -.2f};
+		assertRadialInputs(ensemble, state);
+
+		//scaled encoders are recomputed when encoders or radii change
+		ensemble.setEncoders(MU.uniform(10, 2, .3f));
+		assertRadialInputs(ensemble, state);
+		ensemble.setRadii(new float[]{1, 4});
+		assertRadialInputs(ensemble, state);
+	}
+
+	private static void assertRadialInputs(NEFEnsembleImpl ensemble, float[] state) {
+		float[][] encoders = ensemble.getEncoders();
+		float[] radii = ensemble.getRadii();
+		for (int i = 0; i < encoders.length; i++) {
+			float expected = encoders[i][0] * state[0] / radii[0] + encoders[i][1] * state[1] / radii[1];
+			assertEquals(expected, ensemble.getRadialInput(state, i), 1e-6f);
+		}
+	}
+
+	public void testRunWithNewTermination() throws StructuralException, SimulationException {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NEFEnsembleImpl ensemble = (NEFEnsembleImpl) ef.make("test", 50, 1);
+		ensemble.setMode(SimulationMode.RATE);
+		ensemble.run(0, .001f);
+
+		//terminations added between steps are picked up
+		Termination termination = ensemble.addDecodedTermination("input", new float[][]{new float[]{1}}, .005f, false);
+		termination.setValues(new RealOutputImpl(new float[]{.5f}, Units.UNK, 0));
+		for (int i = 1; i < 50; i++) {
+			ensemble.run(i * .001f, (i + 1) * .001f);
+		}
+		float x = ((RealOutput) ensemble.getOrigin(NEFEnsemble.X).getValues()).getValues()[0];
+		assertEquals(.5f, x, .1f);
+	}
+
 }
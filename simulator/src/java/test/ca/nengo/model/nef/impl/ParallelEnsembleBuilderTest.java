@@ -0,0 +1,98 @@
+package ca.nengo.model.nef.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+import ca.nengo.math.PDFTools;
+import ca.nengo.model.impl.NetworkArrayImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.neuron.impl.SpikingNeuron;
+
+/**
+ * Unit tests for ParallelEnsembleBuilder.
+ *
+ * @author agent
+ */
+public class ParallelEnsembleBuilderTest extends TestCase {
+
+	private static final int NUM_ENSEMBLES = 6;
+
+	public void testReproducible() throws Exception {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		ef.beQuiet();
+
+		ParallelEnsembleBuilder parallel = new ParallelEnsembleBuilder(5, 4);
+		Future<?>[] futures = new Future<?>[NUM_ENSEMBLES];
+		for (int i = 0; i < NUM_ENSEMBLES; i++) {
+			futures[i] = parallel.make("Model/e" + i, ef, "e" + i, 30, new float[]{1, 1});
+		}
+
+		//one thread, reverse order, with other random numbers drawn in between
+		ParallelEnsembleBuilder serial = new ParallelEnsembleBuilder(5, 1);
+		NEFEnsemble[] expected = new NEFEnsemble[NUM_ENSEMBLES];
+		for (int i = NUM_ENSEMBLES - 1; i >= 0; i--) {
+			PDFTools.random();
+			expected[i] = ParallelEnsembleBuilder.get(serial.make("Model/e" + i, ef, "e" + i, 30, new float[]{1, 1}));
+		}
+
+		for (int i = 0; i < NUM_ENSEMBLES; i++) {
+			NEFEnsemble ensemble = (NEFEnsemble) ParallelEnsembleBuilder.get(futures[i]);
+			assertEquals(expected[i], ensemble);
+		}
+		assertFalse(Arrays.deepEquals(expected[0].getEncoders(), expected[1].getEncoders()));
+
+		ParallelEnsembleBuilder other = new ParallelEnsembleBuilder(6, 1);
+		NEFEnsemble different = ParallelEnsembleBuilder.get(other.make("Model/e0", ef, "e0", 30, new float[]{1, 1}));
+		assertFalse(Arrays.deepEquals(expected[0].getEncoders(), different.getEncoders()));
+
+		parallel.shutdown();
+		serial.shutdown();
+		other.shutdown();
+	}
+
+	public void testArray() throws Exception {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		ef.beQuiet();
+		ParallelEnsembleBuilder builder = new ParallelEnsembleBuilder(7, 3);
+		NetworkArrayImpl a = builder.makeArray("Model/array", ef, "array", 4, 20, new float[]{1});
+		NetworkArrayImpl b = builder.makeArray("Model/array", ef, "array", 4, 20, new float[]{1});
+		assertEquals(4, a.getNodes().length);
+		for (int i = 0; i < 4; i++) {
+			assertEquals(String.valueOf(i), a.getNodes()[i].getName());
+			assertEquals((NEFEnsemble) b.getNodes()[i], (NEFEnsemble) a.getNodes()[i]);
+		}
+		builder.shutdown();
+	}
+
+	public void testFactorySeed() throws Exception {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		ef.beQuiet();
+		ef.setSeed(Long.valueOf(3));
+		assertEquals(Long.valueOf(3), ef.getSeed());
+
+		NEFEnsemble a = ef.make("a", 20, 1);
+		PDFTools.random();
+		ef.make("b", 20, 1);
+		assertEquals(a, ef.make("a", 20, 1));
+
+		//ensembles with the same name in different subnetworks get different streams
+		NEFEnsemble x = ef.make("Model/Sub1/a", "a", 20, new float[]{1});
+		NEFEnsemble y = ef.make("Model/Sub2/a", "a", 20, new float[]{1});
+		assertFalse(Arrays.deepEquals(x.getEncoders(), y.getEncoders()));
+		assertEquals(x, ef.make("Model/Sub1/a", "a", 20, new float[]{1}));
+	}
+
+	private static void assertEquals(NEFEnsemble expected, NEFEnsemble actual) throws Exception {
+		assertTrue(Arrays.deepEquals(expected.getEncoders(), actual.getEncoders()));
+		for (int i = 0; i < expected.getNodes().length; i++) {
+			SpikingNeuron e = (SpikingNeuron) expected.getNodes()[i];
+			SpikingNeuron a = (SpikingNeuron) actual.getNodes()[i];
+			assertEquals(e.getBias(), a.getBias(), 0f);
+			assertEquals(e.getScale(), a.getScale(), 0f);
+		}
+		float[][] expectedDecoders = ((DecodedOrigin) expected.getOrigin(NEFEnsemble.X)).getDecoders();
+		float[][] actualDecoders = ((DecodedOrigin) actual.getOrigin(NEFEnsemble.X)).getDecoders();
+		assertTrue(Arrays.deepEquals(expectedDecoders, actualDecoders));
+	}
+}
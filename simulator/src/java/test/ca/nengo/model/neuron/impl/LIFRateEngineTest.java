@@ -0,0 +1,93 @@
+package ca.nengo.model.neuron.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.math.impl.GaussianPDF;
+import ca.nengo.model.Node;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.NoiseFactory;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.NEFNode;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.neuron.Neuron;
+
+/**
+ * Unit tests for LIFRateEngine.
+ *
+ * @author agent
+ */
+public class LIFRateEngineTest extends TestCase {
+
+	public void testTable() {
+		LIFSpikeGenerator generator = new LIFSpikeGenerator(.001f, .02f, .002f);
+		float[] table = LIFRateEngine.getTable(.02f, .002f);
+		assertTrue(table == LIFRateEngine.getTable(.02f, .002f));
+
+		for (float current = 1.0001f; current < 1000; current *= 1.01f) {
+			float exact = generator.constantRateRun(current);
+			float x = 1f / current;
+			if (x < .99f) {
+				int index = (int) (x * LIFRateEngine.TABLE_SIZE);
+				assertTrue(table[index] >= exact - .01f && table[index+1] <= exact + .01f);
+			}
+		}
+	}
+
+	public void testRun() throws Exception {
+		NEFEnsemble ensemble = new NEFEnsembleFactoryImpl().make("test", 50, 1);
+		ensemble.setMode(SimulationMode.RATE);
+		Node[] nodes = ensemble.getNodes();
+
+		float[] expected = new float[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			((NEFNode) nodes[i]).setRadialInput(.3f);
+			nodes[i].run(0f, .001f);
+			expected[i] = getRate(nodes[i]);
+		}
+
+		LIFRateEngine exact = LIFRateEngine.create(nodes, false);
+		assertNotNull(exact);
+		assertTrue(exact.run(.001f, .002f));
+		for (int i = 0; i < nodes.length; i++) {
+			assertEquals(expected[i], getRate(nodes[i]), .0001f);
+			assertEquals(expected[i], exact.getRates()[i], .0001f);
+		}
+
+		LIFRateEngine table = LIFRateEngine.create(nodes, true);
+		assertTrue(table.getUseTables());
+		assertTrue(table.run(.002f, .003f));
+		for (int i = 0; i < nodes.length; i++) {
+			assertEquals(expected[i], getRate(nodes[i]), .01f);
+		}
+
+		((SpikingNeuron) nodes[3]).setNoise(NoiseFactory.makeRandomNoise(1f, new GaussianPDF()));
+		assertFalse(exact.run(.003f, .004f));
+		assertNull(LIFRateEngine.create(nodes, false));
+
+		((SpikingNeuron) nodes[3]).setNoise(null);
+		ensemble.setMode(SimulationMode.DEFAULT);
+		assertNull(LIFRateEngine.create(nodes, false));
+	}
+
+	public void testEnsemble() throws Exception {
+		NEFEnsemble ensemble = new NEFEnsembleFactoryImpl().make("test", 100, 1);
+		ensemble.addDecodedTermination("input", new float[][]{new float[]{1f}}, .005f, false);
+		ensemble.setMode(SimulationMode.RATE);
+		((NEFEnsembleImpl) ensemble).setUseRateTable(true);
+
+		ensemble.getTermination("input").setValues(new RealOutputImpl(new float[]{.5f}, Units.UNK, 0f));
+		float dt = .001f;
+		for (int i = 0; i < 100; i++) {
+			ensemble.run(i*dt, (i+1)*dt);
+		}
+		float decoded = ((RealOutput) ensemble.getOrigin(NEFEnsemble.X).getValues()).getValues()[0];
+		assertEquals(.5f, decoded, .05f);
+	}
+
+	private static float getRate(Node node) throws Exception {
+		return ((RealOutput) node.getOrigin(Neuron.AXON).getValues()).getValues()[0];
+	}
+}
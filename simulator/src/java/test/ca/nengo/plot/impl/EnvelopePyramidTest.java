@@ -0,0 +1,84 @@
+package ca.nengo.plot.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.model.Units;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.TimeSeriesImpl;
+
+/**
+ * Unit tests for EnvelopePyramid and EnvelopeDataset.
+ *
+ * @author agent
+ */
+public class EnvelopePyramidTest extends TestCase {
+
+	private static final int N = 10001;
+
+	private TimeSeries mySeries;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		float[] times = new float[N];
+		float[][] values = new float[N][];
+		for (int i = 0; i < N; i++) {
+			times[i] = i * .001f;
+			values[i] = new float[]{(float) Math.sin(times[i] * 2 * Math.PI), i};
+		}
+		values[5171][0] = 5; //a single-sample peak
+		mySeries = new TimeSeriesImpl(times, values, new Units[]{Units.UNK, Units.UNK});
+	}
+
+	public void testGetPoints() {
+		EnvelopePyramid pyramid = new EnvelopePyramid(mySeries);
+		assertEquals(N, pyramid.getLength());
+		assertEquals(5f, pyramid.getMax(0), 0f);
+		assertEquals(-1f, pyramid.getMin(0), 1e-4f);
+		assertEquals(N - 1f, pyramid.getMax(1), 0f);
+
+		double[] times = new double[104];
+		double[] values = new double[104];
+		int n = pyramid.getPoints(0, 0, 10, 100, times, values);
+		assertTrue(n > 50 && n <= 100);
+		assertEquals(0, times[0], 0);
+		assertEquals(10, times[n-1], 1e-4);
+		float max = Float.NEGATIVE_INFINITY;
+		float min = Float.POSITIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			if (i > 0) {
+				assertTrue(times[i] >= times[i-1]);
+			}
+			max = Math.max(max, (float) values[i]);
+			min = Math.min(min, (float) values[i]);
+		}
+		assertEquals(5f, max, 0f);
+		assertEquals(-1f, min, 1e-4f);
+
+		//a monotonic dimension stays in order
+		n = pyramid.getPoints(1, 0, 10, 100, times, values);
+		for (int i = 1; i < n; i++) {
+			assertTrue(values[i] >= values[i-1]);
+		}
+
+		//short spans are drawn from the samples themselves, with one on either side
+		n = pyramid.getPoints(0, 5.1005, 5.1495, 100, times, values);
+		assertEquals(51, n);
+		assertEquals(5.1, times[0], 1e-4);
+		assertEquals(5.15, times[n-1], 1e-4);
+		assertEquals(mySeries.getValues()[5101][0], values[1], 0);
+	}
+
+	public void testDataset() {
+		EnvelopeDataset dataset = new EnvelopeDataset(mySeries, 200);
+		assertEquals(2, dataset.getSeriesCount());
+		assertTrue(dataset.getItemCount(0) <= 200);
+		assertEquals(0, dataset.getDomainLowerBound(true), 0);
+		assertEquals(10, dataset.getDomainUpperBound(true), 1e-4);
+		assertEquals(N - 1, dataset.getRangeUpperBound(true), 0);
+
+		dataset.setSpan(2.0005, 2.0495);
+		assertEquals(51, dataset.getItemCount(0));
+		assertEquals(10, dataset.getDomainUpperBound(true), 1e-4);
+	}
+}
@@ -0,0 +1,240 @@
+package ca.nengo.sim.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.math.impl.GaussianPDF;
+import ca.nengo.math.impl.SineFunction;
+import ca.nengo.math.impl.StatefulRandom;
+import ca.nengo.model.Network;
+import ca.nengo.model.Origin;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkArrayImpl;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.NoiseFactory;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.sim.SimulationState;
+import ca.nengo.util.MU;
+import ca.nengo.util.Probe;
+import ca.nengo.util.TimeSeries;
+import ca.nengo.util.impl.NodeThreadPool;
+
+/**
+ * Unit tests for Checkpointer, and the checkpoints taken by LocalSimulator.
+ *
+ * @author agent
+ */
+public class CheckpointerTest extends TestCase {
+
+	public void testRandom() {
+		StatefulRandom random = new StatefulRandom(3);
+		Random reference = new Random(3);
+		for (int i = 0; i < 5; i++) {
+			assertEquals(reference.nextInt(), random.nextInt());
+			assertEquals(reference.nextGaussian(), random.nextGaussian(), 0);
+		}
+
+		random.nextGaussian(); //leaves a cached sample
+		long[] state = random.getState();
+		double[] expected = new double[]{random.nextGaussian(), random.nextDouble(), random.nextGaussian()};
+		random.setState(state);
+		assertEquals(expected[0], random.nextGaussian(), 0);
+		assertEquals(expected[1], random.nextDouble(), 0);
+		assertEquals(expected[2], random.nextGaussian(), 0);
+	}
+
+	public void testRestore() throws Exception {
+		int threads = NodeThreadPool.getNumJavaThreads();
+		try {
+			checkRestore();
+			NodeThreadPool.turnOffMultithreading();
+			checkRestore();
+		} finally {
+			NodeThreadPool.setNumJavaThreads(threads);
+		}
+	}
+
+	private void checkRestore() throws Exception {
+		Network original = makeNetwork();
+		original.run(0f, .1f);
+		SimulationState state = original.getSimulator().checkpoint();
+		assertEquals(.1f, state.getTime(), 1e-6f);
+		assertTrue(state.getSize() > 0);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		state.write(out);
+		assertTrue(out.size() >= state.getSize());
+		SimulationState read = SimulationState.read(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(state.getFingerprint(), read.getFingerprint());
+
+		original.run(.1f, .15f);
+		float expected = getX(original);
+		assertTrue(Math.abs(expected) > .05f);
+
+		//a network built the same way resumes where the original left off (including noise)
+		Network resumed = makeNetwork();
+		resumed.getSimulator().restore(read);
+		resumed.run(read.getTime(), .15f);
+		assertEquals(expected, getX(resumed), 1e-6f);
+
+		//or the original can go back
+		original.getSimulator().restore(state);
+		original.run(state.getTime(), .15f);
+		assertEquals(expected, getX(original), 1e-6f);
+	}
+
+	public void testProbeData() throws Exception {
+		Network network = makeNetwork();
+		Probe probe = network.getSimulator().addProbe("B", NEFEnsemble.X, true);
+		network.run(0f, .1f);
+		SimulationState state = network.getSimulator().checkpoint();
+		network.run(.1f, .15f);
+		TimeSeries data = probe.getData();
+		float[][] expected = MU.clone(data.getValues());
+
+		//the recorded outputs aren't overwritten by the restored ones
+		network.getSimulator().restore(state);
+		assertTrue(Arrays.deepEquals(expected, data.getValues()));
+	}
+
+	public void testModelData() throws Exception {
+		Network network = makeNetwork();
+		network.run(0f, .01f);
+		NEFEnsembleImpl a = (NEFEnsembleImpl) network.getNode("A");
+		float[][] decoders = ((DecodedOrigin) a.getOrigin(NEFEnsemble.X)).getDecoders();
+		int numEvalPoints = a.getEvalPoints().length;
+
+		//the activities at the evaluation points (kept by the approximator of each ensemble) are left out ...
+		SimulationState state = network.getSimulator().checkpoint();
+		assertTrue(state.getSize() < 4L * a.getNodes().length * numEvalPoints);
+
+		//... and so are the encoders and decoders
+		for (Object value : state.getValues()) {
+			if (value instanceof float[]) {
+				assertTrue(((float[]) value).length < numEvalPoints);
+				assertFalse(Arrays.equals(a.getEncoders()[0], (float[]) value));
+				assertFalse(Arrays.equals(decoders[0], (float[]) value));
+			}
+		}
+
+		//which aren't changed by a restore
+		float[][] encoders = a.getEncoders();
+		a.setEncoders(MU.prod(encoders, -1f));
+		network.getSimulator().restore(state);
+		assertEquals(-encoders[0][0], a.getEncoders()[0][0], 0f);
+	}
+
+	public void testArrayOrigin() throws Exception {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		ef.setSeed(Long.valueOf(13));
+		NetworkArrayImpl array = new NetworkArrayImpl("array", new NEFEnsembleImpl[]{
+				(NEFEnsembleImpl) ef.make("0", 20, 1), (NEFEnsembleImpl) ef.make("1", 20, 1)});
+		array.addDecodedTermination("input", MU.I(2), .005f, false);
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, .5f), new ConstantFunction(1, -.5f)}, Units.UNK);
+		NetworkImpl network = new NetworkImpl();
+		network.addNode(input);
+		network.addNode(array);
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), array.getTermination("input"));
+		((LocalSimulator) network.getSimulator()).setDisplayProgress(false);
+
+		Origin origin = array.getOrigin(NEFEnsemble.X);
+		network.run(0f, .05f);
+		SimulationState state = network.getSimulator().checkpoint();
+		float[] expected = ((RealOutput) origin.getValues()).getValues().clone();
+		network.run(.05f, .1f);
+		origin.getValues();
+
+		network.getSimulator().restore(state);
+		float[] restored = ((RealOutput) origin.getValues()).getValues();
+		assertTrue(Arrays.equals(expected, restored));
+	}
+
+	public void testMismatch() throws Exception {
+		SimulationState state = makeNetwork().getSimulator().checkpoint();
+		NetworkImpl other = (NetworkImpl) makeNetwork();
+		other.removeNode("B");
+		try {
+			other.getSimulator().restore(state);
+			fail("Should have thrown an exception");
+		} catch (SimulationException e) {} //exception is expected
+	}
+
+	public void testCheckpointer() throws Exception {
+		File file = File.createTempFile("checkpoint", ".state");
+		try {
+			Network network = makeNetwork();
+			LocalSimulator simulator = (LocalSimulator) network.getSimulator();
+			Checkpointer checkpointer = new Checkpointer(file, .05f);
+			simulator.setCheckpointer(checkpointer);
+			network.run(0f, .12f);
+			assertEquals(.1f, checkpointer.getLastTime(), 1e-5f);
+
+			//written mid-run, while the network went on to .12
+			SimulationState state = Checkpointer.read(file);
+			assertEquals(.1f, state.getTime(), 1e-5f);
+
+			Network reference = makeNetwork();
+			reference.run(0f, .1f);
+			reference.run(.1f, .12f);
+			float expected = getX(reference);
+			assertTrue(Math.abs(expected) > .05f);
+
+			Network resumed = makeNetwork();
+			resumed.getSimulator().restore(state);
+			resumed.run(state.getTime(), .12f);
+			assertEquals(expected, getX(resumed), 1e-6f);
+
+			checkpointer.setInterval(0);
+			checkpointer.request();
+			network.run(.15f, .17f);
+			checkpointer.close();
+			assertEquals(.151f, Checkpointer.read(file).getTime(), 1e-5f);
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static float getX(Network network) throws Exception {
+		return ((RealOutput) network.getNode("B").getOrigin(NEFEnsemble.X).getValues()).getValues()[0];
+	}
+
+	//input -> A (noisy) -> B, spiking
+	private static Network makeNetwork() throws Exception {
+		PDFTools.setSeed(11);
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		ef.setSeed(Long.valueOf(13));
+		NetworkImpl network = new NetworkImpl();
+
+		FunctionInput input = new FunctionInput("input", new Function[]{new SineFunction(8f), new ConstantFunction(1, .4f)}, Units.UNK);
+		network.addNode(input);
+
+		NEFEnsembleImpl a = (NEFEnsembleImpl) ef.make("A", 40, 2);
+		a.addDecodedTermination("input", new float[][]{new float[]{1, 0}, new float[]{0, 1}}, .005f, false);
+		((DecodedOrigin) a.getOrigin(NEFEnsemble.X)).setNoise(NoiseFactory.makeRandomNoise(1000, new GaussianPDF(0, .05f)));
+		network.addNode(a);
+		NEFEnsembleImpl b = (NEFEnsembleImpl) ef.make("B", 40, 2);
+		b.addDecodedTermination("input", new float[][]{new float[]{0, 1}, new float[]{1, 0}}, .01f, false);
+		network.addNode(b);
+
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), a.getTermination("input"));
+		network.addProjection(a.getOrigin(NEFEnsemble.X), b.getTermination("input"));
+
+		network.setMode(SimulationMode.DEFAULT);
+		((LocalSimulator) network.getSimulator()).setDisplayProgress(false);
+		return network;
+	}
+}
@@ -0,0 +1,146 @@
+package ca.nengo.sim.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.math.impl.PostfixFunction;
+import ca.nengo.math.impl.SineFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkArrayImpl;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.PassthroughNode;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+
+/**
+ * Unit tests for DirectModeCompiler.
+ *
+ * @author agent
+ */
+public class DirectModeCompilerTest extends TestCase {
+
+	public void testMatchesInterpreted() throws Exception {
+		Network interpreted = makeNetwork();
+		interpreted.run(0f, .5f);
+
+		Network compiled = makeNetwork();
+		LocalSimulator simulator = (LocalSimulator) compiled.getSimulator();
+		simulator.setDirectModeCompiler(new DirectModeCompiler());
+		compiled.run(0f, .5f);
+
+		float[] expected = getValues(interpreted, "B", NEFEnsemble.X);
+		assertTrue(Math.abs(expected[0]) > .1f);
+		assertEquals(expected[0], getValues(compiled, "B", NEFEnsemble.X)[0], 1e-4f);
+		assertEquals(getValues(interpreted, "A", "product")[0], getValues(compiled, "A", "product")[0], 1e-4f);
+		assertNull(simulator.getDirectModeProgram());
+
+		//termination states are written back, so runs can continue without the program
+		simulator.setDirectModeCompiler(null);
+		interpreted.run(.5f, .6f);
+		compiled.run(.5f, .6f);
+		assertEquals(getValues(interpreted, "B", NEFEnsemble.X)[0], getValues(compiled, "B", NEFEnsemble.X)[0], 1e-4f);
+	}
+
+	public void testCompile() throws Exception {
+		Network network = makeNetwork();
+		DirectModeProgram program = new DirectModeCompiler().compile(network);
+		assertEquals(4, program.getNumCompiledEnsembles());
+		assertEquals(1, program.getNumCompiledPassthroughs());
+		assertEquals(2, program.getNativeNodes().length); //the function inputs
+		assertTrue(program.getReport().indexOf("1 constant inputs") >= 0);
+
+		//a node in another mode runs as usual
+		network.getNode("A").setMode(SimulationMode.RATE);
+		program = new DirectModeCompiler().compile(network);
+		assertEquals(3, program.getNumCompiledEnsembles());
+		assertEquals(3, program.getNativeNodes().length);
+	}
+
+	public void testInvalidation() throws Exception {
+		Network network = makeNetwork();
+		DirectModeProgram program = new DirectModeCompiler().compile(network);
+		assertTrue(program.step(0f, .001f));
+
+		network.getNode("A").setMode(SimulationMode.RATE);
+		assertFalse(program.step(.001f, .002f));
+		network.getNode("A").setMode(SimulationMode.DIRECT);
+
+		((FunctionInput) network.getNode("bias")).setFunctions(new Function[]{new ConstantFunction(1, .5f)});
+		assertFalse(program.step(.001f, .002f));
+	}
+
+	public void testFoldPassthroughs() throws Exception {
+		Network network = makeNetwork();
+		DirectModeCompiler compiler = new DirectModeCompiler();
+		compiler.setFoldPassthroughs(true);
+		assertTrue(compiler.getFoldPassthroughs());
+
+		DirectModeProgram program = compiler.compile(network);
+		assertTrue(program.getReport().indexOf("folded 1 passthrough nodes") >= 0);
+		assertTrue(program.getReport().indexOf("Fused 0 ") < 0);
+		for (int i = 0; i < 100; i++) {
+			assertTrue(program.step(i * .001f, (i+1) * .001f));
+		}
+
+		//same as unfolded, but a step ahead
+		Network reference = makeNetwork();
+		reference.run(0f, .101f);
+		assertEquals(getValues(reference, "B", NEFEnsemble.X)[0], getValues(network, "B", NEFEnsemble.X)[0], .02f);
+	}
+
+	private static float[] getValues(Network network, String node, String origin) throws Exception {
+		return ((RealOutput) network.getNode(node).getOrigin(origin).getValues()).getValues();
+	}
+
+	private static Network makeNetwork() throws Exception {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		NetworkImpl network = new NetworkImpl();
+
+		FunctionInput input = new FunctionInput("input", new Function[]{new SineFunction(10f), new ConstantFunction(1, .3f)}, Units.UNK);
+		network.addNode(input);
+		FunctionInput bias = new FunctionInput("bias", new Function[]{new ConstantFunction(1, .2f)}, Units.UNK);
+		network.addNode(bias);
+
+		NEFEnsembleImpl a = (NEFEnsembleImpl) ef.make("A", 20, 2);
+		a.addDecodedTermination("input", new float[][]{new float[]{1, 0}, new float[]{0, 1}}, .01f, false);
+		a.addDecodedTermination("recurrent", new float[][]{new float[]{.5f, 0}, new float[]{.1f, .5f}}, .05f, false);
+		a.addDecodedOrigin("product", new Function[]{new PostfixFunction("x0*x1", 2)}, "AXON");
+		network.addNode(a);
+
+		Map<String, float[][]> terms = new HashMap<String, float[][]>();
+		terms.put("input", new float[][]{new float[]{0, 1}, new float[]{1, 0}});
+		PassthroughNode p = new PassthroughNode("P", 2, terms);
+		network.addNode(p);
+
+		NetworkArrayImpl array = new NetworkArrayImpl("array", new NEFEnsembleImpl[]{
+				(NEFEnsembleImpl) ef.make("a0", 10, 1), (NEFEnsembleImpl) ef.make("a1", 10, 1)});
+		array.addDecodedTermination("input", new float[][]{new float[]{1, 0}, new float[]{0, 2}}, .02f);
+		network.addNode(array);
+
+		NEFEnsembleImpl b = (NEFEnsembleImpl) ef.make("B", 20, 1);
+		b.addDecodedTermination("array", new float[][]{new float[]{1, -1}}, .01f, false);
+		b.addDecodedTermination("product", new float[][]{new float[]{2}}, .005f, false);
+		b.addDecodedTermination("bias", new float[][]{new float[]{1}}, .005f, false);
+		network.addNode(b);
+
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), a.getTermination("input"));
+		network.addProjection(a.getOrigin(NEFEnsemble.X), a.getTermination("recurrent"));
+		network.addProjection(a.getOrigin(NEFEnsemble.X), p.getTermination("input"));
+		network.addProjection(p.getOrigin(PassthroughNode.ORIGIN), array.getTermination("input"));
+		network.addProjection(array.getOrigin("X"), b.getTermination("array"));
+		network.addProjection(a.getOrigin("product"), b.getTermination("product"));
+		network.addProjection(bias.getOrigin(FunctionInput.ORIGIN_NAME), b.getTermination("bias"));
+
+		network.setMode(SimulationMode.DIRECT);
+		((LocalSimulator) network.getSimulator()).setDisplayProgress(false);
+		return network;
+	}
+}
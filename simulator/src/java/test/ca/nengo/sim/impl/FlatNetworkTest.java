@@ -0,0 +1,123 @@
+package ca.nengo.sim.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.Node;
+import ca.nengo.model.Origin;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.PassthroughNode;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.util.MU;
+
+/**
+ * Unit tests for FlatNetwork.
+ *
+ * @author agent
+ */
+public class FlatNetworkTest extends TestCase {
+
+	private NetworkImpl myNetwork;
+	private FunctionInput myInput;
+	private PassthroughNode myP1;
+	private PassthroughNode myP2;
+
+	/*
+	 * input -> sub.P1 (swaps dimensions) -> P2 (a, and b with a fixed value but no projection)
+	 */
+	protected void setUp() throws Exception {
+		myNetwork = new NetworkImpl();
+		myInput = new FunctionInput("input", new Function[]{new ConstantFunction(1, 1), new ConstantFunction(1, 2)}, Units.UNK);
+		myNetwork.addNode(myInput);
+
+		NetworkImpl sub = new NetworkImpl();
+		sub.setName("sub");
+		Map<String, float[][]> terms = new HashMap<String, float[][]>();
+		terms.put("input", new float[][]{new float[]{0, 1}, new float[]{1, 0}});
+		myP1 = new PassthroughNode("P1", 2, terms);
+		sub.addNode(myP1);
+		sub.exposeTermination(myP1.getTermination("input"), "in");
+		sub.exposeOrigin(myP1.getOrigin(PassthroughNode.ORIGIN), "out");
+		myNetwork.addNode(sub);
+
+		terms = new HashMap<String, float[][]>();
+		terms.put("a", new float[][]{new float[]{1, -.5f}});
+		terms.put("b", new float[][]{new float[]{1}});
+		myP2 = new PassthroughNode("P2", 1, terms);
+		myNetwork.addNode(myP2);
+		myNetwork.exposeOrigin(myP2.getOrigin(PassthroughNode.ORIGIN), "out");
+		myP2.getTermination("b").setValues(new RealOutputImpl(new float[]{.5f}, Units.UNK, 0));
+
+		myNetwork.addProjection(myInput.getOrigin(FunctionInput.ORIGIN_NAME), sub.getTermination("in"));
+		myNetwork.addProjection(sub.getOrigin("out"), myP2.getTermination("a"));
+	}
+
+	public void testFlatten() throws Exception {
+		FlatNetwork flat = new FlatNetwork(myNetwork);
+		assertEquals(3, flat.getNodes().size());
+		assertEquals(2, flat.getProjections().size());
+
+		assertEquals(1, flat.getSources(myP1.getTermination("input")).size());
+		assertSame(myInput.getOrigin(FunctionInput.ORIGIN_NAME), flat.getSource(myP1.getTermination("input")));
+		assertSame(myP1, FlatNetwork.getBase(flat.getSource(myP2.getTermination("a"))).getNode());
+		assertNull(flat.getSource(myP2.getTermination("b")));
+		assertTrue(flat.getSources(myP2.getTermination("b")).isEmpty());
+
+		assertTrue(flat.isExposed(myP2.getOrigin(PassthroughNode.ORIGIN)));
+		assertFalse(flat.isExposed(myP1.getOrigin(PassthroughNode.ORIGIN)));
+
+		assertFalse(flat.isClaimed(myP1));
+		flat.claim(myP1);
+		assertTrue(flat.isClaimed(myP1));
+	}
+
+	public void testFold() throws Exception {
+		FlatNetwork flat = new FlatNetwork(myNetwork);
+		final List<String> visited = new ArrayList<String>();
+		final List<float[][]> matrices = new ArrayList<float[][]>();
+
+		flat.fold(myP2, Collections.singleton(myP1), new FlatNetwork.ChainVisitor() {
+			public void node(PassthroughNode node, float[][] matrix, int depth) {
+				visited.add("node " + node.getName() + " " + depth);
+			}
+			public void input(Origin origin, float[][] matrix, int depth) {
+				visited.add("input " + origin.getNode().getName() + " " + depth);
+				matrices.add(matrix);
+			}
+			public void constant(float[] values, float[][] matrix, int depth) {
+				visited.add("constant " + depth);
+			}
+		});
+
+		assertEquals(4, visited.size());
+		assertTrue(visited.contains("node P2 0"));
+		assertTrue(visited.contains("node P1 1"));
+		assertTrue(visited.contains("input input 2"));
+		assertTrue(visited.contains("constant 1"));
+		assertEquals(MU.toString(new float[][]{new float[]{-.5f, 1}}, 3), MU.toString(matrices.get(0), 3));
+
+		//without passing through P1, the chain stops at P1's output
+		visited.clear();
+		flat.fold(myP2, Collections.<Node>emptySet(), new FlatNetwork.ChainVisitor() {
+			public void node(PassthroughNode node, float[][] matrix, int depth) {
+				visited.add("node " + node.getName() + " " + depth);
+			}
+			public void input(Origin origin, float[][] matrix, int depth) {
+				visited.add("input " + FlatNetwork.getBase(origin).getNode().getName() + " " + depth);
+			}
+			public void constant(float[] values, float[][] matrix, int depth) {
+				visited.add("constant " + depth);
+			}
+		});
+		assertEquals(3, visited.size());
+		assertTrue(visited.contains("input P1 1"));
+	}
+}
@@ -0,0 +1,181 @@
+package ca.nengo.sim.impl;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.math.impl.GaussianPDF;
+import ca.nengo.math.impl.SineFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.NoiseFactory;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.DecodedOrigin;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.nef.impl.NEFUtil;
+import ca.nengo.util.MU;
+import ca.nengo.util.TimeSeries;
+
+/**
+ * Unit tests for ParameterSweep.
+ *
+ * @author agent
+ */
+public class ParameterSweepTest extends TestCase {
+
+	private static final int TRIALS = 5;
+
+	public void testRun() throws Exception {
+		final Network prototype = makeNetwork();
+		final float[][] decoders = ((DecodedOrigin) prototype.getNode("B").getOrigin(NEFEnsemble.X)).getDecoders();
+		final boolean[] shared = new boolean[]{true};
+
+		ParameterSweep sweep = new ParameterSweep(prototype);
+		sweep.setNumThreads(2);
+		sweep.setSeed(5);
+		sweep.addProbe("B", NEFEnsemble.X);
+		TimeSeries[][] data = sweep.run(TRIALS, 0f, .1f, new ParameterSweep.Trial() {
+			public void configure(Network network, int index) throws Exception {
+				assertTrue(network != prototype);
+				DecodedOrigin origin = (DecodedOrigin) network.getNode("B").getOrigin(NEFEnsemble.X);
+				synchronized (shared) {
+					shared[0] = shared[0] && origin.getDecoders() == decoders;
+				}
+				setInput(network, index);
+			}
+		});
+		assertTrue(shared[0]);
+		assertEquals(TRIALS, data.length);
+
+		//each trial matches a network built and run on its own, with the same random stream
+		for (int i = 0; i < TRIALS; i++) {
+			assertEquals(1, data[i].length);
+			Network network = makeNetwork();
+			((LocalSimulator) network.getSimulator()).setSingleThreaded(true);
+			Random previous = PDFTools.setThreadRandom(PDFTools.makeStream(5, "trial" + i));
+			try {
+				setInput(network, i);
+				network.run(0f, .1f);
+			} finally {
+				PDFTools.setThreadRandom(previous);
+			}
+			float[][] values = data[i][0].getValues();
+			assertEquals(100, values.length);
+			float[] expected = getX(network);
+			assertEquals(expected[0], values[values.length-1][0], 1e-6f);
+			assertEquals(expected[1], values[values.length-1][1], 1e-6f);
+		}
+		assertTrue(Math.abs(data[0][0].getValues()[99][0] - data[1][0].getValues()[99][0]) > 1e-3f);
+
+		//the prototype isn't run
+		assertEquals(0f, getX(prototype)[0], 0f);
+	}
+
+	public void testShareClearsCaches() throws Exception {
+		Network prototype = makeNetwork();
+		Network copy = (Network) prototype.clone();
+		NEFEnsembleImpl a = (NEFEnsembleImpl) copy.getNode("A");
+		float[] state = new float[]{.3f, -.5f};
+		float expected = a.getRadialInput(state, 0);
+
+		//one trial replaces the encoders and radii ...
+		a.setEncoders(MU.prod(a.getEncoders(), -1f));
+		assertEquals(-expected, a.getRadialInput(state, 0), 1e-6f);
+		a.setRadii(new float[]{2f, 2f});
+		assertEquals(-expected / 2f, a.getRadialInput(state, 0), 1e-6f);
+
+		//... and the next one must not see them
+		NEFUtil.shareModelData(prototype, copy);
+		assertEquals(expected, a.getRadialInput(state, 0), 1e-6f);
+	}
+
+	public void testReplacedEncoders() throws Exception {
+		ParameterSweep sweep = new ParameterSweep(makeNetwork());
+		sweep.setNumThreads(1);
+		sweep.setSeed(5);
+		sweep.addProbe("B", NEFEnsemble.X);
+		TimeSeries[][] data = sweep.run(2, 0f, .05f, new ParameterSweep.Trial() {
+			public void configure(Network network, int index) throws Exception {
+				if (index == 0) {
+					NEFEnsembleImpl a = (NEFEnsembleImpl) network.getNode("A");
+					a.setEncoders(MU.prod(a.getEncoders(), -1f));
+				}
+			}
+		});
+
+		//the second trial runs on the same clone, and mustn't see the first one's encoders
+		Network network = makeNetwork();
+		((LocalSimulator) network.getSimulator()).setSingleThreaded(true);
+		Random previous = PDFTools.setThreadRandom(PDFTools.makeStream(5, "trial1"));
+		try {
+			network.run(0f, .05f);
+		} finally {
+			PDFTools.setThreadRandom(previous);
+		}
+		float[][] values = data[1][0].getValues();
+		float[] expected = getX(network);
+		assertEquals(expected[0], values[values.length-1][0], 1e-6f);
+		assertEquals(expected[1], values[values.length-1][1], 1e-6f);
+	}
+
+	public void testFailure() throws Exception {
+		ParameterSweep sweep = new ParameterSweep(makeNetwork());
+		sweep.setNumThreads(2);
+		try {
+			sweep.run(TRIALS, 0f, .01f, new ParameterSweep.Trial() {
+				public void configure(Network network, int index) throws Exception {
+					if (index == 3) {
+						throw new IllegalArgumentException("bad trial");
+					}
+				}
+			});
+			fail("Should have thrown an exception");
+		} catch (SimulationException e) {
+			assertTrue(e.getMessage().indexOf("bad trial") >= 0);
+		}
+	}
+
+	//odd trials replace the input with a different kind of function, which changes the network's structure
+	private static void setInput(Network network, int index) throws Exception {
+		Function second = index % 2 == 0 ? new ConstantFunction(1, .2f * index - .4f) : new SineFunction(3f + index);
+		((FunctionInput) network.getNode("input")).setFunctions(new Function[]{new SineFunction(8f), second});
+	}
+
+	private static float[] getX(Network network) throws Exception {
+		return ((RealOutput) network.getNode("B").getOrigin(NEFEnsemble.X).getValues()).getValues().clone();
+	}
+
+	//input -> A (noisy) -> B, spiking
+	private static Network makeNetwork() throws Exception {
+		PDFTools.setSeed(11);
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		ef.setSeed(Long.valueOf(13));
+		NetworkImpl network = new NetworkImpl();
+
+		FunctionInput input = new FunctionInput("input", new Function[]{new SineFunction(8f), new ConstantFunction(1, .4f)}, Units.UNK);
+		network.addNode(input);
+
+		NEFEnsembleImpl a = (NEFEnsembleImpl) ef.make("A", 40, 2);
+		a.addDecodedTermination("input", new float[][]{new float[]{1, 0}, new float[]{0, 1}}, .005f, false);
+		((DecodedOrigin) a.getOrigin(NEFEnsemble.X)).setNoise(NoiseFactory.makeRandomNoise(1000, new GaussianPDF(0, .05f)));
+		network.addNode(a);
+		NEFEnsembleImpl b = (NEFEnsembleImpl) ef.make("B", 40, 2);
+		b.addDecodedTermination("input", new float[][]{new float[]{0, 1}, new float[]{1, 0}}, .01f, false);
+		network.addNode(b);
+
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), a.getTermination("input"));
+		network.addProjection(a.getOrigin(NEFEnsemble.X), b.getTermination("input"));
+
+		network.setMode(SimulationMode.DEFAULT);
+		((LocalSimulator) network.getSimulator()).setDisplayProgress(false);
+		return network;
+	}
+}
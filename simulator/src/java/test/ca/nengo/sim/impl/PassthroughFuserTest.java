@@ -0,0 +1,187 @@
+package ca.nengo.sim.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.math.impl.SineFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.impl.PassthroughNode;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.model.neuron.Neuron;
+import ca.nengo.util.impl.LiveDataBus;
+import ca.nengo.util.impl.LiveWatch;
+import ca.nengo.util.impl.NodeThreadPool;
+
+/**
+ * Unit tests for PassthroughFuser.
+ *
+ * @author agent
+ */
+public class PassthroughFuserTest extends TestCase {
+
+	public void testFuse() throws Exception {
+		Network network = makeNetwork();
+		PassthroughFusion fusion = new PassthroughFuser().fuse(network);
+		assertEquals(3, fusion.getNumFusedNodes());
+		assertTrue(fusion.isFused(network.getNode("P1")));
+		assertTrue(fusion.isFused(((Network) network.getNode("sub")).getNode("P3")));
+		assertFalse(fusion.isFused(network.getNode("rates"))); //exposed
+		assertEquals(1, fusion.getProjections().length);
+		assertEquals(1, fusion.getTasks().length);
+		assertTrue(fusion.getReport().indexOf("Fused 3 passthrough nodes into 1 relays") >= 0);
+		assertTrue(fusion.getReport().indexOf("(delay 3)") >= 0);
+	}
+
+	public void testClaimed() throws Exception {
+		Network network = makeNetwork();
+		FlatNetwork flat = new FlatNetwork(network);
+		flat.claim(network.getNode("P2"));
+		PassthroughFusion fusion = new PassthroughFuser().fuse(flat);
+		assertEquals(2, fusion.getNumFusedNodes());
+		assertFalse(fusion.isFused(network.getNode("P2")));
+		assertTrue(flat.isClaimed(network.getNode("P1")));
+		assertEquals(2, fusion.getTasks().length);
+	}
+
+	public void testWatched() throws Exception {
+		Network network = makeNetwork();
+		Network sub = (Network) network.getNode("sub");
+		LiveDataBus bus = ((LocalSimulator) network.getSimulator()).getLiveDataBus();
+		LiveWatch watch = bus.subscribe(sub.getOrigin("out"));
+		PassthroughFusion fusion = new PassthroughFuser().fuse(network);
+		assertEquals(2, fusion.getNumFusedNodes());
+		assertFalse(fusion.isFused(sub.getNode("P3")));
+
+		//the watched output is up to date at every step
+		Network usual = makeNetwork();
+		LiveWatch expected = ((LocalSimulator) usual.getSimulator()).getLiveDataBus().subscribe(
+				((Network) usual.getNode("sub")).getOrigin("out"));
+		usual.run(0f, .05f);
+		((LocalSimulator) network.getSimulator()).setPassthroughFuser(new PassthroughFuser());
+		network.run(0f, .05f);
+		float[] a = new float[1];
+		float[] b = new float[1];
+		for (long tick = 1; tick <= expected.getNewestTick(); tick++) {
+			assertTrue(expected.get(tick, a));
+			assertTrue(watch.get(tick, b));
+			assertEquals(a[0], b[0], 1e-6f);
+		}
+		assertEquals(expected.getNewestTick(), watch.getNewestTick());
+	}
+
+	public void testMatchesUnfused() throws Exception {
+		int threads = NodeThreadPool.getNumJavaThreads();
+		try {
+			checkMatchesUnfused();
+			NodeThreadPool.turnOffMultithreading();
+			checkMatchesUnfused();
+		} finally {
+			NodeThreadPool.setNumJavaThreads(threads);
+		}
+	}
+
+	private void checkMatchesUnfused() throws Exception {
+		Network usual = makeNetwork();
+		usual.run(0f, .2f);
+
+		Network fused = makeNetwork();
+		LocalSimulator simulator = (LocalSimulator) fused.getSimulator();
+		simulator.setPassthroughFuser(new PassthroughFuser());
+		fused.run(0f, .2f);
+		assertNull(simulator.getPassthroughFusion());
+
+		float expected = getX(usual);
+		assertTrue(Math.abs(expected) > .1f);
+		assertEquals(expected, getX(fused), 1e-5f);
+
+		//passthrough outputs are written back, so runs can continue without fusion
+		simulator.setPassthroughFuser(null);
+		usual.run(.2f, .21f);
+		fused.run(.2f, .21f);
+		assertEquals(getX(usual), getX(fused), 1e-5f);
+	}
+
+	public void testRemoveDelay() throws Exception {
+		Network usual = makeNetwork();
+		usual.run(0f, .2f);
+
+		Network fused = makeNetwork();
+		PassthroughFuser fuser = new PassthroughFuser();
+		fuser.setRemoveDelay(true);
+		assertTrue(fuser.getRemoveDelay());
+		((LocalSimulator) fused.getSimulator()).setPassthroughFuser(fuser);
+		fused.run(0f, .2f);
+
+		//same as with relays, but three steps ahead
+		Network reference = makeNetwork();
+		reference.run(0f, .203f);
+		assertTrue(Math.abs(getX(usual) - getX(fused)) > 1e-4f);
+		assertEquals(getX(reference), getX(fused), .01f);
+	}
+
+	private static float getX(Network network) throws Exception {
+		return ((RealOutput) network.getNode("B").getOrigin(NEFEnsemble.X).getValues()).getValues()[0];
+	}
+
+	/*
+	 * input -> P1 -> P2 (with bias) -> sub.P3 -> B, and B's rates -> rates (exposed, so not fused)
+	 */
+	private static Network makeNetwork() throws Exception {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		ef.setSeed(Long.valueOf(5));
+		NetworkImpl network = new NetworkImpl();
+
+		FunctionInput input = new FunctionInput("input", new Function[]{new SineFunction(10f), new ConstantFunction(1, .3f)}, Units.UNK);
+		network.addNode(input);
+		FunctionInput bias = new FunctionInput("bias", new Function[]{new ConstantFunction(1, .6f)}, Units.UNK);
+		network.addNode(bias);
+
+		Map<String, float[][]> terms = new HashMap<String, float[][]>();
+		terms.put("input", new float[][]{new float[]{0, 1}, new float[]{1, 0}});
+		PassthroughNode p1 = new PassthroughNode("P1", 2, terms);
+		network.addNode(p1);
+
+		terms = new HashMap<String, float[][]>();
+		terms.put("a", new float[][]{new float[]{1, -.5f}});
+		terms.put("b", new float[][]{new float[]{1}});
+		PassthroughNode p2 = new PassthroughNode("P2", 1, terms);
+		network.addNode(p2);
+
+		NetworkImpl sub = new NetworkImpl();
+		sub.setName("sub");
+		PassthroughNode p3 = new PassthroughNode("P3", 1);
+		sub.addNode(p3);
+		sub.exposeTermination(p3.getTermination(PassthroughNode.TERMINATION), "in");
+		sub.exposeOrigin(p3.getOrigin(PassthroughNode.ORIGIN), "out");
+		network.addNode(sub);
+
+		NEFEnsembleImpl b = (NEFEnsembleImpl) ef.make("B", 50, 1);
+		b.addDecodedTermination("input", new float[][]{new float[]{1}}, .01f, false);
+		network.addNode(b);
+
+		PassthroughNode rates = new PassthroughNode("rates", 50);
+		network.addNode(rates);
+		network.exposeOrigin(rates.getOrigin(PassthroughNode.ORIGIN), "rates");
+
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), p1.getTermination("input"));
+		network.addProjection(p1.getOrigin(PassthroughNode.ORIGIN), p2.getTermination("a"));
+		network.addProjection(bias.getOrigin(FunctionInput.ORIGIN_NAME), p2.getTermination("b"));
+		network.addProjection(p2.getOrigin(PassthroughNode.ORIGIN), sub.getTermination("in"));
+		network.addProjection(sub.getOrigin("out"), b.getTermination("input"));
+		network.addProjection(b.getOrigin(Neuron.AXON), rates.getTermination(PassthroughNode.TERMINATION));
+
+		network.setMode(SimulationMode.RATE);
+		((LocalSimulator) network.getSimulator()).setDisplayProgress(false);
+		return network;
+	}
+}
@@ -0,0 +1,104 @@
+package ca.nengo.sim.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+
+/**
+ * Unit tests for RealTimePacer.
+ *
+ * @author agent
+ */
+public class RealTimePacerTest extends TestCase {
+
+	private static final long MS = 1000000L;
+
+	private TestClock myClock;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		myClock = new TestClock();
+	}
+
+	public void testPace() {
+		RealTimePacer pacer = new RealTimePacer(1f, myClock);
+		pacer.start(0);
+		for (int i = 1; i <= 20; i++) {
+			myClock.myTime += MS / 2; //the step's work
+			pacer.pace(i / 512.0);
+			assertEquals(i * 1000000000L / 512, myClock.myTime);
+		}
+		assertEquals(20, pacer.getNumSteps());
+		assertEquals(0, pacer.getNumOverruns());
+
+		//twice as fast
+		pacer.setRatio(2f);
+		pacer.pace(22 / 512.0);
+		assertEquals(21 * 1000000000L / 512, myClock.myTime);
+	}
+
+	public void testOverrun() {
+		RealTimePacer pacer = new RealTimePacer(1f, myClock);
+		pacer.setMaxLagNanos(5 * MS);
+		pacer.start(0);
+
+		//steps take 3 ms of wall time per 2 ms of simulation time, so each is 1 ms later than the last
+		for (int i = 1; i <= 6; i++) {
+			myClock.myTime += 3 * MS;
+			pacer.pace(i * .002);
+		}
+		assertEquals(6, pacer.getNumOverruns());
+		assertEquals(6 * MS, pacer.getMaxLatenessNanos(), 1000);
+		assertEquals(3.5 * MS, pacer.getMeanLatenessNanos(), 1000);
+
+		//more than the maximum lag behind, so the schedule started again from the last step
+		myClock.myTime += 3 * MS;
+		pacer.pace(.014);
+		assertEquals(7, pacer.getNumOverruns());
+		assertEquals(6 * MS, pacer.getMaxLatenessNanos(), 1000);
+		assertEquals((21 + 1) * MS / 7.0, pacer.getMeanLatenessNanos(), 1000);
+	}
+
+	public void testDegrade() throws Exception {
+		NEFEnsemble ensemble = new NEFEnsembleFactoryImpl().make("test", 10, 1);
+		RealTimePacer pacer = new RealTimePacer(1f, myClock);
+		pacer.addDegradableNode(ensemble, SimulationMode.RATE);
+		pacer.setDegradationThresholds(3, 2);
+		pacer.start(0);
+
+		//simulation time doesn't advance, so every step is late
+		for (int i = 0; i < 3; i++) {
+			myClock.myTime += MS;
+			pacer.pace(0);
+		}
+		assertEquals(3, pacer.getNumOverruns());
+		assertEquals(3 * MS, pacer.getMaxLatenessNanos());
+		assertTrue(pacer.isDegraded());
+		assertEquals(SimulationMode.RATE, ensemble.getMode());
+
+		//on time for one step isn't enough to switch back ...
+		pacer.pace(.01);
+		assertTrue(pacer.isDegraded());
+
+		//... but two are
+		pacer.pace(.02);
+		assertFalse(pacer.isDegraded());
+		assertEquals(SimulationMode.DEFAULT, ensemble.getMode());
+	}
+
+	//time only passes when the test says so, or when the pacer waits
+	private static class TestClock implements RealTimePacer.Clock {
+
+		private long myTime;
+
+		public long nanoTime() {
+			return myTime;
+		}
+
+		public void waitUntil(long deadline, long spinNanos) {
+			myTime = Math.max(myTime, deadline);
+		}
+	}
+}
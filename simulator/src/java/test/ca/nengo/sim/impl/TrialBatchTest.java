@@ -0,0 +1,110 @@
+package ca.nengo.sim.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.PDFTools;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.math.impl.SineFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationException;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.util.TimeSeries;
+
+/**
+ * Unit tests for TrialBatch.
+ *
+ * @author agent
+ */
+public class TrialBatchTest extends TestCase {
+
+	private static final int TRIALS = 4;
+
+	public void testRun() throws Exception {
+		Network network = makeNetwork(getFunctions(0));
+		FunctionInput input = (FunctionInput) network.getNode("input");
+		Function[][] functions = new Function[TRIALS][];
+		for (int i = 0; i < TRIALS; i++) {
+			functions[i] = getFunctions(i);
+		}
+
+		TrialBatch batch = new TrialBatch(network, TRIALS);
+		batch.setInputs(input, functions);
+		batch.addProbe(network.getNode("B").getOrigin(NEFEnsemble.X));
+		batch.addProbe(input.getOrigin(FunctionInput.ORIGIN_NAME));
+		TimeSeries[][] data = batch.run(0f, .1f, .001f);
+		assertEquals(TRIALS, data.length);
+
+		//the network isn't run
+		assertEquals(0f, getX(network)[0], 0f);
+
+		//each trial matches the network run on its own with the trial's input
+		for (int i = 0; i < TRIALS; i++) {
+			assertEquals(2, data[i].length);
+			assertEquals(100, data[i][0].getTimes().length);
+			assertEquals(.1f, data[i][0].getTimes()[99], 1e-5f);
+			assertEquals(functions[i][1].map(new float[]{.1f}), data[i][1].getValues()[99][1], 1e-6f);
+
+			Network reference = makeNetwork(getFunctions(i));
+			reference.run(0f, .1f);
+			float[] expected = getX(reference);
+			float[] actual = data[i][0].getValues()[99];
+			assertEquals(expected[0], actual[0], 1e-4f);
+			assertEquals(expected[1], actual[1], 1e-4f);
+		}
+		assertTrue(Math.abs(data[0][0].getValues()[99][0] - data[1][0].getValues()[99][0]) > .05f);
+	}
+
+	public void testUnsupported() throws Exception {
+		Network network = makeNetwork(getFunctions(0));
+		network.getNode("B").setMode(SimulationMode.DEFAULT);
+		try {
+			new TrialBatch(network, TRIALS).run(0f, .01f, .001f);
+			fail("Should have thrown an exception");
+		} catch (SimulationException e) {} //exception is expected
+
+		try {
+			new TrialBatch(network, TRIALS).setInputs((FunctionInput) network.getNode("input"), new Function[1][]);
+			fail("Should have thrown an exception");
+		} catch (Exception e) {} //exception is expected
+	}
+
+	private static Function[] getFunctions(int trial) {
+		return new Function[]{new SineFunction(5f + trial), new ConstantFunction(1, .5f - .3f * trial)};
+	}
+
+	private static float[] getX(Network network) throws Exception {
+		return ((RealOutput) network.getNode("B").getOrigin(NEFEnsemble.X).getValues()).getValues().clone();
+	}
+
+	//input -> A -> B, rate mode
+	private static Network makeNetwork(Function[] functions) throws Exception {
+		PDFTools.setSeed(11);
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		ef.setSeed(Long.valueOf(13));
+		NetworkImpl network = new NetworkImpl();
+
+		FunctionInput input = new FunctionInput("input", functions, Units.UNK);
+		network.addNode(input);
+
+		NEFEnsembleImpl a = (NEFEnsembleImpl) ef.make("A", 50, 2);
+		a.addDecodedTermination("input", new float[][]{new float[]{1, 0}, new float[]{0, 1}}, .005f, false);
+		network.addNode(a);
+		NEFEnsembleImpl b = (NEFEnsembleImpl) ef.make("B", 50, 2);
+		b.addDecodedTermination("input", new float[][]{new float[]{0, 1}, new float[]{1, 0}}, .01f, false);
+		network.addNode(b);
+
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), a.getTermination("input"));
+		network.addProjection(a.getOrigin(NEFEnsemble.X), b.getTermination("input"));
+
+		network.setMode(SimulationMode.RATE);
+		((LocalSimulator) network.getSimulator()).setDisplayProgress(false);
+		return network;
+	}
+}
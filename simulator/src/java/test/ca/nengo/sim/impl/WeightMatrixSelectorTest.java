@@ -0,0 +1,165 @@
+package ca.nengo.sim.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.AbstractFunction;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.math.impl.SineFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.Projection;
+import ca.nengo.model.RealOutput;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.DecodedTermination;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.util.MU;
+
+/**
+ * Unit tests for WeightMatrixSelector.
+ *
+ * @author agent
+ */
+public class WeightMatrixSelectorTest extends TestCase {
+
+	public void testChoose() throws Exception {
+		WeightMatrixSelector selector = new WeightMatrixSelector();
+
+		//small high-dimensional ensembles
+		Network network = makeNetwork(10, 16, SimulationMode.RATE);
+		assertEquals(WeightMatrixSelector.Path.FACTORED, selector.choose(getProjection(network, "A"), .001f)); //from input
+		assertEquals(WeightMatrixSelector.Path.DENSE, selector.choose(getProjection(network, "B"), .001f));
+
+		//large one-dimensional ensembles
+		network = makeNetwork(200, 1, SimulationMode.RATE);
+		assertEquals(WeightMatrixSelector.Path.FACTORED, selector.choose(getProjection(network, "B"), .001f));
+
+		selector.setMaxWeights(99);
+		network = makeNetwork(10, 16, SimulationMode.RATE);
+		assertEquals(WeightMatrixSelector.Path.FACTORED, selector.choose(getProjection(network, "B"), .001f));
+
+		selector = new WeightMatrixSelector();
+		DecodedTermination[] weighted = selector.apply(network, .001f);
+		assertEquals(1, weighted.length);
+		assertFalse(weighted[0].getNeuronWeights().isSparse());
+		WeightMatrixSelector.release(weighted);
+		assertNull(weighted[0].getNeuronWeights());
+
+		selector.setSparseOverhead(0);
+		assertEquals(WeightMatrixSelector.Path.SPARSE, selector.choose(getProjection(network, "B"), .001f));
+
+		network.setMode(SimulationMode.DIRECT);
+		assertEquals(WeightMatrixSelector.Path.FACTORED, selector.choose(getProjection(network, "B"), .001f));
+	}
+
+	public void testMatchesFactored() throws Exception {
+		checkMatchesFactored(new WeightMatrixSelector());
+
+		WeightMatrixSelector sparse = new WeightMatrixSelector();
+		sparse.setSparseOverhead(0);
+		checkMatchesFactored(sparse);
+	}
+
+	private void checkMatchesFactored(WeightMatrixSelector selector) throws Exception {
+		Network usual = makeNetwork(10, 16, SimulationMode.RATE);
+		Network weighted = makeNetwork(10, 16, SimulationMode.RATE);
+		LocalSimulator simulator = (LocalSimulator) weighted.getSimulator();
+		simulator.setWeightMatrixSelector(selector);
+
+		usual.run(0f, .05f);
+		weighted.run(0f, .05f);
+		assertNull(((DecodedTermination) weighted.getNode("B").getTermination("input")).getNeuronWeights());
+		assertClose(getX(usual), getX(weighted));
+
+		//PSC states are restored at the end of the run, so it can continue as usual
+		simulator.setWeightMatrixSelector(null);
+		usual.run(.05f, .06f);
+		weighted.run(.05f, .06f);
+		assertClose(getX(usual), getX(weighted));
+	}
+
+	public void testReleasedAfterFailure() throws Exception {
+		Network network = makeNetwork(10, 16, SimulationMode.RATE);
+		LocalSimulator simulator = (LocalSimulator) network.getSimulator();
+		simulator.setWeightMatrixSelector(new WeightMatrixSelector());
+		simulator.setSingleThreaded(true);
+
+		FunctionInput input = (FunctionInput) network.getNode("input");
+		Function[] functions = input.getFunctions();
+		functions[0] = new AbstractFunction(1) {
+			private static final long serialVersionUID = 1L;
+			public float map(float[] from) {
+				if (from[0] > .02f) {
+					throw new IllegalStateException("test failure");
+				}
+				return 0;
+			}
+		};
+		input.setFunctions(functions);
+
+		try {
+			network.run(0f, .05f);
+			fail("Should have thrown");
+		} catch (IllegalStateException e) {
+			assertEquals("test failure", e.getMessage());
+		}
+		assertNull(((DecodedTermination) network.getNode("B").getTermination("input")).getNeuronWeights());
+	}
+
+	private static void assertClose(float[] expected, float[] actual) {
+		assertTrue(Math.max(MU.max(expected), -MU.min(expected)) > .1f);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i], 1e-4f);
+		}
+	}
+
+	private static Projection getProjection(Network network, String target) {
+		for (Projection projection : network.getProjections()) {
+			if (projection.getTermination().getNode().getName().equals(target)) {
+				return projection;
+			}
+		}
+		return null;
+	}
+
+	private static float[] getX(Network network) throws Exception {
+		return ((RealOutput) network.getNode("B").getOrigin(NEFEnsemble.X).getValues()).getValues();
+	}
+
+	//input -> A -> B (with a transform)
+	private static Network makeNetwork(int neurons, int dimension, SimulationMode mode) throws Exception {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		ef.setSeed(Long.valueOf(3));
+		NetworkImpl network = new NetworkImpl();
+
+		Function[] functions = new Function[dimension];
+		for (int i = 0; i < dimension; i++) {
+			functions[i] = (i % 2 == 0) ? new SineFunction(5f + i) : new ConstantFunction(1, .5f);
+		}
+		FunctionInput input = new FunctionInput("input", functions, Units.UNK);
+		network.addNode(input);
+
+		float[][] transform = new float[dimension][];
+		for (int i = 0; i < dimension; i++) {
+			transform[i] = new float[dimension];
+			transform[i][(i + 1) % dimension] = .8f;
+		}
+
+		NEFEnsembleImpl a = (NEFEnsembleImpl) ef.make("A", neurons, dimension);
+		a.addDecodedTermination("input", MU.I(dimension), .005f, false);
+		network.addNode(a);
+		NEFEnsembleImpl b = (NEFEnsembleImpl) ef.make("B", neurons, dimension);
+		b.addDecodedTermination("input", transform, .01f, false);
+		network.addNode(b);
+
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), a.getTermination("input"));
+		network.addProjection(a.getOrigin(NEFEnsemble.X), b.getTermination("input"));
+
+		network.setMode(mode);
+		((LocalSimulator) network.getSimulator()).setDisplayProgress(false);
+		return network;
+	}
+}
@@ -0,0 +1,94 @@
+package ca.nengo.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.ParallelEnsembleBuilder;
+
+/**
+ * Unit tests for ConstructionProgress.
+ *
+ * @author agent
+ */
+public class ConstructionProgressTest extends TestCase {
+
+	private NEFEnsembleFactoryImpl myFactory;
+	private MockMonitor myMonitor;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		myFactory = new NEFEnsembleFactoryImpl();
+		myFactory.beQuiet();
+		myMonitor = new MockMonitor();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		ConstructionProgress.setThreadMonitor(null);
+		super.tearDown();
+	}
+
+	public void testReport() throws Exception {
+		ConstructionProgress.report("nobody is listening");
+
+		assertNull(ConstructionProgress.setThreadMonitor(myMonitor));
+		assertSame(myMonitor, ConstructionProgress.getThreadMonitor());
+		myFactory.make("a", 20, 1);
+		assertEquals(2, myMonitor.steps.size());
+		assertEquals("Making ensemble a", myMonitor.steps.get(0));
+		assertEquals("Solving decoders for a.X", myMonitor.steps.get(1));
+
+		assertSame(myMonitor, ConstructionProgress.setThreadMonitor(null));
+		myFactory.make("b", 20, 1);
+		assertEquals(2, myMonitor.steps.size());
+	}
+
+	public void testCancel() throws Exception {
+		ConstructionProgress.setThreadMonitor(myMonitor);
+		myMonitor.cancelled = true;
+		try {
+			myFactory.make("a", 20, 1);
+			fail("Construction should have been cancelled");
+		} catch (ConstructionCancelledException e) {
+		}
+		try {
+			ConstructionProgress.checkCancelled();
+			fail("Construction should have been cancelled");
+		} catch (ConstructionCancelledException e) {
+		}
+		assertTrue(myMonitor.steps.isEmpty());
+	}
+
+	public void testParallel() throws Exception {
+		ConstructionProgress.setThreadMonitor(myMonitor);
+		ParallelEnsembleBuilder builder = new ParallelEnsembleBuilder(1, 2);
+		builder.makeArray("Model/array", myFactory, "array", 3, 20, new float[]{1});
+		assertEquals(6, myMonitor.steps.size());
+
+		myMonitor.cancelled = true;
+		try {
+			builder.makeArray("Model/array", myFactory, "array", 3, 20, new float[]{1});
+			fail("Construction should have been cancelled");
+		} catch (ConstructionCancelledException e) {
+		}
+		builder.shutdown();
+	}
+
+	private static class MockMonitor implements ConstructionProgress.Monitor {
+
+		public final List<String> steps = Collections.synchronizedList(new ArrayList<String>());
+		public volatile boolean cancelled = false;
+
+		public void stepStarted(String description) {
+			steps.add(description);
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
+}
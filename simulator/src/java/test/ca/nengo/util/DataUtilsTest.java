@@ -100,6 +100,81 @@ public class DataUtilsTest extends TestCase {
 		TestUtil.assertClose(1.1f, ts.getValues()[0][1], myTolerance);
 	}
 
+	public void testFilter() {
+		//step input, unevenly sampled
+		float[] times = new float[]{0, .001f, .003f, .01f, .02f, .05f, .1f};
+		float[][] values = new float[times.length][];
+		for (int i = 0; i < times.length; i++) {
+			values[i] = new float[]{i == 0 ? 0 : 1, 2};
+		}
+		TimeSeries series = new TimeSeriesImpl(times, values, new Units[]{Units.UNK, Units.UNK});
+		float tau = .02f;
+
+		TimeSeries filtered = DataUtils.filter(series, tau);
+		assertEquals(times.length, filtered.getTimes().length);
+		assertEquals(0f, filtered.getValues()[0][0], 0f);
+		for (int i = 2; i < times.length; i++) {
+			//input ramps from 0 to 1 over the first interval, then is constant
+			float t = times[i] - times[1];
+			float y1 = filtered.getValues()[1][0];
+			float expected = 1 - (1 - y1) * (float) Math.exp(-t / tau);
+			TestUtil.assertClose(expected, filtered.getValues()[i][0], myTolerance);
+			TestUtil.assertClose(2 * (1 - (float) Math.exp(-times[i] / tau)), filtered.getValues()[i][1], myTolerance);
+		}
+
+		//in place
+		DataUtils.filter(times, values, tau, values);
+		for (int i = 0; i < times.length; i++) {
+			assertEquals(filtered.getValues()[i][1], values[i][1], 0f);
+		}
+
+		TimeSeries alpha = DataUtils.filterAlpha(new TimeSeriesImpl(MU.makeVector(0, .001f, .2f), 
+				MU.uniform(201, 1, 1), new Units[]{Units.UNK}), tau);
+		for (int i = 10; i < 201; i += 10) {
+			float t = i * .001f;
+			float expected = 1 - (1 + t / tau) * (float) Math.exp(-t / tau);
+			TestUtil.assertClose(expected, alpha.getValues()[i][0], .002f);
+		}
+	}
+
+	public void testDecimate() {
+		TimeSeries ts = DataUtils.decimate(myOriginalSeries, 4);
+		assertEquals(3, ts.getTimes().length);
+		TestUtil.assertClose(2.5f, ts.getTimes()[0], myTolerance);
+		TestUtil.assertClose(9.5f, ts.getTimes()[2], myTolerance);
+		TestUtil.assertClose(.25f, ts.getValues()[0][0], myTolerance);
+		TestUtil.assertClose(1.65f, ts.getValues()[1][1], myTolerance);
+		TestUtil.assertClose(2.95f, ts.getValues()[2][2], myTolerance);
+	}
+
+	public void testRmse() {
+		float[][] values = myOriginalSeries.getValues();
+		float[][] shifted = new float[values.length][];
+		for (int i = 0; i < values.length; i++) {
+			shifted[i] = MU.sum(values[i], new float[]{i < 5 ? 0 : 1, 0, 0});
+		}
+		TimeSeries other = new TimeSeriesImpl(myOriginalSeries.getTimes(), shifted, myOriginalSeries.getUnits());
+		TimeSeries rmse = DataUtils.rmse(myOriginalSeries, other, 2);
+		assertEquals(1, rmse.getDimension());
+		TestUtil.assertClose(0, rmse.getValues()[4][0], myTolerance);
+		TestUtil.assertClose((float) Math.sqrt(1f / 6f), rmse.getValues()[5][0], myTolerance);
+		TestUtil.assertClose((float) Math.sqrt(1f / 3f), rmse.getValues()[9][0], myTolerance);
+	}
+
+	public void testToRates() {
+		float[] times = MU.makeVector(0, .001f, 2);
+		TimeSeries rates = DataUtils.toRates(myOriginalPattern, times, .1f);
+		assertEquals(10, rates.getDimension());
+		assertEquals(times.length, rates.getValues().length);
+		assertEquals(0f, rates.getValues()[500][0], 0f);
+
+		//neuron 2 spikes at 0 and 1
+		float[] expected = new float[]{10f, 10f * (float) Math.exp(-5), 10f + 10f * (float) Math.exp(-10)};
+		TestUtil.assertClose(expected[0], rates.getValues()[0][2], .001f);
+		TestUtil.assertClose(expected[1], rates.getValues()[500][2], .001f);
+		TestUtil.assertClose(expected[2], rates.getValues()[1000][2], .001f);
+	}
+
 	public void testSubsetSpikePatternIntIntInt() {
 		SpikePattern p = DataUtils.subset(myOriginalPattern, 2, 3, 5);
 		assertEquals(2, p.getNumNeurons());
@@ -0,0 +1,107 @@
+package ca.nengo.util.impl;
+
+import junit.framework.TestCase;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.BasicOrigin;
+import ca.nengo.model.impl.RealOutputImpl;
+import ca.nengo.model.impl.SpikeOutputImpl;
+
+/**
+ * Unit tests for LiveDataBus, LiveWatch and SampleRingBuffer.
+ *
+ * @author agent
+ */
+public class LiveDataBusTest extends TestCase {
+
+	private BasicOrigin myOrigin;
+	private LiveDataBus myBus;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		myOrigin = new BasicOrigin(null, "test", 2, Units.UNK);
+		setOrigin(0f);
+		myBus = new LiveDataBus(10);
+	}
+
+	private void setOrigin(float value) {
+		myOrigin.setValues(new RealOutputImpl(new float[]{value, -value}, Units.UNK, 0f));
+	}
+
+	public void testRingBuffer() {
+		SampleRingBuffer buffer = new SampleRingBuffer(1, 3);
+		assertEquals(-1, buffer.getNewestTick());
+		for (int i = 0; i < 5; i++) {
+			buffer.write(i, new float[]{i});
+		}
+		assertEquals(4, buffer.getNewestTick());
+		assertEquals(2, buffer.getOldestTick());
+
+		float[] frame = new float[1];
+		assertFalse(buffer.read(1, frame));
+		assertTrue(buffer.read(3, frame));
+		assertEquals(3f, frame[0], .0001f);
+		assertFalse(buffer.read(5, frame));
+	}
+
+	public void testCollect() throws Exception {
+		LiveWatch watch = myBus.subscribe(myOrigin);
+		assertEquals(2, watch.getDimension());
+		assertEquals(0, watch.getNewestTick());
+
+		for (int i = 1; i <= 15; i++) {
+			setOrigin(i);
+			myBus.collect();
+		}
+		assertEquals(15, myBus.getTick());
+		assertEquals(15, watch.getNewestTick());
+		assertEquals(6, watch.getOldestTick());
+
+		float[][] values = watch.get(4, 4, 0f);
+		assertNull(values[0]);
+		assertNull(values[1]);
+		assertEquals(6f, values[2][0], .0001f);
+		assertEquals(-7f, values[3][1], .0001f);
+
+		myBus.reset(false);
+		assertEquals(0, watch.getNewestTick());
+		assertEquals(15f, watch.getFirst()[0], .0001f);
+	}
+
+	public void testDecimationAndFilter() throws Exception {
+		LiveWatch watch = myBus.subscribe(myOrigin, 2f, 3);
+		setOrigin(1f);
+		for (int i = 1; i <= 9; i++) {
+			myBus.collect();
+		}
+		assertEquals(9, watch.getNewestTick());
+
+		float[][] raw = watch.get(0, 10, 0f);
+		assertEquals(0f, raw[2][0], .0001f);
+		assertEquals(2f, raw[3][0], .0001f);
+		assertEquals(2f, raw[5][0], .0001f);
+
+		float[][] filtered = watch.get(0, 10, .5f);
+		assertEquals(0f, filtered[0][0], .0001f);
+		assertTrue(filtered[3][0] > 0f && filtered[3][0] < 2f);
+		assertTrue(filtered[9][0] > filtered[6][0]);
+		assertTrue(filtered[9][0] < 2f);
+
+		myBus.unsubscribe(watch);
+		assertEquals(0, myBus.getWatches().length);
+	}
+
+	public void testSpikesAndRates() throws Exception {
+		LiveWatch watch = myBus.subscribe(myOrigin, .5f, 1);
+		myOrigin.setValues(new SpikeOutputImpl(new boolean[]{true, false}, Units.SPIKES, 0f));
+		myBus.collect();
+		setOrigin(4f);
+		myBus.collect();
+
+		float[][] values = watch.get(1, 2, 0f);
+		assertEquals(1f, values[0][0], .0001f);
+		assertEquals(0f, values[0][1], .0001f);
+		assertEquals(2f, values[1][0], .0001f);
+		assertEquals(-2f, values[1][1], .0001f);
+	}
+}
@@ -0,0 +1,78 @@
+package ca.nengo.util.impl;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+import ca.nengo.model.Network;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.NEFEnsembleFactory;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.sim.impl.LocalSimulator;
+
+/**
+ * Unit tests for Profiler and TimingHistogram.
+ *
+ * @author agent
+ */
+public class ProfilerTest extends TestCase {
+
+	public void testHistogram() {
+		TimingHistogram h = new TimingHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			h.record(i * 1000);
+		}
+		assertEquals(1000, h.getCount());
+		assertEquals(1000, h.getMin());
+		assertEquals(1000000, h.getMax());
+		assertEquals(500500d, h.getMean(), .001);
+
+		long median = h.getPercentile(.5);
+		assertTrue(median > 400000 && median < 625000);
+		long p99 = h.getPercentile(.99);
+		assertTrue(p99 > 900000 && p99 <= 1000000);
+	}
+
+	public void testProfile() throws Exception {
+		Network network = new NetworkImpl();
+		network.setName("top");
+		NetworkImpl sub = new NetworkImpl();
+		sub.setName("sub");
+		network.addNode(sub);
+
+		NEFEnsembleFactory factory = new NEFEnsembleFactoryImpl();
+		NEFEnsemble a = factory.make("a", 50, 1);
+		a.addDecodedTermination("input", new float[][]{new float[]{1}}, .005f, false);
+		sub.addNode(a);
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, .5f)}, Units.UNK);
+		network.addNode(input);
+		sub.exposeTermination(a.getTermination("input"), "input");
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), sub.getTermination("input"));
+		network.getSimulator().addProbe("input", FunctionInput.STATE_NAME, true);
+
+		Profiler profiler = new Profiler();
+		LocalSimulator simulator = (LocalSimulator) network.getSimulator();
+		simulator.setDisplayProgress(false);
+		simulator.setProfiler(profiler);
+		simulator.run(0, .05f, .001f);
+
+		Profiler.Entry entry = profiler.getEntry(a);
+		assertNotNull(entry);
+		assertEquals("top/sub/a", entry.getPath());
+		assertEquals(50, entry.getHistogram().getCount());
+		assertTrue(profiler.getEntries(Profiler.Category.PROJECTION).length > 0);
+		assertTrue(profiler.getEntries(Profiler.Category.PROBE).length > 0);
+		assertTrue(profiler.getTotal("top/sub") >= entry.getHistogram().getTotal());
+		assertTrue(profiler.getTotal("top") >= profiler.getTotal("top/sub"));
+		assertTrue(profiler.getReport().indexOf("    a: ") > 0);
+
+		File file = new File("testProfiler.txt");
+		profiler.dump(file);
+		assertTrue(file.length() > 0);
+		assertTrue(file.delete());
+	}
+}
@@ -3,6 +3,10 @@
  */
 package ca.nengo.util.impl;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Properties;
 
 import ca.nengo.model.Probeable;
@@ -82,6 +86,40 @@ public class RecorderImplTest extends TestCase {
 		assertEquals(1, ts.getValues().length);
 	}
  
+	public void testSnapshot() throws Exception {
+		myRecorder.connect(new MockProbeable(1f), "x", true);
+		for (int i = 0; i < 5000; i++) { //more than one chunk
+			myRecorder.collect(i);
+		}
+		TimeSeries snapshot = myRecorder.getData();
+		
+		//later collection doesn't affect earlier snapshots
+		myRecorder.collect(5000);
+		assertEquals(5000, snapshot.getValues().length);
+		assertEquals(5001, myRecorder.getData().getTimes().length);
+		myRecorder.reset();
+		assertEquals(5000, snapshot.getTimes().length);
+		assertEquals(1f, snapshot.getValues()[4999][0], 0f);
+		
+		//spilled to disk and read back
+		TimeSeriesSnapshot spilled = (TimeSeriesSnapshot) snapshot; 
+		spilled.spill();
+		assertTrue(spilled.isSpilled());
+		assertEquals(5000, spilled.getValues().length);
+		assertFalse(spilled.isSpilled());
+		assertEquals(1f, spilled.getValues()[4321][0], 0f);
+		
+		//serialized as an ordinary TimeSeries
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(snapshot);
+		out.close();
+		Object copy = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertTrue(copy instanceof TimeSeriesImpl);
+		assertEquals(5000, ((TimeSeries) copy).getValues().length);
+		assertEquals(snapshot.getName(), ((TimeSeries) copy).getName());
+	}
+ 
 	private static class MockProbeable implements Probeable {
 
 		private float myConstantValue;
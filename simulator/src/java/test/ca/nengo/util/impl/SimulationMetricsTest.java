@@ -0,0 +1,141 @@
+package ca.nengo.util.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.SortedMap;
+
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+import ca.nengo.math.Function;
+import ca.nengo.math.impl.ConstantFunction;
+import ca.nengo.model.Network;
+import ca.nengo.model.SimulationMode;
+import ca.nengo.model.Units;
+import ca.nengo.model.impl.FunctionInput;
+import ca.nengo.model.impl.NetworkImpl;
+import ca.nengo.model.nef.NEFEnsemble;
+import ca.nengo.model.nef.impl.NEFEnsembleFactoryImpl;
+import ca.nengo.model.nef.impl.NEFEnsembleImpl;
+import ca.nengo.sim.impl.LocalSimulator;
+import ca.nengo.util.MetricsRegistry;
+
+/**
+ * Unit tests for SimulationMetrics (and the MetricsRegistry it publishes to).
+ *
+ * @author agent
+ */
+public class SimulationMetricsTest extends TestCase {
+
+	public void testRegistry() throws Exception {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("a.count").add(3);
+		registry.timer("a.time").record(2000000);
+		registry.gauge("b.value", new MetricsRegistry.Gauge() {
+			public double getValue() {
+				return 1.5;
+			}
+		});
+
+		SortedMap<String, Double> snapshot = registry.snapshot();
+		assertEquals(3d, snapshot.get("a.count").doubleValue(), 0);
+		assertEquals(1d, snapshot.get("a.time.count").doubleValue(), 0);
+		assertEquals(2d, snapshot.get("a.time.p50").doubleValue(), .5);
+		assertEquals(2d, snapshot.get("a.time.max").doubleValue(), 1e-6);
+		assertEquals(1.5, snapshot.get("b.value").doubleValue(), 0);
+		assertSame(registry.counter("a.count"), registry.counter("a.count"));
+
+		registry.reset();
+		assertEquals(0d, registry.snapshot().get("a.count").doubleValue(), 0);
+		assertEquals(0d, registry.snapshot().get("a.time.count").doubleValue(), 0);
+
+		registry.removeAll("a.");
+		assertEquals(1, registry.getNames().length);
+		assertTrue(registry.remove("b.value"));
+		assertFalse(registry.remove("b.value"));
+
+		String line = MetricsReporter.format(10, registry.snapshot());
+		assertEquals("10", line);
+	}
+
+	public void testRun() throws Exception {
+		int threads = NodeThreadPool.getNumJavaThreads();
+		try {
+			checkRun();
+			NodeThreadPool.turnOffMultithreading();
+			checkRun();
+		} finally {
+			NodeThreadPool.setNumJavaThreads(threads);
+		}
+	}
+
+	private void checkRun() throws Exception {
+		Network network = makeNetwork();
+		LocalSimulator simulator = (LocalSimulator) network.getSimulator();
+		SimulationMetrics metrics = new SimulationMetrics();
+		simulator.setMetrics(metrics);
+		network.run(0f, .1f);
+
+		SortedMap<String, Double> snapshot = metrics.getRegistry().snapshot();
+		assertEquals(100d, snapshot.get("simulation.steps").doubleValue(), 0);
+		assertEquals(.1, snapshot.get("simulation.time").doubleValue(), 1e-5);
+		assertEquals(100d, snapshot.get("phase.nodes.count").doubleValue(), 0);
+		assertEquals(100d, snapshot.get("phase.projections.count").doubleValue(), 0);
+		assertEquals(100d, snapshot.get("phase.tasks.count").doubleValue(), 0);
+		assertTrue(snapshot.get("simulation.stepsPerSecond").doubleValue() > 0);
+		assertEquals(snapshot.get("simulation.stepsPerSecond").doubleValue() * .001,
+				snapshot.get("simulation.realTimeRatio").doubleValue(), 1e-3);
+		assertTrue(snapshot.get("memory.allocationRate").doubleValue() != 0);
+
+		assertEquals(100d, snapshot.get("probe.net.A:X.samples").doubleValue(), 0);
+		assertEquals(100d / 4096d, snapshot.get("probe.net.A:X.occupancy").doubleValue(), 1e-6); //one chunk
+
+		//the ensemble is driven well above threshold
+		double rate = snapshot.get("ensemble.net.A.rate").doubleValue();
+		assertTrue(rate > 10 && rate < 500);
+
+		//metrics are re-registered for each run, and only top-level runs are measured
+		network.run(.1f, .15f);
+		snapshot = metrics.getRegistry().snapshot();
+		assertEquals(50d, snapshot.get("simulation.steps").doubleValue(), 0);
+		assertEquals(50d, snapshot.get("probe.net.A:X.samples").doubleValue(), 0);
+
+		simulator.setMetrics(null);
+		network.run(.15f, .2f);
+		assertEquals(50d, metrics.getRegistry().snapshot().get("simulation.steps").doubleValue(), 0);
+	}
+
+	public void testMBean() throws Exception {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("steps").add(7);
+		MetricsMBean bean = new MetricsMBean(registry);
+		bean.register("test");
+		try {
+			ObjectName name = bean.getObjectName();
+			assertEquals(7d, ((Double) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "steps")).doubleValue(), 0);
+			assertEquals(1, ManagementFactory.getPlatformMBeanServer().getMBeanInfo(name).getAttributes().length);
+		} finally {
+			bean.unregister();
+		}
+		assertNull(bean.getObjectName());
+	}
+
+	//input -> A (spiking), with a probe on A's output
+	private static Network makeNetwork() throws Exception {
+		NEFEnsembleFactoryImpl ef = new NEFEnsembleFactoryImpl();
+		ef.setSeed(Long.valueOf(7));
+		NetworkImpl network = new NetworkImpl();
+		network.setName("net");
+
+		FunctionInput input = new FunctionInput("input", new Function[]{new ConstantFunction(1, .8f)}, Units.UNK);
+		network.addNode(input);
+		NEFEnsembleImpl a = (NEFEnsembleImpl) ef.make("A", 50, 1);
+		a.addDecodedTermination("input", new float[][]{new float[]{1}}, .005f, false);
+		network.addNode(a);
+		network.addProjection(input.getOrigin(FunctionInput.ORIGIN_NAME), a.getTermination("input"));
+
+		network.setMode(SimulationMode.DEFAULT);
+		network.getSimulator().addProbe("A", NEFEnsemble.X, true);
+		((LocalSimulator) network.getSimulator()).setDisplayProgress(false);
+		return network;
+	}
+}
@@ -3,6 +3,7 @@
  */
 package ca.nengo.util.impl;
 
+import ca.nengo.util.SpikePattern;
 import ca.nengo.util.impl.SpikePatternImpl;
 import junit.framework.TestCase;
 
@@ -43,4 +44,96 @@ public class SpikePatternImplTest extends TestCase {
 		}
 	}
 
+	public void testSnapshot() {
+		SpikePatternImpl sp = new SpikePatternImpl(2);
+		for (int i = 0; i < 100; i++) {
+			sp.addSpike(0, (float) i);
+		}
+		SpikePattern snapshot = sp.snapshot();
+		
+		for (int i = 100; i < 200; i++) { //fills and replaces the shared array
+			sp.addSpike(0, (float) i);
+			sp.addSpike(1, (float) i);
+		}
+		assertEquals(100, snapshot.getSpikeTimes(0).length);
+		assertEquals(99f, snapshot.getSpikeTimes(0)[99], 0f);
+		assertEquals(0, snapshot.getSpikeTimes(1).length);
+		assertEquals(200, sp.getSpikeTimes(0).length);
+		
+		try {
+			((SpikePatternImpl) snapshot).addSpike(0, 1f);
+			fail("Should have thrown an exception");
+		} catch (IllegalStateException e) {} //exception is expected
+	}
+
+	public void testWindowQueries() {
+		SpikePatternImpl sp = new SpikePatternImpl(3);
+		for (int i = 0; i < 300; i++) {
+			sp.addSpike(0, i * .01f);
+			if (i % 2 == 0) sp.addSpike(1, i * .01f);
+		}
+		sp.addSpike(2, .5f);
+		sp.addSpike(2, .1f); //out of order
+		
+		assertEquals(300, sp.getSpikeCount(0));
+		float[] window = sp.getSpikeTimes(0, .995f, 1.995f);
+		assertEquals(100, window.length);
+		assertEquals(1f, window[0], 1e-5f);
+		assertEquals(1.99f, window[99], 1e-5f);
+		assertEquals(0, sp.getSpikeTimes(0, 5f, 6f).length);
+		
+		float[][] slices = sp.getSpikeTimes(1, 3, .05f, .55f);
+		assertEquals(2, slices.length);
+		assertEquals(25, slices[0].length);
+		assertEquals(2, slices[1].length);
+		assertEquals(1, sp.getSpikeTimes(2, 0f, .3f).length);
+		
+		int[][] counts = sp.getSpikeCounts(0, 3, -.005f, 1f, 4);
+		assertEquals(100, counts[0][0]);
+		assertEquals(100, counts[0][2]);
+		assertEquals(0, counts[0][3]);
+		assertEquals(50, counts[1][1]);
+		assertEquals(2, counts[2][0]);
+		
+		assertEquals(0f, sp.getStartTime(), 0f);
+		assertEquals(2.99f, sp.getEndTime(), 1e-5f);
+		assertTrue(Float.isNaN(new SpikePatternImpl(2).getStartTime()));
+	}
+
+	public void testCursor() {
+		SpikePatternImpl sp = new SpikePatternImpl(3);
+		sp.addSpike(1, 1f);
+		SpikePatternImpl.Cursor cursor = sp.newCursor(1, 3);
+		float[][] spikes = cursor.getNewSpikeTimes();
+		assertEquals(2, spikes.length);
+		assertEquals(1, spikes[0].length);
+		
+		for (int i = 0; i < 150; i++) {
+			sp.addSpike(1, 2f + i);
+			sp.addSpike(2, 2f + i);
+		}
+		spikes = cursor.getNewSpikeTimes();
+		assertEquals(150, spikes[0].length);
+		assertEquals(2f, spikes[0][0], 0f);
+		assertEquals(150, spikes[1].length);
+		assertEquals(0, cursor.getNewSpikeTimes()[0].length);
+		
+		sp.addSpike(2, 200f);
+		cursor.skipToEnd();
+		assertEquals(0, cursor.getNewSpikeTimes()[1].length);
+	}
+
+	public void testSubset() {
+		SpikePatternImpl sp = new SpikePatternImpl(3);
+		sp.addSpike(0, 1f);
+		sp.addSpike(2, 2f);
+		sp.addSpike(2, 3f);
+		SpikePattern subset = sp.subset(new int[]{2, 0});
+		sp.addSpike(2, 4f);
+		assertEquals(2, subset.getNumNeurons());
+		assertEquals(2, subset.getSpikeTimes(0).length);
+		assertEquals(3f, subset.getSpikeTimes(0)[1], 0f);
+		assertEquals(1, subset.getSpikeTimes(1).length);
+	}
+
 }